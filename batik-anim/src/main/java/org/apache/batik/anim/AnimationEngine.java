@@ -18,9 +18,11 @@
  */
 package org.apache.batik.anim;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.batik.anim.dom.AnimationTarget;
@@ -77,6 +79,12 @@ public abstract class AnimationEngine {
      */
     protected Listener targetListener = new Listener();
 
+    /**
+     * The sandwiches whose value may have to be copied into the document
+     * at the next tick.
+     */
+    protected List changedSandwiches = new ArrayList();
+
     /**
      * Creates a new AnimationEngine for the given document.
      */
@@ -209,6 +217,7 @@ public abstract class AnimationEngine {
         if (anim.lowerAnimation == null) {
             sandwich.lowestAnimation = anim;
         }
+        animInfo.sandwich = sandwich;
         // } finally { org.apache.batik.anim.timing.Trace.exit(); }
     }
 
@@ -235,6 +244,7 @@ public abstract class AnimationEngine {
             sandwich.lowestAnimation = null;
             sandwich.shouldUpdate = true;
         }
+        sandwichChanged(sandwich);
         // } finally { org.apache.batik.anim.timing.Trace.exit(); }
     }
 
@@ -248,19 +258,19 @@ public abstract class AnimationEngine {
         if (type == ANIM_TYPE_XML) {
             sandwich = (Sandwich) info.xmlAnimations.get(ns, an);
             if (sandwich == null) {
-                sandwich = new Sandwich();
+                sandwich = new Sandwich(target, type, ns, an);
                 info.xmlAnimations.put(ns, an, sandwich);
             }
         } else if (type == ANIM_TYPE_CSS) {
             sandwich = (Sandwich) info.cssAnimations.get(an);
             if (sandwich == null) {
-                sandwich = new Sandwich();
+                sandwich = new Sandwich(target, type, null, an);
                 info.cssAnimations.put(an, sandwich);
             }
         } else {
             sandwich = (Sandwich) info.otherAnimations.get(an);
             if (sandwich == null) {
-                sandwich = new Sandwich();
+                sandwich = new Sandwich(target, type, null, an);
                 info.otherAnimations.put(an, sandwich);
             }
         }
@@ -293,77 +303,66 @@ public abstract class AnimationEngine {
 
     protected static final Map.Entry[] MAP_ENTRY_ARRAY = new Map.Entry[0];
 
+    protected static final Sandwich[] SANDWICH_ARRAY = new Sandwich[0];
+
     /**
      * Updates the animations in the document to the given document time.
+     * Only the sandwiches whose animations changed since the last tick
+     * are looked at.
      * @param time the document time to sample at
      * @param hyperlinking whether the document should be seeked to the given
      *                     time, as with hyperlinking
      */
     protected float tick(float time, boolean hyperlinking) {
         float waitTime = timedDocumentRoot.seekTo(time, hyperlinking);
-        Map.Entry[] targetEntries =
-            (Map.Entry[]) targets.entrySet().toArray(MAP_ENTRY_ARRAY);
-        for (Map.Entry e : targetEntries) {
-            AnimationTarget target = (AnimationTarget) e.getKey();
-            TargetInfo info = (TargetInfo) e.getValue();
-
-            // Update the XML animations.
-            Iterator j = info.xmlAnimations.iterator();
-            while (j.hasNext()) {
-                DoublyIndexedTable.Entry e2 =
-                        (DoublyIndexedTable.Entry) j.next();
-                String namespaceURI = (String) e2.getKey1();
-                String localName = (String) e2.getKey2();
-                Sandwich sandwich = (Sandwich) e2.getValue();
-                if (sandwich.shouldUpdate ||
-                        sandwich.animation != null
-                                && sandwich.animation.isDirty) {
-                    AnimatableValue av = null;
-                    boolean usesUnderlying = false;
-                    AbstractAnimation anim = sandwich.animation;
-                    if (anim != null) {
-                        av = anim.getComposedValue();
-                        usesUnderlying =
-                                sandwich.lowestAnimation.usesUnderlyingValue();
-                        anim.isDirty = false;
-                    }
+        Sandwich[] sandwiches =
+            (Sandwich[]) changedSandwiches.toArray(SANDWICH_ARRAY);
+        changedSandwiches.clear();
+        for (Sandwich sandwich : sandwiches) {
+            sandwich.queued = false;
+        }
+        for (Sandwich sandwich : sandwiches) {
+            if (!sandwich.shouldUpdate &&
+                    (sandwich.animation == null
+                        || !sandwich.animation.isDirty)) {
+                continue;
+            }
+            AnimationTarget target = sandwich.target;
+            AnimatableValue av = null;
+            boolean usesUnderlying = false;
+            AbstractAnimation anim = sandwich.animation;
+            if (anim != null) {
+                av = anim.getComposedValue();
+                usesUnderlying =
+                        sandwich.lowestAnimation.usesUnderlyingValue();
+                anim.isDirty = false;
+            }
+            switch (sandwich.type) {
+                case ANIM_TYPE_XML:
+                    // Update the XML animations.
+                    String namespaceURI = sandwich.namespaceURI;
+                    String localName = sandwich.localName;
                     if (usesUnderlying && !sandwich.listenerRegistered) {
-                        target.addTargetListener(namespaceURI, localName, false,
-                                targetListener);
+                        target.addTargetListener(namespaceURI, localName,
+                                false, targetListener);
                         sandwich.listenerRegistered = true;
-                    } else if (!usesUnderlying && sandwich.listenerRegistered) {
+                    } else if (!usesUnderlying
+                            && sandwich.listenerRegistered) {
                         target.removeTargetListener(namespaceURI, localName,
                                 false, targetListener);
                         sandwich.listenerRegistered = false;
                     }
                     target.updateAttributeValue(namespaceURI, localName, av);
-                    sandwich.shouldUpdate = false;
-                }
-            }
-
-            // Update the CSS animations.
-            j = info.cssAnimations.entrySet().iterator();
-            while (j.hasNext()) {
-                Map.Entry e2 = (Map.Entry) j.next();
-                String propertyName = (String) e2.getKey();
-                Sandwich sandwich = (Sandwich) e2.getValue();
-                if (sandwich.shouldUpdate ||
-                        sandwich.animation != null
-                                && sandwich.animation.isDirty) {
-                    AnimatableValue av = null;
-                    boolean usesUnderlying = false;
-                    AbstractAnimation anim = sandwich.animation;
-                    if (anim != null) {
-                        av = anim.getComposedValue();
-                        usesUnderlying =
-                                sandwich.lowestAnimation.usesUnderlyingValue();
-                        anim.isDirty = false;
-                    }
+                    break;
+                case ANIM_TYPE_CSS:
+                    // Update the CSS animations.
+                    String propertyName = sandwich.localName;
                     if (usesUnderlying && !sandwich.listenerRegistered) {
                         target.addTargetListener(null, propertyName, true,
                                 targetListener);
                         sandwich.listenerRegistered = true;
-                    } else if (!usesUnderlying && sandwich.listenerRegistered) {
+                    } else if (!usesUnderlying
+                            && sandwich.listenerRegistered) {
                         target.removeTargetListener(null, propertyName, true,
                                 targetListener);
                         sandwich.listenerRegistered = false;
@@ -374,33 +373,38 @@ public abstract class AnimationEngine {
                     if (!(usesUnderlying && av == null)) {
                         target.updatePropertyValue(propertyName, av);
                     }
-                    sandwich.shouldUpdate = false;
-                }
-            }
-
-            // Update the other animations.
-            j = info.otherAnimations.entrySet().iterator();
-            while (j.hasNext()) {
-                Map.Entry e2 = (Map.Entry) j.next();
-                String type = (String) e2.getKey();
-                Sandwich sandwich = (Sandwich) e2.getValue();
-                if (sandwich.shouldUpdate ||
-                        sandwich.animation != null
-                                && sandwich.animation.isDirty) {
-                    AnimatableValue av = null;
-                    AbstractAnimation anim = sandwich.animation;
-                    if (anim != null) {
-                        av = sandwich.animation.getComposedValue();
-                        anim.isDirty = false;
-                    }
-                    target.updateOtherValue(type, av);
-                    sandwich.shouldUpdate = false;
-                }
+                    break;
+                default:
+                    // Update the other animations.
+                    target.updateOtherValue(sandwich.localName, av);
             }
+            sandwich.shouldUpdate = false;
         }
         return waitTime;
     }
 
+    /**
+     * Records that the value of the given sandwich may have to be copied
+     * into the document at the next tick.
+     */
+    protected void sandwichChanged(Sandwich sandwich) {
+        if (!sandwich.queued) {
+            sandwich.queued = true;
+            changedSandwiches.add(sandwich);
+        }
+    }
+
+    /**
+     * Records that the sandwich of the given animation may have to be
+     * copied into the document at the next tick.
+     */
+    protected void animationChanged(AbstractAnimation anim) {
+        AnimationInfo animInfo = getAnimationInfo(anim);
+        if (animInfo.sandwich != null) {
+            sandwichChanged(animInfo.sandwich);
+        }
+    }
+
     /**
      * Invoked to indicate an animation became active at the specified time.
      *
@@ -416,6 +420,7 @@ public abstract class AnimationEngine {
         // animation in the sandwich and it's earlier in document order.
         pushDown(anim);
         anim.markDirty();
+        animationChanged(anim);
     }
 
     /**
@@ -479,6 +484,7 @@ public abstract class AnimationEngine {
             anim.beginTime = Float.NEGATIVE_INFINITY;
             moveToBottom(anim);
         }
+        animationChanged(anim);
     }
 
     /**
@@ -490,6 +496,7 @@ public abstract class AnimationEngine {
         anim.value = null;
         anim.markDirty();
         moveToBottom(anim);
+        animationChanged(anim);
     }
 
     /**
@@ -501,6 +508,7 @@ public abstract class AnimationEngine {
                                         animInfo.attributeNamespaceURI,
                                         animInfo.attributeLocalName);
         sandwich.shouldUpdate = true;
+        sandwichChanged(sandwich);
         if (anim.higherAnimation == null) {
             return;
         }
@@ -545,6 +553,7 @@ public abstract class AnimationEngine {
         if (sandwich.animation.isDirty) {
             sandwich.shouldUpdate = true;
         }
+        sandwichChanged(sandwich);
     }
 
     /**
@@ -574,6 +583,9 @@ public abstract class AnimationEngine {
     public void sampledAt(AbstractAnimation anim, float simpleTime,
                           float simpleDur, int repeatIteration) {
         anim.sampledAt(simpleTime, simpleDur, repeatIteration);
+        if (anim.isDirty) {
+            animationChanged(anim);
+        }
     }
 
     /**
@@ -584,6 +596,9 @@ public abstract class AnimationEngine {
      */
     public void sampledLastValue(AbstractAnimation anim, int repeatIteration) {
         anim.sampledLastValue(repeatIteration);
+        if (anim.isDirty) {
+            animationChanged(anim);
+        }
     }
 
     /**
@@ -605,6 +620,7 @@ public abstract class AnimationEngine {
             short type = isCSS ? ANIM_TYPE_CSS : ANIM_TYPE_XML;
             Sandwich sandwich = getSandwich(t, type, ns, ln);
             sandwich.shouldUpdate = true;
+            sandwichChanged(sandwich);
             AbstractAnimation anim = sandwich.animation;
             while (anim.lowerAnimation != null) {
                 anim = anim.lowerAnimation;
@@ -663,6 +679,53 @@ public abstract class AnimationEngine {
          * listen for changes to the base value.
          */
         public boolean listenerRegistered;
+
+        /**
+         * Whether this sandwich is in the list of sandwiches to look at
+         * at the next tick.
+         */
+        public boolean queued;
+
+        /**
+         * The animated element.
+         */
+        public AnimationTarget target;
+
+        /**
+         * The type of animation, one of the <code>ANIM_TYPE_*</code>
+         * constants defined in {@link AnimationEngine}.
+         */
+        public short type;
+
+        /**
+         * The namespace URI of the animated attribute, if this is an XML
+         * attribute sandwich.
+         */
+        public String namespaceURI;
+
+        /**
+         * The local name of the attribute, the name of the CSS property
+         * or the animation type.
+         */
+        public String localName;
+
+        /**
+         * Creates a new Sandwich.  The target, type and attribute
+         * fields must be set before the sandwich is ticked.
+         */
+        public Sandwich() {
+        }
+
+        /**
+         * Creates a new Sandwich for the given animated attribute.
+         */
+        public Sandwich(AnimationTarget target, short type,
+                        String namespaceURI, String localName) {
+            this.target = target;
+            this.type = type;
+            this.namespaceURI = namespaceURI;
+            this.localName = localName;
+        }
     }
 
     /**
@@ -692,5 +755,10 @@ public abstract class AnimationEngine {
          * animate.
          */
         public String attributeLocalName;
+
+        /**
+         * The sandwich the animation is in.
+         */
+        public Sandwich sandwich;
     }
 }
@@ -18,6 +18,9 @@
  */
 package org.apache.batik.anim.dom;
 
+import org.apache.batik.anim.values.AnimatableNumberOrIdentValue;
+import org.apache.batik.anim.values.AnimatablePaintValue;
+import org.apache.batik.anim.values.AnimatableStringValue;
 import org.apache.batik.anim.values.AnimatableValue;
 import org.apache.batik.css.dom.CSSOMSVGColor;
 import org.apache.batik.css.dom.CSSOMSVGPaint;
@@ -28,9 +31,12 @@ import org.apache.batik.css.engine.CSSStylableElement;
 import org.apache.batik.css.engine.SVGCSSEngine;
 import org.apache.batik.css.engine.StyleDeclarationProvider;
 import org.apache.batik.css.engine.StyleMap;
+import org.apache.batik.css.engine.value.FloatValue;
+import org.apache.batik.css.engine.value.RGBColorValue;
 import org.apache.batik.css.engine.value.Value;
 import org.apache.batik.css.engine.value.svg.SVGColorManager;
 import org.apache.batik.css.engine.value.svg.SVGPaintManager;
+import org.apache.batik.css.engine.value.svg.SVGValueConstants;
 import org.apache.batik.dom.AbstractDocument;
 import org.apache.batik.dom.svg.LiveAttributeValue;
 import org.apache.batik.util.DoublyIndexedTable;
@@ -40,6 +46,7 @@ import org.apache.batik.util.SVGTypes;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
+import org.w3c.dom.css.CSSPrimitiveValue;
 import org.w3c.dom.css.CSSStyleDeclaration;
 import org.w3c.dom.css.CSSValue;
 import org.w3c.dom.svg.SVGAnimatedString;
@@ -199,9 +206,23 @@ public abstract class SVGStylableElement
     // AnimationTarget ///////////////////////////////////////////////////////
 
     /**
-     * Updates a property value in this target.
+     * Updates a property value in this target.  The common animated
+     * properties are given to the CSS engine as values, which it can
+     * apply to this element alone; the others, and those the engine
+     * must cascade again, go through the override style declaration
+     * as text.
      */
     public void updatePropertyValue(String pn, AnimatableValue val) {
+        if (val != null) {
+            CSSEngine eng = ((SVGOMDocument) getOwnerDocument()).getCSSEngine();
+            int idx = eng.getPropertyIndex(pn);
+            if (idx != -1) {
+                Value v = createPropertyValue(eng, idx, val);
+                if (v != null && eng.setOverrideStyleValue(this, idx, v)) {
+                    return;
+                }
+            }
+        }
         CSSStyleDeclaration over = getOverrideStyle();
         if (val == null) {
             over.removeProperty(pn);
@@ -210,6 +231,67 @@ public abstract class SVGStylableElement
         }
     }
 
+    /**
+     * Creates the CSS value of the given animated property value, or
+     * returns null if it has to be parsed from its text.  Only the
+     * opacity, paint and visibility properties are handled.
+     */
+    protected Value createPropertyValue(CSSEngine eng, int idx,
+                                        AnimatableValue val) {
+        switch (idx) {
+        case SVGCSSEngine.OPACITY_INDEX:
+        case SVGCSSEngine.FILL_OPACITY_INDEX:
+        case SVGCSSEngine.STROKE_OPACITY_INDEX:
+            if (val instanceof AnimatableNumberOrIdentValue
+                    && !((AnimatableNumberOrIdentValue) val).isIdent()) {
+                return new FloatValue
+                    (CSSPrimitiveValue.CSS_NUMBER,
+                     ((AnimatableNumberOrIdentValue) val).getValue());
+            }
+            break;
+
+        case SVGCSSEngine.FILL_INDEX:
+        case SVGCSSEngine.STROKE_INDEX:
+            if (val instanceof AnimatablePaintValue) {
+                AnimatablePaintValue p = (AnimatablePaintValue) val;
+                switch (p.getPaintType()) {
+                case AnimatablePaintValue.PAINT_NONE:
+                    return SVGValueConstants.NONE_VALUE;
+                case AnimatablePaintValue.PAINT_CURRENT_COLOR:
+                    return SVGValueConstants.CURRENTCOLOR_VALUE;
+                case AnimatablePaintValue.PAINT_COLOR:
+                    return new RGBColorValue
+                        (createColorComponent(p.getRed()),
+                         createColorComponent(p.getGreen()),
+                         createColorComponent(p.getBlue()));
+                }
+            }
+            break;
+
+        case SVGCSSEngine.VISIBILITY_INDEX:
+            if (val instanceof AnimatableStringValue) {
+                try {
+                    return eng.getValueManagers()[idx].createStringValue
+                        (CSSPrimitiveValue.CSS_IDENT,
+                         ((AnimatableStringValue) val).getString(), eng);
+                } catch (DOMException ex) {
+                    // 'inherit' and invalid values are parsed.
+                }
+            }
+            break;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a color component the way rgb() does, from a value
+     * between 0 and 1.
+     */
+    private static Value createColorComponent(float c) {
+        return new FloatValue(CSSPrimitiveValue.CSS_NUMBER,
+                              Math.round(c * 255));
+    }
+
     /**
      * Returns whether color interpolations should be done in linear RGB
      * color space rather than sRGB.
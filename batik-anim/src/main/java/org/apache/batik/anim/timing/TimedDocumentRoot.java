@@ -18,8 +18,13 @@
  */
 package org.apache.batik.anim.timing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
 
 import org.apache.batik.util.DoublyIndexedSet;
 
@@ -71,6 +76,46 @@ public abstract class TimedDocumentRoot extends TimeContainer {
      */
     protected boolean isHyperlinking;
 
+    /**
+     * Whether seeks sample only the children that are due for a sample.
+     */
+    protected static boolean scheduledSampling = true;
+
+    /**
+     * The children waiting for a sample, ordered by the document time
+     * they must next be sampled at.  A child has an entry for its
+     * {@link TimedElement#nextSampleTime}; entries for other times are
+     * out of date and skipped.  Children that will not be active again
+     * unless their intervals change have no entry.
+     */
+    protected PriorityQueue sampleQueue = new PriorityQueue();
+
+    /**
+     * Whether the next seek must sample every child, as after a reset.
+     */
+    protected boolean sampleAllChildren = true;
+
+    /**
+     * The number of document samples so far.
+     */
+    protected int sampleCount;
+
+    /**
+     * The rank to give the next child added.
+     */
+    protected int nextSampleOrder;
+
+    /**
+     * Orders timed elements in document order.
+     */
+    protected static final Comparator SAMPLE_ORDER = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            int r1 = ((TimedElement) o1).sampleOrder;
+            int r2 = ((TimedElement) o2).sampleOrder;
+            return r1 < r2 ? -1 : (r1 == r2 ? 0 : 1);
+        }
+    };
+
     /**
      * Creates a new TimedDocumentRoot.
      * @param useSVG11AccessKeys allows the use of accessKey() timing
@@ -125,46 +170,224 @@ public abstract class TimedDocumentRoot extends TimeContainer {
     }
 
     /**
-     * Samples the entire timegraph at the given time.
+     * Samples the entire timegraph at the given time.  When playing
+     * forward, only the children that are active, whose next interval
+     * has begun or ended, or whose intervals may have changed are
+     * sampled; the others would not change.
      */
     public float seekTo(float time, boolean hyperlinking) {
         // Trace.enter(this, "seekTo", new Object[] { Float.valueOf(time) } ); try {
         isSampling = true;
+        boolean all = sampleAllChildren || hyperlinking || !scheduledSampling
+            || !(time >= lastSampleTime);
         lastSampleTime = time;
         isHyperlinking = hyperlinking;
         propagationFlags.clear();
+        sampleCount++;
         // No time containers in SVG, so we don't have to worry
         // about a partial ordering of timed elements to sample.
-        float mint = Float.POSITIVE_INFINITY;
-        TimedElement[] es = getChildren();
+        TimedElement[] es;
+        if (all) {
+            sampleAllChildren = false;
+            sampleQueue.clear();
+            es = getChildren();
+        } else {
+            es = getDueChildren(time);
+        }
         for (TimedElement e1 : es) {
-            float t = e1.sampleAt(time, hyperlinking);
-            if (t < mint) {
-                mint = t;
-            }
+            e1.sampleAt(time, hyperlinking);
         }
         boolean needsUpdates;
         do {
             needsUpdates = false;
+            es = getUpdatingChildren();
             for (TimedElement e : es) {
-                if (e.shouldUpdateCurrentInterval) {
-                    needsUpdates = true;
-                    // System.err.print("{" + ((Test.AnimateElement) es[i]).id + "} ");
-                    float t = e.sampleAt(time, hyperlinking);
-                    if (t < mint) {
-                        mint = t;
-                    }
-                }
+                needsUpdates = true;
+                // System.err.print("{" + ((Test.AnimateElement) es[i]).id + "} ");
+                e.sampleAt(time, hyperlinking);
             }
         } while (needsUpdates);
         isSampling = false;
         if (hyperlinking) {
             root.currentIntervalWillUpdate();
         }
-        return mint;
+        // Every child sampled has scheduled its next sample.
+        return getNextSampleTime() - time;
         // } finally { Trace.exit(); }
     }
 
+    /**
+     * Removes from the sample queue and returns, in document order, the
+     * children that must be sampled at the given time.
+     */
+    protected TimedElement[] getDueChildren(float time) {
+        List due = new ArrayList();
+        while (!sampleQueue.isEmpty()) {
+            ScheduledSample s = (ScheduledSample) sampleQueue.peek();
+            if (s.time > time) {
+                break;
+            }
+            sampleQueue.poll();
+            TimedElement e = s.element;
+            if (e.parent == this && s.time == e.nextSampleTime
+                    && e.sampleStamp != sampleCount) {
+                e.sampleStamp = sampleCount;
+                due.add(e);
+            }
+        }
+        TimedElement[] es =
+            (TimedElement[]) due.toArray(new TimedElement[due.size()]);
+        Arrays.sort(es, SAMPLE_ORDER);
+        return es;
+    }
+
+    /**
+     * Removes from the sample queue and returns, in document order, the
+     * children whose current interval should be updated in this sample.
+     * Children asking for a sample for another reason, such as an event
+     * caught during this sample, stay in the queue for the next one.
+     */
+    protected TimedElement[] getUpdatingChildren() {
+        List updating = new ArrayList();
+        List later = null;
+        while (!sampleQueue.isEmpty()) {
+            ScheduledSample s = (ScheduledSample) sampleQueue.peek();
+            if (s.time != Float.NEGATIVE_INFINITY) {
+                break;
+            }
+            sampleQueue.poll();
+            TimedElement e = s.element;
+            if (e.parent != this || e.nextSampleTime != s.time) {
+                continue;
+            }
+            if (e.shouldUpdateCurrentInterval) {
+                updating.add(e);
+            } else {
+                if (later == null) {
+                    later = new ArrayList();
+                }
+                later.add(s);
+            }
+        }
+        if (later != null) {
+            sampleQueue.addAll(later);
+        }
+        TimedElement[] es = (TimedElement[])
+            updating.toArray(new TimedElement[updating.size()]);
+        Arrays.sort(es, SAMPLE_ORDER);
+        return es;
+    }
+
+    /**
+     * Returns the earliest document time a child must be sampled at, or
+     * {@link Float#POSITIVE_INFINITY} if none will be active again unless
+     * its intervals change.
+     */
+    protected float getNextSampleTime() {
+        while (!sampleQueue.isEmpty()) {
+            ScheduledSample s = (ScheduledSample) sampleQueue.peek();
+            TimedElement e = s.element;
+            if (e.parent == this && s.time == e.nextSampleTime) {
+                return s.time;
+            }
+            sampleQueue.poll();
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Invoked by a child at the end of its sampling, to schedule its next
+     * sample.
+     * @param e the child
+     * @param time the time it was sampled at
+     * @param wait the value returned by its {@link TimedElement#sampleAt}
+     */
+    void elementSampled(TimedElement e, float time, float wait) {
+        float next;
+        if (e.shouldUpdateCurrentInterval || !e.handledEvents.isEmpty()) {
+            next = Float.NEGATIVE_INFINITY;
+        } else if (wait == Float.POSITIVE_INFINITY) {
+            next = Float.POSITIVE_INFINITY;
+        } else {
+            next = time + wait;
+        }
+        e.nextSampleTime = next;
+        if (next != Float.POSITIVE_INFINITY) {
+            sampleQueue.add(new ScheduledSample(next, e));
+        }
+    }
+
+    /**
+     * Invoked by a child whose intervals may change, so that it is sampled
+     * at the next sample.
+     */
+    void requestSample(TimedElement e) {
+        if (e.nextSampleTime != Float.NEGATIVE_INFINITY) {
+            e.nextSampleTime = Float.NEGATIVE_INFINITY;
+            sampleQueue.add(new ScheduledSample(Float.NEGATIVE_INFINITY, e));
+        }
+    }
+
+    /**
+     * Adds a {@link TimedElement} to this container.
+     */
+    public void addChild(TimedElement e) {
+        super.addChild(e);
+        e.sampleOrder = nextSampleOrder++;
+        e.nextSampleTime = Float.POSITIVE_INFINITY;
+        requestSample(e);
+    }
+
+    /**
+     * Resets this element.
+     */
+    protected void reset(boolean clearCurrentBegin) {
+        super.reset(clearCurrentBegin);
+        sampleAllChildren = true;
+    }
+
+    /**
+     * Sets whether seeks sample only the children that are due for a
+     * sample, rather than every child.
+     */
+    public static void setScheduledSampling(boolean b) {
+        scheduledSampling = b;
+    }
+
+    /**
+     * Returns whether seeks sample only the children that are due for a
+     * sample.
+     */
+    public static boolean isScheduledSampling() {
+        return scheduledSampling;
+    }
+
+    /**
+     * An entry of the sample queue.
+     */
+    protected static class ScheduledSample implements Comparable {
+
+        /**
+         * The document time the element must be sampled at.
+         */
+        public float time;
+
+        /**
+         * The element.
+         */
+        public TimedElement element;
+
+        public ScheduledSample(float time, TimedElement element) {
+            this.time = time;
+            this.element = element;
+        }
+
+        public int compareTo(Object o) {
+            float t = ((ScheduledSample) o).time;
+            return time < t ? -1 : (time == t ? 0 : 1);
+        }
+    }
+
     /**
      * Resets the entire timegraph.
      */
@@ -234,6 +234,24 @@ public abstract class TimedElement implements SMILConstants {
      */
     protected boolean hasPropagated;
 
+    /**
+     * The document time this element must next be sampled at, as known
+     * to the document root, or {@link Float#NEGATIVE_INFINITY} if it must
+     * be sampled at the next document sample.
+     */
+    protected float nextSampleTime = Float.NEGATIVE_INFINITY;
+
+    /**
+     * The rank of this element in the children of the document root, so
+     * that the elements due for a sample are sampled in document order.
+     */
+    protected int sampleOrder;
+
+    /**
+     * The number of the document sample that last selected this element.
+     */
+    protected int sampleStamp;
+
     /**
      * Creates a new TimedElement.
      */
@@ -286,6 +304,7 @@ public abstract class TimedElement implements SMILConstants {
         }
         instanceTimes.add(index, time);
         shouldUpdateCurrentInterval = true;
+        requestSample();
         float ret;
         if (root.isSampling() && !isSampling) {
             ret = sampleAt(root.getCurrentTime(), root.isHyperlinking());
@@ -330,6 +349,7 @@ public abstract class TimedElement implements SMILConstants {
             }
         }
         shouldUpdateCurrentInterval = true;
+        requestSample();
         float ret;
         if (root.isSampling() && !isSampling) {
             ret = sampleAt(root.getCurrentTime(), root.isHyperlinking());
@@ -351,6 +371,7 @@ public abstract class TimedElement implements SMILConstants {
         // Trace.enter(this, "instanceTimeChanged", new Object[] { time, new Boolean(isBegin) } ); try {
         hasPropagated = true;
         shouldUpdateCurrentInterval = true;
+        requestSample();
         float ret;
         if (root.isSampling() && !isSampling) {
             ret = sampleAt(root.getCurrentTime(), root.isHyperlinking());
@@ -818,17 +839,20 @@ public abstract class TimedElement implements SMILConstants {
         isSampling = false;
 
         lastSampleTime = time;
+        float ret = dependentMinTime;
         if (currentInterval != null) {
             float t = currentInterval.getBegin() - time;
             if (t <= 0) {
                 t = isConstantAnimation() || isFrozen ? currentInterval.getEnd() - time : 0;
             }
-            if (dependentMinTime < t) {
-                return dependentMinTime;
+            if (t < ret) {
+                ret = t;
             }
-            return t;
         }
-        return dependentMinTime;
+        if (root != null && parent == root) {
+            root.elementSampled(this, time, ret);
+        }
+        return ret;
         // } finally { Trace.exit(); }
     }
 
@@ -1350,6 +1374,10 @@ public abstract class TimedElement implements SMILConstants {
      * Returns the last sample time of this element, in local active time.
      */
     public float getLastSampleTime() {
+        if (root != null && parent == root && !isUnresolved(lastSampleTime)) {
+            // The root does not sample elements that have nothing to do.
+            return root.getCurrentTime();
+        }
         return lastSampleTime;
     }
 
@@ -1360,7 +1388,7 @@ public abstract class TimedElement implements SMILConstants {
     public float getCurrentBeginTime() {
         float begin;
         if (currentInterval == null
-                || (begin = currentInterval.getBegin()) < lastSampleTime) {
+                || (begin = currentInterval.getBegin()) < getLastSampleTime()) {
             return Float.NaN;
         }
         return begin;
@@ -1403,7 +1431,7 @@ public abstract class TimedElement implements SMILConstants {
      * exposing animation information from the document.
      */
     public TimingSpecifier[] getBeginTimingSpecifiers() {
-        return (TimingSpecifier[]) beginTimes.clone();
+        return beginTimes.clone();
     }
 
     /**
@@ -1413,7 +1441,7 @@ public abstract class TimedElement implements SMILConstants {
      * exposing animation information from the document.
      */
     public TimingSpecifier[] getEndTimingSpecifiers() {
-        return (TimingSpecifier[]) endTimes.clone();
+        return endTimes.clone();
     }
 
     /**
@@ -1441,9 +1469,20 @@ public abstract class TimedElement implements SMILConstants {
             handledEvents.put(e, ts);
         }
         ts.add(t);
+        requestSample();
         root.currentIntervalWillUpdate();
     }
 
+    /**
+     * Asks the document root to sample this element at its next sample,
+     * because its intervals may change.
+     */
+    protected void requestSample() {
+        if (root != null && parent == root) {
+            root.requestSample(this);
+        }
+    }
+
     /**
      * Fires a TimeEvent of the given type on this element.
      * @param eventType the type of TimeEvent ("beginEvent", "endEvent"
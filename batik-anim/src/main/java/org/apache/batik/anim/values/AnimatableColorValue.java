@@ -107,6 +107,27 @@ public class AnimatableColorValue extends AnimatableValue {
         return res;
     }
 
+    /**
+     * Returns the red component, between 0 and 1.
+     */
+    public float getRed() {
+        return red;
+    }
+
+    /**
+     * Returns the green component, between 0 and 1.
+     */
+    public float getGreen() {
+        return green;
+    }
+
+    /**
+     * Returns the blue component, between 0 and 1.
+     */
+    public float getBlue() {
+        return blue;
+    }
+
     /**
      * Returns whether two values of this type can have their distance
      * computed, as needed by paced animation.
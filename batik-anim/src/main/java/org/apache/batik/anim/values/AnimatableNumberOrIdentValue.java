@@ -92,6 +92,20 @@ public class AnimatableNumberOrIdentValue extends AnimatableNumberValue {
         return new AnimatableNumberOrIdentValue(target, 0f, numericIdent);
     }
 
+    /**
+     * Returns whether this value is an identifier rather than a number.
+     */
+    public boolean isIdent() {
+        return isIdent;
+    }
+
+    /**
+     * Returns the identifier, if this value is one.
+     */
+    public String getIdent() {
+        return ident;
+    }
+
     /**
      * Returns the CSS text representation of the value.
      */
@@ -77,9 +77,28 @@ public final class RenderingHintsKeyExt {
     public static final Object VALUE_AVOID_TILE_PAINTING_OFF = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_DEFAULT = new Object();
 
+    /**
+     * Hint that shapes may be drawn with simplified geometry.  The
+     * value is a Number giving the largest acceptable error, in
+     * device pixels; shapes smaller than that are not drawn at all.
+     * This is meant for thumbnails and other small renderings of
+     * detailed documents.
+     */
+    public static final RenderingHints.Key KEY_LEVEL_OF_DETAIL;
+
+    /**
+     * Hint that text may be drawn from cached glyph masks rather than
+     * from glyph outlines.  The value is a Number giving the largest
+     * font size, in device pixels, drawn that way.  Stroked text, text
+     * not filled with a solid color and rotated or skewed text are
+     * always drawn from outlines.
+     */
+    public static final RenderingHints.Key KEY_GLYPH_ATLAS;
+
     static {
         int base = 10100;
         RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null;
+        RenderingHints.Key lod=null, ga=null;
         while (true) {
             int val = base;
 
@@ -89,6 +108,8 @@ public final class RenderingHintsKeyExt {
                 bi    = new BufferedImageHintKey (val++);
                 cs    = new ColorSpaceHintKey    (val++);
                 atp   = new AvoidTilingHintKey   (val++);
+                lod   = new LevelOfDetailHintKey (val++);
+                ga    = new GlyphAtlasHintKey    (val++);
             } catch (Exception e) {
                 System.err.println
                     ("You have loaded the Batik jar files more than once\n" +
@@ -106,6 +127,8 @@ public final class RenderingHintsKeyExt {
         KEY_BUFFERED_IMAGE      = bi;
         KEY_COLORSPACE          = cs;
         KEY_AVOID_TILE_PAINTING = atp;
+        KEY_LEVEL_OF_DETAIL     = lod;
+        KEY_GLYPH_ATLAS         = ga;
     }
 
     /**
@@ -0,0 +1,308 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Rectangle;
+
+/**
+ * Accumulates the dirty rectangles of a frame, merging them as they
+ * are added.
+ *
+ * <p>Painting a rectangle is assumed to cost a fixed overhead, plus a
+ * cost per line, plus one per pixel.  Each added rectangle is merged
+ * with the accumulated rectangle whose union with it costs the least
+ * extra, if painting the union costs no more than painting both, and
+ * the merged rectangle is checked again against the others.  When
+ * there are more than a maximum number of rectangles, the pair whose
+ * union adds the least cost is merged.  Adding a rectangle thus takes
+ * time proportional to that maximum, rather than to the number of
+ * rectangles added, and nothing is allocated until the rectangles are
+ * read.</p>
+ *
+ * <p>The {@link #THROUGHPUT} policy has a high overhead per rectangle
+ * and keeps few of them, which favours painting large areas in few
+ * calls.  The {@link #LATENCY} policy has a low overhead and keeps
+ * more rectangles, which favours painting as few pixels as possible,
+ * keeping each frame short when many small, scattered elements
+ * change.</p>
+ *
+ * @version $Id$
+ */
+public class DirtyRegionAccumulator {
+
+    /**
+     * Favours few, large rectangles.
+     */
+    public static final int THROUGHPUT = 0;
+
+    /**
+     * Favours painting few pixels.
+     */
+    public static final int LATENCY = 1;
+
+    /**
+     * The fixed cost of painting a rectangle.
+     */
+    protected int overhead;
+
+    /**
+     * The cost of painting a line of a rectangle.
+     */
+    protected int lineOverhead;
+
+    /**
+     * The maximum number of rectangles kept.
+     */
+    protected int maxRects;
+
+    /**
+     * The left, top, right and bottom edges of the rectangles, four
+     * entries per rectangle.
+     */
+    protected int[] edges;
+
+    /**
+     * The number of rectangles.
+     */
+    protected int size;
+
+    /**
+     * Creates a new accumulator for the given policy.
+     * @param policy {@link #THROUGHPUT} or {@link #LATENCY}.
+     */
+    public DirtyRegionAccumulator(int policy) {
+        switch (policy) {
+        case THROUGHPUT:
+            init(10000, 10, 8);
+            break;
+        case LATENCY:
+            init(1000, 10, 32);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+    }
+
+    /**
+     * Creates a new accumulator.
+     * @param overhead The fixed cost of painting a rectangle, in pixels.
+     * @param lineOverhead The cost of painting a line, in pixels.
+     * @param maxRects The maximum number of rectangles kept.
+     */
+    public DirtyRegionAccumulator(int overhead, int lineOverhead,
+                                  int maxRects) {
+        init(overhead, lineOverhead, maxRects);
+    }
+
+    private void init(int overhead, int lineOverhead, int maxRects) {
+        if (maxRects < 1) {
+            throw new IllegalArgumentException
+                ("maxRects must be at least 1: " + maxRects);
+        }
+        this.overhead = overhead;
+        this.lineOverhead = lineOverhead;
+        this.maxRects = maxRects;
+        edges = new int[(maxRects + 1) * 4];
+    }
+
+    /**
+     * Removes all the rectangles.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of rectangles.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of rectangles kept.
+     */
+    public int getMaxRects() {
+        return maxRects;
+    }
+
+    /**
+     * Returns the cost of painting a rectangle of the given size.
+     */
+    protected long cost(long w, long h) {
+        return overhead + h * lineOverhead + w * h;
+    }
+
+    /**
+     * Adds a rectangle.
+     */
+    public void add(Rectangle r) {
+        add(r.x, r.y, r.width, r.height);
+    }
+
+    /**
+     * Adds a rectangle.  Empty rectangles are ignored.
+     */
+    public void add(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        int x0 = x, y0 = y, x1 = x + w, y1 = y + h;
+        for (;;) {
+            // Look for the cheapest merge.
+            long rc = cost(x1 - x0, y1 - y0);
+            long best = 1;
+            int bi = -1;
+            for (int i = 0, k = 0; i < size; i++, k += 4) {
+                long d = cost(Math.max(x1, edges[k + 2])
+                              - Math.min(x0, edges[k]),
+                              Math.max(y1, edges[k + 3])
+                              - Math.min(y0, edges[k + 1]))
+                    - rc
+                    - cost(edges[k + 2] - edges[k],
+                           edges[k + 3] - edges[k + 1]);
+                if (d < best) {
+                    best = d;
+                    bi = i;
+                }
+            }
+            if (bi >= 0) {
+                // Merge, and check the union against the others.
+                int k = bi * 4;
+                x0 = Math.min(x0, edges[k]);
+                y0 = Math.min(y0, edges[k + 1]);
+                x1 = Math.max(x1, edges[k + 2]);
+                y1 = Math.max(y1, edges[k + 3]);
+                remove(bi);
+                continue;
+            }
+            int k = size * 4;
+            edges[k]     = x0;
+            edges[k + 1] = y0;
+            edges[k + 2] = x1;
+            edges[k + 3] = y1;
+            size++;
+            if (size <= maxRects) {
+                return;
+            }
+            // Too many rectangles: merge the cheapest pair and add
+            // the union again.
+            int bj = -1;
+            long bestPair = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int ki = i * 4;
+                long ci = cost(edges[ki + 2] - edges[ki],
+                               edges[ki + 3] - edges[ki + 1]);
+                for (int j = i + 1; j < size; j++) {
+                    int kj = j * 4;
+                    long d = cost(Math.max(edges[ki + 2], edges[kj + 2])
+                                  - Math.min(edges[ki], edges[kj]),
+                                  Math.max(edges[ki + 3], edges[kj + 3])
+                                  - Math.min(edges[ki + 1], edges[kj + 1]))
+                        - ci
+                        - cost(edges[kj + 2] - edges[kj],
+                               edges[kj + 3] - edges[kj + 1]);
+                    if (d < bestPair) {
+                        bestPair = d;
+                        bi = i;
+                        bj = j;
+                    }
+                }
+            }
+            int ki = bi * 4;
+            int kj = bj * 4;
+            x0 = Math.min(edges[ki], edges[kj]);
+            y0 = Math.min(edges[ki + 1], edges[kj + 1]);
+            x1 = Math.max(edges[ki + 2], edges[kj + 2]);
+            y1 = Math.max(edges[ki + 3], edges[kj + 3]);
+            remove(bj);
+            remove(bi);
+        }
+    }
+
+    /**
+     * Removes the rectangle at the given index, replacing it with the
+     * last one.
+     */
+    protected void remove(int i) {
+        size--;
+        if (i != size) {
+            System.arraycopy(edges, size * 4, edges, i * 4, 4);
+        }
+    }
+
+    /**
+     * Returns the total number of pixels covered by the rectangles,
+     * counting overlaps once per rectangle.
+     */
+    public long getArea() {
+        long area = 0;
+        for (int k = 0; k < size * 4; k += 4) {
+            area += (long) (edges[k + 2] - edges[k])
+                * (edges[k + 3] - edges[k + 1]);
+        }
+        return area;
+    }
+
+    /**
+     * Returns the bounds of the rectangles, or null if there are none.
+     */
+    public Rectangle getBounds() {
+        if (size == 0) {
+            return null;
+        }
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (int k = 0; k < size * 4; k += 4) {
+            x0 = Math.min(x0, edges[k]);
+            y0 = Math.min(y0, edges[k + 1]);
+            x1 = Math.max(x1, edges[k + 2]);
+            y1 = Math.max(y1, edges[k + 3]);
+        }
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Returns the rectangles to paint.  If painting their bounds costs
+     * no more than painting them all, only the bounds are returned.
+     */
+    public Rectangle[] getRectangles() {
+        if (size == 0) {
+            return new Rectangle[0];
+        }
+        if (size > 1) {
+            long total = 0;
+            for (int k = 0; k < size * 4; k += 4) {
+                total += cost(edges[k + 2] - edges[k],
+                              edges[k + 3] - edges[k + 1]);
+            }
+            Rectangle b = getBounds();
+            if (cost(b.width, b.height) <= total) {
+                return new Rectangle[] { b };
+            }
+        }
+        Rectangle[] ret = new Rectangle[size];
+        for (int i = 0, k = 0; i < size; i++, k += 4) {
+            ret[i] = new Rectangle(edges[k], edges[k + 1],
+                                   edges[k + 2] - edges[k],
+                                   edges[k + 3] - edges[k + 1]);
+        }
+        return ret;
+    }
+}
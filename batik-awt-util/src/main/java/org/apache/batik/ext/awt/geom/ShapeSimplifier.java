@@ -0,0 +1,252 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+
+/**
+ * Simplifies the outline of a shape to within a given distance, for
+ * drawing it at a small size.
+ *
+ * <p>Curves are flattened, then every subpath is reduced with the
+ * Douglas-Peucker algorithm.  Subpaths whose bounds are smaller than
+ * the tolerance in both directions are dropped altogether (this can
+ * be turned off for stroked outlines).  Half of
+ * the tolerance is given to the flattening and half to the
+ * reduction, so no point of the result is further than
+ * <code>tolerance</code> from the original outline.</p>
+ *
+ * @version $Id$
+ */
+public final class ShapeSimplifier {
+
+    private ShapeSimplifier() {
+    }
+
+    /**
+     * Returns a polygonal approximation of <code>s</code> within
+     * <code>tolerance</code>, in the coordinate system of
+     * <code>s</code>.  The winding rule of <code>s</code> is kept.
+     */
+    public static GeneralPath simplify(Shape s, double tolerance) {
+        return simplify(s, tolerance, tolerance);
+    }
+
+    /**
+     * Returns a polygonal approximation of <code>s</code> within
+     * <code>tolerance</code>, leaving out the subpaths smaller than
+     * <code>minSize</code> in both directions.  Stroked outlines
+     * typically want a <code>minSize</code> of zero since even a
+     * tiny subpath is drawn with the full stroke width.
+     */
+    public static GeneralPath simplify(Shape s, double tolerance,
+                                       double minSize) {
+        PathIterator pi = s.getPathIterator(null, tolerance / 2);
+        GeneralPath gp = new GeneralPath(pi.getWindingRule());
+        Subpath sp = new Subpath(tolerance, minSize);
+        double[] seg = new double[6];
+        // The start of the current subpath, where a segment following
+        // a close without a move starts from.
+        double startX = 0, startY = 0;
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(seg)) {
+            case PathIterator.SEG_MOVETO:
+                sp.flush(gp, false);
+                sp.add(seg[0], seg[1]);
+                startX = seg[0];
+                startY = seg[1];
+                break;
+            case PathIterator.SEG_LINETO:
+                if (sp.n == 0) {
+                    sp.add(startX, startY);
+                }
+                sp.add(seg[0], seg[1]);
+                break;
+            case PathIterator.SEG_CLOSE:
+                sp.flush(gp, true);
+                break;
+            default:
+                // The iterator is flattened.
+                break;
+            }
+            pi.next();
+        }
+        sp.flush(gp, false);
+        return gp;
+    }
+
+    /**
+     * Returns the number of segments of <code>s</code> once flattened
+     * to within <code>flatness</code>.
+     */
+    public static int countSegments(Shape s, double flatness) {
+        int n = 0;
+        for (PathIterator pi = s.getPathIterator(null, flatness);
+             !pi.isDone(); pi.next()) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * The points of the subpath being read.
+     */
+    static final class Subpath {
+        final double minSize;
+        final double tolerance2;
+        double[] pts = new double[64];
+        int n;
+        boolean[] keep = new boolean[32];
+        int[] stack = new int[64];
+
+        Subpath(double tolerance, double minSize) {
+            this.minSize = minSize;
+            double t = tolerance / 2;
+            this.tolerance2 = t * t;
+        }
+
+        void add(double x, double y) {
+            if (2*n + 2 > pts.length) {
+                double[] tmp = new double[pts.length * 2];
+                System.arraycopy(pts, 0, tmp, 0, 2*n);
+                pts = tmp;
+            }
+            pts[2*n]   = x;
+            pts[2*n+1] = y;
+            n++;
+        }
+
+        /**
+         * Appends the simplified subpath to <code>gp</code> and
+         * starts a new one.
+         */
+        void flush(GeneralPath gp, boolean closed) {
+            int count = n;
+            n = 0;
+            if (count == 0) {
+                return;
+            }
+
+            double minX = pts[0], maxX = minX;
+            double minY = pts[1], maxY = minY;
+            for (int i = 1; i < count; i++) {
+                double x = pts[2*i], y = pts[2*i+1];
+                if (x < minX) minX = x; else if (x > maxX) maxX = x;
+                if (y < minY) minY = y; else if (y > maxY) maxY = y;
+            }
+            if ((maxX - minX < minSize) && (maxY - minY < minSize)) {
+                // Sub-pixel feature.
+                return;
+            }
+
+            if (keep.length < count) {
+                keep = new boolean[count * 2];
+            }
+            for (int i = 0; i < count; i++) {
+                keep[i] = false;
+            }
+            keep[0] = true;
+            keep[count - 1] = true;
+            if (closed) {
+                // The subpath is a ring: split it at the point
+                // furthest from its start.
+                int far = 0;
+                double farD = -1;
+                for (int i = 1; i < count; i++) {
+                    double dx = pts[2*i]   - pts[0];
+                    double dy = pts[2*i+1] - pts[1];
+                    double d = dx*dx + dy*dy;
+                    if (d > farD) {
+                        farD = d;
+                        far = i;
+                    }
+                }
+                keep[far] = true;
+                reduce(0, far);
+                reduce(far, count - 1);
+            } else {
+                reduce(0, count - 1);
+            }
+
+            gp.moveTo((float)pts[0], (float)pts[1]);
+            for (int i = 1; i < count; i++) {
+                if (keep[i]) {
+                    gp.lineTo((float)pts[2*i], (float)pts[2*i+1]);
+                }
+            }
+            if (closed) {
+                gp.closePath();
+            }
+        }
+
+        /**
+         * Douglas-Peucker reduction of the points in [first, last],
+         * with an explicit stack since paths can be long.
+         */
+        void reduce(int first, int last) {
+            int sp = 0;
+            stack = push(stack, sp, first, last);
+            sp += 2;
+            while (sp > 0) {
+                last  = stack[--sp];
+                first = stack[--sp];
+                if (last - first < 2) {
+                    continue;
+                }
+                double ax = pts[2*first], ay = pts[2*first+1];
+                double dx = pts[2*last] - ax, dy = pts[2*last+1] - ay;
+                double len2 = dx*dx + dy*dy;
+                int worst = -1;
+                double worstD = tolerance2;
+                for (int i = first + 1; i < last; i++) {
+                    double px = pts[2*i] - ax, py = pts[2*i+1] - ay;
+                    double t = (len2 == 0) ? 0 : (px*dx + py*dy) / len2;
+                    if (t < 0) t = 0; else if (t > 1) t = 1;
+                    px -= t*dx;
+                    py -= t*dy;
+                    double d = px*px + py*py;
+                    if (d > worstD) {
+                        worstD = d;
+                        worst = i;
+                    }
+                }
+                if (worst != -1) {
+                    keep[worst] = true;
+                    stack = push(stack, sp, first, worst);
+                    sp += 2;
+                    stack = push(stack, sp, worst, last);
+                    sp += 2;
+                }
+            }
+        }
+
+        static int[] push(int[] stack, int sp, int a, int b) {
+            if (sp + 2 > stack.length) {
+                int[] tmp = new int[stack.length * 2];
+                System.arraycopy(stack, 0, tmp, 0, sp);
+                stack = tmp;
+            }
+            stack[sp]     = a;
+            stack[sp + 1] = b;
+            return stack;
+        }
+    }
+}
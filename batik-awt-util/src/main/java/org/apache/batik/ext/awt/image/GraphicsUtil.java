@@ -47,6 +47,8 @@ import java.awt.image.renderable.RenderContext;
 import java.awt.image.renderable.RenderableImage;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.image.renderable.PaintRable;
@@ -683,6 +685,17 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB))
             return src;
 
+        // Undo a conversion of linear sRGB data rather than doing
+        // the reverse conversion on top of it.
+        if (src instanceof Any2sRGBRed) {
+            CachableRed s = (CachableRed)src.getSources().get(0);
+            if (s.getColorModel().getColorSpace() ==
+                ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB)) {
+                elidedConversions.addAndGet(2);
+                return s;
+            }
+        }
+
         return new Any2LsRGBRed(src);
     }
 
@@ -702,9 +715,69 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_sRGB))
             return src;
 
+        // Undo a conversion of sRGB data rather than doing the
+        // reverse conversion on top of it.
+        if (src instanceof Any2LsRGBRed) {
+            CachableRed s = (CachableRed)src.getSources().get(0);
+            if (s.getColorModel().getColorSpace() ==
+                ColorSpace.getInstance(ColorSpace.CS_sRGB)) {
+                elidedConversions.addAndGet(2);
+                return s;
+            }
+        }
+
         return new Any2sRGBRed(src);
     }
 
+    /**
+     * The number of colorspace conversions avoided since the last
+     * reset.
+     */
+    private static final AtomicLong elidedConversions = new AtomicLong();
+
+    /**
+     * Returns the number of colorspace conversions avoided since the
+     * last call to <code>resetElidedConversionCount</code>: a
+     * conversion and its inverse cancelled by
+     * <code>convertToLsRGB</code> or <code>convertTosRGB</code> count
+     * as two, and an image used as is by a colorspace independent
+     * operation counts as one.
+     */
+    public static long getElidedConversionCount() {
+        return elidedConversions.get();
+    }
+
+    /**
+     * Resets the number of avoided colorspace conversions.
+     */
+    public static void resetElidedConversionCount() {
+        elidedConversions.set(0);
+    }
+
+    /**
+     * Records that an operation used an image as is rather than
+     * converting it to the colorspace it works in.
+     */
+    public static void conversionElided() {
+        elidedConversions.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of colorspace conversions in the graph of
+     * rendered images ending at <code>ri</code>.
+     */
+    public static int getConversionCount(RenderedImage ri) {
+        int n = 0;
+        if ((ri instanceof Any2LsRGBRed) || (ri instanceof Any2sRGBRed))
+            n++;
+        Vector sources = ri.getSources();
+        if (sources != null) {
+            for (int i = 0; i < sources.size(); i++)
+                n += getConversionCount((RenderedImage)sources.get(i));
+        }
+        return n;
+    }
+
     /**
      * Convertes any RenderedImage to a CacheableRed.  <p>
      * If <code>ri</code> is already a CacheableRed it casts it down and
@@ -118,7 +118,29 @@ public abstract class AbstractColorInterpolationRable extends AbstractRable {
             return ColorSpace.getInstance(ColorSpace.CS_sRGB);
     }
 
+    /**
+     * Returns true if the result of this operation does not depend on
+     * the colorspace it is performed in, in which case sources that
+     * are already in linear or gamma corrected sRGB are used as is
+     * rather than converted.  The result is then in the colorspace of
+     * the source.  Operations that only move or copy pixels, or that
+     * only modify the alpha channel, may override this to return
+     * true.
+     */
+    public boolean isColorSpaceIndependent() {
+        return false;
+    }
+
     protected CachableRed convertSourceCS(CachableRed cr) {
+        if (isColorSpaceIndependent()) {
+            ColorSpace cs = cr.getColorModel().getColorSpace();
+            if ((cs == ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB)) ||
+                (cs == ColorSpace.getInstance(ColorSpace.CS_sRGB))) {
+                if (cs != getOperationColorSpace())
+                    GraphicsUtil.conversionElided();
+                return cr;
+            }
+        }
         if (csLinear)
             return GraphicsUtil.convertToLsRGB(cr);
         else
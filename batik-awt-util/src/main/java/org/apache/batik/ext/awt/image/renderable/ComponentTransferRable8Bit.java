@@ -150,6 +150,23 @@ public class ComponentTransferRable8Bit
         txfFunc[BLUE] = null;
     }
 
+    /**
+     * Returns true if the color channels are left untouched.  The
+     * colorspace conversions act on unpremultiplied colors only, so
+     * an operation that only modifies the alpha channel gives the
+     * same result in linear and gamma corrected sRGB.
+     */
+    public boolean isColorSpaceIndependent() {
+        return isIdentity(functions[RED])
+            && isIdentity(functions[GREEN])
+            && isIdentity(functions[BLUE]);
+    }
+
+    private static boolean isIdentity(ComponentTransferFunction function) {
+        return (function == null)
+            || (function.getType() == ComponentTransferFunction.IDENTITY);
+    }
+
     public RenderedImage createRendering(RenderContext rc){
         //
         // Get source's rendered image
@@ -159,6 +176,9 @@ public class ComponentTransferRable8Bit
         if(srcRI == null)
             return null;
 
+        if (isColorSpaceIndependent() && isIdentity(functions[ALPHA]))
+            return convertSourceCS(srcRI);
+
         return new ComponentTransferRed(convertSourceCS(srcRI),
                                         getTransferFunctions(),
                                         rc.getRenderingHints());
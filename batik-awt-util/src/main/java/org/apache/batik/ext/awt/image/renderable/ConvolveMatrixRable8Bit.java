@@ -44,14 +44,25 @@ import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.rendered.AffineRed;
 import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.ConvolveMatrixOp;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * Convolves an image with a convolution matrix.
  *
+ * INT_PACK sources are convolved by a {@link ConvolveMatrixOp}, which
+ * handles every edge mode itself and splits the work over several
+ * threads, when enough threads are available or when
+ * <code>java.awt.image.ConvolveOp</code> can't do the job: when
+ * wrapping, preserving alpha or working in linear RGB.  Other sources
+ * go through ConvolveOp, which is faster on a single thread.  When wrapping, the whole source
+ * is rendered so that the result does not depend on the area of
+ * interest.
+ *
  * Known limitations:
  *   Does not support bias other than zero - pending 16bit pathway
- *   Does not support edgeMode="wrap" - pending Tile code.
+ *   Does not support edgeMode="wrap" for non INT_PACK sources.
  *
  * @author <a href="mailto:Thomas.DeWeeese@Kodak.com">Thomas DeWeese</a>
  * @version $Id$
@@ -60,6 +71,12 @@ public class ConvolveMatrixRable8Bit
     extends    AbstractColorInterpolationRable
     implements ConvolveMatrixRable {
 
+    /**
+     * The number of WorkerPool threads from which ConvolveMatrixOp
+     * is used even when ConvolveOp could do the job.
+     */
+    static final int MIN_PARALLELISM = 4;
+
     Kernel kernel;
     Point  target;
     float bias;
@@ -336,8 +353,14 @@ public class ConvolveMatrixRable8Bit
                                                     shx/scaleY, sy/scaleY,
                                                     tx, ty);
 
+        // Wrapping takes pixels from the opposite edge of the source,
+        // so it needs all of it.
+        Rectangle2D srcR = r;
+        if (edgeMode == PadMode.WRAP)
+            srcR = getSource().getBounds2D();
+
         RenderedImage ri;
-        ri = getSource().createRendering(new RenderContext(srcAt, r, rh));
+        ri = getSource().createRendering(new RenderContext(srcAt, srcR, rh));
         if (ri == null)
             return null;
 
@@ -349,6 +372,27 @@ public class ConvolveMatrixRable8Bit
 
         Shape devShape = srcAt.createTransformedShape(aoi);
         Rectangle2D devRect = devShape.getBounds2D();
+
+        // ConvolveOp is native and so faster on a single thread, but
+        // it can't wrap, and its native code rejects the linear RGB
+        // and unpremultiplied images it would be given below.
+        if (ConvolveMatrixOp.isCompatible(cr.getSampleModel()) &&
+            ((edgeMode == PadMode.WRAP) || preserveAlpha ||
+             !cr.getColorModel().getColorSpace().isCS_sRGB() ||
+             (WorkerPool.getParallelism() >= MIN_PARALLELISM))) {
+            if (bias != 0.0)
+                throw new IllegalArgumentException
+                    ("Only bias equal to zero is supported in ConvolveMatrix.");
+
+            cr = convolve(cr, devRect.getBounds());
+
+            // If we need to scale/rotate/translate the result do so now...
+            if (!resAt.isIdentity())
+                cr = new AffineRed(cr, resAt, null);
+
+            return cr;
+        }
+
         r = devRect;
         r = new Rectangle2D.Double(Math.floor(r.getX()-kx),
                                    Math.floor(r.getY()-ky),
@@ -498,4 +542,27 @@ public class ConvolveMatrixRable8Bit
         return cr;
     }
 
+    /**
+     * Convolves the INT_PACK image <code>cr</code>, producing the
+     * region <code>dr</code> of the result.
+     */
+    protected CachableRed convolve(CachableRed cr, Rectangle dr) {
+        ColorModel cm = cr.getColorModel();
+        WritableRaster src = GraphicsUtil.makeRasterWritable(cr.getData());
+
+        // Alpha is convolved along with premultiplied colors, or kept
+        // as is next to unpremultiplied colors.
+        cm = GraphicsUtil.coerceData(src, cm, !preserveAlpha);
+
+        ConvolveMatrixOp op = new ConvolveMatrixOp
+            (kernel, target.x, target.y, edgeMode, preserveAlpha);
+        WritableRaster dst
+            = cm.createCompatibleWritableRaster(dr.width, dr.height);
+        op.filter(src, dst.createWritableTranslatedChild(dr.x, dr.y));
+
+        BufferedImage bi = new BufferedImage
+            (cm, dst, cm.isAlphaPremultiplied(), null);
+        return new BufferedImageCachableRed(bi, dr.x, dr.y);
+    }
+
 }
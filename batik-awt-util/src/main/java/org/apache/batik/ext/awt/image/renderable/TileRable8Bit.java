@@ -147,6 +147,14 @@ public class TileRable8Bit
         return (Rectangle2D)tiledRegion.clone();
     }
 
+    /**
+     * Tiling only copies pixels, so the tile is used in whatever
+     * colorspace it is rendered in.
+     */
+    public boolean isColorSpaceIndependent() {
+        return true;
+    }
+
     public RenderedImage createRendering(RenderContext rc){
         // Just copy over the rendering hints.
         RenderingHints rh = rc.getRenderingHints();
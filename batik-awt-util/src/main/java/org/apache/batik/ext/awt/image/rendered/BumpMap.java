@@ -78,20 +78,44 @@ public final class BumpMap {
         (final int x, final int y,
          final int w, final int h)
     {
-        final double[][][] N = new double[h][w][4];
+        return getNormalArray(getTextureData(x, y, w, h), x, y, w, h);
+    }
 
+    /**
+     * Returns the part of the texture needed to compute the normals
+     * of the given region, or null if the region does not touch the
+     * texture.
+     */
+    public Raster getTextureData(int x, int y, int w, int h) {
         Rectangle srcRect = new Rectangle(x-1, y-1, w+2, h+2);
         Rectangle srcBound = new Rectangle
             (texture.getMinX(), texture.getMinY(),
              texture.getWidth(), texture.getHeight());
 
         if ( ! srcRect.intersects(srcBound) )
-            return N;
+            return null;
+
+        return texture.getData(srcRect.intersection(srcBound));
+    }
 
-        srcRect = srcRect.intersection(srcBound);
-        final Raster r = texture.getData(srcRect);
+    /**
+     * Computes the normals of the given region from <code>r</code>,
+     * which must have been returned by {@link #getTextureData} for
+     * this region or a region containing it.  This lets several
+     * threads compute the normals of parts of a region while the
+     * texture is read only once.
+     */
+    public double[][][] getNormalArray
+        (final Raster r,
+         final int x, final int y,
+         final int w, final int h)
+    {
+        final double[][][] N = new double[h][w][4];
+
+        if (r == null)
+            return N;
 
-        srcRect = r.getBounds();
+        Rectangle srcRect = r.getBounds();
 
         // System.out.println("SrcRect: " + srcRect);
         // System.out.println("rect: [" +
@@ -0,0 +1,287 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Convolution of INT_PACK ARGB rasters, following the definition of
+ * the SVG feConvolveMatrix filter primitive.
+ *
+ * <p>Unlike <code>java.awt.image.ConvolveOp</code>, the destination
+ * can cover any region: pixels outside of the source are obtained
+ * according to the edge mode (including wrapping), so the source
+ * needs neither padding nor copying.  The kernel is applied exactly
+ * like ConvolveOp applies it (that is, rotated by 180 degrees), with
+ * the given target pixel as origin.</p>
+ *
+ * <p>The source is expected to be premultiplied, unless alpha is
+ * preserved in which case it is expected to be unpremultiplied and
+ * only the color channels are convolved.  When the kernel has
+ * negative values, premultiplied color values are clamped to alpha.
+ * Rows of the destination are split in bands over the
+ * {@link WorkerPool}.</p>
+ *
+ * @version $Id$
+ */
+public class ConvolveMatrixOp {
+
+    /**
+     * Destinations with fewer pixels than this are never split in
+     * bands.
+     */
+    static final int PARALLEL_THRESHOLD = 64*64;
+
+    /**
+     * The minimum number of rows handed to a worker.
+     */
+    static final int MIN_BAND = 8;
+
+    protected final int kw;
+    protected final int kh;
+    protected final int targetX;
+    protected final int targetY;
+
+    /**
+     * The kernel weights in source order: <code>weights[j*kw+i]</code>
+     * applies to the source pixel at (i, j) from the top left of the
+     * kernel window.
+     */
+    protected final float[] weights;
+
+    protected final PadMode edgeMode;
+    protected final boolean preserveAlpha;
+    protected final boolean clampToAlpha;
+
+    /**
+     * @param kernel the convolution kernel.
+     * @param targetX the column of the kernel aligned with the
+     *        destination pixel.
+     * @param targetY the row of the kernel aligned with the
+     *        destination pixel.
+     * @param edgeMode how pixels outside of the source are obtained
+     *        (null means transparent black).
+     * @param preserveAlpha if true only the color channels are
+     *        convolved and alpha is copied from the source.
+     */
+    public ConvolveMatrixOp(Kernel kernel, int targetX, int targetY,
+                            PadMode edgeMode, boolean preserveAlpha) {
+        this.kw = kernel.getWidth();
+        this.kh = kernel.getHeight();
+        this.targetX = targetX;
+        this.targetY = targetY;
+        this.edgeMode = (edgeMode == null) ? PadMode.ZERO_PAD : edgeMode;
+        this.preserveAlpha = preserveAlpha;
+
+        float[] k = kernel.getKernelData(null);
+        weights = new float[k.length];
+        boolean neg = false;
+        for (int i = 0; i < k.length; i++) {
+            weights[i] = k[k.length - 1 - i];
+            if (k[i] < 0) {
+                neg = true;
+            }
+        }
+        clampToAlpha = neg && !preserveAlpha;
+    }
+
+    /**
+     * Returns true if rasters with the given SampleModel can be
+     * filtered.
+     */
+    public static boolean isCompatible(SampleModel sm) {
+        return Any2sRGBRed.is_INT_PACK_COMP(sm) && (sm.getNumBands() == 4);
+    }
+
+    /**
+     * Convolves <code>src</code> into <code>dest</code>.  Both
+     * rasters use the same coordinate system; the destination
+     * may be larger than the source.  They must not share data.
+     */
+    public void filter(Raster src, WritableRaster dest) {
+        final Rectangle sr = src.getBounds();
+        final Rectangle dr = dest.getBounds();
+
+        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
+        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
+
+        SinglePixelPackedSampleModel sppsm;
+        sppsm = (SinglePixelPackedSampleModel)src.getSampleModel();
+        final int srcOff = srcDB.getOffset() +
+            sppsm.getOffset(sr.x - src.getSampleModelTranslateX(),
+                            sr.y - src.getSampleModelTranslateY());
+        final int srcScan = sppsm.getScanlineStride();
+
+        sppsm = (SinglePixelPackedSampleModel)dest.getSampleModel();
+        final int dstOff = dstDB.getOffset() +
+            sppsm.getOffset(dr.x - dest.getSampleModelTranslateX(),
+                            dr.y - dest.getSampleModelTranslateY());
+        final int dstScan = sppsm.getScanlineStride();
+
+        final int[] srcPixels = srcDB.getBankData()[0];
+        final int[] dstPixels = dstDB.getBankData()[0];
+
+        int minBand = (dr.width*dr.height < PARALLEL_THRESHOLD)
+            ? Integer.MAX_VALUE : MIN_BAND;
+
+        WorkerPool.runBands(dr.height, minBand, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    int[] window = new int[kw*kh];
+                    for (int y = start; y < end; y++) {
+                        filterRow(srcPixels, srcOff, srcScan, sr,
+                                  dstPixels, dstOff + y*dstScan,
+                                  dr.x, dr.y + y, dr.width, window);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Computes <code>w</code> destination pixels of row
+     * <code>y</code>, starting at column <code>x0</code>.
+     */
+    protected void filterRow(int[] src, int srcOff, int srcScan,
+                             Rectangle sr, int[] dst, int dp,
+                             int x0, int y, int w, int[] window) {
+        // Source rectangle covered by the kernel for the first pixel.
+        int sy = y - targetY;
+        boolean rowsInside = (sy >= sr.y) && (sy + kh <= sr.y + sr.height);
+        int sxMin = sr.x, sxMax = sr.x + sr.width - kw;
+
+        for (int i = 0; i < w; i++, dp++) {
+            int sx = x0 + i - targetX;
+            int[] pix;
+            int base, scan;
+            if (rowsInside && (sx >= sxMin) && (sx <= sxMax)) {
+                // The whole window is in the source.
+                pix  = src;
+                base = srcOff + (sy - sr.y)*srcScan + (sx - sr.x);
+                scan = srcScan;
+            } else {
+                if (!fillWindow(src, srcOff, srcScan, sr, sx, sy, window)) {
+                    dst[dp] = 0;
+                    continue;
+                }
+                pix  = window;
+                base = 0;
+                scan = kw;
+            }
+
+            float a = 0, r = 0, g = 0, b = 0;
+            int k = 0;
+            for (int n = 0; n < kh; n++) {
+                int p = base + n*scan;
+                for (int m = 0; m < kw; m++) {
+                    int px = pix[p + m];
+                    float wt = weights[k++];
+                    a += wt * (px >>> 24);
+                    r += wt * ((px >> 16) & 0xff);
+                    g += wt * ((px >>  8) & 0xff);
+                    b += wt * ( px        & 0xff);
+                }
+            }
+
+            int ia;
+            if (preserveAlpha) {
+                int cx = x0 + i, cy = y;
+                ia = 0;
+                if (sr.contains(cx, cy)) {
+                    ia = src[srcOff + (cy - sr.y)*srcScan + (cx - sr.x)] >>> 24;
+                }
+            } else {
+                ia = clamp(a);
+            }
+            int ir = clamp(r);
+            int ig = clamp(g);
+            int ib = clamp(b);
+            if (clampToAlpha) {
+                if (ir > ia) ir = ia;
+                if (ig > ia) ig = ia;
+                if (ib > ia) ib = ia;
+            }
+            dst[dp] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+        }
+    }
+
+    /**
+     * Copies the source pixels under the kernel window whose top left
+     * corner is at (sx, sy) in <code>window</code>, applying the edge
+     * mode.  Returns false if the window is entirely transparent
+     * black.
+     */
+    protected boolean fillWindow(int[] src, int srcOff, int srcScan,
+                                 Rectangle sr, int sx, int sy,
+                                 int[] window) {
+        boolean any = false;
+        int k = 0;
+        for (int n = 0; n < kh; n++) {
+            int yy = sy + n;
+            for (int m = 0; m < kw; m++) {
+                int xx = sx + m;
+                int px = 0;
+                int ix = edge(xx, sr.x, sr.width);
+                int iy = edge(yy, sr.y, sr.height);
+                if ((ix >= 0) && (iy >= 0)) {
+                    px = src[srcOff + iy*srcScan + ix];
+                    any |= (px != 0);
+                }
+                window[k++] = px;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Maps the coordinate <code>v</code> to an offset in
+     * [0, len) from <code>min</code> according to the edge mode, or
+     * to -1 for a transparent black pixel.
+     */
+    protected int edge(int v, int min, int len) {
+        int o = v - min;
+        if ((o >= 0) && (o < len)) {
+            return o;
+        }
+        if (len == 0) {
+            return -1;
+        }
+        switch (edgeMode.getMode()) {
+        case PadMode.MODE_REPLICATE:
+            return (o < 0) ? 0 : len - 1;
+        case PadMode.MODE_WRAP:
+            o %= len;
+            return (o < 0) ? o + len : o;
+        default:
+            return -1;
+        }
+    }
+
+    private static int clamp(float v) {
+        int i = (int)(v + 0.5f);
+        return (i < 0) ? 0 : ((i > 255) ? 255 : i);
+    }
+}
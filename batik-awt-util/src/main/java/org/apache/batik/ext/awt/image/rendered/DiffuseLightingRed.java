@@ -21,12 +21,14 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.Light;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * 
@@ -34,6 +36,16 @@ import org.apache.batik.ext.awt.image.Light;
  * @version $Id$
  */
 public class DiffuseLightingRed extends AbstractRed{
+    /**
+     * Regions with fewer pixels than this are lit on one thread.
+     */
+    static final int PARALLEL_THRESHOLD = 64*64;
+
+    /**
+     * The minimum number of rows lit by a worker.
+     */
+    static final int MIN_BAND = 16;
+
     /**
      * Diffuse lighting constant
      */
@@ -95,8 +107,6 @@ public class DiffuseLightingRed extends AbstractRed{
     }
 
     public WritableRaster copyData(WritableRaster wr){
-        final double[] lightColor = light.getColor(linear);
-        
         final int w = wr.getWidth();
         final int h = wr.getHeight();
         final int minX = wr.getMinX();
@@ -114,6 +124,31 @@ public class DiffuseLightingRed extends AbstractRed{
                              minY-wr.getSampleModelTranslateY()));
 
         final int scanStride = sppsm.getScanlineStride();
+
+        // Read the texture once, then light bands of rows in parallel.
+        final Raster texture = bumpMap.getTextureData(minX, minY, w, h);
+        int minBand = (w*h < PARALLEL_THRESHOLD) ? Integer.MAX_VALUE
+                                                 : MIN_BAND;
+        WorkerPool.runBands(h, minBand, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    genRows(pixels, offset + start*scanStride, scanStride,
+                            texture, minX, minY + start, w, end - start);
+                }
+            });
+        
+        return wr;
+    }
+
+    /**
+     * Lights the <code>h</code> rows of <code>w</code> pixels starting
+     * at (<code>minX</code>, <code>minY</code>), which are stored
+     * from <code>offset</code> in <code>pixels</code>.
+     */
+    protected void genRows(int[] pixels, int offset, int scanStride,
+                           Raster texture,
+                           int minX, int minY, int w, int h) {
+        final double[] lightColor = light.getColor(linear);
+
         final int adjust = scanStride - w;
         int p = offset;
         int r=0, g=0, b=0;
@@ -125,7 +160,8 @@ public class DiffuseLightingRed extends AbstractRed{
         double NL = 0;
 
         // final double[] L = new double[3];
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
+        final double[][][] NA
+            = bumpMap.getNormalArray(texture, minX, minY, w, h);
         if(!light.isConstant()){
             final double[][] LA = new double[w][3];
 
@@ -206,8 +242,6 @@ public class DiffuseLightingRed extends AbstractRed{
                 p += adjust;
             }
         }
-        
-        return wr;
     }
 
 }
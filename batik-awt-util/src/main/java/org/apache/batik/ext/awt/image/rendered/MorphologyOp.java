@@ -80,6 +80,12 @@ public class MorphologyOp implements BufferedImageOp, RasterOp {
      */
     private final ColorSpace lRGB = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
 
+    /*
+     * Whether the constant time per pixel van Herk/Gil-Werman
+     * implementation is used rather than the incremental one.
+     */
+    private boolean separable = true;
+
     /**
      * @param radiusX defines the radius of filter operation on X-axis. Should not be negative.
      *        A value of zero will disable the effect of the operation on X-axis, as described
@@ -103,6 +109,25 @@ public class MorphologyOp implements BufferedImageOp, RasterOp {
         }
     }
 
+    /**
+     * Selects the implementation used by the filter methods.  When
+     * <code>separable</code> is true (the default) the van Herk/Gil-Werman
+     * algorithm is used, whose cost per pixel does not depend on the
+     * radius and which splits the work over the shared
+     * {@link org.apache.batik.util.WorkerPool}.  Otherwise the original
+     * incremental implementation is used.  Both produce the same result.
+     */
+    public void setSeparable(boolean separable) {
+        this.separable = separable;
+    }
+
+    /**
+     * Returns true if the van Herk/Gil-Werman implementation is used.
+     */
+    public boolean isSeparable() {
+        return separable;
+    }
+
     public Rectangle2D getBounds2D(Raster src){
         checkCompatible(src.getSampleModel());
         return new Rectangle(src.getMinX(), src.getMinY(), src.getWidth(), src.getHeight());
@@ -846,6 +871,12 @@ public class MorphologyOp implements BufferedImageOp, RasterOp {
             else dest = createCompatibleDestRaster(src);
         }
 
+        if (separable) {
+            VanHerkGilWermanMorphology.filter(src, dest, radiusX, radiusY,
+                                              doDilation);
+            return dest;
+        }
+
         final int w = src.getWidth();
         final int h = src.getHeight();
 
@@ -1460,7 +1491,7 @@ public class MorphologyOp implements BufferedImageOp, RasterOp {
                 final int tail = (bufferHead == 0)?2*radiusY:bufferHead -1;
                 int count = rangeY-1;
 
-                for (int i= h-radiusY; i<h-1; i++){
+                for (int i= h-radiusY; i<h; i++){
                     head = (bufferHead +1)%rangeY;
 
                     if (maxIndexA == bufferHead){
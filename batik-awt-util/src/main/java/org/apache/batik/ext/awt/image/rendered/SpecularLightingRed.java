@@ -21,6 +21,7 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
@@ -28,6 +29,7 @@ import java.awt.image.WritableRaster;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.Light;
 import org.apache.batik.ext.awt.image.SpotLight;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * 
@@ -35,6 +37,16 @@ import org.apache.batik.ext.awt.image.SpotLight;
  * @version $Id$
  */
 public class SpecularLightingRed extends AbstractTiledRed{
+    /**
+     * Regions with fewer pixels than this are lit on one thread.
+     */
+    static final int PARALLEL_THRESHOLD = 64*64;
+
+    /**
+     * The minimum number of rows lit by a worker.
+     */
+    static final int MIN_BAND = 16;
+
     /**
      * Specular lighting constant
      */
@@ -111,12 +123,6 @@ public class SpecularLightingRed extends AbstractTiledRed{
     }
 
     public void genRect(WritableRaster wr) {
-        // Copy variable on stack for faster access in tight loop
-        final double scaleX = this.scaleX;
-        final double scaleY = this.scaleY;
-
-        final double[] lightColor = light.getColor(linear);
-
         final int w = wr.getWidth();
         final int h = wr.getHeight();
         final int minX = wr.getMinX();
@@ -134,6 +140,33 @@ public class SpecularLightingRed extends AbstractTiledRed{
                              minY-wr.getSampleModelTranslateY()));
         // int offset = db.getOffset();
         final int scanStride = sppsm.getScanlineStride();
+
+        // Read the texture once, then light bands of rows in parallel.
+        final Raster texture = bumpMap.getTextureData(minX, minY, w, h);
+        int minBand = (w*h < PARALLEL_THRESHOLD) ? Integer.MAX_VALUE
+                                                 : MIN_BAND;
+        WorkerPool.runBands(h, minBand, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    genRows(pixels, offset + start*scanStride, scanStride,
+                            texture, minX, minY + start, w, end - start);
+                }
+            });
+    }
+
+    /**
+     * Lights the <code>h</code> rows of <code>w</code> pixels starting
+     * at (<code>minX</code>, <code>minY</code>), which are stored
+     * from <code>offset</code> in <code>pixels</code>.
+     */
+    protected void genRows(int[] pixels, int offset, int scanStride,
+                           Raster texture,
+                           int minX, int minY, int w, int h) {
+        // Copy variable on stack for faster access in tight loop
+        final double scaleX = this.scaleX;
+        final double scaleY = this.scaleY;
+
+        final double[] lightColor = light.getColor(linear);
+
         final int adjust = scanStride - w;
         int p = offset;
         int a=0, i=0, j=0;
@@ -159,7 +192,8 @@ public class SpecularLightingRed extends AbstractTiledRed{
 
         // System.out.println("Pixel: 0x" + Integer.toHexString(pixel));
 
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
+        final double[][][] NA
+            = bumpMap.getNormalArray(texture, minX, minY, w, h);
 
         // System.out.println("Entering Specular Lighting");
         if (light instanceof SpotLight) {
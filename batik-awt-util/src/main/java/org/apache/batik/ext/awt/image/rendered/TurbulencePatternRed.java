@@ -29,6 +29,10 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+
+import org.apache.batik.util.WeightedLRUCache;
+import org.apache.batik.util.WorkerPool;
+
 /**
  * This class creates a RenderedImage in conformance to the one
  * defined for the feTurbulence filter of the SVG specification.  What
@@ -210,8 +214,55 @@ public final class TurbulencePatternRed extends AbstractRed {
     private static final int BSize = 0x100;
     private static final int BM = 0xff;
     private static final double PerlinN = 0x1000;
-    private final int[] latticeSelector = new int[BSize + 1];
-    private final double[] gradient = new double[(BSize+1)*8];
+    private int[] latticeSelector;
+    private double[] gradient;
+
+    /**
+     * Single precision copy of gradient, used by the fast path.
+     */
+    private float[] gradientF;
+
+    /**
+     * Whether the fast path may evaluate the noise in single
+     * precision.
+     */
+    private boolean floatPrecision = true;
+
+    /**
+     * Whether generated pixels go through the noise cache, when it is
+     * enabled.
+     */
+    private boolean useNoiseCache = true;
+
+    /**
+     * The lattice tables (latticeSelector, gradient and gradientF)
+     * for the most recently used seeds.  They are never modified once
+     * built so instances with the same seed share them.
+     */
+    private static final WeightedLRUCache latticeCache
+        = new WeightedLRUCache(16);
+
+    /**
+     * The system property giving the maximum number of pixels kept in
+     * the noise cache.  The cache is disabled unless it is set.
+     */
+    public static final String NOISE_CACHE_PROPERTY
+        = "org.apache.batik.ext.awt.image.rendered.TurbulencePatternRed.noiseCache";
+
+    /**
+     * Recently generated noise, keyed by NoiseKey, weighted by pixel
+     * count.  Successive renderings of an unchanged feTurbulence (for
+     * instance the frames of an animation where something else moves)
+     * are served from here.  Its maximum weight is 0, which disables
+     * it, unless NOISE_CACHE_PROPERTY says otherwise.
+     */
+    private static final WeightedLRUCache noiseCache
+        = new WeightedLRUCache(getDefaultNoiseCacheSize());
+
+    /**
+     * Images with fewer pixels than this are never split in bands.
+     */
+    private static final int PARALLEL_THRESHOLD = 64*64;
 
     public double getBaseFrequencyX(){
         return baseFrequencyX;
@@ -257,6 +308,17 @@ public final class TurbulencePatternRed extends AbstractRed {
     }
 
     private void initLattice(int seed) {
+        Integer key = new Integer(seed);
+        Object[] tables = (Object[])latticeCache.get(key);
+        if (tables != null) {
+            latticeSelector = (int[])tables[0];
+            gradient = (double[])tables[1];
+            gradientF = (float[])tables[2];
+            return;
+        }
+        latticeSelector = new int[BSize + 1];
+        gradient = new double[(BSize+1)*8];
+
         double u, v, s;
         int i, j, k, s1, s2;
         seed = setupSeed(seed);
@@ -294,6 +356,13 @@ public final class TurbulencePatternRed extends AbstractRed {
         latticeSelector[BSize] = latticeSelector[0];
         for (j=0; j<8; j++)
             gradient[(BSize*8)+j] = gradient[j];
+
+        gradientF = new float[gradient.length];
+        for (j=0; j<gradient.length; j++)
+            gradientF[j] = (float)gradient[j];
+
+        latticeCache.put(key, new Object[] { latticeSelector, gradient,
+                                             gradientF }, 1);
     }
 
 
@@ -1051,24 +1120,77 @@ public final class TurbulencePatternRed extends AbstractRed {
                 ("Cannot generate a noise pattern into a null raster");
 
 
-        int w = dest.getWidth();
-        int h = dest.getHeight();
+        final int w = dest.getWidth();
+        final int h = dest.getHeight();
 
         // Access the integer buffer for the destination Raster
         DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
         SinglePixelPackedSampleModel sppsm;
-        int minX = dest.getMinX();
-        int minY = dest.getMinY();
+        final int minX = dest.getMinX();
+        final int minY = dest.getMinY();
         sppsm = (SinglePixelPackedSampleModel)dest.getSampleModel();
-        int dstOff = dstDB.getOffset() +
+        final int dstOff = dstDB.getOffset() +
             sppsm.getOffset(minX - dest.getSampleModelTranslateX(),
                             minY - dest.getSampleModelTranslateY());
 
         final int[] destPixels = dstDB.getBankData()[0];
-        int dstAdjust = sppsm.getScanlineStride() - w;
+        final int scanStride = sppsm.getScanlineStride();
+
+        NoiseKey key = null;
+        if (useNoiseCache && noiseCache.getMaxWeight() > 0) {
+            key = createNoiseKey(minX, minY, w, h);
+            int[] cached = (int[])noiseCache.get(key);
+            if (cached != null) {
+                for (int y=0, dp=dstOff; y<h; y++, dp+=scanStride)
+                    System.arraycopy(cached, y*w, destPixels, dp, w);
+                return dest;
+            }
+        }
+
+        final int minBand = (w*h < PARALLEL_THRESHOLD) ? Integer.MAX_VALUE : 8;
+        if (isFastPathApplicable()) {
+            final FastColumns cols = new FastColumns(minX, minY, w);
+            WorkerPool.runBands(h, minBand, new WorkerPool.BandTask() {
+                    public void run(int start, int end) {
+                        fillFast(cols, destPixels, dstOff + start*scanStride,
+                                 scanStride, start, end);
+                    }
+                });
+        } else {
+            WorkerPool.runBands(h, minBand, new WorkerPool.BandTask() {
+                    public void run(int start, int end) {
+                        double[] p = {minX, minY + start};
+                        txf.transform(p, 0, p, 0, 1);
+                        fillRows(destPixels, dstOff + start*scanStride,
+                                 scanStride - w, p[0], p[1], w, end - start);
+                    }
+                });
+        }
 
+        if (key != null) {
+            int[] pixels = new int[w*h];
+            for (int y=0, dp=dstOff; y<h; y++, dp+=scanStride)
+                System.arraycopy(destPixels, dp, pixels, y*w, w);
+            noiseCache.put(key, pixels, pixels.length);
+        }
+
+        return dest;
+    }
+
+    /**
+     * Generates <code>h</code> rows of <code>w</code> pixels, using
+     * the double precision reference implementation.
+     * @param destPixels the destination pixels
+     * @param dp offset of the first pixel
+     * @param dstAdjust offset from the end of a row to the start of
+     *        the next one
+     * @param point_0 x coordinate, in filter space, of the first pixel
+     * @param point_1 y coordinate, in filter space, of the first pixel
+     */
+    private void fillRows(final int[] destPixels, int dp, int dstAdjust,
+                          double point_0, double point_1, int w, int h) {
         // Generate pixel pattern now
-        int i, end, dp=dstOff;
+        int i, end;
         final int[] rgb = new int[4];
         final double[] fSum = {0, 0, 0, 0};
         final double[] noise = {0, 0, 0, 0};
@@ -1081,11 +1203,6 @@ public final class TurbulencePatternRed extends AbstractRed {
         ty0 = ty[0]-(w*tx0);
         ty1 = ty[1]-(w*tx1);
 
-        double[] p = {minX, minY};
-        txf.transform(p, 0, p, 0, 1);
-        double point_0 = p[0];
-        double point_1 = p[1];
-
         if(isFractalNoise){
             if(stitchInfo == null){
                 if (channels.length == 4) {
@@ -1198,7 +1315,293 @@ public final class TurbulencePatternRed extends AbstractRed {
             }
         }
 
-        return dest;
+    }
+
+    /**
+     * Returns true if the pixels can be generated by fillFast: four
+     * channels, no stitching and a transform without rotation or
+     * shear, so that the lattice coordinates along x only depend on
+     * the column and those along y only on the row.
+     */
+    private boolean isFastPathApplicable() {
+        return floatPrecision && stitchInfo == null && channels.length == 4
+            && tx[1] == 0 && ty[0] == 0;
+    }
+
+    /**
+     * The x dependent part of the noise for every column and octave
+     * of a raster, stored at <code>x*octaves + octave</code>.
+     */
+    private final class FastColumns {
+        final int octaves;
+        final int w;
+        final double pointY;
+        final int[] latI;
+        final int[] latJ;
+        final float[] rx;
+        final float[] sx;
+
+        FastColumns(int minX, int minY, int w) {
+            this.octaves = Math.max(numOctaves, 0);
+            this.w = w;
+            double[] p = {minX, minY};
+            txf.transform(p, 0, p, 0, 1);
+            pointY = p[1];
+
+            int n = w*octaves;
+            latI = new int[n];
+            latJ = new int[n];
+            rx = new float[n];
+            sx = new float[n];
+            for (int x=0, c=0; x<w; x++) {
+                double pointX = (p[0] + x*tx[0])*baseFrequencyX;
+                for (int o=0; o<octaves; o++, c++) {
+                    double px = pointX + PerlinN;
+                    int b0 = ((int)px)&BM;
+                    latI[c] = latticeSelector[b0];
+                    latJ[c] = latticeSelector[b0+1];
+                    double r = px - (int)px;
+                    rx[c] = (float)r;
+                    sx[c] = (float)s_curve(r);
+                    pointX *= 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the rows <code>start</code> to <code>end</code> (exclusive)
+     * of the raster described by <code>cols</code>.  All four channels
+     * of an octave are evaluated together, in single precision.  The
+     * lattice indices and fractional coordinates are still computed in
+     * double precision (their magnitude is above PerlinN), so the only
+     * loss comes from the float interpolation and accumulation: the
+     * result differs from the double precision reference by at most one
+     * code value per channel.
+     */
+    private void fillFast(FastColumns cols, int[] destPixels, int dp,
+                          int scanStride, int start, int end) {
+        final int octaves = cols.octaves;
+        final int w = cols.w;
+        final int[] latI = cols.latI;
+        final int[] latJ = cols.latJ;
+        final float[] rxs = cols.rx;
+        final float[] sxs = cols.sx;
+        final float[] g = gradientF;
+        final boolean fractal = isFractalNoise;
+        final float ratio0 = fractal ? 127.5f : 255f;
+        final float sum0   = fractal ? 127.5f : 0f;
+
+        final int[] rowB = new int[octaves];
+        final float[] rowRy = new float[octaves];
+        final float[] rowSy = new float[octaves];
+
+        for (int y=start; y<end; y++, dp+=scanStride) {
+            double pointY = (cols.pointY + y*ty[1])*baseFrequencyY;
+            for (int o=0; o<octaves; o++) {
+                double py = pointY + PerlinN;
+                rowB[o] = ((int)py)&BM;
+                double r = py - (int)py;
+                rowRy[o] = (float)r;
+                rowSy[o] = (float)s_curve(r);
+                pointY *= 2;
+            }
+
+            for (int x=0, c=0; x<w; x++) {
+                float f0 = sum0, f1 = sum0, f2 = sum0, f3 = sum0;
+                float ratio = ratio0;
+                for (int o=0; o<octaves; o++, c++) {
+                    final float rx0 = rxs[c];
+                    final float rx1 = rx0 - 1f;
+                    final float sx  = sxs[c];
+                    final float ry0 = rowRy[o];
+                    final float ry1 = ry0 - 1f;
+                    final float sy  = rowSy[o];
+                    final int by = rowB[o];
+                    final int b0 = ((latI[c] + by)&BM)<<3;
+                    final int b1 = ((latJ[c] + by)&BM)<<3;
+
+                    float n0 = lattice(g, b0,   b1,   rx0, rx1, ry0, ry1, sx, sy);
+                    float n1 = lattice(g, b0+2, b1+2, rx0, rx1, ry0, ry1, sx, sy);
+                    float n2 = lattice(g, b0+4, b1+4, rx0, rx1, ry0, ry1, sx, sy);
+                    float n3 = lattice(g, b0+6, b1+6, rx0, rx1, ry0, ry1, sx, sy);
+                    if (!fractal) {
+                        if (n0 < 0) n0 = -n0;
+                        if (n1 < 0) n1 = -n1;
+                        if (n2 < 0) n2 = -n2;
+                        if (n3 < 0) n3 = -n3;
+                    }
+                    f0 += n0*ratio;
+                    f1 += n1*ratio;
+                    f2 += n2*ratio;
+                    f3 += n3*ratio;
+                    ratio *= .5f;
+                }
+                destPixels[dp+x] = ((clamp((int)f3) << 24) |
+                                    (clamp((int)f0) << 16) |
+                                    (clamp((int)f1) <<  8) |
+                                    (clamp((int)f2)      ));
+            }
+        }
+    }
+
+    /**
+     * Single precision interpolation of the four gradients surrounding
+     * a point, for one channel.  b0 and b1 index the gradients of the
+     * lower left and lower right lattice points, the upper ones follow
+     * eight entries later.
+     */
+    private static float lattice(float[] g, int b0, int b1,
+                                 float rx0, float rx1, float ry0, float ry1,
+                                 float sx, float sy) {
+        float u = rx0*g[b0]   + ry0*g[b0+1];
+        float v = rx1*g[b1]   + ry0*g[b1+1];
+        float a = u + sx*(v - u);
+        u = rx0*g[b0+8] + ry1*g[b0+9];
+        v = rx1*g[b1+8] + ry1*g[b1+9];
+        float b = u + sx*(v - u);
+        return a + sy*(b - a);
+    }
+
+    private static int clamp(int i) {
+        if ((i & 0xFFFFFF00) == 0) return i;
+        return ((i & 0x80000000) != 0)?0:255;
+    }
+
+    /**
+     * Allows the fast path to evaluate the noise in single precision
+     * (the default).  See fillFast for the resulting tolerance.
+     */
+    public void setFloatPrecision(boolean floatPrecision) {
+        this.floatPrecision = floatPrecision;
+    }
+
+    public boolean isFloatPrecision() {
+        return floatPrecision;
+    }
+
+    /**
+     * Controls whether this instance reads from and feeds the shared
+     * noise cache (the default, when the cache is enabled).
+     */
+    public void setUseNoiseCache(boolean useNoiseCache) {
+        this.useNoiseCache = useNoiseCache;
+    }
+
+    /**
+     * Returns the cache of generated noise shared by all instances.
+     * Its weight is the number of cached pixels; it is disabled by
+     * default, use <code>setMaxWeight</code> to enable it and bound
+     * its memory use.
+     */
+    public static WeightedLRUCache getNoiseCache() {
+        return noiseCache;
+    }
+
+    /**
+     * Returns the noise cache size given by NOISE_CACHE_PROPERTY, or 0.
+     */
+    private static long getDefaultNoiseCacheSize() {
+        try {
+            String s = System.getProperty(NOISE_CACHE_PROPERTY);
+            if (s != null) {
+                return Math.max(0, Long.parseLong(s.trim()));
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        return 0;
+    }
+
+    /**
+     * Creates the key of the noise this instance generates for the
+     * given rectangle.
+     */
+    private NoiseKey createNoiseKey(int x, int y, int w, int h) {
+        double[] matrix = new double[6];
+        txf.getMatrix(matrix);
+        if (stitchInfo != null) {
+            return new NoiseKey(baseFrequencyX, baseFrequencyY, numOctaves,
+                                seed, channels.length, isFractalNoise,
+                                isFastPathApplicable(),
+                                stitchInfo.width, stitchInfo.height,
+                                stitchInfo.wrapX, stitchInfo.wrapY,
+                                matrix, x, y, w, h);
+        }
+        return new NoiseKey(baseFrequencyX, baseFrequencyY, numOctaves, seed,
+                            channels.length, isFractalNoise,
+                            isFastPathApplicable(), -1, -1, -1, -1,
+                            matrix, x, y, w, h);
+    }
+
+    /**
+     * Identifies the noise generated for a rectangle of pixels: every
+     * parameter the pixel values depend on, plus the rectangle.
+     */
+    private static final class NoiseKey {
+        final double bfx, bfy;
+        final int octaves, seed, nChannels;
+        final boolean fractal, fast;
+        final int stitchW, stitchH, wrapX, wrapY;
+        final double[] matrix;
+        final int x, y, w, h;
+        final int hash;
+
+        NoiseKey(double bfx, double bfy, int octaves, int seed,
+                 int nChannels, boolean fractal, boolean fast,
+                 int stitchW, int stitchH, int wrapX, int wrapY,
+                 double[] matrix, int x, int y, int w, int h) {
+            this.bfx = bfx;
+            this.bfy = bfy;
+            this.octaves = octaves;
+            this.seed = seed;
+            this.nChannels = nChannels;
+            this.fractal = fractal;
+            this.fast = fast;
+            this.stitchW = stitchW;
+            this.stitchH = stitchH;
+            this.wrapX = wrapX;
+            this.wrapY = wrapY;
+            this.matrix = matrix;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+
+            long bits = Double.doubleToLongBits(bfx)
+                + 31*Double.doubleToLongBits(bfy);
+            for (int i=0; i<6; i++)
+                bits = bits*31 + Double.doubleToLongBits(matrix[i]);
+            int hc = (int)(bits ^ (bits >>> 32));
+            hc = hc*31 + octaves;
+            hc = hc*31 + this.seed;
+            hc = hc*31 + wrapX;
+            hc = hc*31 + wrapY;
+            hc = hc*31 + x;
+            hc = hc*31 + y;
+            hc = hc*31 + w;
+            hc = hc*31 + h;
+            hash = hc;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof NoiseKey)) return false;
+            NoiseKey k = (NoiseKey)o;
+            if (k.hash != hash || k.x != x || k.y != y || k.w != w
+                || k.h != h || k.octaves != octaves || k.seed != seed
+                || k.nChannels != nChannels || k.fractal != fractal
+                || k.fast != fast || k.stitchW != stitchW
+                || k.stitchH != stitchH || k.wrapX != wrapX
+                || k.wrapY != wrapY || k.bfx != bfx || k.bfy != bfy)
+                return false;
+            for (int i=0; i<6; i++)
+                if (k.matrix[i] != matrix[i]) return false;
+            return true;
+        }
     }
 
     /**
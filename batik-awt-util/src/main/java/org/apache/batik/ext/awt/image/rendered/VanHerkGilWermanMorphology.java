@@ -0,0 +1,229 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Separable rectangular dilation/erosion of INT_PACK ARGB rasters
+ * using the van Herk/Gil-Werman algorithm.
+ *
+ * <p>Each line is cut in blocks of <code>2*radius+1</code> pixels.
+ * For every block a running maximum is computed from the left and
+ * from the right, after which the maximum over any window is the
+ * maximum of one right-running and one left-running value.  This
+ * costs three comparisons per pixel and channel whatever the radius.
+ * Windows are clipped to the raster, exactly like the incremental
+ * implementation in {@link MorphologyOp}; clipping is done by
+ * padding each line with the identity value of the operation.</p>
+ *
+ * <p>Erosion is computed as the dilation of the complemented image
+ * (<code>~pixel</code> complements every 8 bit channel at once), so
+ * only the maximum needs to be implemented.</p>
+ *
+ * <p>Rows are processed first, then columns, each pass split in
+ * bands over the {@link WorkerPool}.  The source and destination may
+ * be the same raster.</p>
+ *
+ * @version $Id$
+ */
+final class VanHerkGilWermanMorphology {
+
+    /**
+     * Images with fewer pixels than this are never split in bands.
+     */
+    static final int PARALLEL_THRESHOLD = 128*128;
+
+    /**
+     * The minimum number of lines handed to a worker.
+     */
+    static final int MIN_BAND = 16;
+
+    private VanHerkGilWermanMorphology() {
+    }
+
+    /**
+     * Filters <code>src</code> into <code>dest</code>. Both rasters
+     * must use a four band, 8 bit per band SinglePixelPackedSampleModel
+     * backed by a DataBufferInt, and have the same size.
+     */
+    static void filter(Raster src, WritableRaster dest,
+                       int radiusX, int radiusY, boolean doDilation) {
+        final int w = src.getWidth();
+        final int h = src.getHeight();
+
+        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
+        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
+
+        SinglePixelPackedSampleModel sppsm;
+        sppsm = (SinglePixelPackedSampleModel)src.getSampleModel();
+        final int srcOff = srcDB.getOffset() +
+            sppsm.getOffset(src.getMinX() - src.getSampleModelTranslateX(),
+                            src.getMinY() - src.getSampleModelTranslateY());
+        final int srcScanStride = sppsm.getScanlineStride();
+
+        sppsm = (SinglePixelPackedSampleModel)dest.getSampleModel();
+        final int dstOff = dstDB.getOffset() +
+            sppsm.getOffset(dest.getMinX() - dest.getSampleModelTranslateX(),
+                            dest.getMinY() - dest.getSampleModelTranslateY());
+        final int dstScanStride = sppsm.getScanlineStride();
+
+        final int[] srcPixels  = srcDB.getBankData()[0];
+        final int[] destPixels = dstDB.getBankData()[0];
+
+        // A window larger than the line covers the whole line.
+        final int rx = Math.min(radiusX, w - 1);
+        final int ry = Math.min(radiusY, h - 1);
+        final int mask = doDilation ? 0 : 0xffffffff;
+
+        final int minBand = (w*h < PARALLEL_THRESHOLD) ? Integer.MAX_VALUE
+                                                       : MIN_BAND;
+
+        // First pass: rows, from src into dest.
+        WorkerPool.runBands(h, minBand, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    Lines lines = new Lines(w, rx);
+                    for (int y = start; y < end; y++) {
+                        lines.filter(srcPixels, srcOff + y*srcScanStride, 1,
+                                     destPixels, dstOff + y*dstScanStride, 1,
+                                     mask);
+                    }
+                }
+            });
+
+        // Second pass: columns, in place in dest.
+        WorkerPool.runBands(w, minBand, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    Lines lines = new Lines(h, ry);
+                    for (int x = start; x < end; x++) {
+                        lines.filter(destPixels, dstOff + x, dstScanStride,
+                                     destPixels, dstOff + x, dstScanStride,
+                                     mask);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Returns the per channel maximum of two packed ARGB pixels.
+     */
+    static int max(int p, int q) {
+        int a = Math.max(p >>> 24, q >>> 24);
+        int r = Math.max(p & 0xff0000, q & 0xff0000);
+        int g = Math.max(p & 0xff00, q & 0xff00);
+        int b = Math.max(p & 0xff, q & 0xff);
+        return (a << 24) | r | g | b;
+    }
+
+    /**
+     * The per thread working buffers for one line length and radius.
+     */
+    static final class Lines {
+        final int n;
+        final int radius;
+        final int range;
+        final int[] left;
+        final int[] right;
+
+        Lines(int n, int radius) {
+            this.n      = n;
+            this.radius = radius;
+            this.range  = 2*radius + 1;
+            // Padded line length rounded up to a whole number of blocks.
+            int len = n + 2*radius;
+            len = ((len + range - 1) / range) * range;
+            left  = new int[len];
+            right = new int[len];
+        }
+
+        /**
+         * Filters the <code>n</code> pixels starting at
+         * <code>sp</code> (<code>ss</code> apart) into the pixels
+         * starting at <code>dp</code> (<code>ds</code> apart).  The
+         * source line is entirely read before anything is written so
+         * both may designate the same pixels.  Each pixel is
+         * exclusive-or'ed with <code>mask</code> on the way in and
+         * out.
+         */
+        void filter(int[] src, int sp, int ss,
+                    int[] dst, int dp, int ds, int mask) {
+            final int[] left  = this.left;
+            final int[] right = this.right;
+            final int len = left.length;
+            if (radius == 0) {
+                if (src != dst || sp != dp || ss != ds) {
+                    for (int i = 0; i < n; i++, sp += ss, dp += ds) {
+                        dst[dp] = src[sp];
+                    }
+                }
+                return;
+            }
+
+            // Padded line: radius identity pixels (0 once masked),
+            // the source line, then identity pixels again.
+            for (int i = 0; i < radius; i++) {
+                right[i] = 0;
+            }
+            for (int i = radius, end = radius + n; i < end; i++, sp += ss) {
+                right[i] = src[sp] ^ mask;
+            }
+            for (int i = radius + n; i < len; i++) {
+                right[i] = 0;
+            }
+
+            // Running maximums within each block, left to right and
+            // right to left.
+            for (int b = 0; b < len; b += range) {
+                int e = b + range;
+                int m = right[b];
+                left[b] = m;
+                for (int i = b + 1; i < e; i++) {
+                    m = max(m, right[i]);
+                    left[i] = m;
+                }
+                m = right[e - 1];
+                for (int i = e - 2; i >= b; i--) {
+                    m = max(m, right[i]);
+                    right[i] = m;
+                }
+            }
+
+            // The window [i, i+range) either starts a block or spans
+            // the end of one block and the start of the next.
+            for (int i = 0, k = 0; i < n; i++, dp += ds) {
+                int e = i + range - 1;
+                int v;
+                if (k == 0) {
+                    v = left[e];
+                } else {
+                    v = max(right[i], left[e]);
+                }
+                dst[dp] = v ^ mask;
+                if (++k == range) {
+                    k = 0;
+                }
+            }
+        }
+    }
+}
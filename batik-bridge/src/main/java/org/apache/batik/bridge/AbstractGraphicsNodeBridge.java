@@ -487,6 +487,7 @@ public abstract class AbstractGraphicsNodeBridge extends AnimatableSVGBridge
      * stroke-width and filter effects).
      */
     public Rectangle2D getBBox() {
+        ctx.flushMutations();
         if (node == null) {
             return null;
         }
@@ -509,6 +510,7 @@ public abstract class AbstractGraphicsNodeBridge extends AnimatableSVGBridge
      * the viewport coordinate system for the nearestViewportElement.
      */
     public AffineTransform getCTM() {
+        ctx.flushMutations();
         GraphicsNode gn = node;
         AffineTransform ctm = new AffineTransform();
         Element elt = e;
@@ -555,6 +557,7 @@ public abstract class AbstractGraphicsNodeBridge extends AnimatableSVGBridge
      * element to the root.
      */
     public AffineTransform getGlobalTransform() {
+        ctx.flushMutations();
         return node.getGlobalTransform();
     }
 
@@ -25,9 +25,12 @@ import java.io.InterruptedIOException;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -1151,6 +1154,18 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      */
     protected AnimatedAttributeListener animatedAttributeListener;
 
+    /**
+     * Whether attribute, animation and CSS property changes are recorded
+     * rather than applied to the GVT tree as they happen.
+     */
+    protected boolean mutationBatching;
+
+    /**
+     * The recorded changes, per node, in the order the nodes were
+     * first touched.  Maps a Node to its {@link PendingMutations}.
+     */
+    protected LinkedHashMap pendingMutations = new LinkedHashMap();
+
     /**
      * The EventListener that is responsible of managing DOM focus event.
      */
@@ -1419,11 +1434,276 @@ public class BridgeContext implements ErrorConstants, CSSContext {
         childContexts.clear();
     }
 
+    /**
+     * Sets whether attribute, animation and CSS property changes should
+     * be recorded and applied in one pass by {@link #flushMutations()}
+     * instead of being applied as each one happens.  Structural changes
+     * (node insertion and removal, character data) are always applied
+     * immediately, after flushing what has been recorded so far.
+     * Turning batching off flushes the recorded changes.
+     */
+    public void setMutationBatching(boolean b) {
+        mutationBatching = b;
+        if (!b) {
+            flushMutations();
+        }
+    }
+
+    /**
+     * Returns whether attribute, animation and CSS property changes are
+     * currently being recorded.
+     */
+    public boolean isMutationBatching() {
+        return mutationBatching;
+    }
+
+    /**
+     * Returns the changes recorded for the given node, creating the
+     * record if needed.
+     */
+    protected PendingMutations getPendingMutations(Node n) {
+        PendingMutations pm = (PendingMutations)pendingMutations.get(n);
+        if (pm == null) {
+            pm = new PendingMutations();
+            pendingMutations.put(n, pm);
+        }
+        return pm;
+    }
+
+    /**
+     * Applies the recorded attribute, animation and CSS property
+     * changes to the GVT tree, one node at a time in the order the
+     * nodes were first changed.  Each node's changes are applied once,
+     * with the latest values, however many times they were made.
+     * Changes recorded while flushing are applied in the same pass.
+     */
+    public void flushMutations() {
+        while (!pendingMutations.isEmpty()) {
+            Iterator i = pendingMutations.entrySet().iterator();
+            Map.Entry e = (Map.Entry)i.next();
+            i.remove();
+            Node n = (Node)e.getKey();
+            PendingMutations pm = (PendingMutations)e.getValue();
+            if (pm.attrModifiedEvents != null) {
+                Iterator j = pm.attrModifiedEvents.values().iterator();
+                while (j.hasNext()) {
+                    applyDOMAttrModified(n, (MutationEvent)j.next());
+                }
+            }
+            if (pm.animatedAttributes != null) {
+                Iterator j = pm.animatedAttributes.iterator();
+                while (j.hasNext()) {
+                    applyAnimatedAttributeChanged
+                        ((Element)n, (AnimatedLiveAttributeValue)j.next());
+                }
+            }
+            if (pm.otherAnimations != null) {
+                Iterator j = pm.otherAnimations.iterator();
+                while (j.hasNext()) {
+                    applyOtherAnimationChanged((Element)n, (String)j.next());
+                }
+            }
+            if (pm.cssProperties != null) {
+                BitSet bs = pm.cssProperties;
+                int[] props = new int[bs.cardinality()];
+                int k = 0;
+                for (int p = bs.nextSetBit(0); p >= 0;
+                     p = bs.nextSetBit(p + 1)) {
+                    props[k++] = p;
+                }
+                applyCSSPropertiesChanged
+                    (new CSSEngineEvent(pm.cssEngine, (Element)n, props));
+            }
+        }
+    }
+
+    /**
+     * Forwards a 'DOMAttrModified' event to the bridge of its target.
+     */
+    protected void applyDOMAttrModified(Node node, MutationEvent evt) {
+        BridgeUpdateHandler h = getBridgeUpdateHandler(node);
+        if (h != null) {
+            try {
+                h.handleDOMAttrModifiedEvent(evt);
+            } catch (Exception e) {
+                userAgent.displayError(e);
+            }
+        }
+    }
+
+    /**
+     * Forwards a change of an animated attribute to the bridge of its
+     * owner element.
+     */
+    protected void applyAnimatedAttributeChanged
+            (Element e, AnimatedLiveAttributeValue alav) {
+        BridgeUpdateHandler h = getBridgeUpdateHandler(e);
+        if (h != null) {
+            try {
+                h.handleAnimatedAttributeChanged(alav);
+            } catch (Exception ex) {
+                userAgent.displayError(ex);
+            }
+        }
+    }
+
+    /**
+     * Forwards a change of an 'other' animation to the bridge of the
+     * animated element.
+     */
+    protected void applyOtherAnimationChanged(Element e, String type) {
+        BridgeUpdateHandler h = getBridgeUpdateHandler(e);
+        if (h != null) {
+            try {
+                h.handleOtherAnimationChanged(type);
+            } catch (Exception ex) {
+                userAgent.displayError(ex);
+            }
+        }
+    }
+
+    /**
+     * Forwards a CSSEngineEvent to the bridge of its element, or builds
+     * the element if 'display' changed on an element that was not
+     * rendered.
+     */
+    protected void applyCSSPropertiesChanged(CSSEngineEvent evt) {
+        Element elem = evt.getElement();
+        SVGContext ctx = getSVGContext(elem);
+        if (ctx == null) {
+            GraphicsNode pgn = getGraphicsNode(elem.getParentNode());
+            if ((pgn == null) || !(pgn instanceof CompositeGraphicsNode)) {
+                // Something changed in this element but we really don't
+                // care since its parent isn't displayed either.
+                return;
+            }
+            CompositeGraphicsNode parent = (CompositeGraphicsNode)pgn;
+            // Check if 'display' changed on this element.
+
+            int [] properties = evt.getProperties();
+            for (int property : properties) {
+                if (property == SVGCSSEngine.DISPLAY_INDEX) {
+                    if (!CSSUtilities.convertDisplay(elem)) {
+                        // (Still) Not displayed
+                        break;
+                    }
+                    // build the graphics node
+                    GVTBuilder builder = getGVTBuilder();
+                    GraphicsNode childNode = builder.build(this, elem);
+                    if (childNode == null) {
+                        // the added element is not a graphic element?
+                        break;
+                    }
+                    int idx = -1;
+                    for (Node ps = elem.getPreviousSibling(); ps != null;
+                         ps = ps.getPreviousSibling()) {
+                        if (ps.getNodeType() != Node.ELEMENT_NODE)
+                            continue;
+                        Element pse = (Element) ps;
+                        GraphicsNode gn = getGraphicsNode(pse);
+                        if (gn == null)
+                            continue;
+                        idx = parent.indexOf(gn);
+                        if (idx == -1)
+                            continue;
+                        break;
+                    }
+                    // insert after prevSibling, if
+                    // it was -1 this becomes 0 (first slot)
+                    idx++;
+                    parent.add(idx, childNode);
+                    break;
+                }
+            }
+        } if (ctx != null && (ctx instanceof BridgeUpdateHandler)) {
+            ((BridgeUpdateHandler)ctx).handleCSSEngineEvent(evt);
+        }
+    }
+
+    /**
+     * The attribute, animation and CSS property changes recorded for
+     * one node while mutation batching is on.
+     */
+    protected static class PendingMutations {
+
+        /**
+         * The last 'DOMAttrModified' event for each attribute name.
+         */
+        public LinkedHashMap attrModifiedEvents;
+
+        /**
+         * The changed AnimatedLiveAttributeValues.
+         */
+        public LinkedHashSet animatedAttributes;
+
+        /**
+         * The types of the changed 'other' animations.
+         */
+        public LinkedHashSet otherAnimations;
+
+        /**
+         * The indexes of the changed CSS properties.
+         */
+        public BitSet cssProperties;
+
+        /**
+         * The CSSEngine that reported the property changes.
+         */
+        public CSSEngine cssEngine;
+
+        /**
+         * Records a 'DOMAttrModified' event, replacing any previous one
+         * for the same attribute.
+         */
+        public void attrModified(MutationEvent evt) {
+            if (attrModifiedEvents == null) {
+                attrModifiedEvents = new LinkedHashMap();
+            }
+            attrModifiedEvents.put(evt.getAttrName(), evt);
+        }
+
+        /**
+         * Records a change of an animated attribute.
+         */
+        public void animatedAttributeChanged(AnimatedLiveAttributeValue a) {
+            if (animatedAttributes == null) {
+                animatedAttributes = new LinkedHashSet();
+            }
+            animatedAttributes.add(a);
+        }
+
+        /**
+         * Records a change of an 'other' animation.
+         */
+        public void otherAnimationChanged(String type) {
+            if (otherAnimations == null) {
+                otherAnimations = new LinkedHashSet();
+            }
+            otherAnimations.add(type);
+        }
+
+        /**
+         * Records the properties of a CSSEngineEvent.
+         */
+        public void propertiesChanged(CSSEngineEvent evt) {
+            if (cssProperties == null) {
+                cssProperties = new BitSet();
+            }
+            cssEngine = (CSSEngine)evt.getSource();
+            int[] props = evt.getProperties();
+            for (int prop : props) {
+                cssProperties.set(prop);
+            }
+        }
+    }
+
     /**
      * Disposes this BridgeContext.
      */
     public void dispose() {
         clearChildContexts();
+        mutationBatching = false;
+        pendingMutations.clear();
 
         synchronized (eventListenerSet) {
             // remove all listeners added by Bridges
@@ -1516,13 +1796,10 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          */
         public void handleEvent(Event evt) {
             Node node = (Node)evt.getTarget();
-            BridgeUpdateHandler h = getBridgeUpdateHandler(node);
-            if (h != null) {
-                try {
-                    h.handleDOMAttrModifiedEvent((MutationEvent)evt);
-                } catch (Exception e) {
-                    userAgent.displayError(e);
-                }
+            if (!mutationBatching) {
+                applyDOMAttrModified(node, (MutationEvent)evt);
+            } else if (getBridgeUpdateHandler(node) != null) {
+                getPendingMutations(node).attrModified((MutationEvent)evt);
             }
         }
     }
@@ -1599,6 +1876,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          * Handles 'DOMNodeInserted' event type.
          */
         public void handleEvent(Event evt) {
+            flushMutations();
             MutationEvent me = (MutationEvent)evt;
             BridgeUpdateHandler h =
                 getBridgeUpdateHandler(me.getRelatedNode());
@@ -1629,6 +1907,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          * Handles 'DOMNodeRemoved' event type.
          */
         public void handleEvent(Event evt) {
+            flushMutations();
             Node node = (Node)evt.getTarget();
             BridgeUpdateHandler h = getBridgeUpdateHandler(node);
             if (h != null) {
@@ -1657,6 +1936,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          * Handles 'DOMCharacterDataModified' event type.
          */
         public void handleEvent(Event evt) {
+            flushMutations();
             Node node = (Node)evt.getTarget();
             while (node != null && !(node instanceof SVGOMElement)) {
                 node = (Node) ((AbstractNode) node).getParentNodeEventTarget();
@@ -1689,56 +1969,10 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          * that have changed on a particular element.
          */
         public void propertiesChanged(CSSEngineEvent evt) {
-            Element elem = evt.getElement();
-            SVGContext ctx = getSVGContext(elem);
-            if (ctx == null) {
-                GraphicsNode pgn = getGraphicsNode(elem.getParentNode());
-                if ((pgn == null) || !(pgn instanceof CompositeGraphicsNode)) {
-                    // Something changed in this element but we really don't
-                    // care since its parent isn't displayed either.
-                    return;
-                }
-                CompositeGraphicsNode parent = (CompositeGraphicsNode)pgn;
-                // Check if 'display' changed on this element.
-
-                int [] properties = evt.getProperties();
-                for (int property : properties) {
-                    if (property == SVGCSSEngine.DISPLAY_INDEX) {
-                        if (!CSSUtilities.convertDisplay(elem)) {
-                            // (Still) Not displayed
-                            break;
-                        }
-                        // build the graphics node
-                        GVTBuilder builder = getGVTBuilder();
-                        GraphicsNode childNode = builder.build
-                                (BridgeContext.this, elem);
-                        if (childNode == null) {
-                            // the added element is not a graphic element?
-                            break;
-                        }
-                        int idx = -1;
-                        for (Node ps = elem.getPreviousSibling(); ps != null;
-                             ps = ps.getPreviousSibling()) {
-                            if (ps.getNodeType() != Node.ELEMENT_NODE)
-                                continue;
-                            Element pse = (Element) ps;
-                            GraphicsNode gn = getGraphicsNode(pse);
-                            if (gn == null)
-                                continue;
-                            idx = parent.indexOf(gn);
-                            if (idx == -1)
-                                continue;
-                            break;
-                        }
-                        // insert after prevSibling, if
-                        // it was -1 this becomes 0 (first slot)
-                        idx++;
-                        parent.add(idx, childNode);
-                        break;
-                    }
-                }
-            } if (ctx != null && (ctx instanceof BridgeUpdateHandler)) {
-                ((BridgeUpdateHandler)ctx).handleCSSEngineEvent(evt);
+            if (mutationBatching) {
+                getPendingMutations(evt.getElement()).propertiesChanged(evt);
+            } else {
+                applyCSSPropertiesChanged(evt);
             }
         }
     }
@@ -1763,13 +1997,10 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          */
         public void animatedAttributeChanged(Element e,
                                              AnimatedLiveAttributeValue alav) {
-            BridgeUpdateHandler h = getBridgeUpdateHandler(e);
-            if (h != null) {
-                try {
-                    h.handleAnimatedAttributeChanged(alav);
-                } catch (Exception ex) {
-                    userAgent.displayError(ex);
-                }
+            if (!mutationBatching) {
+                applyAnimatedAttributeChanged(e, alav);
+            } else if (getBridgeUpdateHandler(e) != null) {
+                getPendingMutations(e).animatedAttributeChanged(alav);
             }
         }
 
@@ -1780,13 +2011,10 @@ public class BridgeContext implements ErrorConstants, CSSContext {
          * @param type the type of animation whose value changed
          */
         public void otherAnimationChanged(Element e, String type) {
-            BridgeUpdateHandler h = getBridgeUpdateHandler(e);
-            if (h != null) {
-                try {
-                    h.handleOtherAnimationChanged(type);
-                } catch (Exception ex) {
-                    userAgent.displayError(ex);
-                }
+            if (!mutationBatching) {
+                applyOtherAnimationChanged(e, type);
+            } else if (getBridgeUpdateHandler(e) != null) {
+                getPendingMutations(e).otherAnimationChanged(type);
             }
         }
     }
@@ -19,14 +19,15 @@
 package org.apache.batik.bridge;
 
 import java.awt.Font;
-import java.awt.GraphicsEnvironment;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.Set;
 
 import org.apache.batik.gvt.font.AWTFontFamily;
 import org.apache.batik.gvt.font.AWTGVTFont;
@@ -54,17 +55,28 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
             new AWTFontFamily("SansSerif");
 
     /**
-     * List of all available fonts on the current system, plus a few common
-     * alternatives.
+     * A few common alternatives to the fonts available on the current
+     * system.
      */
     protected static final Map fonts = new HashMap();
 
+    /**
+     * The families tried by getFamilyThatCanDisplay, built on first
+     * use.
+     */
     protected static final List awtFontFamilies = new ArrayList();
 
     protected static final List awtFonts = new ArrayList();
 
     /**
-     * This sets up the list of available fonts.
+     * The fonts available on the current system.
+     */
+    private static final SystemFontIndex fontIndex
+        = SystemFontIndex.createDefault();
+
+    /**
+     * This sets up the list of alternatives, and starts enumerating
+     * the available fonts.
      */
     static {
         fonts.put("sans-serif",      "SansSerif");
@@ -77,64 +89,38 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
         fonts.put("monospaced",      "Monospaced");
         fonts.put("courier",         "Monospaced");
 
-        //
-        // Load all fonts. Work around
-        //
-
-        GraphicsEnvironment env;
-        env = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] fontNames = env.getAvailableFontFamilyNames();
-
-        int nFonts = fontNames != null ? fontNames.length : 0;
-        for(int i=0; i<nFonts; i++){
-            fonts.put(fontNames[i].toLowerCase(), fontNames[i]);
-
-            // also add the font name with the spaces removed
-            StringTokenizer st = new StringTokenizer(fontNames[i]);
-            String fontNameWithoutSpaces = "";
-            while (st.hasMoreTokens()) {
-                fontNameWithoutSpaces += st.nextToken();
-            }
-            fonts.put(fontNameWithoutSpaces.toLowerCase(), fontNames[i]);
-
-            // also add the font name with spaces replaced by dashes
-            String fontNameWithDashes = fontNames[i].replace(' ', '-');
-            if (!fontNameWithDashes.equals(fontNames[i])) {
-                fonts.put(fontNameWithDashes.toLowerCase(), fontNames[i]);
-            }
-        }
-
-        //Also register all font names, not just font families.
-        //Example: Font Family: "Univers", but Font Name: "Univers 45 Light"
-        //Without this, matching "Univers 45 Light" is not possible.
-        Font[] allFonts = env.getAllFonts();
-        for (Font f : allFonts) {
-            fonts.put(f.getFontName().toLowerCase(), f.getFontName());
-        }
-
-        // first add the default font
-        awtFontFamilies.add(DEFAULT_FONT_FAMILY);
-        awtFonts.add(new AWTGVTFont(DEFAULT_FONT_FAMILY.getFamilyName(), 0, 12));
-
-        Collection fontValues = fonts.values();
-        for (Object fontValue : fontValues) {
-            String fontFamily = (String) fontValue;
-            AWTFontFamily awtFontFamily = new AWTFontFamily(fontFamily);
-            awtFontFamilies.add(awtFontFamily);
-            AWTGVTFont font = new AWTGVTFont(fontFamily, 0, 12);
-            awtFonts.add(font);
-        }
-
+        fontIndex.start();
     }
 
     /**
      * This keeps track of all the resolved font families. This is to hopefully
      * reduce the number of font family objects used.
      */
-    protected static final Map resolvedFontFamilies = new HashMap();
+    protected static final Map resolvedFontFamilies
+        = Collections.synchronizedMap(new HashMap());
+
+    /**
+     * Returns the name of the available font called
+     * <code>name</code>, which is lower case, or null.  Until the
+     * available fonts are known, the font is looked up on its own so
+     * resolving common names doesn't wait for the enumeration.
+     */
+    protected static String getFontName(String name) {
+        String fontName = (String)fonts.get(name);
+        if (fontName != null) {
+            return fontName;
+        }
+        if (!fontIndex.isDone()) {
+            fontName = SystemFontIndex.probe(name);
+            if (fontName != null) {
+                return fontName;
+            }
+        }
+        return (String)fontIndex.getNames().get(name);
+    }
 
     public AWTFontFamily resolve(String familyName, FontFace fontFace) {
-        String fontName = (String)fonts.get(fontFace.getFamilyName().toLowerCase());
+        String fontName = getFontName(fontFace.getFamilyName().toLowerCase());
         if (fontName == null) {
             return null;
         } else {
@@ -160,7 +146,7 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
         if (resolvedFF == null) { // hasn't been resolved yet
             // try to find a matching family name in the list of
             // available fonts
-            String awtFamilyName = (String)fonts.get(familyName);
+            String awtFamilyName = getFontName(familyName);
             if (awtFamilyName != null) {
                 resolvedFF = new AWTFontFamily(awtFamilyName);
             }
@@ -180,6 +166,23 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
 
     /** {@inheritDoc} */
     public GVTFontFamily getFamilyThatCanDisplay(char c) {
+        synchronized (awtFontFamilies) {
+            if (awtFontFamilies.isEmpty()) {
+                // first add the default font
+                awtFontFamilies.add(DEFAULT_FONT_FAMILY);
+                awtFonts.add(new AWTGVTFont
+                             (DEFAULT_FONT_FAMILY.getFamilyName(), 0, 12));
+
+                Set names = new LinkedHashSet(fonts.values());
+                names.addAll(fontIndex.getNames().values());
+                Iterator it = names.iterator();
+                while (it.hasNext()) {
+                    String fontFamily = (String)it.next();
+                    awtFontFamilies.add(new AWTFontFamily(fontFamily));
+                    awtFonts.add(new AWTGVTFont(fontFamily, 0, 12));
+                }
+            }
+        }
         for (int i = 0; i < awtFontFamilies.size(); i++) {
             AWTFontFamily fontFamily = (AWTFontFamily)awtFontFamilies.get(i);
             AWTGVTFont font = (AWTGVTFont)awtFonts.get(i);
@@ -30,6 +30,12 @@ package org.apache.batik.bridge;
  */
 public class FlowTextNode extends TextNode{
 
+    /**
+     * The line layout of the last flow, kept by the text painter to
+     * reflow only what changed.
+     */
+    protected Object reflowState;
+
     public FlowTextNode() {
         textPainter = FlowTextPainter.getInstance();
     }
@@ -40,4 +46,20 @@ public class FlowTextNode extends TextNode{
         else
             this.textPainter = textPainter;
     }
+
+    /**
+     * Returns the line layout of the last flow, or null.
+     */
+    public Object getReflowState() {
+        return reflowState;
+    }
+
+    /**
+     * Sets the line layout of the last flow.
+     *
+     * @param reflowState the state computed by the text painter
+     */
+    public void setReflowState(Object reflowState) {
+        this.reflowState = reflowState;
+    }
 }
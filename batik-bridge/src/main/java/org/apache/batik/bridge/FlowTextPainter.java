@@ -19,8 +19,11 @@
 
 package org.apache.batik.bridge;
 
+import java.awt.Shape;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextAttribute;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import java.text.AttributedCharacterIterator;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -64,6 +67,29 @@ public class FlowTextPainter extends StrokingTextPainter {
         return singleton;
     }
 
+    /**
+     * Whether flows are laid out again only from their first changed
+     * paragraph.
+     */
+    protected static volatile boolean incrementalReflow = true;
+
+    /**
+     * Sets whether flow text nodes keep the line layout of their last
+     * flow, so that after an edit only the paragraphs from the first
+     * changed one are laid out again, until the lines match the
+     * previous layout again.
+     */
+    public static void setIncrementalReflow(boolean b) {
+        incrementalReflow = b;
+    }
+
+    /**
+     * Returns whether flows are laid out incrementally.
+     */
+    public static boolean isIncrementalReflow() {
+        return incrementalReflow;
+    }
+
     public List getTextRuns(TextNode node, AttributedCharacterIterator aci) {
         List textRuns = node.getTextRuns();
         if (textRuns != null) {
@@ -92,7 +118,16 @@ public class FlowTextPainter extends StrokingTextPainter {
                 layouts.add(tr.getLayout());
             }
 
-            textWrap(chunkACIs, chunkLayouts, rgns, fontRenderContext);
+            if (incrementalReflow && (node instanceof FlowTextNode)) {
+                FlowTextNode ftn = (FlowTextNode)node;
+                Object prev = ftn.getReflowState();
+                ftn.setReflowState
+                    (reflow(chunkACIs, chunkLayouts, rgns, fontRenderContext,
+                            (prev instanceof ReflowState)
+                            ? (ReflowState)prev : null, true));
+            } else {
+                textWrap(chunkACIs, chunkLayouts, rgns, fontRenderContext);
+            }
         }
 
 
@@ -100,6 +135,20 @@ public class FlowTextPainter extends StrokingTextPainter {
         return node.getTextRuns();
     }
 
+    /**
+     * Lays out every chunk at the text node location rather than after
+     * the previous chunk, since line layout positions them anyway.
+     * This keeps the glyph positions of long flows precise, and those
+     * of a paragraph independent of the paragraphs before it.  Without
+     * incremental reflow, the chunks are offset as before.
+     */
+    protected Point2D adjustChunkOffsets(Point2D location,
+                                         List textRuns,
+                                         TextChunk chunk) {
+        Point2D next = super.adjustChunkOffsets(location, textRuns, chunk);
+        return incrementalReflow ? location : next;
+    }
+
     public static final char SOFT_HYPHEN       = 0x00AD;
     public static final char ZERO_WIDTH_SPACE  = 0x200B;
     public static final char ZERO_WIDTH_JOINER = 0x200D;
@@ -131,33 +180,48 @@ public class FlowTextPainter extends StrokingTextPainter {
                                    List chunkLayouts,
                                    List flowRects,
                                    FontRenderContext frc) {
+        return reflow(acis, chunkLayouts, flowRects, frc, null, false)
+            .overflow;
+    }
 
-        // System.out.println("Len: " + acis.length + " Size: " +
-        //                     chunkLayouts.size());
-
-        // Make a list of the GlyphVectors so we can construct a
-        // multiGlyphVector that makes them all look like one big
-        // glyphVector
-        // GVTGlyphVector [] gvs            = new GVTGlyphVector[acis.length];       // todo - not used?
-        WordInfo       [][] wordInfos    = new WordInfo[acis.length][];
+    /**
+     * Flows the chunks (paragraphs) of a flow into its regions.  When
+     * <code>record</code> is true the returned state holds, for each
+     * chunk, a key of everything its line layout depends on (see
+     * {@link ChunkKey}), the flow state when the chunk was started and
+     * the resulting glyph positions.  Given the state of the previous
+     * layout <code>prev</code>, the leading chunks with unchanged keys
+     * get their old glyph positions, the layout starts again at the
+     * first changed chunk from the recorded flow state, and stops as
+     * soon as an unchanged chunk of the tail is reached in the same
+     * flow state as before: the rest of the lines can't change.
+     */
+    protected static ReflowState reflow(AttributedCharacterIterator [] acis,
+                                        List chunkLayouts,
+                                        List flowRects,
+                                        FontRenderContext frc,
+                                        ReflowState prev,
+                                        boolean record) {
+        int numChunks = acis.length;
+        GVTGlyphVector [] gvs        = new GVTGlyphVector[numChunks];
+        WordInfo     [][] wordInfos  = new WordInfo[numChunks][];
+        BlockInfo      [] blockInfos = new BlockInfo[numChunks];
+        float          [] topSkip    = new float[numChunks];
         Iterator clIter = chunkLayouts.iterator();
 
         float prevBotMargin = 0;
-        int numWords = 0;
-        BlockInfo [] blockInfos = new BlockInfo[acis.length];
-        float      [] topSkip   = new float[acis.length];
         for (int chunk=0; clIter.hasNext(); chunk++) {
-            // System.err.print("Chunk: " + chunk + " Str: '");
-            AttributedCharacterIterator aci = acis[chunk];
+            // Make a list of the GlyphVectors so we can construct a
+            // multiGlyphVector that makes them all look like one big
+            // glyphVector
             List gvl = new LinkedList();
             List layouts = (List)clIter.next();
             for (Object layout : layouts) {
                 GlyphLayout gl = (GlyphLayout) layout;
                 gvl.add(gl.getGlyphVector());
             }
-            GVTGlyphVector gv = new MultiGlyphVector(gvl);
-            // gvs[chunk] = gv;
-            wordInfos[chunk] = doWordAnalysis(gv, aci, numWords, frc);
+            gvs[chunk] = new MultiGlyphVector(gvl);
+            AttributedCharacterIterator aci = acis[chunk];
             aci.first();
             BlockInfo bi = (BlockInfo)aci.getAttribute(FLOW_PARAGRAPH);
             bi.initLineInfo(frc);
@@ -167,19 +231,110 @@ public class FlowTextPainter extends StrokingTextPainter {
             else
                 topSkip[chunk] = bi.getTopMargin();
             prevBotMargin = bi.getBottomMargin();
-            numWords += wordInfos[chunk].length;
         }
 
-        Iterator frIter = flowRects.iterator();
-        RegionInfo currentRegion = null;
+        ReflowState state = new ReflowState(numChunks);
+        int first = 0;   // The first chunk to lay out.
+        int suffix = 0;  // The number of unchanged chunks at the end.
+        int region = 0;
+        FlowRegions fr = null;
+        if (record) {
+            state.regions = getRegionsKey(flowRects);
+            for (int chunk=0; chunk<numChunks; chunk++) {
+                state.keys[chunk] = ChunkKey.create
+                    (acis[chunk], gvs[chunk], blockInfos[chunk]);
+            }
+            if ((prev != null) &&
+                !Arrays.equals(prev.regions, state.regions)) {
+                prev = null;
+            }
+        } else {
+            prev = null;
+        }
+
+        if (prev != null) {
+            int prevChunks = prev.keys.length;
+            int max = Math.min(numChunks, prevChunks);
+            while ((first < max) &&
+                   ChunkKey.equals(state.keys[first], prev.keys[first])) {
+                first++;
+            }
+            // The overflow of a shorter flow is only known by laying
+            // out its last chunk.
+            if ((first == numChunks) && (numChunks != prevChunks)) {
+                first = numChunks-1;
+            }
+            if (first < 0) {
+                first = 0;
+            }
+            while ((suffix < max-first) &&
+                   ChunkKey.equals(state.keys[numChunks-1-suffix],
+                                   prev.keys[prevChunks-1-suffix])) {
+                suffix++;
+            }
+            for (int chunk=0; chunk<first; chunk++) {
+                state.copy(chunk, prev, chunk, gvs[chunk]);
+            }
+            if (first == numChunks) {
+                state.overflow = prev.overflow;
+                return state;
+            }
+            if (first > 0) {
+                EntryState e = prev.entries[first];
+                if (e == null) {
+                    // The regions were full before this chunk.
+                    for (int chunk=first; chunk<numChunks; chunk++) {
+                        GVTGlyphVector gv = gvs[chunk];
+                        int numGlyphs = gv.getNumGlyphs();
+                        for (int g=0; g<numGlyphs; g++) {
+                            gv.setGlyphVisible(g, false);
+                        }
+                        state.results[chunk] = new ChunkResult(gv);
+                    }
+                    state.overflow = true;
+                    return state;
+                }
+                region = e.region;
+                fr = new FlowRegions(e.flowRegions);
+                topSkip[first] = e.topSkip;
+            }
+        }
+
         int currWord = 0;
-        int chunk = 0;
-        List lineInfos = new LinkedList();
-        while(frIter.hasNext()) {
-            currentRegion = (RegionInfo) frIter.next();
-            FlowRegions fr = new FlowRegions(currentRegion.getShape());
+        int chunk = first;
+        int numRegions = flowRects.size();
+        outer: for (; region < numRegions; region++, fr = null) {
+            if (fr == null) {
+                RegionInfo currentRegion = (RegionInfo)flowRects.get(region);
+                fr = new FlowRegions(currentRegion.getShape());
+            }
 
-            while (chunk < wordInfos.length) {
+            while (chunk < numChunks) {
+                if (currWord == 0) {
+                    if ((prev != null) && (chunk > first) &&
+                        (chunk >= numChunks-suffix)) {
+                        int pc = chunk + prev.keys.length - numChunks;
+                        EntryState e = prev.entries[pc];
+                        if ((e != null) &&
+                            e.matches(region, fr, topSkip[chunk])) {
+                            // Back on the previous lines.
+                            for (; chunk<numChunks; chunk++, pc++) {
+                                state.copy(chunk, prev, pc, gvs[chunk]);
+                            }
+                            state.overflow = prev.overflow;
+                            break outer;
+                        }
+                    }
+                    if (record) {
+                        state.entries[chunk] = new EntryState
+                            (region, new FlowRegions(fr), topSkip[chunk]);
+                    }
+                    if (wordInfos[chunk] == null) {
+                        wordInfos[chunk] = doWordAnalysis
+                            (gvs[chunk], acis[chunk],
+                             getFirstWord(acis[chunk]), frc);
+                    }
+                }
                 WordInfo [] chunkInfo = wordInfos[chunk];
                 BlockInfo bi = blockInfos[chunk];
                 WordInfo  wi = chunkInfo[currWord];
@@ -206,7 +361,6 @@ public class FlowTextPainter extends StrokingTextPainter {
                     // Word didn't fit or we hit end of flowLine elem,
                     // go to a new line.
                     li.layout();
-                    lineInfos.add(li);
                     li = null;
 
                     flowLine = wi.getFlowLine();
@@ -236,22 +390,32 @@ public class FlowTextPainter extends StrokingTextPainter {
                 if (!fr.newLine(lh)) // Region is done.
                     break;
             }
-            if (chunk == wordInfos.length)
+            if (chunk == numChunks)
                 break;
         }
 
-        boolean overflow = (chunk < wordInfos.length);
+        if (chunk < numChunks) {
+            state.overflow = true;
+        }
 
-        while (chunk < wordInfos.length) {
+        while (chunk < numChunks) {
+            GVTGlyphVector gv = gvs[chunk];
             WordInfo [] chunkInfo = wordInfos[chunk];
-            while (currWord < chunkInfo.length) {
+            if (chunkInfo == null) {
+                // Never reached, all of its words overflow.
+                int numGlyphs = gv.getNumGlyphs();
+                for (int g=0; g<numGlyphs; g++) {
+                    gv.setGlyphVisible(g, false);
+                }
+            }
+            while ((chunkInfo != null) && (currWord < chunkInfo.length)) {
                 WordInfo wi = chunkInfo[currWord];
                 int numGG = wi.getNumGlyphGroups();
                 for (int gg=0; gg<numGG; gg++) {
                     GlyphGroupInfo ggi = wi.getGlyphGroup(gg);
-                    GVTGlyphVector gv = ggi.getGlyphVector();
-                    int end = ggi.getEnd();
-                    for (int g=ggi.getStart(); g <= end; g++) {
+                    gv = ggi.getGlyphVector();
+                    int last = ggi.getEnd();
+                    for (int g=ggi.getStart(); g <= last; g++) {
                         gv.setGlyphVisible(g, false);
                     }
                 }
@@ -261,7 +425,14 @@ public class FlowTextPainter extends StrokingTextPainter {
             currWord = 0;
         }
 
-        return overflow;
+        if (record) {
+            for (int c=first; c<numChunks; c++) {
+                if (state.results[c] == null) {
+                    state.results[c] = new ChunkResult(gvs[c]);
+                }
+            }
+        }
+        return state;
     }
 
     static int[] allocWordMap(int[] wordMap, int sz) {
@@ -518,4 +689,292 @@ public class FlowTextPainter extends StrokingTextPainter {
         return wordInfos;
     }
 
+    /**
+     * Returns the number of the first word of a chunk, its smallest
+     * WORD_LIMIT.
+     */
+    static int getFirstWord(AttributedCharacterIterator aci) {
+        int first = Integer.MAX_VALUE;
+        int end = aci.getEndIndex();
+        int i = aci.getBeginIndex();
+        while (i < end) {
+            aci.setIndex(i);
+            Integer w = (Integer)aci.getAttribute(WORD_LIMIT);
+            if ((w != null) && (w < first)) {
+                first = w;
+            }
+            i = aci.getRunLimit(WORD_LIMIT);
+        }
+        aci.first();
+        return (first == Integer.MAX_VALUE) ? 0 : first;
+    }
+
+    /**
+     * Returns the segments of the shapes of the regions of a flow.
+     */
+    static double[] getRegionsKey(List flowRects) {
+        double[] key = new double[64];
+        double[] coords = new double[6];
+        int n = 0;
+        for (Object flowRect : flowRects) {
+            Shape s = ((RegionInfo)flowRect).getShape();
+            PathIterator pi = s.getPathIterator(null);
+            for (; !pi.isDone(); pi.next()) {
+                int type = pi.currentSegment(coords);
+                if (n + 7 > key.length) {
+                    double[] tmp = new double[key.length*2];
+                    System.arraycopy(key, 0, tmp, 0, n);
+                    key = tmp;
+                }
+                key[n++] = type;
+                for (int c=0; c<SEGMENT_COORDS[type]; c++) {
+                    key[n++] = coords[c];
+                }
+            }
+            if (n + 1 > key.length) {
+                double[] tmp = new double[key.length*2];
+                System.arraycopy(key, 0, tmp, 0, n);
+                key = tmp;
+            }
+            key[n++] = Double.NaN;
+        }
+        double[] ret = new double[n];
+        System.arraycopy(key, 0, ret, 0, n);
+        return ret;
+    }
+
+    /**
+     * The number of coordinates of each PathIterator segment type.
+     */
+    private static final int[] SEGMENT_COORDS = { 2, 2, 4, 6, 0 };
+
+    /**
+     * The line layout of a flow, kept between layouts of a
+     * FlowTextNode.
+     */
+    protected static class ReflowState {
+        double[]     regions;
+        ChunkKey[]   keys;
+        EntryState[] entries;
+        ChunkResult[] results;
+        boolean      overflow;
+
+        ReflowState(int numChunks) {
+            keys    = new ChunkKey[numChunks];
+            entries = new EntryState[numChunks];
+            results = new ChunkResult[numChunks];
+        }
+
+        /**
+         * Gives chunk <code>chunk</code>, glyph vector
+         * <code>gv</code>, the layout of chunk <code>pc</code> of
+         * <code>prev</code>, which has the same key.
+         */
+        void copy(int chunk, ReflowState prev, int pc, GVTGlyphVector gv) {
+            entries[chunk] = prev.entries[pc];
+            results[chunk] = prev.results[pc];
+            results[chunk].apply(gv);
+        }
+    }
+
+    /**
+     * The flow state when a chunk is started: the region, the
+     * position in the region and the margin to skip.
+     */
+    protected static class EntryState {
+        final int region;
+        final FlowRegions flowRegions;
+        final float topSkip;
+
+        EntryState(int region, FlowRegions flowRegions, float topSkip) {
+            this.region = region;
+            this.flowRegions = flowRegions;
+            this.topSkip = topSkip;
+        }
+
+        boolean matches(int region, FlowRegions fr, float topSkip) {
+            return (this.region == region)
+                && (this.topSkip == topSkip)
+                && (flowRegions.getCurrentY() == fr.getCurrentY())
+                && (flowRegions.getLineHeight() == fr.getLineHeight())
+                && (flowRegions.done() == fr.done());
+        }
+    }
+
+    /**
+     * The glyph positions and visibility of a chunk after line
+     * layout.  The positions of hidden glyphs are not used.
+     */
+    protected static class ChunkResult {
+        final float[] positions;
+        final boolean[] visible;
+
+        ChunkResult(GVTGlyphVector gv) {
+            int numGlyphs = gv.getNumGlyphs();
+            positions = gv.getGlyphPositions(0, numGlyphs, null);
+            visible = new boolean[numGlyphs];
+            for (int g=0; g<numGlyphs; g++) {
+                visible[g] = gv.isGlyphVisible(g);
+            }
+        }
+
+        void apply(GVTGlyphVector gv) {
+            Point2D.Float p = new Point2D.Float();
+            for (int g=0; g<visible.length; g++) {
+                if (visible[g]) {
+                    p.setLocation(positions[2*g], positions[2*g+1]);
+                    gv.setGlyphPosition(g, p);
+                }
+                gv.setGlyphVisible(g, visible[g]);
+            }
+        }
+    }
+
+    /**
+     * What the line layout of a chunk depends on, besides the flow
+     * state it is started in: its characters, glyphs and glyph
+     * positions, its words and flowLine elements, its fonts and line
+     * heights and its paragraph properties.  Glyph positions are
+     * relative to the first glyph, since chunks are laid out one after
+     * the other before line layout, and are compared with
+     * POSITION_TOLERANCE.
+     */
+    protected static class ChunkKey {
+
+        static final float POSITION_TOLERANCE = 1e-2f;
+
+        char[]   text;
+        int[]    glyphCodes;
+        float[]  glyphPositions;
+        int[]    words;   // limit, word number from the first word
+        int[]    lines;   // limit, flowLine element by order of appearance
+        Object[] fonts;   // limit, font, size, line height
+        float[]  block;
+
+        /**
+         * Returns the key of a chunk, or null if it has no words.
+         */
+        static ChunkKey create(AttributedCharacterIterator aci,
+                               GVTGlyphVector gv, BlockInfo bi) {
+            ChunkKey k = new ChunkKey();
+            int begin = aci.getBeginIndex();
+            int end   = aci.getEndIndex();
+            k.text = new char[end-begin];
+            char c = aci.first();
+            for (int i=0; i<k.text.length; i++) {
+                k.text[i] = c;
+                c = aci.next();
+            }
+
+            List words = new ArrayList();
+            List lines = new ArrayList();
+            List elems = new ArrayList();
+            List fonts = new ArrayList();
+            int firstWord = Integer.MAX_VALUE;
+            int i = begin;
+            while (i < end) {
+                aci.setIndex(i);
+                Integer w = (Integer)aci.getAttribute(WORD_LIMIT);
+                if (w == null) {
+                    return null;
+                }
+                if (w < firstWord) {
+                    firstWord = w;
+                }
+                i = aci.getRunLimit(WORD_LIMIT);
+                words.add(i - begin);
+                words.add(w);
+            }
+            for (i = begin; i < end; ) {
+                aci.setIndex(i);
+                Object fl = aci.getAttribute(FLOW_LINE_BREAK);
+                int id = -1;
+                if (fl != null) {
+                    for (id=0; id<elems.size(); id++) {
+                        if (elems.get(id) == fl) break;
+                    }
+                    if (id == elems.size()) {
+                        elems.add(fl);
+                    }
+                }
+                i = aci.getRunLimit(FLOW_LINE_BREAK);
+                lines.add(i - begin);
+                lines.add(id);
+            }
+            for (i = begin; i < end; ) {
+                aci.setIndex(i);
+                Object font = aci.getAttribute(GVT_FONT);
+                Object size = aci.getAttribute(TextAttribute.SIZE);
+                Object lh   = aci.getAttribute(LINE_HEIGHT);
+                i = aci.getRunLimit(szAtts);
+                fonts.add(i - begin);
+                fonts.add(font);
+                fonts.add(size);
+                fonts.add(lh);
+            }
+            aci.first();
+
+            k.words = new int[words.size()];
+            for (int j=0; j<k.words.length; j+=2) {
+                k.words[j]   = (Integer)words.get(j);
+                k.words[j+1] = (Integer)words.get(j+1) - firstWord;
+            }
+            k.lines = new int[lines.size()];
+            for (int j=0; j<k.lines.length; j++) {
+                k.lines[j] = (Integer)lines.get(j);
+            }
+            k.fonts = fonts.toArray();
+
+            int numGlyphs = gv.getNumGlyphs();
+            k.glyphCodes = gv.getGlyphCodes(0, numGlyphs, null);
+            k.glyphPositions = gv.getGlyphPositions(0, numGlyphs+1, null);
+            float x0 = k.glyphPositions[0];
+            for (int j=0; j<k.glyphPositions.length; j+=2) {
+                k.glyphPositions[j] -= x0;
+            }
+
+            k.block = new float[] {
+                bi.getTopMargin(), bi.getRightMargin(),
+                bi.getBottomMargin(), bi.getLeftMargin(),
+                bi.getIndent(), bi.getTextAlignment(),
+                bi.getLineHeight(), bi.getAscent(), bi.getDescent(),
+                bi.isFlowRegionBreak() ? 1 : 0 };
+            return k;
+        }
+
+        /**
+         * Returns whether two keys, possibly null, are equal.  A null
+         * key isn't equal to any key.
+         */
+        static boolean equals(ChunkKey k1, ChunkKey k2) {
+            if ((k1 == null) || (k2 == null)) {
+                return false;
+            }
+            if (!Arrays.equals(k1.text, k2.text)
+                || !Arrays.equals(k1.glyphCodes, k2.glyphCodes)
+                || !Arrays.equals(k1.words, k2.words)
+                || !Arrays.equals(k1.lines, k2.lines)
+                || !Arrays.equals(k1.block, k2.block)
+                || (k1.glyphPositions.length != k2.glyphPositions.length)
+                || (k1.fonts.length != k2.fonts.length)) {
+                return false;
+            }
+            for (int i=0; i<k1.fonts.length; i++) {
+                Object o1 = k1.fonts[i];
+                Object o2 = k2.fonts[i];
+                // Fonts are compared by identity.
+                if ((o1 != o2) && ((o1 == null) || (o1 instanceof GVTFont)
+                                   || !o1.equals(o2))) {
+                    return false;
+                }
+            }
+            for (int i=0; i<k1.glyphPositions.length; i++) {
+                float d = k1.glyphPositions[i] - k2.glyphPositions[i];
+                if ((d > POSITION_TOLERANCE) || (d < -POSITION_TOLERANCE)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -41,6 +41,26 @@ public class GlobalWrapper extends WindowWrapper {
      */
     public GlobalWrapper(Context context) {
         super(context);
+        defineGlobalProperties();
+    }
+
+    /**
+     * Creates a new GlobalWrapper that takes its standard objects from
+     * the given sealed scope.
+     * @param context the current context
+     * @param standardObjects the sealed standard objects
+     * @param names the names of the standard objects to define
+     */
+    public GlobalWrapper(Context context, ScriptableObject standardObjects,
+                         String[] names) {
+        super(context, standardObjects, names);
+        defineGlobalProperties();
+    }
+
+    /**
+     * Defines the properties of the SVGGlobal interface.
+     */
+    private void defineGlobalProperties() {
         String[] names = { "startMouseCapture", "stopMouseCapture" };
         this.defineFunctionProperties(names, GlobalWrapper.class,
                                       ScriptableObject.DONTENUM);
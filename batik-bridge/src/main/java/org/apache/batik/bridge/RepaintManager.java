@@ -18,16 +18,14 @@
  */
 package org.apache.batik.bridge;
 
-import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Collection;
 
 import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.ext.awt.geom.DirtyRegionAccumulator;
 import org.apache.batik.ext.awt.geom.RectListManager;
 
 /**
@@ -38,14 +36,18 @@ import org.apache.batik.ext.awt.geom.RectListManager;
  * @version $Id$
  */
 public class RepaintManager {
-    static final int COPY_OVERHEAD      = 10000;
-    static final int COPY_LINE_OVERHEAD = 10;
 
     /**
      * The renderer used to repaint the buffer.
      */
     protected ImageRenderer renderer;
 
+    /**
+     * Merges the dirty rectangles of a repaint.
+     */
+    protected volatile DirtyRegionAccumulator dirtyRegion =
+        new DirtyRegionAccumulator(DirtyRegionAccumulator.THROUGHPUT);
+
     /**
      * Creates a new repaint manager.
      */
@@ -53,6 +55,15 @@ public class RepaintManager {
         renderer = r;
     }
 
+    /**
+     * Sets how the dirty rectangles are merged.
+     * @param policy {@link DirtyRegionAccumulator#THROUGHPUT} or
+     *        {@link DirtyRegionAccumulator#LATENCY}.
+     */
+    public void setDirtyRegionPolicy(int policy) {
+        dirtyRegion = new DirtyRegionAccumulator(policy);
+    }
+
     /**
      * Updates the rendering buffer.
      * @param areas The areas of interest in renderer space units.
@@ -61,7 +72,8 @@ public class RepaintManager {
     public Collection updateRendering(Collection areas)
         throws InterruptedException {
         renderer.flush(areas);
-        List rects = new ArrayList(areas.size());
+        DirtyRegionAccumulator dra = dirtyRegion;
+        dra.clear();
         AffineTransform at = renderer.getTransform();
 
         for (Object area : areas) {
@@ -74,17 +86,9 @@ public class RepaintManager {
             int y1 = (int) Math.ceil(r2d.getY() + r2d.getHeight());
             // This rectangle must be outset one pixel to ensure
             // it includes the effects of anti-aliasing on objects.
-            Rectangle r = new Rectangle(x0 - 1, y0 - 1, x1 - x0 + 3, y1 - y0 + 3);
-
-            rects.add(r);
-        }
-        RectListManager devRLM = null;
-        try {
-            devRLM = new RectListManager(rects);
-            devRLM.mergeRects(COPY_OVERHEAD, COPY_LINE_OVERHEAD);
-        } catch(Exception e) {
-            e.printStackTrace();
+            dra.add(x0 - 1, y0 - 1, x1 - x0 + 3, y1 - y0 + 3);
         }
+        RectListManager devRLM = new RectListManager(dra.getRectangles());
 
         renderer.repaint(devRLM);
         return devRLM;
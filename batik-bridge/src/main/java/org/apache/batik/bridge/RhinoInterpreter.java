@@ -20,12 +20,12 @@ package org.apache.batik.bridge;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,6 +38,7 @@ import org.apache.batik.script.ImportInfo;
 import org.apache.batik.script.rhino.BatikSecurityController;
 import org.apache.batik.script.rhino.RhinoClassLoader;
 import org.apache.batik.script.rhino.RhinoClassShutter;
+import org.apache.batik.util.WeightedLRUCache;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
@@ -63,9 +64,10 @@ import org.w3c.dom.events.EventTarget;
 public class RhinoInterpreter implements Interpreter {
 
     /**
-     * The number of cached compiled scripts to store.
+     * The number of characters of script source the compiled script cache
+     * holds by default.
      */
-    private static final int MAX_CACHED_SCRIPTS = 32;
+    public static final int SCRIPT_CACHE_CHARS = 1 << 22;
 
     /**
      * Constant used to describe an SVG source
@@ -83,6 +85,41 @@ public class RhinoInterpreter implements Interpreter {
      */
     protected static List contexts = new LinkedList();
 
+    /**
+     * The compiled scripts shared by all interpreters, keyed by source,
+     * source name and security domain, weighted by the length of the
+     * source.
+     */
+    private static final WeightedLRUCache scriptCache
+        = new WeightedLRUCache(SCRIPT_CACHE_CHARS);
+
+    /**
+     * Whether new interpreters take their standard objects from a sealed
+     * scope shared by all interpreters.
+     */
+    protected static boolean sharedStandardObjects;
+
+    /**
+     * The sealed standard objects, created by the first interpreter that
+     * shares them.
+     */
+    private static ScriptableObject standardObjects;
+
+    /**
+     * The names of the standard objects that could be loaded.
+     */
+    private static String[] standardObjectNames;
+
+    /**
+     * The number of interpreters created.
+     */
+    private static int interpreterCount;
+
+    /**
+     * The time spent creating interpreters, in nanoseconds.
+     */
+    private static long instantiationTime;
+
     /**
      * The window object.
      */
@@ -94,9 +131,11 @@ public class RhinoInterpreter implements Interpreter {
     protected ScriptableObject globalObject = null;
 
     /**
-     * List of cached compiled scripts.
+     * The security domain of the scripts compiled by this interpreter, as
+     * part of the compiled script cache keys: the document URL, or null
+     * if scripts are interpreted without a class loader.
      */
-    protected LinkedList compiledScripts = new LinkedList();
+    protected String scriptDomain;
 
     /**
      * Factory for Java wrapper objects.
@@ -164,17 +203,27 @@ public class RhinoInterpreter implements Interpreter {
     protected void init(URL documentURL,
                         final ImportInfo imports)
     {
+        long start = System.nanoTime();
         try {
             rhinoClassLoader = new RhinoClassLoader
                 (documentURL, getClass().getClassLoader());
+            scriptDomain = String.valueOf(documentURL);
         } catch (SecurityException se) {
             rhinoClassLoader = null;
         }
+        final boolean shared = sharedStandardObjects;
         ContextAction initAction = new ContextAction() {
             public Object run(Context cx) {
-                Scriptable scriptable = cx.initStandardObjects(null, false);
-                defineGlobalWrapperClass(scriptable);
-                globalObject = createGlobalObject(cx);
+                if (shared) {
+                    initStandardObjects(cx);
+                    globalObject = createGlobalObject
+                        (cx, standardObjects, standardObjectNames);
+                } else {
+                    Scriptable scriptable =
+                        cx.initStandardObjects(null, false);
+                    defineGlobalWrapperClass(scriptable);
+                    globalObject = createGlobalObject(cx);
+                }
                 ClassCache cache = ClassCache.get(globalObject);
                 cache.setCachingEnabled(rhinoClassLoader != null);
                 
@@ -198,12 +247,126 @@ public class RhinoInterpreter implements Interpreter {
                     sb.append(cls);
                     sb.append(");");
                 }
-                cx.evaluateString(globalObject, sb.toString(), null, 0,
-                                  rhinoClassLoader);
+                compileScript(cx, sb.toString(), null).exec(cx, globalObject);
                 return null;
             }
         };
         contextFactory.call(initAction);
+        synchronized (RhinoInterpreter.class) {
+            interpreterCount++;
+            instantiationTime += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Creates the sealed standard objects shared by the interpreters, if
+     * not done yet.
+     */
+    private static synchronized void initStandardObjects(Context cx) {
+        if (standardObjects != null) {
+            return;
+        }
+        ScriptableObject so = cx.initStandardObjects(null, true);
+        // Load the lazily defined objects now, leaving out those that
+        // cannot be, such as the E4X ones without XMLBeans.
+        List names = new ArrayList();
+        Object[] ids = so.getAllIds();
+        for (Object id : ids) {
+            if (!(id instanceof String)) {
+                continue;
+            }
+            String name = (String) id;
+            try {
+                so.get(name, so);
+                so.getAttributes(name);
+                names.add(name);
+            } catch (RuntimeException ex) {
+                // Not available.
+            }
+        }
+        standardObjectNames =
+            (String[]) names.toArray(new String[names.size()]);
+        standardObjects = so;
+    }
+
+    /**
+     * Sets whether new interpreters take their standard objects (Object,
+     * Array, Math, ...) from a sealed scope shared by all interpreters,
+     * rather than creating their own.  This makes interpreters much
+     * cheaper to create, but scripts cannot change the standard objects,
+     * for example add methods to <code>Array.prototype</code>.
+     */
+    public static void setSharedStandardObjects(boolean b) {
+        sharedStandardObjects = b;
+    }
+
+    /**
+     * Returns whether new interpreters take their standard objects from
+     * a sealed shared scope.
+     */
+    public static boolean isSharedStandardObjects() {
+        return sharedStandardObjects;
+    }
+
+    /**
+     * Returns the compiled script cache shared by all interpreters.  Its
+     * weight is the number of characters of the cached scripts; use
+     * <code>setMaxWeight</code> to bound its memory use, and the hit and
+     * miss counts to see how often scripts are compiled again.
+     */
+    public static WeightedLRUCache getScriptCache() {
+        return scriptCache;
+    }
+
+    /**
+     * Returns the number of interpreters created since the last call to
+     * {@link #resetStatistics()}.
+     */
+    public static synchronized int getInterpreterCount() {
+        return interpreterCount;
+    }
+
+    /**
+     * Returns the average time taken to create an interpreter, in
+     * milliseconds, since the last call to {@link #resetStatistics()}.
+     */
+    public static synchronized double getAverageInstantiationTime() {
+        if (interpreterCount == 0) {
+            return 0;
+        }
+        return instantiationTime / 1e6 / interpreterCount;
+    }
+
+    /**
+     * Resets the interpreter creation and compiled script cache
+     * statistics.
+     */
+    public static synchronized void resetStatistics() {
+        interpreterCount = 0;
+        instantiationTime = 0;
+        scriptCache.resetStatistics();
+    }
+
+    /**
+     * Returns the compiled form of the given script, from the compiled
+     * script cache if it was compiled before for the security domain of
+     * this interpreter.
+     */
+    protected Script compileScript(final Context cx, final String source,
+                                   final String sourceName) {
+        ScriptKey key = new ScriptKey(source, sourceName, scriptDomain);
+        Script script = (Script) scriptCache.get(key);
+        if (script == null) {
+            PrivilegedAction compile = new PrivilegedAction() {
+                public Object run() {
+                    return cx.compileString(source, sourceName, 1,
+                                            rhinoClassLoader);
+                }
+            };
+            script = (Script) AccessController.doPrivileged(compile);
+            scriptCache.put(key, script, source.length());
+        }
+        return script;
     }
 
     /**
@@ -246,6 +409,18 @@ public class RhinoInterpreter implements Interpreter {
         return new WindowWrapper(ctx);
     }
 
+    /**
+     * Creates the global object, taking its standard objects from the
+     * given sealed scope.
+     * @param ctx the current context
+     * @param standardObjects the sealed standard objects
+     * @param names the names of the standard objects
+     */
+    protected ScriptableObject createGlobalObject
+        (Context ctx, ScriptableObject standardObjects, String[] names) {
+        return new WindowWrapper(ctx, standardObjects, names);
+    }
+
     /**
      * Returns the AccessControlContext associated with this Interpreter.
      * @see org.apache.batik.script.rhino.RhinoClassLoader
@@ -288,14 +463,18 @@ public class RhinoInterpreter implements Interpreter {
 
         ContextAction evaluateAction = new ContextAction() {
             public Object run(Context cx) {
+                StringBuffer sb = new StringBuffer();
                 try {
-                    return cx.evaluateReader(globalObject,
-                                             scriptReader,
-                                             description,
-                                             1, rhinoClassLoader);
+                    char[] buf = new char[4096];
+                    int n;
+                    while ((n = scriptReader.read(buf)) != -1) {
+                        sb.append(buf, 0, n);
+                    }
                 } catch (IOException ioe) {
                     throw new WrappedException(ioe);
                 }
+                return compileScript(cx, sb.toString(), description)
+                    .exec(cx, globalObject);
             }
         };
         try {
@@ -333,56 +512,8 @@ public class RhinoInterpreter implements Interpreter {
 
         ContextAction evalAction = new ContextAction() {
             public Object run(final Context cx) {
-                Script script = null;
-                Entry entry = null;
-                Iterator it = compiledScripts.iterator();
-                // between nlog(n) and log(n) because it is
-                // an AbstractSequentialList
-                while (it.hasNext()) {
-                    if ((entry = (Entry) it.next()).str.equals(scriptStr)) {
-                        // if it is not at the end, remove it because
-                        // it will change from place (it is faster
-                        // to remove it now)
-                        script = entry.script;
-                        it.remove();
-                        break;
-                    }
-                }
-
-                if (script == null) {
-                    // this script has not been compiled yet or has been
-                    // forgotten since the compilation:
-                    // compile it and store it for future use.
-
-                    PrivilegedAction compile = new PrivilegedAction() {
-                        public Object run() {
-                            try {
-                                return cx.compileReader
-                                    (new StringReader(scriptStr),
-                                     SOURCE_NAME_SVG, 1, rhinoClassLoader);
-                            } catch (IOException ioEx ) {
-                                // Should never happen: using a string
-                                throw new RuntimeException( ioEx.getMessage() );
-                            }
-                        }
-                    };
-                    script = (Script)AccessController.doPrivileged(compile);
-
-                    if (compiledScripts.size() + 1 > MAX_CACHED_SCRIPTS) {
-                        // too many cached items - we should delete the
-                        // oldest entry.  all of this is very fast on
-                        // linkedlist
-                        compiledScripts.removeFirst();
-                    }
-                    // storing is done here:
-                    compiledScripts.addLast(new Entry(scriptStr, script));
-                } else {
-                    // this script has been compiled before,
-                    // just update its index so it won't get deleted soon.
-                    compiledScripts.addLast(entry);
-                }
-
-                return script.exec(cx, globalObject);
+                return compileScript(cx, scriptStr, SOURCE_NAME_SVG)
+                    .exec(cx, globalObject);
             }
         };
         try {
@@ -561,26 +692,61 @@ public class RhinoInterpreter implements Interpreter {
     }
 
     /**
-     * Class to store cached compiled scripts.
+     * The key of a compiled script in the compiled script cache.
      */
-    protected static class Entry {
+    protected static class ScriptKey {
+
+        /**
+         * The script source.
+         */
+        public String source;
 
         /**
-         * The script string.
+         * The name the script was compiled with, for error messages.
          */
-        public String str;
+        public String sourceName;
 
         /**
-         * The compiled script.
+         * The security domain the script was compiled for.
          */
-        public Script script;
+        public String domain;
 
         /**
-         * Creates a new script cache entry object.
+         * The hash code of the key.
          */
-        public Entry(String str, Script script) {
-            this.str = str;
-            this.script = script;
+        protected int hash;
+
+        /**
+         * Creates a new script cache key.
+         */
+        public ScriptKey(String source, String sourceName, String domain) {
+            this.source = source;
+            this.sourceName = sourceName;
+            this.domain = domain;
+            hash = source.hashCode();
+            if (sourceName != null) {
+                hash = hash * 31 + sourceName.hashCode();
+            }
+            if (domain != null) {
+                hash = hash * 31 + domain.hashCode();
+            }
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ScriptKey)) {
+                return false;
+            }
+            ScriptKey k = (ScriptKey) o;
+            return hash == k.hash
+                && (sourceName == null ? k.sourceName == null
+                                       : sourceName.equals(k.sourceName))
+                && (domain == null ? k.domain == null
+                                   : domain.equals(k.domain))
+                && source.equals(k.source);
         }
     }
 
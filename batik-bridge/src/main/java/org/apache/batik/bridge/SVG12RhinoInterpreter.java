@@ -66,4 +66,13 @@ public class SVG12RhinoInterpreter extends RhinoInterpreter {
     protected ScriptableObject createGlobalObject(Context ctx) {
         return new GlobalWrapper(ctx);
     }
+
+    /**
+     * Creates the global object, taking its standard objects from the
+     * given sealed scope.
+     */
+    protected ScriptableObject createGlobalObject
+        (Context ctx, ScriptableObject standardObjects, String[] names) {
+        return new GlobalWrapper(ctx, standardObjects, names);
+    }
 }
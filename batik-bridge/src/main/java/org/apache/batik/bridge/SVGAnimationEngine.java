@@ -500,6 +500,26 @@ public class SVGAnimationEngine extends AnimationEngine {
         animationLimitingAmount = fps;
     }
 
+    /**
+     * Returns the timing statistics of the animation ticks since the
+     * animations started or the statistics were last reset.
+     */
+    public synchronized FrameStatistics getFrameStatistics() {
+        if (animationTickRunnable == null) {
+            return new FrameStatistics(0, 0, 0, 0);
+        }
+        return animationTickRunnable.getFrameStatistics();
+    }
+
+    /**
+     * Clears the timing statistics of the animation ticks.
+     */
+    public synchronized void resetFrameStatistics() {
+        if (animationTickRunnable != null) {
+            animationTickRunnable.resetFrameStatistics();
+        }
+    }
+
     /**
      * A class for the root time container.
      */
@@ -709,10 +729,7 @@ public class SVGAnimationEngine extends AnimationEngine {
 
         public void resume() {
             waitTime = 0;
-            Object lock = q.getIteratorLock();
-            synchronized (lock) {
-                lock.notify();
-            }
+            q.idleRunnableChanged();
         }
 
         public long getWaitTime() {
@@ -744,30 +761,22 @@ public class SVGAnimationEngine extends AnimationEngine {
     }
 
     /**
-     * Idle runnable to tick the animation.
+     * Idle runnable to tick the animation.  Ticks are timed with
+     * <code>System.nanoTime</code>.  While animations are active, the
+     * next tick is scheduled according to the animation limiting mode:
+     * with no limit, once per minimum repaint time of the
+     * {@link UpdateManager}, since more frequent ticks would not be
+     * painted; with a frame rate limit, on a fixed grid of frames; with
+     * a CPU limit, so that ticking takes the given share of the time.
+     * When no animation is active, the {@link RunnableQueue} waits until
+     * the next interval begins.
      */
     protected static class AnimationTickRunnable
             implements RunnableQueue.IdleRunnable {
 
         /**
-         * Calendar instance used for passing current time values to the
-         * animation timing system.
-         */
-        protected Calendar time = Calendar.getInstance();
-
-//         /**
-//          * The current document time in seconds, truncated.
-//          */
-//         protected double second = -1.;
-
-//         /**
-//          * The number of frames that have been ticked so far this second.
-//          */
-//         protected int frames;
-
-        /**
-         * The number of milliseconds to wait until the next animation tick.
-         * This is returned by {@link #getWaitTime()}.
+         * The system time in milliseconds to wait until before the next
+         * animation tick.  This is returned by {@link #getWaitTime()}.
          */
         protected long waitTime;
 
@@ -784,7 +793,7 @@ public class SVGAnimationEngine extends AnimationEngine {
         private static final int NUM_TIMES = 8;
 
         /**
-         * The past tick times.
+         * The past tick times, in nanoseconds.
          */
         protected long[] times = new long[NUM_TIMES];
 
@@ -818,6 +827,38 @@ public class SVGAnimationEngine extends AnimationEngine {
          */
         protected int exceptionCount;
 
+        /**
+         * The values of <code>System.nanoTime</code> and
+         * <code>System.currentTimeMillis</code> when this runnable was
+         * created.  Times are measured with the former and converted to
+         * system times relative to these.
+         */
+        protected long nanoOrigin;
+        protected long epochOrigin;
+
+        /**
+         * The time of the frame last scheduled with a frame rate limit,
+         * in nanoseconds, or 0 if none is.
+         */
+        protected long nextFrame;
+
+        /**
+         * The time the last tick of active animations started, in
+         * nanoseconds, or 0 if the last tick found none active.
+         */
+        protected long lastFrameStart;
+
+        /**
+         * The frame statistics: the number of ticks, their total and
+         * maximum duration, and the total time between consecutive ticks
+         * of active animations with their number.
+         */
+        protected int frameCount;
+        protected long totalTickTime;
+        protected long maxTickTime;
+        protected long totalFrameInterval;
+        protected int frameIntervalCount;
+
         /**
          * Creates a new AnimationTickRunnable.
          */
@@ -825,8 +866,10 @@ public class SVGAnimationEngine extends AnimationEngine {
             this.q = q;
             this.engRef = new WeakReference(eng);
             // Initialize the past times to 100ms.
-            Arrays.fill(times, 100);
-            sumTime = 100 * NUM_TIMES;
+            Arrays.fill(times, 100000000L);
+            sumTime = 100000000L * NUM_TIMES;
+            nanoOrigin = System.nanoTime();
+            epochOrigin = System.currentTimeMillis();
         }
 
         /**
@@ -835,10 +878,7 @@ public class SVGAnimationEngine extends AnimationEngine {
          */
         public void resume() {
             waitTime = 0;
-            Object lock = q.getIteratorLock();
-            synchronized (lock) {
-                lock.notify();
-            }
+            q.idleRunnableChanged();
         }
 
         /**
@@ -859,53 +899,42 @@ public class SVGAnimationEngine extends AnimationEngine {
         public void run() {
             SVGAnimationEngine eng = getAnimationEngine();
             synchronized (eng) {
-                int animationLimitingMode = eng.animationLimitingMode;
-                float animationLimitingAmount = eng.animationLimitingAmount;
                 try {
                     try {
-                        long before = System.currentTimeMillis();
-                        time.setTime(new Date(before));
-                        float t = eng.timedDocumentRoot.convertWallclockTime(time);
-//                         if (Math.floor(t) > second) {
-//                             second = Math.floor(t);
-//                             System.err.println("fps: " + frames);
-//                             frames = 0;
-//                         }
+                        long before = System.nanoTime();
+                        float t = getDocumentTime(eng.timedDocumentRoot,
+                                                  before);
                         float t2 = eng.tick(t, false);
-                        long after = System.currentTimeMillis();
-                        long dur = after - before;
-                        if (dur == 0) {
-                            dur = 1;
+                        long after = System.nanoTime();
+                        long dur = Math.max(after - before, 1);
+                        UpdateManager um = eng.ctx.getUpdateManager();
+                        if (um != null) {
+                            UpdateMonitor m = um.getUpdateMonitor();
+                            if (m.isEnabled()) {
+                                m.record(UpdateMonitor.ANIMATION, dur);
+                            }
                         }
                         sumTime -= times[timeIndex];
                         sumTime += dur;
                         times[timeIndex] = dur;
                         timeIndex = (timeIndex + 1) % NUM_TIMES;
+                        recordFrame(before, dur);
 
                         if (t2 == Float.POSITIVE_INFINITY) {
                             waitTime = Long.MAX_VALUE;
+                            nextFrame = 0;
+                            lastFrameStart = 0;
+                        } else if (t2 > 0) {
+                            // Nothing to animate until the next interval.
+                            waitTime = toSystemTime
+                                (before + (long) (t2 * 1e9));
+                            nextFrame = 0;
+                            lastFrameStart = 0;
                         } else {
-                            waitTime = before + (long) (t2 * 1000) - 1000;
-                            if (waitTime < after) {
-                                waitTime = after;
-                            }
-                            if (animationLimitingMode != 0) {
-                                float ave = (float) sumTime / NUM_TIMES;
-                                float delay;
-                                if (animationLimitingMode == 1) {
-                                    // %cpu
-                                    delay = ave / animationLimitingAmount - ave;
-                                } else {
-                                    // fps
-                                    delay = 1000f / animationLimitingAmount - ave;
-                                }
-                                long newWaitTime = after + (long) delay;
-                                if (newWaitTime > waitTime) {
-                                    waitTime = newWaitTime;
-                                }
-                            }
+                            long next = getNextFrameTime(eng, before, after);
+                            waitTime = next <= after ? 0 : toSystemTime(next);
+                            lastFrameStart = before;
                         }
-//                         frames++;
                     } catch (AnimationException ex) {
                         throw new BridgeException
                             (eng.ctx, ex.getElement().getElement(),
@@ -921,17 +950,98 @@ public class SVGAnimationEngine extends AnimationEngine {
                         }
                     }
                 }
+            }
+        }
 
-                if (animationLimitingMode == 0) {
-                    // so we don't steal too much time from the Swing thread
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException ie) {
-                    }
+        /**
+         * Returns the time the next tick of active animations should
+         * start, in nanoseconds.
+         * @param before the time the last tick started
+         * @param after the time the last tick ended
+         */
+        protected long getNextFrameTime(SVGAnimationEngine eng,
+                                        long before, long after) {
+            float amount = eng.animationLimitingAmount;
+            switch (eng.animationLimitingMode) {
+            case 1: { // %cpu
+                float ave = (float) sumTime / NUM_TIMES;
+                return after + (long) (ave / amount - ave);
+            }
+            case 2: { // fps
+                long period = Math.max((long) (1e9 / amount), 1);
+                long next = (nextFrame == 0 ? before : nextFrame) + period;
+                if (next <= after) {
+                    // Drop the frames we are late for.
+                    next += ((after - next) / period + 1) * period;
                 }
+                nextFrame = next;
+                return next;
+            }
+            default: {
+                UpdateManager um = eng.ctx.getUpdateManager();
+                int minRepaintTime = um == null ? 0 : um.getMinRepaintTime();
+                return before + minRepaintTime * 1000000L;
+            }
+            }
+        }
+
+        /**
+         * Returns the document time at the given time in nanoseconds.
+         */
+        protected float getDocumentTime(TimedDocumentRoot root, long nanos) {
+            long begin = root.getDocumentBeginTime().getTimeInMillis();
+            return (float) ((epochOrigin - begin
+                             + (nanos - nanoOrigin) / 1e6) / 1000);
+        }
+
+        /**
+         * Converts a time in nanoseconds to a system time in milliseconds.
+         */
+        protected long toSystemTime(long nanos) {
+            return epochOrigin + (nanos - nanoOrigin) / 1000000;
+        }
+
+        /**
+         * Adds a tick to the frame statistics.
+         * @param start the time the tick started, in nanoseconds
+         * @param dur the duration of the tick, in nanoseconds
+         */
+        protected void recordFrame(long start, long dur) {
+            frameCount++;
+            totalTickTime += dur;
+            if (dur > maxTickTime) {
+                maxTickTime = dur;
+            }
+            if (lastFrameStart != 0) {
+                totalFrameInterval += start - lastFrameStart;
+                frameIntervalCount++;
             }
         }
 
+        /**
+         * Returns the frame statistics recorded so far.
+         */
+        public FrameStatistics getFrameStatistics() {
+            return new FrameStatistics
+                (frameCount,
+                 frameCount == 0 ? 0 : totalTickTime / 1e6 / frameCount,
+                 maxTickTime / 1e6,
+                 frameIntervalCount == 0
+                     ? 0 : totalFrameInterval / 1e6 / frameIntervalCount);
+        }
+
+        /**
+         * Clears the frame statistics.
+         */
+        public void resetFrameStatistics() {
+            frameCount = 0;
+            totalTickTime = 0;
+            maxTickTime = 0;
+            totalFrameInterval = 0;
+            frameIntervalCount = 0;
+            lastFrameStart = 0;
+        }
+
         /**
          * Returns the SVGAnimationEngine this AnimationTickRunnable is for.
          */
@@ -940,6 +1050,77 @@ public class SVGAnimationEngine extends AnimationEngine {
         }
     }
 
+    /**
+     * Timing statistics of the animation ticks.
+     */
+    public static class FrameStatistics {
+
+        protected int frameCount;
+        protected double averageTickTime;
+        protected double maxTickTime;
+        protected double averageFrameInterval;
+
+        /**
+         * Creates a new FrameStatistics.
+         * @param frameCount the number of ticks
+         * @param averageTickTime the average duration of a tick, in ms
+         * @param maxTickTime the longest duration of a tick, in ms
+         * @param averageFrameInterval the average time between the starts
+         *        of consecutive ticks of active animations, in ms
+         */
+        public FrameStatistics(int frameCount, double averageTickTime,
+                               double maxTickTime,
+                               double averageFrameInterval) {
+            this.frameCount = frameCount;
+            this.averageTickTime = averageTickTime;
+            this.maxTickTime = maxTickTime;
+            this.averageFrameInterval = averageFrameInterval;
+        }
+
+        /**
+         * Returns the number of ticks.
+         */
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * Returns the average duration of a tick, in milliseconds.
+         */
+        public double getAverageTickTime() {
+            return averageTickTime;
+        }
+
+        /**
+         * Returns the longest duration of a tick, in milliseconds.
+         */
+        public double getMaxTickTime() {
+            return maxTickTime;
+        }
+
+        /**
+         * Returns the average time between the starts of consecutive
+         * ticks while animations are active, in milliseconds, or 0 if
+         * there were none.
+         */
+        public double getAverageFrameInterval() {
+            return averageFrameInterval;
+        }
+
+        /**
+         * Returns the number of frames per second while animations are
+         * active, or 0 if there were none.
+         */
+        public double getFrameRate() {
+            return averageFrameInterval == 0 ? 0 : 1000 / averageFrameInterval;
+        }
+
+        public String toString() {
+            return frameCount + " frames, " + averageTickTime + "ms/tick (max "
+                + maxTickTime + "ms), " + getFrameRate() + " fps";
+        }
+    }
+
     /**
      * The thread that ticks the animation.
      */
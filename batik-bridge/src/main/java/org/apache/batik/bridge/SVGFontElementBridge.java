@@ -119,11 +119,16 @@ public class SVGFontElementBridge extends AbstractSVGBridge {
             vkernElementArray[i] = vkernElement;
         }
 
+        // get the compiled glyphs shared by all the fonts of this element
+        SVGGlyphTable glyphTable
+            = SVGGlyphTable.getGlyphTable(fontElement, glyphCodes);
+
         // return the new SVGGVTFont
         return new SVGGVTFont
             (size, fontFace, glyphCodes, glyphNames, glyphLangs,
              glyphOrientations, glyphForms, ctx,
              glyphElementArray, missingGlyphElement,
-             hkernElementArray, vkernElementArray, textElement);
+             hkernElementArray, vkernElementArray, textElement,
+             glyphTable);
     }
 }
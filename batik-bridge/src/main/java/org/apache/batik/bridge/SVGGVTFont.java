@@ -35,7 +35,6 @@ import org.apache.batik.gvt.font.GVTFontFace;
 import org.apache.batik.gvt.font.GVTGlyphVector;
 import org.apache.batik.gvt.font.GVTLineMetrics;
 import org.apache.batik.gvt.font.Glyph;
-import org.apache.batik.gvt.font.Kern;
 import org.apache.batik.gvt.font.KerningTable;
 import org.apache.batik.gvt.font.SVGGVTGlyphVector;
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
@@ -74,6 +73,7 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
     private String orientation;
     private float  scale;
     private GVTLineMetrics lineMetrics=null;
+    private SVGGlyphTable glyphTable;
 
     /**
      * Constructs a new SVGGVTFont of the specified size.
@@ -109,6 +109,34 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
                       Element[] hkernElements,
                       Element[] vkernElements,
                       Element textElement) {
+        this(fontSize, fontFace, glyphUnicodes, glyphNames, glyphLangs,
+             glyphOrientations, glyphForms, ctx, glyphElements,
+             missingGlyphElement, hkernElements, vkernElements, textElement,
+             null);
+    }
+
+    /**
+     * Constructs a new SVGGVTFont of the specified size, which creates
+     * its glyphs and kerning tables from a shared glyph table.
+     *
+     * @param glyphTable The compiled glyphs of the font, or null to
+     * create every glyph from its element.
+     * @see #SVGGVTFont(float,GVTFontFace,String[],String[],String[],String[],String[],BridgeContext,Element[],Element,Element[],Element[],Element)
+     */
+    public SVGGVTFont(float fontSize,
+                      GVTFontFace fontFace,
+                      String[] glyphUnicodes,
+                      String[] glyphNames,
+                      String[] glyphLangs,
+                      String[] glyphOrientations,
+                      String[] glyphForms,
+                      BridgeContext ctx,
+                      Element[] glyphElements,
+                      Element missingGlyphElement,
+                      Element[] hkernElements,
+                      Element[] vkernElements,
+                      Element textElement,
+                      SVGGlyphTable glyphTable) {
         this.fontFace = fontFace;
         this.fontSize = fontSize;
         this.glyphUnicodes = glyphUnicodes;
@@ -123,6 +151,7 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
         this.vkernElements = vkernElements;
         this.scale         = fontSize/fontFace.getUnitsPerEm();
         this.textElement = textElement;
+        this.glyphTable = glyphTable;
 
         this.language = XMLSupport.getXMLLang(textElement);
 
@@ -145,27 +174,17 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
      * elements these tables will be empty.
      */
     private void createKerningTables() {
-
-        Kern[] hEntries = new Kern[hkernElements.length];
-        for (int i = 0; i < hkernElements.length; i++) {
-            Element hkernElement = hkernElements[i];
-            SVGHKernElementBridge hkernBridge =
-                (SVGHKernElementBridge)ctx.getBridge(hkernElement);
-            Kern hkern = hkernBridge.createKern(ctx, hkernElement, this);
-            hEntries[i] = hkern;
+        if (glyphTable != null) {
+            hKerningTable = glyphTable.getHKerningTable
+                (ctx, hkernElements, this);
+            vKerningTable = glyphTable.getVKerningTable
+                (ctx, vkernElements, this);
+            return;
         }
-        hKerningTable = new KerningTable(hEntries);
-
-        Kern[] vEntries = new Kern[vkernElements.length];
-        for (int i = 0; i < vkernElements.length; i++) {
-            Element vkernElement = vkernElements[i];
-            SVGVKernElementBridge vkernBridge =
-                (SVGVKernElementBridge)ctx.getBridge(vkernElement);
-            Kern vkern = vkernBridge.createKern(ctx, vkernElement, this);
-            vEntries[i] = vkern;
-        }
-        vKerningTable = new KerningTable(vEntries);
-
+        hKerningTable = SVGGlyphTable.createKerningTable
+            (ctx, hkernElements, this);
+        vKerningTable = SVGGlyphTable.createKerningTable
+            (ctx, vkernElements, this);
     }
 
     /**
@@ -588,16 +607,11 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
                                 ci.getIndex())) {  // found a possible match
 
                     if (glyphUnicodes[i].length() == 1)  { // not a ligature
-                        Element glyphElement = glyphElements[i];
-                        SVGGlyphElementBridge glyphBridge =
-                            (SVGGlyphElementBridge)ctx.getBridge(glyphElement);
                         TextPaintInfo tpi = null;
                         if (aci != null) {
                             tpi = (TextPaintInfo)aci.getAttribute(PAINT_INFO);
                         }
-                        Glyph glyph = glyphBridge.createGlyph
-                            (ctx, glyphElement, textElement, i,
-                             fontSize, fontFace, tpi);
+                        Glyph glyph = createGlyph(glyphElements[i], i, tpi);
                         glyphs.add(glyph);
                         foundMatchingGlyph = true;
                         break;
@@ -615,19 +629,13 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
                         }
                         if (matched) { // found a matching ligature!
 
-                            Element glyphElement = glyphElements[i];
-                            SVGGlyphElementBridge glyphBridge
-                                = (SVGGlyphElementBridge)ctx.getBridge
-                                (glyphElement);
                             TextPaintInfo tpi = null;
                             if (aci != null) {
                                 aci.setIndex(ci.getIndex());
                                 tpi = (TextPaintInfo)aci.getAttribute
                                     (PAINT_INFO);
                             }
-                            Glyph glyph = glyphBridge.createGlyph
-                                (ctx, glyphElement, textElement, i,
-                                 fontSize, fontFace, tpi);
+                            Glyph glyph = createGlyph(glyphElements[i], i, tpi);
                             glyphs.add(glyph);
                             foundMatchingGlyph = true;
                             break;
@@ -642,16 +650,12 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
             }
             if (!foundMatchingGlyph) {
                 // add the missing glyph
-                SVGGlyphElementBridge glyphBridge =
-                    (SVGGlyphElementBridge)ctx.getBridge(missingGlyphElement);
                 TextPaintInfo tpi = null;
                 if (aci != null) {
                     aci.setIndex(ci.getIndex());
                     tpi = (TextPaintInfo)aci.getAttribute(PAINT_INFO);
                 }
-                Glyph glyph = glyphBridge.createGlyph
-                    (ctx, missingGlyphElement, textElement, -1,
-                     fontSize, fontFace, tpi);
+                Glyph glyph = createGlyph(missingGlyphElement, -1, tpi);
                 glyphs.add(glyph);
             }
             c = ci.next();
@@ -666,6 +670,29 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
         return new SVGGVTGlyphVector(this, glyphArray, frc);
     }
 
+    /**
+     * Creates the glyph of the given glyph element, from the glyph
+     * table when it holds the compiled glyph.
+     *
+     * @param glyphCode The index of the glyph, -1 for the missing glyph.
+     */
+    private Glyph createGlyph(Element glyphElement, int glyphCode,
+                              TextPaintInfo tpi) {
+        if (glyphTable != null) {
+            Glyph glyph = glyphTable.createGlyph
+                (glyphElement, textElement, glyphCode, fontSize,
+                 fontFace, tpi);
+            if (glyph != null) {
+                return glyph;
+            }
+        }
+        SVGGlyphElementBridge glyphBridge =
+            (SVGGlyphElementBridge)ctx.getBridge(glyphElement);
+        return glyphBridge.createGlyph
+            (ctx, glyphElement, textElement, glyphCode,
+             fontSize, fontFace, tpi);
+    }
+
     /**
      * Returns a new GVTGlyphVector object for the glyphs in the
      * the glyph code array.
@@ -715,7 +742,8 @@ public final class SVGGVTFont implements GVTFont, SVGConstants {
         return new SVGGVTFont(size, fontFace, glyphUnicodes, glyphNames,
                               glyphLangs, glyphOrientations, glyphForms, ctx,
                               glyphElements, missingGlyphElement,
-                              hkernElements, vkernElements, textElement);
+                              hkernElements, vkernElements, textElement,
+                              glyphTable);
     }
 
     public String getFamilyName() {
@@ -0,0 +1,452 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.batik.gvt.font.GVTFontFace;
+import org.apache.batik.gvt.font.Glyph;
+import org.apache.batik.gvt.font.Kern;
+import org.apache.batik.gvt.font.KerningTable;
+import org.apache.batik.gvt.text.TextPaintInfo;
+import org.apache.batik.parser.AWTPathProducer;
+import org.apache.batik.parser.ParseException;
+import org.apache.batik.parser.PathParser;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.WeightedLRUCache;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The size independent data of an SVG font: the glyph outlines,
+ * advances and origins in font units, and the kerning tables.
+ *
+ * <p>Without it every SVGGVTFont parses the 'd' attribute of a glyph
+ * each time the glyph is laid out, and its kerning elements each time
+ * it is created (that is, for every text element and font size).
+ * Tables are shared by all the fonts created from the same &lt;font&gt;
+ * element, and by all the documents (and bridge contexts, possibly on
+ * different threads) that load the same font, through a cache keyed
+ * by the URL of the font document, the id of the font element and a
+ * version of the font: a fingerprint of the names, attributes and text
+ * of the elements under the font element, so a font modified in place
+ * gets a new table.</p>
+ *
+ * <p>Glyphs are compiled on first use, from the glyph element of any
+ * font with the same key, and are immutable once compiled.  Glyphs
+ * with child elements (whose content is built for each text element)
+ * and glyphs with missing or malformed attributes are not compiled:
+ * SVGGVTFont creates them with {@link SVGGlyphElementBridge}, which
+ * also reports the errors.  The weight of a cache entry is the number
+ * of path data characters of the font, plus one per glyph.</p>
+ *
+ * @version $Id$
+ */
+public final class SVGGlyphTable implements SVGConstants {
+
+    /**
+     * The default maximum weight of the glyph table cache.
+     */
+    public static final int DEFAULT_MAX_WEIGHT = 1 << 20;
+
+    /**
+     * The glyph tables shared by all SVG fonts.
+     */
+    private static final WeightedLRUCache cache
+        = new WeightedLRUCache(DEFAULT_MAX_WEIGHT);
+
+    /**
+     * Marks the glyphs that must be created from their element.
+     */
+    private static final Object NOT_COMPILED = new Object();
+
+    /**
+     * Returns the glyph table cache shared by all SVG fonts.  Use
+     * <code>setMaxWeight</code> to bound its memory use; with a maximum
+     * weight of zero fonts create every glyph from its element.
+     */
+    public static WeightedLRUCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the table of the given font element, from the cache if
+     * a font with the same URL, id and content was compiled before.
+     * The arrays are those of
+     * {@link SVGFontElementBridge#createFont}, in document order.
+     *
+     * @param fontElement the &lt;font&gt; element.
+     * @param glyphUnicodes the unicode values of the glyphs (with
+     *        arabic ligatures in visual order).
+     * @return the table, or null if the cache is disabled.
+     */
+    public static SVGGlyphTable getGlyphTable(Element fontElement,
+                                              String[] glyphUnicodes) {
+        if (cache.getMaxWeight() == 0) {
+            return null;
+        }
+        Key key = new Key(fontElement);
+        SVGGlyphTable table = (SVGGlyphTable)cache.get(key);
+        if (table == null
+            || table.glyphUnicodes.length != glyphUnicodes.length) {
+            table = new SVGGlyphTable(glyphUnicodes);
+            cache.put(key, table, key.weight);
+        }
+        return table;
+    }
+
+    private final String[] glyphUnicodes;
+
+    /**
+     * The compiled glyphs (GlyphData or NOT_COMPILED), null until
+     * first used; the last one is the missing glyph.  Entries only
+     * have final fields so they can be published without locking.
+     */
+    private final Object[] glyphs;
+
+    private volatile KerningTable hKerningTable;
+    private volatile KerningTable vKerningTable;
+
+    private SVGGlyphTable(String[] glyphUnicodes) {
+        this.glyphUnicodes = glyphUnicodes;
+        this.glyphs = new Object[glyphUnicodes.length + 1];
+    }
+
+    /**
+     * Creates the glyph at <code>index</code> (-1 for the missing
+     * glyph) for the given font size and text element, or returns null
+     * if it must be created by the glyph element bridge.
+     */
+    public Glyph createGlyph(Element glyphElement,
+                             Element textElement,
+                             int index,
+                             float fontSize,
+                             GVTFontFace fontFace,
+                             TextPaintInfo tpi) {
+        int i = (index < 0) ? glyphs.length - 1 : index;
+        Object o = glyphs[i];
+        if (o == null) {
+            o = compile(glyphElement);
+            glyphs[i] = o;
+        }
+        if (o == NOT_COMPILED) {
+            return null;
+        }
+        GlyphData g = (GlyphData)o;
+
+        float scale = fontSize/fontFace.getUnitsPerEm();
+        Shape dShape = null;
+        if (g.outline != null) {
+            AffineTransform at = AffineTransform.getScaleInstance(scale, -scale);
+            Path2D.Double p = new Path2D.Double
+                (CSSUtilities.convertFillRule(textElement));
+            p.append(g.outline.getPathIterator(at), false);
+            dShape = p;
+        }
+
+        float horizAdvX = g.horizAdvX * scale;
+        float vertAdvY = (Float.isNaN(g.vertAdvY))
+            ? fontFace.getUnitsPerEm() * scale
+            : g.vertAdvY * scale;
+        float vertOriginX = (Float.isNaN(g.vertOriginX))
+            ? horizAdvX / 2 * scale
+            : g.vertOriginX * scale;
+        float vertOriginY = (Float.isNaN(g.vertOriginY))
+            ? fontFace.getAscent() * -scale
+            : g.vertOriginY * -scale;
+        Point2D vertOrigin = new Point2D.Float(vertOriginX, vertOriginY);
+        Point2D horizOrigin = new Point2D.Float(g.horizOriginX * scale,
+                                                g.horizOriginY * -scale);
+
+        return new Glyph(g.unicode, g.names, g.orientation,
+                         g.arabicForm, g.lang, horizOrigin, vertOrigin,
+                         horizAdvX, vertAdvY, index,
+                         tpi, dShape, null);
+    }
+
+    /**
+     * Returns the horizontal kerning table of this font, in font
+     * units, creating it from the hkern elements of <code>font</code>
+     * if needed.
+     */
+    public KerningTable getHKerningTable(BridgeContext ctx,
+                                         Element[] hkernElements,
+                                         SVGGVTFont font) {
+        KerningTable t = hKerningTable;
+        if (t == null) {
+            t = createKerningTable(ctx, hkernElements, font);
+            hKerningTable = t;
+        }
+        return t;
+    }
+
+    /**
+     * Returns the vertical kerning table of this font, in font units,
+     * creating it from the vkern elements of <code>font</code> if
+     * needed.
+     */
+    public KerningTable getVKerningTable(BridgeContext ctx,
+                                         Element[] vkernElements,
+                                         SVGGVTFont font) {
+        KerningTable t = vKerningTable;
+        if (t == null) {
+            t = createKerningTable(ctx, vkernElements, font);
+            vKerningTable = t;
+        }
+        return t;
+    }
+
+    /**
+     * Creates a kerning table from hkern or vkern elements.
+     */
+    static KerningTable createKerningTable(BridgeContext ctx,
+                                           Element[] kernElements,
+                                           SVGGVTFont font) {
+        Kern[] entries = new Kern[kernElements.length];
+        for (int i = 0; i < kernElements.length; i++) {
+            Element kernElement = kernElements[i];
+            SVGKernElementBridge kernBridge =
+                (SVGKernElementBridge)ctx.getBridge(kernElement);
+            entries[i] = kernBridge.createKern(ctx, kernElement, font);
+        }
+        return new KerningTable(entries);
+    }
+
+    /**
+     * Compiles a glyph element, or returns NOT_COMPILED if it has
+     * children or if an attribute is missing or malformed.
+     */
+    static Object compile(Element glyphElement) {
+        for (Node n = glyphElement.getFirstChild();
+             n != null;
+             n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                return NOT_COMPILED;
+            }
+        }
+        Element fontElement = (Element)glyphElement.getParentNode();
+
+        Shape outline = null;
+        String d = glyphElement.getAttributeNS(null, SVG_D_ATTRIBUTE);
+        if (d.length() != 0) {
+            AWTPathProducer app = new AWTPathProducer();
+            try {
+                PathParser pathParser = new PathParser();
+                pathParser.setPathHandler(app);
+                pathParser.parse(d);
+            } catch (ParseException pEx) {
+                return NOT_COMPILED;
+            }
+            outline = new GeneralPath(app.getShape());
+        }
+
+        String unicode
+            = glyphElement.getAttributeNS(null, SVG_UNICODE_ATTRIBUTE);
+        String nameList
+            = glyphElement.getAttributeNS(null, SVG_GLYPH_NAME_ATTRIBUTE);
+        List names = new ArrayList();
+        StringTokenizer st = new StringTokenizer(nameList, " ,");
+        while (st.hasMoreTokens()) {
+            names.add(st.nextToken());
+        }
+        String orientation
+            = glyphElement.getAttributeNS(null, SVG_ORIENTATION_ATTRIBUTE);
+        String arabicForm
+            = glyphElement.getAttributeNS(null, SVG_ARABIC_FORM_ATTRIBUTE);
+        String lang = glyphElement.getAttributeNS(null, SVG_LANG_ATTRIBUTE);
+
+        try {
+            float horizAdvX = getNumber(glyphElement, fontElement,
+                                        SVG_HORIZ_ADV_X_ATTRIBUTE);
+            if (Float.isNaN(horizAdvX)) {
+                return NOT_COMPILED;
+            }
+            return new GlyphData
+                (unicode, Collections.unmodifiableList(names),
+                 orientation, arabicForm, lang, outline, horizAdvX,
+                 getNumber(glyphElement, fontElement,
+                           SVG_VERT_ADV_Y_ATTRIBUTE),
+                 getNumber(glyphElement, fontElement,
+                           SVG_VERT_ORIGIN_X_ATTRIBUTE),
+                 getNumber(glyphElement, fontElement,
+                           SVG_VERT_ORIGIN_Y_ATTRIBUTE),
+                 getNumber(null, fontElement, SVG_HORIZ_ORIGIN_X_ATTRIBUTE),
+                 getNumber(null, fontElement, SVG_HORIZ_ORIGIN_Y_ATTRIBUTE));
+        } catch (NumberFormatException nfEx) {
+            return NOT_COMPILED;
+        }
+    }
+
+    /**
+     * Returns the value of an attribute of the glyph element, or of
+     * the font element if the glyph does not specify it, or NaN if
+     * neither does (0 for the horizontal origin, which is only read
+     * on the font element).
+     */
+    static float getNumber(Element glyphElement, Element fontElement,
+                           String attr) {
+        String s = "";
+        if (glyphElement != null) {
+            s = glyphElement.getAttributeNS(null, attr);
+        }
+        if (s.length() == 0) {
+            s = fontElement.getAttributeNS(null, attr);
+            if (s.length() == 0) {
+                return (glyphElement == null) ? 0 : Float.NaN;
+            }
+        }
+        float f = SVGUtilities.convertSVGNumber(s);
+        if (Float.isNaN(f)) {
+            throw new NumberFormatException(s);
+        }
+        return f;
+    }
+
+    /**
+     * The size independent data of a glyph.
+     */
+    static final class GlyphData {
+        final String unicode;
+        final List names;
+        final String orientation;
+        final String arabicForm;
+        final String lang;
+        final Shape outline;
+        final float horizAdvX;
+        final float vertAdvY;
+        final float vertOriginX;
+        final float vertOriginY;
+        final float horizOriginX;
+        final float horizOriginY;
+
+        GlyphData(String unicode, List names, String orientation,
+                  String arabicForm, String lang, Shape outline,
+                  float horizAdvX, float vertAdvY,
+                  float vertOriginX, float vertOriginY,
+                  float horizOriginX, float horizOriginY) {
+            this.unicode = unicode;
+            this.names = names;
+            this.orientation = orientation;
+            this.arabicForm = arabicForm;
+            this.lang = lang;
+            this.outline = outline;
+            this.horizAdvX = horizAdvX;
+            this.vertAdvY = vertAdvY;
+            this.vertOriginX = vertOriginX;
+            this.vertOriginY = vertOriginY;
+            this.horizOriginX = horizOriginX;
+            this.horizOriginY = horizOriginY;
+        }
+    }
+
+    /**
+     * Identifies a version of a font element: the URL of its
+     * document, its id and a fingerprint of its content.
+     */
+    static final class Key {
+        final String url;
+        final String id;
+        final long fingerprint;
+        final int weight;
+        final int hash;
+
+        Key(Element fontElement) {
+            String u = fontElement.getOwnerDocument().getDocumentURI();
+            url = (u == null) ? "" : u;
+            id = fontElement.getAttributeNS(null, SVG_ID_ATTRIBUTE);
+            long[] acc = new long[2];
+            fingerprint(fontElement, acc);
+            fingerprint = acc[0];
+            weight = (int)Math.min(acc[1], Integer.MAX_VALUE);
+            hash = url.hashCode() * 31 + id.hashCode()
+                + (int)(fingerprint ^ (fingerprint >>> 32));
+        }
+
+        /**
+         * Accumulates the fingerprint of the subtree rooted at
+         * <code>n</code> in acc[0] and its weight in acc[1].
+         */
+        static void fingerprint(Node n, long[] acc) {
+            long h = acc[0];
+            switch (n.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                Element e = (Element)n;
+                h = mix(h, 1, e.getNodeName());
+                if (SVG_GLYPH_TAG.equals(e.getLocalName())
+                    || SVG_MISSING_GLYPH_TAG.equals(e.getLocalName())) {
+                    acc[1] += 1 + e.getAttributeNS(null, SVG_D_ATTRIBUTE)
+                                   .length();
+                }
+                NamedNodeMap attrs = e.getAttributes();
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Attr a = (Attr)attrs.item(i);
+                    h = mix(h, 2, a.getNodeName());
+                    h = mix(h, 3, a.getValue());
+                }
+                acc[0] = h;
+                for (Node c = n.getFirstChild();
+                     c != null;
+                     c = c.getNextSibling()) {
+                    fingerprint(c, acc);
+                }
+                acc[0] = mix(acc[0], 4, "");
+                return;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                acc[0] = mix(h, 5, n.getNodeValue());
+                return;
+            default:
+            }
+        }
+
+        /**
+         * Mixes a tagged string in a 64 bit hash.
+         */
+        static long mix(long h, int tag, String s) {
+            h = (h ^ tag) * 0x100000001b3L;
+            h = (h ^ s.hashCode()) * 0x100000001b3L;
+            h = (h ^ s.length()) * 0x100000001b3L;
+            return h ^ (h >>> 29);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return fingerprint == k.fingerprint && weight == k.weight
+                && url.equals(k.url) && id.equals(k.id);
+        }
+    }
+}
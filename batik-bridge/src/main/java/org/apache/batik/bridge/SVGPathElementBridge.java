@@ -140,6 +140,7 @@ public class SVGPathElementBridge extends SVGDecoratedShapeElementBridge
      * Returns the PathLength object that tracks the length of the path.
      */
     protected PathLength getPathLengthObj() {
+        ctx.flushMutations();
         Shape s = ((ShapeNode)node).getShape();
         if (pathLengthShape != s) {
             pathLength = new PathLength(s);
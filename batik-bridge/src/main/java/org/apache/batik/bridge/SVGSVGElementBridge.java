@@ -439,6 +439,7 @@ public class SVGSVGElementBridge
     }
 
     public List getIntersectionList(SVGRect svgRect, Element end) {
+        ctx.flushMutations();
         List ret = new ArrayList();
         Rectangle2D rect = new Rectangle2D.Float(svgRect.getX(),
                                                  svgRect.getY(),
@@ -574,6 +575,7 @@ public class SVGSVGElementBridge
     }
 
     public List getEnclosureList(SVGRect svgRect, Element end) {
+        ctx.flushMutations();
         List ret = new ArrayList();
         Rectangle2D rect = new Rectangle2D.Float(svgRect.getX(),
                                                  svgRect.getY(),
@@ -700,6 +702,7 @@ public class SVGSVGElementBridge
     }
 
     public boolean checkIntersection (Element element, SVGRect svgRect ) {
+        ctx.flushMutations();
 
         GraphicsNode svgGN = ctx.getGraphicsNode(e);
         if (svgGN == null) return false; // not in tree?
@@ -755,6 +758,7 @@ public class SVGSVGElementBridge
     }
 
     public boolean checkEnclosure (Element element, SVGRect svgRect ) {
+        ctx.flushMutations();
         GraphicsNode gn    = ctx.getGraphicsNode(element);
         Rectangle2D gnBounds = null;
         SVGContext svgctx = null;
@@ -2216,38 +2216,47 @@ public class SVGTextElementBridge extends AbstractGraphicsNodeBridge
         //Implementation of TextContent
 
         public int getNumberOfChars(){
+            ctx.flushMutations();
             return textBridge.getNumberOfChars(e);
         }
 
         public Rectangle2D getExtentOfChar(int charnum ){
+            ctx.flushMutations();
             return textBridge.getExtentOfChar(e,charnum);
         }
 
         public Point2D getStartPositionOfChar(int charnum){
+            ctx.flushMutations();
             return textBridge.getStartPositionOfChar(e,charnum);
         }
 
         public Point2D getEndPositionOfChar(int charnum){
+            ctx.flushMutations();
             return textBridge.getEndPositionOfChar(e,charnum);
         }
 
         public void selectSubString(int charnum, int nchars){
+            ctx.flushMutations();
             textBridge.selectSubString(e,charnum,nchars);
         }
 
         public float getRotationOfChar(int charnum){
+            ctx.flushMutations();
             return textBridge.getRotationOfChar(e,charnum);
         }
 
         public float getComputedTextLength(){
+            ctx.flushMutations();
             return textBridge.getComputedTextLength(e);
         }
 
         public float getSubStringLength(int charnum, int nchars){
+            ctx.flushMutations();
             return textBridge.getSubStringLength(e,charnum,nchars);
         }
 
         public int getCharNumAtPosition(float x , float y){
+            ctx.flushMutations();
             return textBridge.getCharNumAtPosition(e,x,y);
         }
     }
@@ -2341,38 +2350,47 @@ public class SVGTextElementBridge extends AbstractGraphicsNodeBridge
 
     //Implementation of TextContent
     public int getNumberOfChars(){
+        ctx.flushMutations();
         return getNumberOfChars(e);
     }
 
     public Rectangle2D getExtentOfChar(int charnum ){
+        ctx.flushMutations();
         return getExtentOfChar(e,charnum);
     }
 
     public Point2D getStartPositionOfChar(int charnum){
+        ctx.flushMutations();
         return getStartPositionOfChar(e,charnum);
     }
 
     public Point2D getEndPositionOfChar(int charnum){
+        ctx.flushMutations();
         return getEndPositionOfChar(e,charnum);
     }
 
     public void selectSubString(int charnum, int nchars){
+        ctx.flushMutations();
         selectSubString(e,charnum,nchars);
     }
 
     public float getRotationOfChar(int charnum){
+        ctx.flushMutations();
         return getRotationOfChar(e,charnum);
     }
 
     public float getComputedTextLength(){
+        ctx.flushMutations();
         return getComputedTextLength(e);
     }
 
     public float getSubStringLength(int charnum, int nchars){
+        ctx.flushMutations();
         return getSubStringLength(e,charnum,nchars);
     }
 
     public int getCharNumAtPosition(float x , float y){
+        ctx.flushMutations();
         return getCharNumAtPosition(e,x,y);
     }
 
@@ -32,8 +32,11 @@ import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.zip.DeflaterOutputStream;
@@ -129,15 +132,39 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
     };
 
     /**
-     * The timer for periodic or delayed tasks.
+     * The timer for periodic or delayed tasks, created when first
+     * needed.
      */
-    protected Timer timer = new Timer(true);
+    protected Timer timer;
+
+    /**
+     * The timer shared by the environments whose update queue runs on
+     * an executor, created when first needed.
+     */
+    private static Timer sharedTimer;
+
+    /**
+     * The tasks this environment scheduled and that may still run.
+     * Guarded by this environment.
+     */
+    protected Set timerTasks = new HashSet();
+
+    /**
+     * Whether this environment was interrupted.
+     */
+    protected volatile boolean interrupted;
 
     /**
      * The update manager.
      */
     protected UpdateManager updateManager;
 
+    /**
+     * The depth of nested script evaluations, so that only the
+     * outermost one is timed.
+     */
+    protected int scriptDepth;
+
     /**
      * The update runnable queue.
      */
@@ -401,7 +428,12 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
             }
             interpreter.bindObject(EVENT_NAME, event);
             interpreter.bindObject(ALTERNATE_EVENT_NAME, event);
-            interpreter.evaluate(new StringReader(script), desc);
+            long t = scriptStarted();
+            try {
+                interpreter.evaluate(new StringReader(script), desc);
+            } finally {
+                scriptEnded(t);
+            }
         } catch (IOException ioe) {
             // Do nothing, can't really happen with StringReader
         } catch (InterpreterException ie) {
@@ -411,11 +443,115 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         }
     }
 
+    /**
+     * Returns the timer for periodic or delayed tasks.  Environments
+     * whose update queue runs on an executor share one timer, so that
+     * they do not need a thread each.
+     */
+    protected synchronized Timer getTimer() {
+        if (timer == null) {
+            if (updateRunnableQueue.getExecutor() == null) {
+                timer = new Timer(true);
+            } else {
+                synchronized (ScriptingEnvironment.class) {
+                    if (sharedTimer == null) {
+                        sharedTimer = new Timer("ScriptingEnvironment-Timer",
+                                                true);
+                    }
+                    timer = sharedTimer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Schedules a task on the timer, once after <code>delay</code>
+     * milliseconds, or repeatedly if <code>period</code> is positive.
+     * The task is cancelled when this environment is interrupted.
+     */
+    protected synchronized void schedule(TimerTask tt, long delay,
+                                         long period) {
+        if (interrupted) {
+            return;
+        }
+        timerTasks.add(tt);
+        if (period > 0) {
+            getTimer().schedule(tt, delay, period);
+        } else {
+            getTimer().schedule(tt, delay);
+        }
+    }
+
+    /**
+     * Forgets a task that ran for the last time or was cancelled.
+     */
+    protected synchronized void timerTaskDone(TimerTask tt) {
+        timerTasks.remove(tt);
+    }
+
+    /**
+     * Queues a runnable for a timer task.  Nothing is queued once this
+     * environment was interrupted, as the timer may be shared.
+     * @return false if the runnable was not queued, in which case the
+     *         task should cancel itself.
+     */
+    protected boolean invokeFromTimer(Runnable r) {
+        if (interrupted) {
+            return false;
+        }
+        try {
+            updateRunnableQueue.invokeLater(r);
+        } catch (IllegalStateException ise) {
+            // The queue has exited.
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called before a script runs.
+     * @return the value to pass to {@link #scriptEnded(long)}.
+     */
+    protected long scriptStarted() {
+        if (scriptDepth++ != 0) {
+            return 0;
+        }
+        return updateManager.getUpdateMonitor().start();
+    }
+
+    /**
+     * Called after a script ran, to record its time in the
+     * update monitor.
+     * @param t The value returned by {@link #scriptStarted()}.
+     */
+    protected void scriptEnded(long t) {
+        scriptDepth--;
+        updateManager.getUpdateMonitor().end(UpdateMonitor.SCRIPT, t);
+    }
+
     /**
      * Interrupts the periodic tasks and dispose this ScriptingEnvironment.
      */
     public void interrupt() {
-        timer.cancel();
+        interrupted = true;
+        synchronized (this) {
+            if (timer != null) {
+                if (timer != sharedTimer) {
+                    timer.cancel();
+                } else {
+                    // Cancelled tasks stay in the shared timer, along
+                    // with this document and its interpreter, until
+                    // they are purged.
+                    Iterator i = timerTasks.iterator();
+                    while (i.hasNext()) {
+                        ((TimerTask)i.next()).cancel();
+                    }
+                    timer.purge();
+                }
+            }
+            timerTasks.clear();
+        }
         // Remove the scripting listeners.
         removeScriptingListeners(document.getDocumentElement());
 
@@ -702,10 +838,13 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
             script = s;
         }
         public void run() {
+            long t = scriptStarted();
             try {
                 interpreter.evaluate(script);
             } catch (InterpreterException ie) {
                 handleInterpreterException(ie);
+            } finally {
+                scriptEnded(t);
             }
         }
     }
@@ -734,6 +873,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                     return;
                 count--;
             }
+            long t = scriptStarted();
             try {
                 interpreter.evaluate(script);
             } catch (InterpreterException ie) {
@@ -750,6 +890,8 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                 synchronized (this) {
                     error = true;
                 }
+            } finally {
+                scriptEnded(t);
             }
         }
     }
@@ -776,6 +918,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                     return;
                 count--;
             }
+            long t = scriptStarted();
             try {
                 runnable.run();
             } catch (Exception e) {
@@ -787,6 +930,8 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                 synchronized (this) {
                     error = true;
                 }
+            } finally {
+                scriptEnded(t);
             }
         }
     }
@@ -816,11 +961,10 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                     eir.count++;
                 }
                 synchronized (updateRunnableQueue.getIteratorLock()) {
-                    if (updateRunnableQueue.getThread() == null) {
+                    if (!invokeFromTimer(eir)) {
                         cancel();
                         return;
                     }
-                    updateRunnableQueue.invokeLater(eir);
                 }
                 synchronized (eir) {
                     if (eir.error)
@@ -850,7 +994,10 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                 }
                 // XXX Should this have the same synchronization as in
                 //     IntervalScriptTimerTask.run() above?
-                updateRunnableQueue.invokeLater(eihr);
+                if (!invokeFromTimer(eihr)) {
+                    cancel();
+                    return;
+                }
                 synchronized (eihr) {
                     if (eihr.error)
                         cancel();
@@ -872,8 +1019,8 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
             }
 
             public void run() {
-                updateRunnableQueue.invokeLater
-                    (new EvaluateRunnable(script, interpreter));
+                timerTaskDone(this);
+                invokeFromTimer(new EvaluateRunnable(script, interpreter));
             }
         }
 
@@ -891,7 +1038,8 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
             }
 
             public void run() {
-                updateRunnableQueue.invokeLater(new Runnable() {
+                timerTaskDone(this);
+                invokeFromTimer(new Runnable() {
                         public void run() {
                             try {
                                 r.run();
@@ -934,7 +1082,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setInterval(final String script, long interval) {
             IntervalScriptTimerTask tt = new IntervalScriptTimerTask(script);
-            timer.schedule(tt, interval, interval);
+            schedule(tt, interval, interval);
             return tt;
         }
 
@@ -944,7 +1092,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setInterval(final Runnable r, long interval) {
             IntervalRunnableTimerTask tt = new IntervalRunnableTimerTask(r);
-            timer.schedule(tt, interval, interval);
+            schedule(tt, interval, interval);
             return tt;
         }
 
@@ -955,6 +1103,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         public void clearInterval(Object interval) {
             if (interval == null) return;
             ((TimerTask)interval).cancel();
+            timerTaskDone((TimerTask)interval);
         }
 
         /**
@@ -963,7 +1112,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setTimeout(final String script, long timeout) {
             TimeoutScriptTimerTask tt = new TimeoutScriptTimerTask(script);
-            timer.schedule(tt, timeout);
+            schedule(tt, timeout, 0);
             return tt;
         }
 
@@ -973,7 +1122,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setTimeout(final Runnable r, long timeout) {
             TimeoutRunnableTimerTask tt = new TimeoutRunnableTimerTask(r);
-            timer.schedule(tt, timeout);
+            schedule(tt, timeout, 0);
             return tt;
         }
 
@@ -984,6 +1133,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         public void clearTimeout(Object timeout) {
             if (timeout == null) return;
             ((TimerTask)timeout).cancel();
+            timerTaskDone((TimerTask)timeout);
         }
 
         /**
@@ -33,11 +33,13 @@ import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
 import java.text.CharacterIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.batik.gvt.font.AWTGVTFont;
 import org.apache.batik.gvt.font.GVTFont;
 import org.apache.batik.gvt.font.GVTFontFamily;
 import org.apache.batik.gvt.font.GVTGlyphMetrics;
@@ -145,6 +147,21 @@ public class StrokingTextPainter extends BasicTextPainter {
         return singleton;
     }
 
+    /**
+     * The bidi levels and matched fonts of the text chunks laid out so
+     * far, shared by all text painters.
+     */
+    protected static final TextLayoutCache layoutCache
+        = new TextLayoutCache(TextLayoutCache.DEFAULT_MAX_CHARS);
+
+    /**
+     * Returns the layout cache shared by all text painters, for
+     * statistics or to change its bound (a bound of zero disables it).
+     */
+    public static TextLayoutCache getTextLayoutCache() {
+        return layoutCache;
+    }
+
     /**
      * Paints the specified text node using the specified Graphics2D.
      *
@@ -202,14 +219,48 @@ public class StrokingTextPainter extends BasicTextPainter {
 
         // reorder each chunk ACI for bidi text
         int chunkStart = aci.getBeginIndex();
+        boolean useCache = layoutCache.getMaxWeight() > 0;
+        Object context = Arrays.asList(new Object[] { BIDI_LEVEL,
+                                                      fontRenderContext });
         for (int i = 0; i < chunkACIs.length; i++) {
-            BidiAttributedCharacterIterator iter;
-            iter = new BidiAttributedCharacterIterator
-                (chunkACIs[i], fontRenderContext, chunkStart);
-            chunkACIs    [i] = iter;
-            chunkCharMaps[i] = iter.getCharMap();
-            chunkStart += (chunkACIs[i].getEndIndex()-
-                           chunkACIs[i].getBeginIndex());
+            int numChars = chunkACIs[i].getEndIndex() -
+                           chunkACIs[i].getBeginIndex();
+            Object key = useCache
+                ? layoutCache.createKey(context, chunkACIs[i]) : null;
+            TextLayoutCache.AttributeRuns runs = (key == null)
+                ? null : layoutCache.getRuns(key);
+            if (runs != null) {
+                // Chunks left in logical order are cached as runs.
+                chunkACIs[i] = runs.apply(key);
+                int[] charMap = new int[numChars];
+                for (int j = 0; j < numChars; j++) {
+                    charMap[j] = chunkStart + j;
+                }
+                chunkCharMaps[i] = charMap;
+            } else {
+                BidiAttributedCharacterIterator.Reordering reordering
+                    = (key == null) ? null : layoutCache.getReordering(key);
+                BidiAttributedCharacterIterator iter;
+                iter = new BidiAttributedCharacterIterator
+                    (chunkACIs[i], fontRenderContext, chunkStart,
+                     reordering);
+                chunkACIs    [i] = iter;
+                chunkCharMaps[i] = iter.getCharMap();
+                if (key != null && reordering == null) {
+                    if (iter.getReordering() != null) {
+                        layoutCache.putReordering(key, iter.getReordering());
+                    } else {
+                        runs = TextLayoutCache.AttributeRuns.create
+                            (iter, BIDI_LEVEL);
+                        if (runs.getRunCount() == 1 &&
+                            runs.getRunLimit(0) == numChars &&
+                            ((Integer)runs.getValue(0)).intValue() == 0) {
+                            layoutCache.putRuns(key, runs);
+                        }
+                    }
+                }
+            }
+            chunkStart += numChars;
         }
         return computeTextRuns(node, aci, chunkACIs, chunkCharMaps);
     }
@@ -422,6 +473,40 @@ public class StrokingTextPainter extends BasicTextPainter {
     protected AttributedCharacterIterator createModifiedACIForFontMatching
         (AttributedCharacterIterator aci) {
 
+        Object key = null;
+        if (layoutCache.getMaxWeight() > 0) {
+            Object context = Arrays.asList
+                (new Object[] { GVT_FONT, getFontFamilyResolver() });
+            key = layoutCache.createKey(context, aci);
+        }
+        if (key == null) {
+            return matchFonts(aci);
+        }
+        TextLayoutCache.AttributeRuns runs = layoutCache.getRuns(key);
+        if (runs != null) {
+            return runs.apply(key);
+        }
+
+        AttributedCharacterIterator result = matchFonts(aci);
+        runs = TextLayoutCache.AttributeRuns.create(result, GVT_FONT);
+        for (int i = 0; i < runs.getRunCount(); i++) {
+            if (runs.getValue(i).getClass() != AWTGVTFont.class) {
+                // SVG fonts depend on their font element.
+                return result;
+            }
+        }
+        layoutCache.putRuns(key, runs);
+        return result;
+    }
+
+    /**
+     * Resolves the GVTFont attributes of <code>aci</code> without
+     * looking into the layout cache.
+     * @see #createModifiedACIForFontMatching
+     */
+    protected AttributedCharacterIterator matchFonts
+        (AttributedCharacterIterator aci) {
+
         aci.first();
         AttributedString as = null;
         int asOff = 0;
@@ -0,0 +1,461 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The names of the fonts installed on the system, enumerated on a
+ * background thread.
+ *
+ * <p>Asking the <code>GraphicsEnvironment</code> for every font can
+ * take seconds on systems with many fonts, so the enumeration is
+ * started early and only waited for when a name can't be resolved
+ * otherwise (see {@link #probe}).  The result can be kept in an index
+ * file, named by the
+ * <code>org.apache.batik.bridge.SystemFontIndex.file</code> system
+ * property, which is reused as long as the Java runtime and the
+ * modification times of the font directories (and their
+ * subdirectories) are unchanged.</p>
+ *
+ * @version $Id$
+ */
+public final class SystemFontIndex {
+
+    /**
+     * The system property naming the index file.
+     */
+    public static final String INDEX_FILE_PROPERTY
+        = "org.apache.batik.bridge.SystemFontIndex.file";
+
+    /**
+     * The first line of an index file.
+     */
+    static final String HEADER = "# Batik system font index 1";
+
+    /**
+     * Subdirectories deeper than this are not part of the stamp.
+     */
+    static final int MAX_DEPTH = 8;
+
+    /**
+     * The index file, or null.
+     */
+    private final File indexFile;
+
+    /**
+     * The directories fonts are installed in.
+     */
+    private final File[] fontDirectories;
+
+    /**
+     * The enumeration, once started.
+     */
+    private FutureTask task;
+
+    /**
+     * Whether the names were read from the index file.
+     */
+    private volatile boolean fromIndexFile;
+
+    /**
+     * Creates an index of the system fonts.
+     * @param indexFile the file the names are kept in, or null.
+     * @param fontDirectories the directories whose modification times
+     *        tell whether the index file is up to date.
+     */
+    public SystemFontIndex(File indexFile, File[] fontDirectories) {
+        this.indexFile = indexFile;
+        this.fontDirectories = fontDirectories;
+    }
+
+    /**
+     * Creates an index kept in the file named by the
+     * <code>INDEX_FILE_PROPERTY</code> system property, if set.
+     */
+    public static SystemFontIndex createDefault() {
+        File f = null;
+        try {
+            String s = System.getProperty(INDEX_FILE_PROPERTY);
+            if (s != null && s.length() != 0) {
+                f = new File(s);
+            }
+        } catch (SecurityException se) {
+        }
+        return new SystemFontIndex(f, getDefaultFontDirectories());
+    }
+
+    /**
+     * Returns the directories fonts are usually installed in: the one
+     * of the Java runtime and those of the platform.
+     */
+    public static File[] getDefaultFontDirectories() {
+        List l = new ArrayList();
+        try {
+            String home = System.getProperty("java.home");
+            String user = System.getProperty("user.home");
+            String os = System.getProperty("os.name", "").toLowerCase();
+            l.add(new File(home, "lib" + File.separator + "fonts"));
+            if (os.startsWith("windows")) {
+                String windir = System.getenv("WINDIR");
+                if (windir != null) {
+                    l.add(new File(windir, "Fonts"));
+                }
+            } else if (os.startsWith("mac")) {
+                l.add(new File("/Library/Fonts"));
+                l.add(new File("/System/Library/Fonts"));
+                l.add(new File(user, "Library/Fonts"));
+            } else {
+                l.add(new File("/usr/share/fonts"));
+                l.add(new File("/usr/local/share/fonts"));
+                l.add(new File(user, ".fonts"));
+                l.add(new File(user, ".local/share/fonts"));
+            }
+        } catch (SecurityException se) {
+        }
+        return (File[])l.toArray(new File[l.size()]);
+    }
+
+    /**
+     * Starts the enumeration on a daemon thread, if not already done.
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        task = new FutureTask(new Callable() {
+                public Object call() throws Exception {
+                    return load();
+                }
+            });
+        Thread t = new Thread(task, "Batik SystemFontIndex");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Whether the enumeration has completed.
+     */
+    public synchronized boolean isDone() {
+        return (task != null) && task.isDone();
+    }
+
+    /**
+     * Whether the names were read from the index file rather than
+     * enumerated.  Only meaningful once the enumeration is done.
+     */
+    public boolean isFromIndexFile() {
+        return fromIndexFile;
+    }
+
+    /**
+     * Returns the map from lower case font names (family names, also
+     * without spaces and with dashes instead of spaces, and face
+     * names) to the names the fonts can be created with.  Waits for
+     * the enumeration to complete, starting it if needed.
+     */
+    public Map getNames() {
+        return ((Result)getResult()).names;
+    }
+
+    /**
+     * Returns the family names of the system fonts.  Waits for the
+     * enumeration to complete, starting it if needed.
+     */
+    public List getFamilyNames() {
+        return ((Result)getResult()).families;
+    }
+
+    private Object getResult() {
+        FutureTask t;
+        synchronized (this) {
+            start();
+            t = task;
+        }
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return t.get();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ee) {
+            Throwable c = ee.getCause();
+            if (c instanceof RuntimeException) {
+                throw (RuntimeException)c;
+            }
+            if (c instanceof Error) {
+                throw (Error)c;
+            }
+            throw new RuntimeException(c);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the name the font called <code>name</code> (in any
+     * case) can be created with, if it is found without enumerating
+     * every font, or null.
+     */
+    public static String probe(String name) {
+        Font f = new Font(name, Font.PLAIN, 1);
+        String family = f.getFamily();
+        if (family.equalsIgnoreCase(name)) {
+            return family;
+        }
+        String face = f.getFontName();
+        if (face.equalsIgnoreCase(name)) {
+            return face;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the index file if it is up to date, and enumerates the
+     * fonts (updating the index file) otherwise.
+     */
+    Result load() {
+        String stamp = null;
+        if (indexFile != null) {
+            stamp = computeStamp();
+            try {
+                Result r = read(stamp);
+                if (r != null) {
+                    fromIndexFile = true;
+                    return r;
+                }
+            } catch (IOException ioe) {
+                // Enumerate.
+            } catch (SecurityException se) {
+            }
+        }
+
+        GraphicsEnvironment env;
+        env = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        String[] families = env.getAvailableFontFamilyNames();
+        Font[] all = env.getAllFonts();
+        String[] faces = new String[all.length];
+        for (int i = 0; i < all.length; i++) {
+            faces[i] = all[i].getFontName();
+        }
+
+        if (indexFile != null) {
+            try {
+                write(stamp, families, faces);
+            } catch (IOException ioe) {
+                // The index is only an optimization.
+            } catch (SecurityException se) {
+            }
+        }
+        return new Result(families, faces);
+    }
+
+    /**
+     * Describes the Java runtime and the font directories, so an
+     * index file can be checked against them.
+     */
+    String computeStamp() {
+        StringBuffer sb = new StringBuffer();
+        sb.append(System.getProperty("java.home")).append('\n');
+        sb.append(System.getProperty("java.version")).append('\n');
+        for (int i = 0; i < fontDirectories.length; i++) {
+            appendStamp(sb, fontDirectories[i], 0);
+        }
+        return sb.toString();
+    }
+
+    private static void appendStamp(StringBuffer sb, File dir, int depth) {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        sb.append(dir.lastModified()).append(' ').append(dir.getPath());
+        sb.append('\n');
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                appendStamp(sb, children[i], depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Reads the index file.  Returns null if it doesn't exist or
+     * doesn't match <code>stamp</code>.
+     */
+    Result read(String stamp) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        Reader r = new InputStreamReader(new FileInputStream(indexFile),
+                                         "UTF-8");
+        try {
+            BufferedReader br = new BufferedReader(r);
+            if (!HEADER.equals(br.readLine())) {
+                return null;
+            }
+            StringBuffer sb = new StringBuffer();
+            List families = new ArrayList();
+            List faces = new ArrayList();
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.length() < 2) {
+                    continue;
+                }
+                String v = line.substring(2);
+                switch (line.charAt(0)) {
+                case 'S':
+                    sb.append(v).append('\n');
+                    break;
+                case 'F':
+                    families.add(v);
+                    break;
+                case 'N':
+                    faces.add(v);
+                    break;
+                }
+            }
+            if (!stamp.equals(sb.toString())) {
+                return null;
+            }
+            return new Result
+                ((String[])families.toArray(new String[families.size()]),
+                 (String[])faces.toArray(new String[faces.size()]));
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Writes the index file, through a temporary file so concurrent
+     * processes never read a partial index.
+     */
+    void write(String stamp, String[] families, String[] faces)
+        throws IOException {
+        File dir = indexFile.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        File tmp = File.createTempFile("fonts", ".tmp", dir);
+        Writer w = new BufferedWriter
+            (new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            w.write(HEADER);
+            w.write('\n');
+            int s = 0;
+            for (int i = stamp.indexOf('\n'); i != -1;
+                 s = i + 1, i = stamp.indexOf('\n', s)) {
+                w.write("S ");
+                w.write(stamp, s, i - s);
+                w.write('\n');
+            }
+            for (int i = 0; i < families.length; i++) {
+                w.write("F ");
+                w.write(families[i]);
+                w.write('\n');
+            }
+            for (int i = 0; i < faces.length; i++) {
+                w.write("N ");
+                w.write(faces[i]);
+                w.write('\n');
+            }
+        } finally {
+            w.close();
+        }
+        if (!tmp.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmp.renameTo(indexFile)) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * The enumerated names.
+     */
+    static final class Result {
+        final List families;
+        final Map names;
+
+        Result(String[] families, String[] faces) {
+            Map m = new HashMap(families.length * 4 + faces.length * 2);
+            for (int i = 0; i < families.length; i++) {
+                String f = families[i];
+                m.put(f.toLowerCase(), f);
+
+                // also add the font name with the spaces removed
+                if (f.indexOf(' ') != -1) {
+                    StringBuffer sb = new StringBuffer(f.length());
+                    for (int j = 0; j < f.length(); j++) {
+                        char c = f.charAt(j);
+                        if (!Character.isWhitespace(c)) {
+                            sb.append(c);
+                        }
+                    }
+                    m.put(sb.toString().toLowerCase(), f);
+
+                    // also add the font name with spaces replaced by
+                    // dashes
+                    m.put(f.replace(' ', '-').toLowerCase(), f);
+                }
+            }
+
+            //Also register all font names, not just font families.
+            //Example: Font Family: "Univers", but Font Name: "Univers 45 Light"
+            //Without this, matching "Univers 45 Light" is not possible.
+            for (int i = 0; i < faces.length; i++) {
+                m.put(faces[i].toLowerCase(), faces[i]);
+            }
+            this.families = Collections.unmodifiableList
+                (Arrays.asList((Object[])families.clone()));
+            this.names = Collections.unmodifiableMap(m);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.batik.gvt.flow.TextLineBreaks;
+import org.apache.batik.gvt.font.AWTGVTFont;
+import org.apache.batik.gvt.font.GVTFont;
+import org.apache.batik.gvt.text.BidiAttributedCharacterIterator;
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+import org.apache.batik.util.WeightedLRUCache;
+
+/**
+ * A cache of the attributes text layout adds to text chunks, shared by
+ * all text nodes.
+ *
+ * <p>Documents such as maps and charts repeat the same labels many
+ * times, and for each of them StrokingTextPainter runs the bidi
+ * algorithm and matches fonts to characters before creating glyphs,
+ * which is most of the layout time of a short label.  Both steps only
+ * add an attribute to the chunk (BIDI_LEVEL and GVT_FONT
+ * respectively), which only depends on the characters of the chunk
+ * and on a few of their attributes.  This cache maps the characters
+ * and those attributes (see {@link #createKey}) to the runs of the
+ * added attribute ({@link AttributeRuns}), which are immutable and
+ * applied to the chunks of any text node with the same key.  Chunks
+ * that bidi reorders map to their reordering and Arabic shaping
+ * instead (a <code>BidiAttributedCharacterIterator.Reordering</code>).</p>
+ *
+ * <p>Glyph vectors are still created for every text node since they
+ * hold its glyph positions.  The weight of an entry is the number of
+ * characters of its key.</p>
+ *
+ * @version $Id$
+ */
+public class TextLayoutCache extends WeightedLRUCache {
+
+    /**
+     * The default maximum number of cached characters.
+     */
+    public static final int DEFAULT_MAX_CHARS = 1 << 18;
+
+    /**
+     * Attributes that neither change bidi levels nor font matching:
+     * positions, paint, anchoring and element identity.
+     */
+    protected static final Set IGNORED_ATTRIBUTES = new HashSet();
+
+    static {
+        IGNORED_ATTRIBUTES.add(GVTAttributedCharacterIterator.TextAttribute.X);
+        IGNORED_ATTRIBUTES.add(GVTAttributedCharacterIterator.TextAttribute.Y);
+        IGNORED_ATTRIBUTES.add(GVTAttributedCharacterIterator.TextAttribute.DX);
+        IGNORED_ATTRIBUTES.add(GVTAttributedCharacterIterator.TextAttribute.DY);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.ROTATION);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.TEXTPATH);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.ANCHOR_TYPE);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.PAINT_INFO);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.TEXT_COMPOUND_ID);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.TEXT_COMPOUND_DELIMITER);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.GVT_FONT_FAMILIES);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.CHAR_INDEX);
+        // Flow bookkeeping: new objects (and word numbers) on every
+        // rebuild of the flow, so keeping them would make every
+        // paragraph of an edited flow miss the cache.
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.FLOW_PARAGRAPH);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.FLOW_EMPTY_PARAGRAPH);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.FLOW_LINE_BREAK);
+        IGNORED_ATTRIBUTES.add
+            (GVTAttributedCharacterIterator.TextAttribute.FLOW_REGIONS);
+        IGNORED_ATTRIBUTES.add(TextLineBreaks.WORD_LIMIT);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param maxChars the maximum number of cached characters.
+     */
+    public TextLayoutCache(long maxChars) {
+        super(maxChars);
+    }
+
+    /**
+     * Returns the key of <code>aci</code> for the layout step
+     * identified by <code>context</code>, or null if the result of the
+     * step can't be cached.  The key is made of the context, the
+     * characters, the limits of the attribute runs and the values of
+     * the attributes not in IGNORED_ATTRIBUTES.  The fonts in
+     * GVT_FONTS are compared by family and size, and only when they
+     * are all plain <code>AWTGVTFont</code>s (SVG fonts depend on
+     * their element).  Text using alternate glyphs is never cached.
+     */
+    public Object createKey(Object context, AttributedCharacterIterator aci) {
+        int begin = aci.getBeginIndex();
+        int end   = aci.getEndIndex();
+        if (end == begin) {
+            return null;
+        }
+        char[] text = new char[end - begin];
+        char c = aci.first();
+        for (int i = 0; i < text.length; i++) {
+            text[i] = c;
+            c = aci.next();
+        }
+
+        List limits = new ArrayList();
+        List maps = new ArrayList();
+        List runAttributes = new ArrayList();
+        int index = begin;
+        while (index < end) {
+            aci.setIndex(index);
+            // The attribute maps of AttributedString iterators build
+            // their entry set on every call, including size().
+            Set attrs = aci.getAttributes().entrySet();
+            int limit = aci.getRunLimit();
+            Map all = new HashMap(attrs.size() * 2);
+            Map m = new HashMap(attrs.size() * 2);
+            Iterator it = attrs.iterator();
+            while (it.hasNext()) {
+                Map.Entry e = (Map.Entry)it.next();
+                Object k = e.getKey();
+                Object v = e.getValue();
+                if (k == null || v == null) {
+                    continue;
+                }
+                all.put(k, v);
+                if (IGNORED_ATTRIBUTES.contains(k)) {
+                    continue;
+                }
+                if (k == GVTAttributedCharacterIterator.TextAttribute.ALT_GLYPH_HANDLER) {
+                    return null;
+                }
+                if (k == GVTAttributedCharacterIterator.TextAttribute.GVT_FONTS) {
+                    v = getFontsKey((List)v);
+                    if (v == null) {
+                        return null;
+                    }
+                }
+                m.put(k, v);
+            }
+            limits.add(new Integer(limit - begin));
+            maps.add(m);
+            runAttributes.add(all);
+            index = limit;
+        }
+        aci.first();
+
+        int[] l = new int[limits.size()];
+        for (int i = 0; i < l.length; i++) {
+            l[i] = ((Integer)limits.get(i)).intValue();
+        }
+        Key key = new Key(context, text, l, maps.toArray());
+        key.runAttributes
+            = (Map[])runAttributes.toArray(new Map[runAttributes.size()]);
+        return key;
+    }
+
+    /**
+     * Returns a value equal for equivalent lists of AWTGVTFonts, or
+     * null if the list has other fonts.  The underlying java.awt.Font
+     * is part of the key, so fonts of one family loaded from different
+     * sources or with different attributes do not share layouts.
+     */
+    protected static Object getFontsKey(List fonts) {
+        List l = new ArrayList(fonts.size() * 2);
+        for (int i = 0; i < fonts.size(); i++) {
+            GVTFont f = (GVTFont)fonts.get(i);
+            if (f.getClass() != AWTGVTFont.class) {
+                return null;
+            }
+            l.add(((AWTGVTFont)f).getAWTFont());
+            l.add(new Float(f.getSize()));
+        }
+        return l;
+    }
+
+    /**
+     * Returns the runs cached for <code>key</code>, or null.
+     */
+    public AttributeRuns getRuns(Object key) {
+        Object v = get(key);
+        return (v instanceof AttributeRuns) ? (AttributeRuns)v : null;
+    }
+
+    /**
+     * Caches <code>runs</code> for <code>key</code>, a key returned by
+     * {@link #createKey}.
+     */
+    public void putRuns(Object key, AttributeRuns runs) {
+        Key k = (Key)key;
+        k.runAttributes = null;
+        put(k, runs, k.text.length);
+    }
+
+    /**
+     * Returns the bidi reordering cached for <code>key</code>, or null.
+     */
+    public BidiAttributedCharacterIterator.Reordering getReordering
+        (Object key) {
+        Object v = get(key);
+        return (v instanceof BidiAttributedCharacterIterator.Reordering)
+            ? (BidiAttributedCharacterIterator.Reordering)v : null;
+    }
+
+    /**
+     * Caches the bidi reordering of the chunk of <code>key</code>, a
+     * key returned by {@link #createKey}.
+     */
+    public void putReordering(Object key,
+                              BidiAttributedCharacterIterator.Reordering r) {
+        Key k = (Key)key;
+        k.runAttributes = null;
+        put(k, r, k.text.length);
+    }
+
+    /**
+     * The key of a text chunk.
+     */
+    protected static final class Key {
+        final Object context;
+        final char[] text;
+        final int[] limits;
+        final Object[] attributes;
+        final int hash;
+
+        /**
+         * The attributes of the runs, not part of the key.  They are
+         * kept until the key is cached, to build chunks from the key.
+         */
+        Map[] runAttributes;
+
+        Key(Object context, char[] text, int[] limits, Object[] attributes) {
+            this.context = context;
+            this.text = text;
+            this.limits = limits;
+            this.attributes = attributes;
+            int h = context.hashCode();
+            h = h * 31 + Arrays.hashCode(text);
+            h = h * 31 + Arrays.hashCode(limits);
+            h = h * 31 + Arrays.hashCode(attributes);
+            this.hash = h;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return (hash == k.hash)
+                && context.equals(k.context)
+                && Arrays.equals(text, k.text)
+                && Arrays.equals(limits, k.limits)
+                && Arrays.equals(attributes, k.attributes);
+        }
+    }
+
+    /**
+     * The runs of one attribute over a text chunk.  Instances are
+     * immutable and can be applied to any chunk with the same key.
+     */
+    public static final class AttributeRuns {
+        final AttributedCharacterIterator.Attribute attribute;
+        final int[] starts;
+        final int[] limits;
+        final Object[] values;
+
+        AttributeRuns(AttributedCharacterIterator.Attribute attribute,
+                      int[] starts, int[] limits, Object[] values) {
+            this.attribute = attribute;
+            this.starts = starts;
+            this.limits = limits;
+            this.values = values;
+        }
+
+        /**
+         * Returns the runs of <code>attribute</code> in
+         * <code>aci</code>, relative to its begin index.  Characters
+         * without the attribute are skipped.
+         */
+        public static AttributeRuns create
+            (AttributedCharacterIterator aci,
+             AttributedCharacterIterator.Attribute attribute) {
+            int begin = aci.getBeginIndex();
+            int end   = aci.getEndIndex();
+            List l = new ArrayList();
+            int index = begin;
+            while (index < end) {
+                aci.setIndex(index);
+                int limit = aci.getRunLimit(attribute);
+                Object v = aci.getAttribute(attribute);
+                if (v != null) {
+                    l.add(new Object[] { new Integer(index - begin),
+                                         new Integer(limit - begin), v });
+                }
+                index = limit;
+            }
+            aci.first();
+            int n = l.size();
+            int[] s = new int[n];
+            int[] e = new int[n];
+            Object[] v = new Object[n];
+            for (int i = 0; i < n; i++) {
+                Object[] r = (Object[])l.get(i);
+                s[i] = ((Integer)r[0]).intValue();
+                e[i] = ((Integer)r[1]).intValue();
+                v[i] = r[2];
+            }
+            return new AttributeRuns(attribute, s, e, v);
+        }
+
+        /**
+         * Returns the number of runs.
+         */
+        public int getRunCount() {
+            return values.length;
+        }
+
+        /**
+         * Returns the start of the given run, relative to the chunk.
+         */
+        public int getRunStart(int run) {
+            return starts[run];
+        }
+
+        /**
+         * Returns the limit of the given run, relative to the chunk.
+         */
+        public int getRunLimit(int run) {
+            return limits[run];
+        }
+
+        /**
+         * Returns the value of the given run.
+         */
+        public Object getValue(int run) {
+            return values[run];
+        }
+
+        /**
+         * Returns the chunk <code>key</code> was created from, starting
+         * at index zero, with these runs added.  Attributes with null
+         * keys or values are left out.  The key must not have been
+         * cached.
+         */
+        public AttributedCharacterIterator apply(Object key) {
+            Key k = (Key)key;
+            AttributedString as = new AttributedString(new String(k.text));
+            int start = 0;
+            for (int i = 0; i < k.limits.length; i++) {
+                as.addAttributes(k.runAttributes[i], start, k.limits[i]);
+                start = k.limits[i];
+            }
+            for (int i = 0; i < values.length; i++) {
+                as.addAttribute(attribute, values[i], starts[i], limits[i]);
+            }
+            return as.getIterator();
+        }
+    }
+}
@@ -26,9 +26,11 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
 import java.text.CharacterIterator;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.batik.gvt.AbstractGraphicsNode;
+import org.apache.batik.gvt.PaintedNode;
 import org.apache.batik.gvt.Selectable;
 import org.apache.batik.gvt.text.AttributedCharacterSpanIterator;
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
@@ -40,7 +42,8 @@ import org.apache.batik.gvt.text.TextPaintInfo;
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
  */
-public class TextNode extends AbstractGraphicsNode implements Selectable {
+public class TextNode extends AbstractGraphicsNode
+    implements Selectable, PaintedNode {
 
     public static final 
         AttributedCharacterIterator.Attribute PAINT_INFO =
@@ -218,6 +221,41 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
         return aci;
     }
 
+    /**
+     * Returns the fill, stroke and decoration paints of the text.
+     */
+    public List getPaints() {
+        List paints = new ArrayList();
+        if (aci == null) {
+            return paints;
+        }
+        synchronized (this) {
+            int end = aci.getEndIndex();
+            for (int i = aci.getBeginIndex(); i < end;
+                 i = aci.getRunLimit(PAINT_INFO)) {
+                aci.setIndex(i);
+                TextPaintInfo tpi = (TextPaintInfo)aci.getAttribute(PAINT_INFO);
+                if (tpi != null) {
+                    addPaint(paints, tpi.fillPaint);
+                    addPaint(paints, tpi.strokePaint);
+                    addPaint(paints, tpi.underlinePaint);
+                    addPaint(paints, tpi.underlineStrokePaint);
+                    addPaint(paints, tpi.overlinePaint);
+                    addPaint(paints, tpi.overlineStrokePaint);
+                    addPaint(paints, tpi.strikethroughPaint);
+                    addPaint(paints, tpi.strikethroughStrokePaint);
+                }
+            }
+        }
+        return paints;
+    }
+
+    private static void addPaint(List paints, Object paint) {
+        if ((paint != null) && !paints.contains(paint)) {
+            paints.add(paint);
+        }
+    }
+
     //
     // Geometric methods
     //
@@ -398,8 +436,12 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
         if (clip != null && !(clip instanceof GeneralPath)) {
             g2d.setClip(new GeneralPath(clip));
         }
-        // Paint the text
-        textPainter.paint(this, g2d);
+        // Paint the text.  Drawing moves the character iterator and
+        // may move the glyphs of the layouts, so a text node is only
+        // painted by one thread at a time.
+        synchronized (this) {
+            textPainter.paint(this, g2d);
+        }
     }
 
     //
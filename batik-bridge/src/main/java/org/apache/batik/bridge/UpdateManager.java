@@ -18,6 +18,7 @@
  */
 package org.apache.batik.bridge;
 
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.util.Collection;
@@ -29,11 +30,14 @@ import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import javax.management.JMException;
+
 import org.apache.batik.anim.dom.SVGOMDocument;
 import org.apache.batik.bridge.svg12.DefaultXBLManager;
 import org.apache.batik.bridge.svg12.SVG12BridgeContext;
 import org.apache.batik.bridge.svg12.SVG12ScriptingEnvironment;
 import org.apache.batik.dom.events.AbstractEvent;
+import org.apache.batik.ext.awt.geom.DirtyRegionAccumulator;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.RootGraphicsNode;
 import org.apache.batik.gvt.UpdateTracker;
@@ -113,6 +117,12 @@ public class UpdateManager  {
      */
     protected RepaintManager repaintManager;
 
+    /**
+     * How the repaint manager merges dirty rectangles.
+     */
+    protected volatile int dirtyRegionPolicy =
+        DirtyRegionAccumulator.THROUGHPUT;
+
     /**
      * The update tracker.
      */
@@ -144,6 +154,17 @@ public class UpdateManager  {
      */
     protected int minRepaintTime;
 
+    /**
+     * Whether DOM changes made by a runnable are applied to the GVT
+     * tree in one pass when it returns.
+     */
+    protected boolean mutationBatching;
+
+    /**
+     * The monitor collecting statistics about the updates.
+     */
+    protected UpdateMonitor updateMonitor;
+
     /**
      * Creates a new update manager.
      * @param ctx The bridge context.
@@ -161,6 +182,7 @@ public class UpdateManager  {
         updateRunnableQueue = RunnableQueue.createRunnableQueue();
         runHandler = createRunHandler();
         updateRunnableQueue.setRunHandler(runHandler);
+        updateMonitor = new UpdateMonitor(updateRunnableQueue);
 
         graphicsNode = gn;
 
@@ -171,7 +193,7 @@ public class UpdateManager  {
         // primary document also need to have their scripting
         // environments initialized.
         secondaryBridgeContexts =
-            (BridgeContext[]) ctx.getChildContexts().clone();
+            ctx.getChildContexts().clone();
         secondaryScriptingEnvironments =
             new ScriptingEnvironment[secondaryBridgeContexts.length];
         for (int i = 0; i < secondaryBridgeContexts.length; i++) {
@@ -194,6 +216,29 @@ public class UpdateManager  {
         this.minRepaintTime = minRepaintTime;
     }
 
+    /**
+     * Returns whether DOM changes are batched per runnable.
+     */
+    public boolean isMutationBatching() {
+        return mutationBatching;
+    }
+
+    /**
+     * Sets whether the attribute, animation and CSS property changes
+     * a runnable makes to the primary document are recorded and
+     * applied to the GVT tree in one pass when it returns, each
+     * element and property once, rather than as each change happens.
+     * The pass runs before a thread waiting in invokeAndWait is
+     * released and before the repaint, so a runnable's changes still
+     * produce a single dirty region.  Geometry queries (getBBox, text
+     * metrics and the like) made by the runnable apply the recorded
+     * changes first.
+     * @see BridgeContext#setMutationBatching(boolean)
+     */
+    public void setMutationBatching(boolean b) {
+        mutationBatching = b;
+    }
+
     /**
      * Creates an appropriate ScriptingEnvironment and XBL manager for
      * the given document.
@@ -285,6 +330,8 @@ public class UpdateManager  {
                         }
 
                         repaintManager = new RepaintManager(r);
+                        repaintManager.setDirtyRegionPolicy
+                            (dirtyRegionPolicy);
 
                         // Send the UpdateManagerStarted event.
                         UpdateManagerEvent ev = new UpdateManagerEvent
@@ -312,6 +359,15 @@ public class UpdateManager  {
         return updateRunnableQueue;
     }
 
+    /**
+     * Returns the monitor collecting statistics about the updates.
+     * It is disabled until {@link UpdateMonitor#setEnabled(boolean)}
+     * is called.
+     */
+    public UpdateMonitor getUpdateMonitor() {
+        return updateMonitor;
+    }
+
     /**
      * Returns the repaint manager.
      */
@@ -319,6 +375,27 @@ public class UpdateManager  {
         return repaintManager;
     }
 
+    /**
+     * Sets how the dirty rectangles of each repaint are merged:
+     * {@link DirtyRegionAccumulator#THROUGHPUT}, the default, paints
+     * a few large rectangles, while {@link DirtyRegionAccumulator#LATENCY}
+     * paints more, smaller ones and so fewer pixels.
+     */
+    public void setDirtyRegionPolicy(int policy) {
+        dirtyRegionPolicy = policy;
+        RepaintManager rm = repaintManager;
+        if (rm != null) {
+            rm.setDirtyRegionPolicy(policy);
+        }
+    }
+
+    /**
+     * Returns how the dirty rectangles of each repaint are merged.
+     */
+    public int getDirtyRegionPolicy() {
+        return dirtyRegionPolicy;
+    }
+
     /**
      * Returns the GVT update tracker.
      */
@@ -380,6 +457,11 @@ public class UpdateManager  {
      * Interrupts the manager tasks.
      */
     public void interrupt() {
+        try {
+            updateMonitor.unregisterMBean();
+        } catch (JMException e) {
+            // Nothing more we can do.
+        }
         Runnable r = new Runnable() {
                 public void run() {
                     synchronized (UpdateManager.this) {
@@ -388,7 +470,7 @@ public class UpdateManager  {
                         } else {
                             running = false;
                             scriptingEnvironment.interrupt();
-                            updateRunnableQueue.getThread().halt();
+                            updateRunnableQueue.halt();
                         }
                     }
                 }
@@ -437,7 +519,7 @@ public class UpdateManager  {
                         // everything before we send the
                         // UpdateMangerStopped event.
                         scriptingEnvironment.interrupt();
-                        updateRunnableQueue.getThread().halt();
+                        updateRunnableQueue.halt();
                         bridgeContext.dispose();
 
                         // Send the UpdateManagerStopped event.
@@ -506,13 +588,18 @@ public class UpdateManager  {
                 (this, repaintManager.getOffScreen(), null);
             fireEvent(updateStartedDispatcher, ev);
 
+            long t = updateMonitor.start();
             Collection c = repaintManager.updateRendering(areas);
+            updateMonitor.end(UpdateMonitor.PAINT, t);
             List l = new ArrayList(c);
 
             ev = new UpdateManagerEvent
                 (this, repaintManager.getOffScreen(),
                  l, clearPaintingTransform);
             fireEvent(updateCompletedDispatcher, ev);
+            if (t != 0) {
+                updateMonitor.frameCompleted(getArea(l));
+            }
         } catch (ThreadDeath td) {
             UpdateManagerEvent ev = new UpdateManagerEvent
                 (this, null, null);
@@ -525,6 +612,19 @@ public class UpdateManager  {
         }
     }
 
+    /**
+     * Returns the total area of the given list of rectangles.
+     */
+    protected static long getArea(List rects) {
+        long area = 0;
+        Iterator i = rects.iterator();
+        while (i.hasNext()) {
+            Rectangle r = (Rectangle)i.next();
+            area += (long)r.width * r.height;
+        }
+        return area;
+    }
+
     /**
      * This tracks when the rendering first got 'out of date'
      * with respect to the document.
@@ -566,8 +666,10 @@ public class UpdateManager  {
             }
         }
 
+        long t = updateMonitor.start();
         List dirtyAreas = updateTracker.getDirtyAreas();
         updateTracker.clear();
+        updateMonitor.end(UpdateMonitor.DIRTY_AREAS, t);
         if (dirtyAreas != null) {
             updateRendering(dirtyAreas, false);
         }
@@ -594,8 +696,10 @@ public class UpdateManager  {
             return;
         }
 
+        long t = updateMonitor.start();
         List dirtyAreas = updateTracker.getDirtyAreas();
         updateTracker.clear();
+        updateMonitor.end(UpdateMonitor.DIRTY_AREAS, t);
         if (dirtyAreas != null) {
             updateRendering(dirtyAreas, false);
         }
@@ -848,15 +952,42 @@ public class UpdateManager  {
     }
 
     protected class UpdateManagerRunHander
-        extends RunnableQueue.RunHandlerAdapter {
+        extends RunnableQueue.RunHandlerAdapter
+        implements RunnableQueue.ReturnHandler {
+
+        /**
+         * When the current runnable started, if it is being timed.
+         */
+        protected long runnableStartTime;
 
         public void runnableStart(RunnableQueue rq, Runnable r) {
+            runnableStartTime = updateMonitor.start();
+            if (runnableStartTime != 0) {
+                updateMonitor.runnableStarted(rq.getRunnableWaitTime(),
+                                              rq.getQueueSize());
+            }
             if (running && !(r instanceof NoRepaintRunnable)) {
                 // Mark the document as updated when the
                 // runnable starts.
                 if (outOfDateTime == 0)
                     outOfDateTime = System.currentTimeMillis();
             }
+            if (mutationBatching) {
+                bridgeContext.setMutationBatching(true);
+            }
+        }
+
+        /**
+         * Called when the given Runnable has returned, before anyone
+         * waiting on it is released.  Applies the DOM changes it made
+         * and records how long it ran.
+         */
+        public void runnableReturned(RunnableQueue rq, Runnable r) {
+            if (bridgeContext.isMutationBatching()) {
+                bridgeContext.setMutationBatching(false);
+            }
+            updateMonitor.end(UpdateMonitor.RUNNABLE, runnableStartTime);
+            runnableStartTime = 0;
         }
 
 
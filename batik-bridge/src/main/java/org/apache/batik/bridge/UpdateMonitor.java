@@ -0,0 +1,547 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.batik.util.RunnableQueue;
+
+/**
+ * Collects timing statistics about the update pipeline of an
+ * {@link UpdateManager}: how long runnables wait in the update queue
+ * and how long they run, how much of that time goes to scripts and
+ * animation ticks, and how long computing the dirty areas and
+ * repainting take for each frame.  A frame ends each time the
+ * rendering is updated.
+ * <p>
+ * The monitor is disabled by default.  While disabled, the timing
+ * calls made by the update pipeline do nothing beyond a field read and
+ * allocate nothing.  The statistics can be read through the getters,
+ * from a {@link Listener} notified after each frame, or through JMX
+ * once {@link #registerMBean()} has been called.
+ *
+ * @version $Id$
+ */
+public class UpdateMonitor implements UpdateMonitorMBean {
+
+    /**
+     * The time runnables spend in the update queue before running.
+     */
+    public static final int QUEUE_WAIT = 0;
+
+    /**
+     * The time runnables spend running, including the scripts and
+     * animation ticks they run.
+     */
+    public static final int RUNNABLE = 1;
+
+    /**
+     * The time spent running scripts, as part of {@link #RUNNABLE}.
+     */
+    public static final int SCRIPT = 2;
+
+    /**
+     * The time spent ticking animations, as part of {@link #RUNNABLE}.
+     */
+    public static final int ANIMATION = 3;
+
+    /**
+     * The time spent computing the dirty areas of a frame.
+     */
+    public static final int DIRTY_AREAS = 4;
+
+    /**
+     * The time spent painting the dirty areas of a frame.
+     */
+    public static final int PAINT = 5;
+
+    /**
+     * The number of phases.
+     */
+    public static final int PHASE_COUNT = 6;
+
+    /**
+     * The names of the phases.
+     */
+    protected static final String[] PHASE_NAMES = {
+        "queueWait", "runnable", "script", "animation", "dirtyAreas", "paint"
+    };
+
+    /**
+     * Used to build unique MBean names.
+     */
+    private static int mbeanCount;
+
+    /**
+     * The queue whose runnables are timed.
+     */
+    protected RunnableQueue runnableQueue;
+
+    /**
+     * Whether statistics are being collected.
+     */
+    protected volatile boolean enabled;
+
+    /**
+     * The listeners notified after each frame.
+     */
+    protected Listener[] listeners = new Listener[0];
+
+    /**
+     * The name this monitor is registered under, or null.
+     */
+    protected ObjectName objectName;
+
+    /**
+     * The number of measurements of each phase.
+     */
+    protected long[] phaseCounts = new long[PHASE_COUNT];
+
+    /**
+     * The total time of each phase, in nanoseconds.
+     */
+    protected long[] phaseTimes = new long[PHASE_COUNT];
+
+    /**
+     * The longest time of each phase, in nanoseconds.
+     */
+    protected long[] maxPhaseTimes = new long[PHASE_COUNT];
+
+    /**
+     * The time of each phase in the frame in progress, in nanoseconds.
+     */
+    protected long[] framePhaseTimes = new long[PHASE_COUNT];
+
+    /**
+     * The time of each phase in the last frame, in nanoseconds.
+     */
+    protected long[] lastFramePhaseTimes = new long[PHASE_COUNT];
+
+    /**
+     * The number of runnables run.
+     */
+    protected long runnableCount;
+
+    /**
+     * The sum of the queue depths seen when runnables start.
+     */
+    protected long totalQueueDepth;
+
+    /**
+     * The largest queue depth seen when a runnable starts.
+     */
+    protected int maxQueueDepth;
+
+    /**
+     * The number of frames.
+     */
+    protected long frameCount;
+
+    /**
+     * The number of runnables run for the frame in progress.
+     */
+    protected int frameRunnables;
+
+    /**
+     * The number of runnables run for the last frame.
+     */
+    protected int lastRunnablesPerFrame;
+
+    /**
+     * The number of runnables run for all the completed frames.
+     */
+    protected long frameRunnablesTotal;
+
+    /**
+     * The area repainted for the last frame.
+     */
+    protected long lastRepaintArea;
+
+    /**
+     * The area repainted for all the frames.
+     */
+    protected long totalRepaintArea;
+
+    /**
+     * Creates a new UpdateMonitor.
+     * @param rq The queue whose waiting times to measure, or null.
+     */
+    public UpdateMonitor(RunnableQueue rq) {
+        runnableQueue = rq;
+    }
+
+    /**
+     * Returns whether the monitor is collecting statistics.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the collection of statistics on or off.  The time
+     * runnables spend queued is only measured for runnables queued
+     * while the monitor is enabled.
+     */
+    public void setEnabled(boolean b) {
+        enabled = b;
+        if (runnableQueue != null) {
+            runnableQueue.setTiming(b);
+        }
+    }
+
+    /**
+     * Returns the start time to pass to {@link #end(int,long)}, or 0
+     * if the monitor is disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the end of a phase.
+     * @param phase The phase.
+     * @param start The value returned by {@link #start()}; nothing is
+     *        recorded if it is 0.
+     */
+    public void end(int phase, long start) {
+        if (start != 0) {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a phase, if the monitor is enabled.
+     * @param phase The phase.
+     * @param time The duration in nanoseconds.
+     */
+    public synchronized void record(int phase, long time) {
+        if (!enabled) {
+            return;
+        }
+        phaseCounts[phase]++;
+        phaseTimes[phase] += time;
+        framePhaseTimes[phase] += time;
+        if (time > maxPhaseTimes[phase]) {
+            maxPhaseTimes[phase] = time;
+        }
+    }
+
+    /**
+     * Records the start of a runnable, if the monitor is enabled.
+     * @param waitTime How long the runnable was queued in nanoseconds,
+     *        or 0 if that was not measured.
+     * @param queueDepth The number of runnables still queued.
+     */
+    public synchronized void runnableStarted(long waitTime, int queueDepth) {
+        if (!enabled) {
+            return;
+        }
+        if (waitTime != 0) {
+            record(QUEUE_WAIT, waitTime);
+        }
+        runnableCount++;
+        frameRunnables++;
+        totalQueueDepth += queueDepth;
+        if (queueDepth > maxQueueDepth) {
+            maxQueueDepth = queueDepth;
+        }
+    }
+
+    /**
+     * Records the end of a frame and notifies the listeners, if the
+     * monitor is enabled.
+     * @param area The repainted area in pixels.
+     */
+    public void frameCompleted(long area) {
+        Listener[] ls;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            frameCount++;
+            lastRunnablesPerFrame = frameRunnables;
+            frameRunnablesTotal += frameRunnables;
+            frameRunnables = 0;
+            lastRepaintArea = area;
+            totalRepaintArea += area;
+            long[] t = lastFramePhaseTimes;
+            lastFramePhaseTimes = framePhaseTimes;
+            framePhaseTimes = t;
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                t[i] = 0;
+            }
+            ls = listeners;
+        }
+        for (Listener l : ls) {
+            l.frameCompleted(this);
+        }
+    }
+
+    /**
+     * Clears the collected statistics.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseCounts[i] = 0;
+            phaseTimes[i] = 0;
+            maxPhaseTimes[i] = 0;
+            framePhaseTimes[i] = 0;
+            lastFramePhaseTimes[i] = 0;
+        }
+        runnableCount = 0;
+        totalQueueDepth = 0;
+        maxQueueDepth = 0;
+        frameCount = 0;
+        frameRunnables = 0;
+        lastRunnablesPerFrame = 0;
+        frameRunnablesTotal = 0;
+        lastRepaintArea = 0;
+        totalRepaintArea = 0;
+    }
+
+    /**
+     * Adds a listener notified, in the update thread, after each frame.
+     */
+    public synchronized void addListener(Listener l) {
+        Listener[] ls = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, ls, 0, listeners.length);
+        ls[listeners.length] = l;
+        listeners = ls;
+    }
+
+    /**
+     * Removes a listener.
+     */
+    public synchronized void removeListener(Listener l) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == l) {
+                Listener[] ls = new Listener[listeners.length - 1];
+                System.arraycopy(listeners, 0, ls, 0, i);
+                System.arraycopy(listeners, i + 1, ls, i, ls.length - i);
+                listeners = ls;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the given phase.
+     */
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * Returns how many times the given phase was measured.
+     */
+    public synchronized long getPhaseCount(int phase) {
+        return phaseCounts[phase];
+    }
+
+    /**
+     * Returns the total time of the given phase in milliseconds.
+     */
+    public synchronized double getTotalPhaseTime(int phase) {
+        return phaseTimes[phase] / 1e6;
+    }
+
+    /**
+     * Returns the average time of the given phase in milliseconds.
+     */
+    public synchronized double getAveragePhaseTime(int phase) {
+        long n = phaseCounts[phase];
+        return n == 0 ? 0 : phaseTimes[phase] / 1e6 / n;
+    }
+
+    /**
+     * Returns the longest time of the given phase in milliseconds.
+     */
+    public synchronized double getMaxPhaseTime(int phase) {
+        return maxPhaseTimes[phase] / 1e6;
+    }
+
+    /**
+     * Returns the time spent in the given phase during the last frame,
+     * in milliseconds.
+     */
+    public synchronized double getLastFramePhaseTime(int phase) {
+        return lastFramePhaseTimes[phase] / 1e6;
+    }
+
+    public String[] getPhaseNames() {
+        return PHASE_NAMES.clone();
+    }
+
+    public synchronized long[] getPhaseCounts() {
+        return phaseCounts.clone();
+    }
+
+    public synchronized double[] getAveragePhaseTimes() {
+        double[] a = new double[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            a[i] = getAveragePhaseTime(i);
+        }
+        return a;
+    }
+
+    public synchronized double[] getMaxPhaseTimes() {
+        double[] a = new double[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            a[i] = maxPhaseTimes[i] / 1e6;
+        }
+        return a;
+    }
+
+    public synchronized double[] getLastFramePhaseTimes() {
+        double[] a = new double[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            a[i] = lastFramePhaseTimes[i] / 1e6;
+        }
+        return a;
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized long getRunnableCount() {
+        return runnableCount;
+    }
+
+    public synchronized int getLastRunnablesPerFrame() {
+        return lastRunnablesPerFrame;
+    }
+
+    public synchronized double getAverageRunnablesPerFrame() {
+        return frameCount == 0 ? 0 : (double) frameRunnablesTotal / frameCount;
+    }
+
+    public synchronized double getAverageQueueDepth() {
+        return runnableCount == 0
+            ? 0 : (double) totalQueueDepth / runnableCount;
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized long getLastRepaintArea() {
+        return lastRepaintArea;
+    }
+
+    public synchronized double getAverageRepaintArea() {
+        return frameCount == 0 ? 0 : (double) totalRepaintArea / frameCount;
+    }
+
+    /**
+     * Prints the collected statistics.
+     */
+    public synchronized void dump(PrintWriter out) {
+        out.println("frames: " + frameCount
+                    + ", runnables: " + runnableCount);
+        out.println("runnables per frame: average "
+                    + getAverageRunnablesPerFrame()
+                    + ", last " + lastRunnablesPerFrame);
+        out.println("queue depth: average " + getAverageQueueDepth()
+                    + ", max " + maxQueueDepth);
+        out.println("repaint area: average " + getAverageRepaintArea()
+                    + ", last " + lastRepaintArea);
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            out.println(PHASE_NAMES[i] + ": count " + phaseCounts[i]
+                        + ", total " + getTotalPhaseTime(i)
+                        + "ms, average " + getAveragePhaseTime(i)
+                        + "ms, max " + getMaxPhaseTime(i)
+                        + "ms, last frame " + getLastFramePhaseTime(i)
+                        + "ms");
+        }
+        out.flush();
+    }
+
+    public String dump() {
+        StringWriter sw = new StringWriter();
+        dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    /**
+     * Registers this monitor with the platform MBean server under a
+     * name of the form
+     * <code>org.apache.batik:type=UpdateMonitor,id=<i>n</i></code>.
+     * @return the name the monitor was registered under.
+     */
+    public ObjectName registerMBean() throws JMException {
+        int id;
+        synchronized (UpdateMonitor.class) {
+            id = mbeanCount++;
+        }
+        return registerMBean
+            (new ObjectName("org.apache.batik:type=UpdateMonitor,id=" + id));
+    }
+
+    /**
+     * Registers this monitor with the platform MBean server under the
+     * given name, unregistering it first if it already was.
+     * @return the name the monitor was registered under.
+     */
+    public synchronized ObjectName registerMBean(ObjectName name)
+            throws JMException {
+        unregisterMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        objectName = server.registerMBean(this, name).getObjectName();
+        return objectName;
+    }
+
+    /**
+     * Unregisters this monitor from the platform MBean server, if it
+     * was registered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ObjectName name = objectName;
+            objectName = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Returns the name this monitor is registered under, or null.
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Interface for the listeners of an UpdateMonitor.
+     */
+    public interface Listener {
+
+        /**
+         * Called in the update thread each time a frame was painted.
+         * The statistics of the frame are available from the monitor's
+         * getters.
+         */
+        void frameCompleted(UpdateMonitor m);
+    }
+}
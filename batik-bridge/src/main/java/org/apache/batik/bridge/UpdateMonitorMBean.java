@@ -0,0 +1,116 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+/**
+ * The management interface of an {@link UpdateMonitor}.  Times are in
+ * milliseconds; the per-phase arrays are indexed like
+ * {@link #getPhaseNames()}.
+ *
+ * @version $Id$
+ */
+public interface UpdateMonitorMBean {
+
+    /**
+     * Returns whether the monitor is collecting statistics.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns the collection of statistics on or off.
+     */
+    void setEnabled(boolean b);
+
+    /**
+     * Returns the names of the measured phases.
+     */
+    String[] getPhaseNames();
+
+    /**
+     * Returns how many times each phase was measured.
+     */
+    long[] getPhaseCounts();
+
+    /**
+     * Returns the average time of each phase.
+     */
+    double[] getAveragePhaseTimes();
+
+    /**
+     * Returns the longest time of each phase.
+     */
+    double[] getMaxPhaseTimes();
+
+    /**
+     * Returns the time spent in each phase during the last frame.
+     */
+    double[] getLastFramePhaseTimes();
+
+    /**
+     * Returns the number of frames painted.
+     */
+    long getFrameCount();
+
+    /**
+     * Returns the number of runnables run.
+     */
+    long getRunnableCount();
+
+    /**
+     * Returns the number of runnables run for the last frame.
+     */
+    int getLastRunnablesPerFrame();
+
+    /**
+     * Returns the average number of runnables run per frame.
+     */
+    double getAverageRunnablesPerFrame();
+
+    /**
+     * Returns the average number of runnables left waiting when one
+     * starts.
+     */
+    double getAverageQueueDepth();
+
+    /**
+     * Returns the largest number of runnables left waiting when one
+     * starts.
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * Returns the area, in pixels, repainted for the last frame.
+     */
+    long getLastRepaintArea();
+
+    /**
+     * Returns the average area, in pixels, repainted per frame.
+     */
+    double getAverageRepaintArea();
+
+    /**
+     * Clears the collected statistics.
+     */
+    void reset();
+
+    /**
+     * Returns the collected statistics as text.
+     */
+    String dump();
+}
@@ -24,6 +24,7 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 
 
+import org.mozilla.javascript.ClassCache;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.ImporterTopLevel;
@@ -57,11 +58,47 @@ public class WindowWrapper extends ImporterTopLevel {
      */
     protected Window window;
 
+    /**
+     * The number of ids ImporterTopLevel defines on its prototype: the
+     * constructor, importClass and importPackage.
+     */
+    private static final int IMPORTER_PROTOTYPE_IDS = 3;
+
     /**
      * Creates a new WindowWrapper.
      */
     public WindowWrapper(Context context) {
         super(context);
+        defineWindowProperties();
+    }
+
+    /**
+     * Creates a new WindowWrapper that takes its standard objects from
+     * the given sealed scope, rather than creating its own.
+     * @param context the current context
+     * @param standardObjects the sealed standard objects
+     * @param names the names of the standard objects to define
+     */
+    public WindowWrapper(Context context, ScriptableObject standardObjects,
+                         String[] names) {
+        // The standard objects are defined here rather than inherited
+        // from the prototype, since ImporterTopLevel looks a name up in
+        // the imported packages before the prototype chain.
+        for (String name : names) {
+            defineProperty(name, standardObjects.get(name, standardObjects),
+                           standardObjects.getAttributes(name));
+        }
+        // What ImporterTopLevel.initStandardObjects adds.
+        exportAsJSClass(IMPORTER_PROTOTYPE_IDS, this, false);
+        delete("constructor");
+        new ClassCache().associate(this);
+        defineWindowProperties();
+    }
+
+    /**
+     * Defines the properties of the Window interface.
+     */
+    private void defineWindowProperties() {
         String[] names = { "setInterval", "setTimeout", "clearInterval",
                            "clearTimeout", "parseXML", "printNode", "getURL",
                            "postURL", "alert", "confirm", "prompt" };
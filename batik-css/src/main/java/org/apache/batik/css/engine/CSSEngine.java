@@ -1955,6 +1955,65 @@ public abstract class CSSEngine {
         style.putComputed(n, false);
     }
 
+    /**
+     * Sets a property of the override style of the given element to an
+     * already created value, without parsing it and without cascading
+     * the style of the element again.  This is only done when the
+     * property already gets its value from the override style, when no
+     * other property of the element is relative to it, and when no
+     * child element has inherited it, so that only this property of
+     * this element changes; a CSSEngineEvent is then fired for it.
+     * @return false if the value was not set, in which case the
+     *         property must be set through the override style
+     *         declaration.
+     */
+    public boolean setOverrideStyleValue(CSSStylableElement elt, int idx,
+                                         Value v) {
+        if (idx == fontSizeIndex || idx == lineHeightIndex
+                || idx == colorIndex) {
+            return false;
+        }
+        StyleMap style = elt.getComputedStyleMap(null);
+        if (style == null
+                || style.getOrigin(idx) != StyleMap.OVERRIDE_ORIGIN) {
+            return false;
+        }
+        StyleDeclarationProvider p =
+            elt.getOverrideStyleDeclarationProvider();
+        StyleDeclaration declaration = p.getStyleDeclaration();
+        int i = declaration.size() - 1;
+        while (i >= 0 && declaration.getIndex(i) != idx) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        if (valueManagers[idx].isInheritedProperty()) {
+            // A child that has not computed the property yet will get
+            // the new value when it does.
+            for (Node n = getCSSFirstChild(elt);
+                 n != null;
+                 n = getCSSNextSibling(n)) {
+                if (n instanceof CSSStylableElement) {
+                    StyleMap cs = ((CSSStylableElement) n)
+                        .getComputedStyleMap(null);
+                    if (cs != null && cs.isComputed(idx)
+                            && cs.isInherited(idx)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        declaration.put(i, v, idx, declaration.getPriority(i));
+        style.putValue(idx, v);
+        style.putMask(idx, (short) (style.getMask(idx)
+                                    & (StyleMap.ORIGIN_MASK
+                                       | StyleMap.IMPORTANT_MASK)));
+        firePropertiesChangedEvent(elt, new int[] { idx });
+        return true;
+    }
+
     /**
      * Invalidates all the properties of the given node.
      */
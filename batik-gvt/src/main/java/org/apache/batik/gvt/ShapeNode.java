@@ -20,9 +20,16 @@ package org.apache.batik.gvt;
 
 import java.awt.Graphics2D;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.RectangularShape;
 import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.geom.ShapeSimplifier;
 import org.apache.batik.util.HaltingThread;
 
 /**
@@ -68,6 +75,24 @@ public class ShapeNode extends AbstractGraphicsNode {
      */
     private Shape sensitiveArea;
 
+    /**
+     * Internal Cache: The shapes simplified for the level of detail
+     * rendering hint, keyed by scale bucket.  The map is access
+     * ordered, so even get() modifies it: it is only used while
+     * holding its lock.
+     */
+    private volatile LinkedHashMap simplifiedShapes;
+
+    /**
+     * The number of simplified shapes kept per node.
+     */
+    protected static final int MAX_SIMPLIFIED_SHAPES = 4;
+
+    /**
+     * The number of scale buckets per doubling of the scale.
+     */
+    protected static final int SCALE_BUCKETS_PER_OCTAVE = 4;
+
     /**
      * Constructs a new empty <code>ShapeNode</code>.
      */
@@ -150,10 +175,130 @@ public class ShapeNode extends AbstractGraphicsNode {
      */
     public void primitivePaint(Graphics2D g2d) {
         if (shapePainter != null) {
+            Object lod = g2d.getRenderingHint
+                (RenderingHintsKeyExt.KEY_LEVEL_OF_DETAIL);
+            if (lod instanceof Number) {
+                double tolerance = ((Number)lod).doubleValue();
+                if ((tolerance > 0) &&
+                    levelOfDetailPaint(g2d, tolerance))
+                    return;
+            }
             shapePainter.paint(g2d);
         }
     }
 
+    /**
+     * Paints this node with its shape simplified to within
+     * <code>tolerance</code> device pixels, or does not paint it at
+     * all if it is smaller than that.  Returns false if the shape
+     * should be painted as usual.
+     */
+    protected boolean levelOfDetailPaint(Graphics2D g2d, double tolerance) {
+        AffineTransform at = g2d.getTransform();
+        double scale = Math.max
+            (Math.sqrt(at.getScaleX()*at.getScaleX() +
+                       at.getShearY()*at.getShearY()),
+             Math.sqrt(at.getShearX()*at.getShearX() +
+                       at.getScaleY()*at.getScaleY()));
+        if (!(scale > 0) || Double.isInfinite(scale))
+            return false;
+
+        // Quantize the tolerance in user space, rounding it down so
+        // the error stays within bounds in every scale bucket.
+        double userTolerance = tolerance / scale;
+        int bucket = (int)Math.floor
+            (SCALE_BUCKETS_PER_OCTAVE * Math.log(userTolerance) / Math.log(2));
+        userTolerance = Math.pow(2, bucket / (double)SCALE_BUCKETS_PER_OCTAVE);
+
+        Rectangle2D b = getPrimitiveBounds();
+        if ((b != null) &&
+            (b.getWidth() < userTolerance) &&
+            (b.getHeight() < userTolerance))
+            return true;   // Sub-pixel feature.
+
+        if ((shape instanceof RectangularShape) || (shape instanceof Line2D))
+            return false;  // Nothing to simplify.
+
+        Shape s = getSimplifiedShape(bucket, userTolerance);
+        paintSimplified(shapePainter, g2d, s);
+        return true;
+    }
+
+    /**
+     * Returns the shape simplified to within <code>tolerance</code>
+     * for the given scale bucket.
+     */
+    protected Shape getSimplifiedShape(int bucket, double tolerance) {
+        LinkedHashMap cache = simplifiedShapes;
+        if (cache == null) {
+            cache = new LinkedHashMap(8, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry e) {
+                        return size() > MAX_SIMPLIFIED_SHAPES;
+                    }
+                };
+            simplifiedShapes = cache;
+        }
+        Integer key = new Integer(bucket);
+        Shape s;
+        synchronized (cache) {
+            s = (Shape)cache.get(key);
+        }
+        if (s == null) {
+            // A stroke draws even the tiniest subpath with its full
+            // width, so only drop them when nothing is stroked.
+            double minSize = isStroked(shapePainter) ? 0 : tolerance;
+            s = ShapeSimplifier.simplify(shape, tolerance, minSize);
+            synchronized (cache) {
+                cache.put(key, s);
+            }
+        }
+        return s;
+    }
+
+    private static boolean isStroked(ShapePainter sp) {
+        if (sp instanceof FillShapePainter)
+            return false;
+        if (sp instanceof CompositeShapePainter) {
+            CompositeShapePainter cp = (CompositeShapePainter)sp;
+            for (int i=0; i < cp.getShapePainterCount(); ++i) {
+                if (isStroked(cp.getShapePainter(i)))
+                    return true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Paints the fills and strokes of <code>sp</code> using
+     * <code>s</code> instead of their own shape.  Other painters,
+     * such as markers, paint as usual.
+     */
+    private static void paintSimplified(ShapePainter sp, Graphics2D g2d,
+                                        Shape s) {
+        if (sp instanceof FillShapePainter) {
+            FillShapePainter fp = (FillShapePainter)sp;
+            if (fp.getPaint() != null) {
+                g2d.setPaint(fp.getPaint());
+                g2d.fill(s);
+            }
+        } else if (sp instanceof StrokeShapePainter) {
+            StrokeShapePainter stp = (StrokeShapePainter)sp;
+            if (stp.getStroke() != null && stp.getPaint() != null) {
+                g2d.setPaint(stp.getPaint());
+                g2d.setStroke(stp.getStroke());
+                g2d.draw(s);
+            }
+        } else if (sp instanceof CompositeShapePainter) {
+            CompositeShapePainter cp = (CompositeShapePainter)sp;
+            for (int i=0; i < cp.getShapePainterCount(); ++i) {
+                paintSimplified(cp.getShapePainter(i), g2d, s);
+            }
+        } else {
+            sp.paint(g2d);
+        }
+    }
+
     //
     // Geometric methods
     //
@@ -170,6 +315,7 @@ public class ShapeNode extends AbstractGraphicsNode {
         sensitiveBounds = null;
         paintedArea = null;
         sensitiveArea = null;
+        simplifiedShapes = null;
     }
 
     public void setPointerEventType(int pointerEventType) {
@@ -24,8 +24,8 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -63,12 +63,15 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
         if (dirtyNodes == null)
             return null;
 
-        List ret = new LinkedList();
+        List ret = new ArrayList(dirtyNodes.size() * 2);
+        // The cumulative transforms of the ancestors of the dirty
+        // nodes, computed once per ancestor rather than once per
+        // dirty node.
+        Map ancestors = new HashMap();
         Set keys = dirtyNodes.keySet();
         for (Object key : keys) {
             WeakReference gnWRef = (WeakReference) key;
             GraphicsNode gn = (GraphicsNode) gnWRef.get();
-            // GraphicsNode  srcGN  = gn;
 
             // if the weak ref has been cleared then this node is no
             // longer part of the GVT tree (and the change should be
@@ -76,90 +79,49 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
             // dirty list).
             if (gn == null) continue;
 
-            AffineTransform oat;
-            oat = (AffineTransform) dirtyNodes.get(gnWRef);
-            if (oat != null) {
-                oat = new AffineTransform(oat);
-            }
+            Ancestor p = getAncestor(gn.getParent(), ancestors);
 
             Rectangle2D srcORgn = (Rectangle2D) fromBounds.remove(gnWRef);
+            if ((srcORgn != null) && (srcORgn != NULL_RECT)) {
+                AffineTransform oat = (AffineTransform) dirtyNodes.get(gnWRef);
+                Shape oRgn = srcORgn;
+                if (oat != null) {
+                    if (p != null) {
+                        oat = new AffineTransform(oat);
+                        oat.preConcatenate(p.oldTransform);
+                    }
+                    oRgn = oat.createTransformedShape(srcORgn);
+                } else if (p != null) {
+                    oRgn = p.oldTransform.createTransformedShape(srcORgn);
+                }
+                ret.add(oRgn);
+            }
 
             Rectangle2D srcNRgn = null;
             AffineTransform nat = null;
-            if (!(srcORgn instanceof ChngSrcRect)) {
+            if ((p != null) && (p.filtered != null)) {
+                // The whole extent of the topmost filter is repainted.
+                srcNRgn = p.filtered.filterBounds;
+                nat = p.filtered.newTransform;
+            } else if (!(srcORgn instanceof ChngSrcRect)) {
                 // For change srcs don't use the new bounds of parent node.
                 srcNRgn = gn.getBounds();
                 nat = gn.getTransform();
-                if (nat != null)
-                    nat = new AffineTransform(nat);
-            }
-
-
-            // System.out.println("Rgns: " + srcORgn + " - " + srcNRgn);
-            // System.out.println("ATs: " + oat + " - " + nat);
-            do {
-                // f.invalidateCache(oRng);
-                // f.invalidateCache(nRng);
-
-                // f = gn.getEnableBackgroundGraphicsNodeRable(false);
-                // (need to push rgn through filter chain if any...)
-                // f.invalidateCache(oRng);
-                // f.invalidateCache(nRng);
-
-                gn = gn.getParent();
-                if (gn == null)
-                    break; // We reached the top of the tree
-
-                Filter f = gn.getFilter();
-                if (f != null) {
-                    srcNRgn = f.getBounds2D();
-                    nat = null;
-                }
-
-                // Get the parent's current Affine
-                AffineTransform at = gn.getTransform();
-                // Get the parent's Affine last time we rendered.
-                gnWRef = gn.getWeakReference();
-                AffineTransform poat = (AffineTransform) dirtyNodes.get(gnWRef);
-                if (poat == null) poat = at;
-                if (poat != null) {
-                    if (oat != null)
-                        oat.preConcatenate(poat);
-                    else
-                        oat = new AffineTransform(poat);
-                }
-
-                if (at != null) {
-                    if (nat != null)
-                        nat.preConcatenate(at);
-                    else
-                        nat = new AffineTransform(at);
-                }
-            } while (true);
-
-            if (gn == null) {
-                // We made it to the root graphics node so add them.
-                // System.out.println
-                //      ("Adding: " + oat + " - " + nat + "\n" +
-                //       srcORgn + "\n" + srcNRgn + "\n");
-                // <!>
-                Shape oRgn = srcORgn;
-                if ((oRgn != null) && (oRgn != NULL_RECT)) {
-                    if (oat != null)
-                        oRgn = oat.createTransformedShape(srcORgn);
-                    // System.err.println("GN: " + srcGN);
-                    // System.err.println("Src: " + oRgn.getBounds2D());
-                    ret.add(oRgn);
-                }
-
-                if (srcNRgn != null) {
-                    Shape nRgn = srcNRgn;
-                    if (nat != null)
-                        nRgn = nat.createTransformedShape(srcNRgn);
-                    if (nRgn != null)
-                        ret.add(nRgn);
+                if (p != null) {
+                    if (nat != null) {
+                        nat = new AffineTransform(nat);
+                        nat.preConcatenate(p.newTransform);
+                    } else {
+                        nat = p.newTransform;
+                    }
                 }
             }
+            if (srcNRgn != null) {
+                Shape nRgn = srcNRgn;
+                if ((nat != null) && !nat.isIdentity())
+                    nRgn = nat.createTransformedShape(srcNRgn);
+                ret.add(nRgn);
+            }
         }
 
         fromBounds.clear();
@@ -167,6 +129,85 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
         return ret;
     }
 
+    /**
+     * Returns the cumulative transforms of the given node, computing
+     * and caching those of its ancestors as needed.
+     * @param gn The node, or null above the root.
+     * @param ancestors The nodes whose transforms are already known.
+     */
+    protected Ancestor getAncestor(GraphicsNode gn, Map ancestors) {
+        if (gn == null)
+            return null;
+        Ancestor a = (Ancestor) ancestors.get(gn);
+        if (a != null)
+            return a;
+
+        Ancestor p = getAncestor(gn.getParent(), ancestors);
+        // Get the current Affine and the one used last time we rendered.
+        AffineTransform at = gn.getTransform();
+        AffineTransform oat = (AffineTransform) dirtyNodes.get
+            (gn.getWeakReference());
+        if (oat == null) oat = at;
+
+        a = new Ancestor();
+        a.oldTransform = concatenate(p == null ? null : p.oldTransform, oat);
+        a.newTransform = concatenate(p == null ? null : p.newTransform, at);
+        if ((p != null) && (p.filtered != null)) {
+            a.filtered = p.filtered;
+        } else {
+            Filter f = gn.getFilter();
+            if (f != null) {
+                a.filterBounds = f.getBounds2D();
+                a.filtered = a;
+            }
+        }
+        ancestors.put(gn, a);
+        return a;
+    }
+
+    /**
+     * Returns pat concatenated with at, without modifying either.
+     * Null stands for the identity.
+     */
+    private static AffineTransform concatenate(AffineTransform pat,
+                                               AffineTransform at) {
+        if (at == null) {
+            return pat == null ? new AffineTransform() : pat;
+        }
+        AffineTransform ret = new AffineTransform(at);
+        if (pat != null)
+            ret.preConcatenate(pat);
+        return ret;
+    }
+
+    /**
+     * The cumulative transforms of an ancestor of dirty nodes.
+     */
+    protected static class Ancestor {
+
+        /**
+         * The node to root transform last time we rendered.
+         */
+        public AffineTransform oldTransform;
+
+        /**
+         * The current node to root transform.
+         */
+        public AffineTransform newTransform;
+
+        /**
+         * The topmost filtered node among this one and its ancestors,
+         * or null.
+         */
+        public Ancestor filtered;
+
+        /**
+         * The bounds of this node's filter, if it is the topmost
+         * filtered node.
+         */
+        public Rectangle2D filterBounds;
+    }
+
     /**
      * This returns the dirty region for gn in the coordinate system
      * given by <code>at</code>.
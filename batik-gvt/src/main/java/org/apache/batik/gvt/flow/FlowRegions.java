@@ -53,6 +53,21 @@ public class FlowRegions {
         gotoY(startY);
     }
 
+    /**
+     * Creates a copy of <code>fr</code>, which flows the rest of its
+     * shape from its current line.  The copies share their segment
+     * lists, which splitting never modifies.
+     */
+    public FlowRegions(FlowRegions fr) {
+        this.flowShape   = fr.flowShape;
+        this.sl          = fr.sl;
+        this.sr          = fr.sr;
+        this.validRanges = fr.validRanges;
+        this.currentRange = fr.currentRange;
+        this.currentY    = fr.currentY;
+        this.lineHeight  = fr.lineHeight;
+    }
+
     public double getCurrentY() { return currentY; }
     public double getLineHeight() { return lineHeight; }
 
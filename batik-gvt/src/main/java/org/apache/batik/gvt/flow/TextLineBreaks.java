@@ -21,7 +21,9 @@ package org.apache.batik.gvt.flow;
 
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
@@ -47,80 +49,138 @@ public class TextLineBreaks {
         lineBrks.add(FLOW_LINE_BREAK);
     }
 
-    // placeholder function for complex break analysis
-    static int findComplexBreak(AttributedCharacterIterator aci)
-    {
-        int cnt = 0;
-        for(char ch = aci.current();
-            ch == AttributedCharacterIterator.DONE;
-            ch = aci.next(), cnt++) {
-
-            // .. do complex break analysis here Right now we aren't
-            // do any, we just find the end of the run of
-            // CHAR_CLASS_SA.
-
-            if (getCharCharClass(ch) != CHAR_CLASS_SA)
-                break;
-        }
-        return cnt;
-    }
-
     // handle spaces separately, all others by table
     // as - Attributed string to attribute with Word extents.
     public static void findLineBrk(AttributedString as) {
         AttributedCharacterIterator aci = as.getIterator();
         if (aci.getEndIndex() == 0)
             return;
-        char ch = aci.current(), prevCh = (char)-1;
-        byte         cls = getCharCharClass(ch);
+        int begin = aci.getBeginIndex();
+        int[] wordEnds = new int[aci.getEndIndex() - begin + 1];
+        int numWords = findLineBreaks(aci, wordEnds);
+
+        int wordBegin = begin;
+        for (int w = 0; w < numWords; w++) {
+            if (wordBegin < wordEnds[w]) {
+                as.addAttribute(WORD_LIMIT, w, wordBegin, wordEnds[w]);
+            }
+            wordBegin = wordEnds[w];
+        }
+    }
+
+    /**
+     * Finds the line break opportunities of the text of
+     * <code>aci</code>, where the paragraph and line break attributes
+     * force lines to end.  The text is copied once, the analysis
+     * itself only works on arrays.
+     *
+     * @param wordEnds receives the end index of every word, which
+     *        starts where the previous one ends; it needs room for one
+     *        more entry than there are characters.
+     * @return the number of words.
+     */
+    public static int findLineBreaks(AttributedCharacterIterator aci,
+                                     int[] wordEnds) {
+        int begin = aci.getBeginIndex();
+        int len = aci.getEndIndex() - begin;
+        char[] text = new char[len];
+        int i = 0;
+        for (char ch = aci.first();
+             ch != AttributedCharacterIterator.DONE;
+             ch = aci.next()) {
+            text[i++] = ch;
+        }
+        int[] lineEnds = new int[8];
+        int numLines = 0;
+        for (int lim = begin; lim < begin + len; numLines++) {
+            aci.setIndex(lim);
+            lim = aci.getRunLimit(lineBrks);
+            if (numLines == lineEnds.length) {
+                int[] tmp = new int[numLines * 2];
+                System.arraycopy(lineEnds, 0, tmp, 0, numLines);
+                lineEnds = tmp;
+            }
+            lineEnds[numLines] = lim - begin;
+        }
+
+        int numWords = findLineBreaks(text, len, lineEnds, wordEnds);
+        if (begin != 0) {
+            for (int w = 0; w < numWords; w++) {
+                wordEnds[w] += begin;
+            }
+        }
+        return numWords;
+    }
+
+    /**
+     * Finds the line break opportunities of the first <code>len</code>
+     * characters of <code>text</code>.
+     *
+     * @param text the characters.
+     * @param len the number of characters.
+     * @param lineEnds the offsets where lines are forced to end (the
+     *        ends of paragraphs and line breaks), in increasing order.
+     * @param wordEnds receives the end offset of every word, which
+     *        starts where the previous one ends; it needs room for
+     *        <code>len + 1</code> entries.
+     * @return the number of words.
+     */
+    public static int findLineBreaks(char[] text, int len,
+                                     int[] lineEnds, int[] wordEnds) {
+        if (len == 0)
+            return 0;
+        byte[] classes = new byte[len];
+        char[] index = trieIndex;
+        byte[] data  = trieData;
+        for (int i = 0; i < len; i++) {
+            char c = text[i];
+            classes[i] = data[(index[c >> TRIE_SHIFT] << TRIE_SHIFT)
+                              + (c & TRIE_MASK)];
+        }
+
+        char ch = text[0], prevCh = (char)-1;
+        byte         cls = classes[0];
         if (cls == CHAR_CLASS_LF) cls = CHAR_CLASS_BK;
         byte      curCls = cls;
         byte     prevCls = cls;
         byte prevPrevCls = -1;
         int  wordCnt = 0;
-        int  wordBegin = aci.getBeginIndex();
         // loop over all pairs in the string
-        int ich = wordBegin+1;
-        int lineEnd = aci.getRunLimit(lineBrks);
+        int ich = 1;
+        int line = 0;
+        int lineEnd = lineEnds[line++];
 
         // handle case where input starts with an LF
         if (cls >= CHAR_CLASS_CM) cls = CHAR_CLASS_AL;
 
-        for (ch = aci.next();
-             ch != AttributedCharacterIterator.DONE;
-             ich++, prevCh = ch, ch = aci.next(),
+        for (; ich < len;
+             ich++, prevCh = ch,
              prevPrevCls = prevCls, prevCls = curCls) {
+            ch = text[ich];
 
             if (ich == lineEnd) {
-                as.addAttribute(WORD_LIMIT, wordCnt++,
-                                wordBegin, ich);
-                wordBegin = ich;
+                wordEnds[wordCnt++] = ich;
 
-                cls    = getCharCharClass(ch);
+                cls    = classes[ich];
                 curCls = cls;
                 prevCls = cls;
                 if (cls >= CHAR_CLASS_CM) cls = CHAR_CLASS_AL;
 
-                lineEnd = aci.getRunLimit(lineBrks);
+                lineEnd = lineEnds[line++];
                 continue;
             }
 
             // handle spaces
-            curCls = getCharCharClass(ch);
+            curCls = classes[ich];
             if (curCls == CHAR_CLASS_SP) {
-                // pbrk[ich-1] = BREAK_ACTION_PROHIBITED;
                 continue;
             }
 
-            // handle complex scripts
+            // handle complex scripts: no analysis is done, runs of
+            // them are not broken.
             if (curCls == CHAR_CLASS_SA) {
-                ich += findComplexBreak(aci);
-                ch = aci.previous();
-                if (ch != AttributedCharacterIterator.DONE)
-                    prevCls = getCharCharClass(ch);
-                ch = aci.next();
-                if (ch != AttributedCharacterIterator.DONE)
-                    curCls = cls = getCharCharClass(ch);
+                prevCls = classes[ich - 1];
+                cls = curCls;
                 continue;
             }
 
@@ -131,16 +191,12 @@ public class TextLineBreaks {
                 continue; // Don't allow break around JOINER.
 
             if ((curCls == CHAR_CLASS_BK) || (curCls == CHAR_CLASS_LF)) {
-                as.addAttribute(WORD_LIMIT, wordCnt++,
-                                wordBegin, ich);
-                wordBegin = ich;
+                wordEnds[wordCnt++] = ich;
                 cls = CHAR_CLASS_BK;
                 continue;
             }
             if (prevCls == CHAR_CLASS_CR) {
-                as.addAttribute(WORD_LIMIT, wordCnt++,
-                                wordBegin, ich-1);
-                wordBegin = ich-1;
+                wordEnds[wordCnt++] = ich-1;
                 cls = CHAR_CLASS_BK;
                 continue;
             }
@@ -153,18 +209,12 @@ public class TextLineBreaks {
                 if (prevCls == CHAR_CLASS_SP) {
                     cls = CHAR_CLASS_ID;
                     if (prevPrevCls != -1) {
-                        if (brkPairs[prevPrevCls][CHAR_CLASS_ID] ==
+                        if (getBreakAction(prevPrevCls, CHAR_CLASS_ID) ==
                             BREAK_ACTION_DIRECT) {
-                            as.addAttribute(WORD_LIMIT, wordCnt++,
-                                            wordBegin, ich-1);
-                            wordBegin = ich-1;
-                            // pbrk[ich-2] = BREAK_ACTION_DIRECT;
-                        } else {
-                            // pbrk[ich-2] = BREAK_ACTION_PROHIBITED;
+                            wordEnds[wordCnt++] = ich-1;
                         }
                     }
                 }
-                // pbrk[ich-1] = BREAK_ACTION_PROHIBITED;
                 continue;
             }
 
@@ -174,34 +224,33 @@ public class TextLineBreaks {
             }
 
             // lookup pair table information
-            byte brk = brkPairs[cls][curCls];
+            byte brk = getBreakAction(cls, curCls);
 
             if (brk == BREAK_ACTION_DIRECT) {
-                as.addAttribute(WORD_LIMIT, wordCnt++,
-                                wordBegin, ich);
-                wordBegin = ich;
-                // pbrk[ich-1] = brk;
+                wordEnds[wordCnt++] = ich;
             } else if (brk == BREAK_ACTION_INDIRECT) {
                 if (prevCls == CHAR_CLASS_SP) {
-                    as.addAttribute(WORD_LIMIT, wordCnt++,
-                                    wordBegin, ich);
-                    wordBegin = ich;
+                    wordEnds[wordCnt++] = ich;
                 }
-                // pbrk[ich-1] = ((prevCls == CHAR_CLASS_SP) ?
-                //                BREAK_ACTION_INDIRECT :
-                //                BREAK_ACTION_PROHIBITED);
             }
             cls = curCls;
         }
 
         // always break at the end
-        as.addAttribute(WORD_LIMIT, wordCnt++,
-                        wordBegin, ich);
-        wordBegin = ich;
-        // pbrk[ich-1] = BREAK_ACTION_DIRECT;
+        wordEnds[wordCnt++] = ich;
+        return wordCnt;
+    }
 
-        return;
-   }
+    /**
+     * Returns the break action between two classes.  Classes outside
+     * the pair table (complex scripts and contingent breaks) are
+     * treated as alphabetic.
+     */
+    static byte getBreakAction(byte before, byte after) {
+        if (before >= BREAK_PAIR_CLASSES) before = CHAR_CLASS_AL;
+        if (after  >= BREAK_PAIR_CLASSES) after  = CHAR_CLASS_AL;
+        return brkPairs[before][after];
+    }
 
     public static byte[] stringToLineBreakClasses(String s) {
         int len = s.length();
@@ -213,6 +262,14 @@ public class TextLineBreaks {
     }
 
     public static byte getCharCharClass(char ch) {
+        return trieData[(trieIndex[ch >> TRIE_SHIFT] << TRIE_SHIFT)
+                        + (ch & TRIE_MASK)];
+    }
+
+    /**
+     * Looks the class of <code>ch</code> up in the range tables.
+     */
+    static byte searchCharClass(char ch) {
         if (ch < QUICK_LUT_SIZE) {
             if (quickLut == null) buildQuickLut();
             return quickLut[ch];
@@ -232,6 +289,43 @@ public class TextLineBreaks {
         return raw_classes[entry];
     }
 
+    // The classes of all the chars are kept in a two stage table:
+    // trieIndex gives for each block of TRIE_BLOCK chars the block of
+    // trieData that holds their classes, identical blocks are only
+    // stored once.
+    static final int TRIE_SHIFT = 7;
+    static final int TRIE_BLOCK = 1 << TRIE_SHIFT;
+    static final int TRIE_MASK  = TRIE_BLOCK - 1;
+
+    static char [] trieIndex;
+    static byte [] trieData;
+
+    protected static void buildTrie() {
+        char[] index = new char[0x10000 >> TRIE_SHIFT];
+        byte[] data  = new byte[0x10000];
+        Map    blocks = new HashMap();
+        int numBlocks = 0;
+        char[] block = new char[TRIE_BLOCK];
+        for (int b = 0; b < index.length; b++) {
+            for (int i = 0; i < TRIE_BLOCK; i++) {
+                block[i] = (char)searchCharClass((char)((b << TRIE_SHIFT) + i));
+            }
+            String key = new String(block);
+            Integer n = (Integer)blocks.get(key);
+            if (n == null) {
+                n = numBlocks++;
+                blocks.put(key, n);
+                for (int i = 0; i < TRIE_BLOCK; i++) {
+                    data[(n << TRIE_SHIFT) + i] = (byte)block[i];
+                }
+            }
+            index[b] = (char)n.intValue();
+        }
+        trieData = new byte[numBlocks << TRIE_SHIFT];
+        System.arraycopy(data, 0, trieData, 0, trieData.length);
+        trieIndex = index;
+    }
+
     public static final char CHAR_ZERO_WIDTH_JOINER = 0x200D;
 
     protected static final int QUICK_LUT_SIZE = 256;
@@ -293,6 +387,9 @@ public class TextLineBreaks {
     public static final byte CHAR_CLASS_XX = CHAR_CLASS_AL; // 27;
     public static final byte CHAR_CLASS_CB = 28;
 
+    // The number of classes of the pair table.
+    static final int BREAK_PAIR_CLASSES = CHAR_CLASS_SA;
+
     public static final String [] clsStrs = {
         "OP", "CL", "QU", "GL", "NS", "EX", "SY", "IS", "PR", "PO",
         "NU", "AL", "ID", "IN", "HY", "BA", "BB", "B2", "ZW", "CM",
@@ -1939,4 +2036,8 @@ public class TextLineBreaks {
         CHAR_CLASS_CM,
         CHAR_CLASS_CB,
         CHAR_CLASS_AI };
+
+    static {
+        buildTrie();
+    }
 }
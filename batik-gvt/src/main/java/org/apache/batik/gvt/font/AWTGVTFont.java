@@ -25,15 +25,16 @@ import java.awt.font.GlyphMetrics;
 import java.awt.font.GlyphVector;
 import java.awt.font.TextAttribute;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.batik.gvt.text.ArabicTextHandler;
+import org.apache.batik.util.WeightedLRUCache;
 
 
 /**
@@ -57,7 +58,6 @@ public class AWTGVTFont implements GVTFont {
         this.size = font.getSize2D();
         this.awtFont = font.deriveFont(FONT_SIZE);
         this.scale = size/awtFont.getSize2D();
-        initializeFontCache(awtFont);
     }
 
     /**
@@ -70,7 +70,6 @@ public class AWTGVTFont implements GVTFont {
         this.size = font.getSize2D()*scale;
         this.awtFont = font.deriveFont(FONT_SIZE);
         this.scale = size/awtFont.getSize2D();
-        initializeFontCache(awtFont);
     }
 
     /**
@@ -89,7 +88,6 @@ public class AWTGVTFont implements GVTFont {
             this.size = awtFont.getSize2D();
         }
         this.scale = size/awtFont.getSize2D();
-        initializeFontCache(awtFont);
     }
 
     /**
@@ -103,7 +101,6 @@ public class AWTGVTFont implements GVTFont {
         this.awtFont = new Font(name, style, (int)FONT_SIZE);
         this.size  = size;
         this.scale = size/awtFont.getSize2D();
-        initializeFontCache(awtFont);
     }
 
     /**
@@ -215,6 +212,13 @@ public class AWTGVTFont implements GVTFont {
         return awtFont.getFamily();
     }
 
+    /**
+     * Returns the java.awt.Font this font wraps, at the reference size.
+     */
+    public Font getAWTFont() {
+        return awtFont;
+    }
+
     /**
      *  Returns a LineMetrics object created with the specified arguments.
      */
@@ -282,21 +286,51 @@ public class AWTGVTFont implements GVTFont {
     public static final float FONT_SIZE = 48.0f;
 
     /**
-     * Returns the geometry of the specified character. This method also put
-     * the in cache the geometry associated to the specified character if
+     * The number of path segments the glyph geometry cache holds by
+     * default.
+     */
+    public static final int GLYPH_CACHE_SEGMENTS = 1 << 18;
+
+    /**
+     * The glyph geometry shared by all instances, keyed by font face
+     * (the wrapped Font, which is always FONT_SIZE points) and glyph
+     * code, weighted by the number of segments of the outline.
+     */
+    private static final WeightedLRUCache glyphCache
+        = new WeightedLRUCache(GLYPH_CACHE_SEGMENTS);
+
+    /**
+     * Returns the geometry of the specified glyph.  This method also put
+     * in cache the geometry associated to the specified glyph if
      * needed.
+     * @deprecated the character is ignored, use
+     * {@link #getGlyphGeometry(AWTGVTFont,GlyphVector,int,Point2D)}.
      */
+    @Deprecated
     public static
         AWTGlyphGeometryCache.Value getGlyphGeometry(AWTGVTFont font,
                                                      char c,
                                                      GlyphVector gv,
                                                      int glyphIndex,
                                                      Point2D glyphPos) {
+        return getGlyphGeometry(font, gv, glyphIndex, glyphPos);
+    }
 
-        AWTGlyphGeometryCache glyphCache =
-            (AWTGlyphGeometryCache)fontCache.get(font.awtFont);
-
-        AWTGlyphGeometryCache.Value v = glyphCache.get(c);
+    /**
+     * Returns the geometry of the glyph at <code>glyphIndex</code> in
+     * <code>gv</code>, a glyph vector of <code>font</code>.  The outline
+     * and bounds are those of the glyph at FONT_SIZE points, with its
+     * origin at (0, 0); they are computed once per font face and glyph
+     * code and must be scaled by the caller.
+     */
+    public static
+        AWTGlyphGeometryCache.Value getGlyphGeometry(AWTGVTFont font,
+                                                     GlyphVector gv,
+                                                     int glyphIndex,
+                                                     Point2D glyphPos) {
+        GlyphKey key = new GlyphKey(font.awtFont, gv.getGlyphCode(glyphIndex));
+        AWTGlyphGeometryCache.Value v
+            = (AWTGlyphGeometryCache.Value)glyphCache.get(key);
         if (v == null) {
             Shape outline = gv.getGlyphOutline(glyphIndex);
             GlyphMetrics metrics = gv.getGlyphMetrics(glyphIndex);
@@ -307,31 +341,58 @@ public class AWTGVTFont implements GVTFont {
                 outline = tr.createTransformedShape(outline);
             }
             v = new AWTGlyphGeometryCache.Value(outline, gmB);
-            //System.out.println("put "+font.awtFont+" "+c);
-            glyphCache.put(c, v);
+            glyphCache.put(key, v, countSegments(outline));
         }
         return v;
     }
 
-    //
-    // static cache for AWTGVTFont
-    //
-
-    static Map fontCache = new HashMap(11);
+    /**
+     * Returns the glyph geometry cache shared by all instances.  Its
+     * weight is the number of cached outline segments; use
+     * <code>setMaxWeight</code> to bound its memory use.
+     */
+    public static WeightedLRUCache getGlyphGeometryCache() {
+        return glyphCache;
+    }
 
-    static void initializeFontCache(Font awtFont) {
-        if (!fontCache.containsKey(awtFont)) {
-            fontCache.put(awtFont, new AWTGlyphGeometryCache());
+    /**
+     * Returns the number of segments of <code>s</code>, plus one for
+     * the glyph itself.
+     */
+    static int countSegments(Shape s) {
+        int n = 1;
+        for (PathIterator pi = s.getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            n++;
         }
+        return n;
     }
 
-    static void putAWTGVTFont(AWTGVTFont font) {
-        fontCache.put(font.awtFont, font);
-    }
+    /**
+     * Identifies a glyph of a font face.
+     */
+    static final class GlyphKey {
+        final Font face;
+        final int glyphCode;
+        final int hash;
+
+        GlyphKey(Font face, int glyphCode) {
+            this.face = face;
+            this.glyphCode = glyphCode;
+            this.hash = face.hashCode() * 31 + glyphCode;
+        }
 
-    static AWTGVTFont getAWTGVTFont(Font awtFont) {
-        return (AWTGVTFont)fontCache.get(awtFont);
-    }
+        public int hashCode() {
+            return hash;
+        }
 
+        public boolean equals(Object o) {
+            if (!(o instanceof GlyphKey)) {
+                return false;
+            }
+            GlyphKey k = (GlyphKey)o;
+            return (glyphCode == k.glyphCode) && face.equals(k.face);
+        }
+    }
 }
 
@@ -35,6 +35,7 @@ import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
 import java.text.CharacterIterator;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.gvt.text.ArabicTextHandler;
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
 import org.apache.batik.gvt.text.TextPaintInfo;
@@ -412,10 +413,8 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
 
         // -- start glyph cache code --
         Point2D glyphPos = defaultGlyphPositions[glyphIndex];
-        char c = ci.setIndex(ci.getBeginIndex()+glyphIndex);
-        ci.setIndex(ci.getBeginIndex());
         AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
-            (gvtFont, c, awtGlyphVector, glyphIndex, glyphPos);
+            (gvtFont, awtGlyphVector, glyphIndex, glyphPos);
         Rectangle2D gmB = v.getBounds2D();
         // -- end glyph cache code --
 
@@ -446,22 +445,12 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
 */
             // -- start glyph cache code --
             Point2D glyphPos = defaultGlyphPositions[glyphIndex];
-            char c = ci.setIndex(ci.getBeginIndex()+glyphIndex);
-            ci.setIndex(ci.getBeginIndex());
             AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
-                (gvtFont, c, awtGlyphVector, glyphIndex, glyphPos);
+                (gvtFont, awtGlyphVector, glyphIndex, glyphPos);
             Shape glyphOutline = v.getOutline();
            // -- end glyph cache code --
 
-            AffineTransform tr = AffineTransform.getTranslateInstance
-                (getGlyphPosition(glyphIndex).getX(),
-                 getGlyphPosition(glyphIndex).getY());
-
-            AffineTransform glyphTransform = getGlyphTransform(glyphIndex);
-
-            if (glyphTransform != null) {
-                tr.concatenate(glyphTransform);
-            }
+            AffineTransform tr = getOutlineTransform(glyphIndex);
             //
             // <!> HACK
             //
@@ -483,13 +472,31 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
                 tr.translate(-glyphPos.getX(), -glyphPos.getY());
             }
 */
-            tr.scale(scaleFactor, scaleFactor);
             glyphOutlines[glyphIndex]=tr.createTransformedShape(glyphOutline);
         }
 
         return glyphOutlines[glyphIndex];
     }
 
+    /**
+     * Returns the transform from the cached geometry of the specified
+     * glyph (at FONT_SIZE points and at the origin) to its place in
+     * this glyph vector.
+     */
+    private AffineTransform getOutlineTransform(int glyphIndex) {
+        AffineTransform tr = AffineTransform.getTranslateInstance
+            (getGlyphPosition(glyphIndex).getX(),
+             getGlyphPosition(glyphIndex).getY());
+
+        AffineTransform glyphTransform = getGlyphTransform(glyphIndex);
+
+        if (glyphTransform != null) {
+            tr.concatenate(glyphTransform);
+        }
+        tr.scale(scaleFactor, scaleFactor);
+        return tr;
+    }
+
     // This is true if GlyphVector.getGlyphOutline returns glyph outlines
     // that are positioned (if it is false the outlines are always at 0,0).
     private static final boolean outlinesPositioned;
@@ -582,10 +589,8 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
 */
             // -- start glyph cache code --
             Point2D glyphPos = defaultGlyphPositions[glyphIndex];
-            char c = ci.setIndex(ci.getBeginIndex()+glyphIndex);
-            ci.setIndex(ci.getBeginIndex());
             AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
-                (gvtFont, c, awtGlyphVector, glyphIndex, glyphPos);
+                (gvtFont, awtGlyphVector, glyphIndex, glyphPos);
             Rectangle2D glyphBounds = v.getOutlineBounds2D();
            // -- end glyph cache code --
 
@@ -620,11 +625,21 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
         if (outline != null)
             return outline;
 
+        // The outline is drawn in one fill, and kept until the layout
+        // changes.  Append the shared glyph geometry through the glyph
+        // transforms rather than creating outlines for every glyph.
         outline = new GeneralPath();
         for (int i = 0; i < getNumGlyphs(); i++) {
-            if (glyphVisible[i]) {
-                Shape glyphOutline = getGlyphOutline(i);
-                outline.append(glyphOutline, false);
+            if (!glyphVisible[i]) {
+                continue;
+            }
+            if (glyphOutlines[i] != null) {
+                outline.append(glyphOutlines[i], false);
+            } else {
+                AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
+                    (gvtFont, awtGlyphVector, i, defaultGlyphPositions[i]);
+                outline.append(v.getOutline().getPathIterator
+                               (getOutlineTransform(i)), false);
             }
         }
         return outline;
@@ -849,6 +864,10 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
                                     (stroke == null)))
             return;
 
+        if (drawFromAtlas(graphics2D, fillPaint, stroke, strokePaint)) {
+            return;
+        }
+
         boolean useHinting = drawGlyphVectorWorks;
         if (useHinting && (stroke != null) && (strokePaint != null))
             // Can't stroke with drawGlyphVector.
@@ -964,4 +983,139 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
             }
         }
     }
+
+    /**
+     * The number of pages of the glyph atlas by default.
+     */
+    public static final int GLYPH_ATLAS_PAGES = 8;
+
+    /**
+     * The glyph masks shared by all instances.
+     */
+    private static final GlyphAtlas glyphAtlas
+        = new GlyphAtlas(GLYPH_ATLAS_PAGES);
+
+    /**
+     * Returns the glyph atlas shared by all instances, used when the
+     * <code>RenderingHintsKeyExt.KEY_GLYPH_ATLAS</code> hint is set.
+     */
+    public static GlyphAtlas getGlyphAtlas() {
+        return glyphAtlas;
+    }
+
+    /**
+     * Fills the glyphs with masks from the glyph atlas, if the
+     * KEY_GLYPH_ATLAS hint allows it for this glyph vector.  Returns
+     * false if the glyphs must be drawn from their outlines.
+     */
+    private boolean drawFromAtlas(Graphics2D g2d, Paint fillPaint,
+                                  Stroke stroke, Paint strokePaint) {
+        Object hint = g2d.getRenderingHint
+            (RenderingHintsKeyExt.KEY_GLYPH_ATLAS);
+        if (!(hint instanceof Number) || !(fillPaint instanceof Color)) {
+            return false;
+        }
+        if ((stroke != null) && (strokePaint != null)) {
+            return false;
+        }
+        if (glyphAtlas.getMaxPages() == 0) {
+            return false;
+        }
+
+        // Only translations and uniform scales.
+        AffineTransform at = g2d.getTransform();
+        double scale = at.getScaleX();
+        if ((at.getShearX() != 0) || (at.getShearY() != 0) ||
+            (scale <= 0) || (scale != at.getScaleY())) {
+            return false;
+        }
+        double size = gvtFont.getSize() * scale;
+        double maxSize = Math.min(((Number)hint).doubleValue(),
+                                  GlyphAtlas.PAGE_SIZE / 4);
+        int sizeStep = (int)Math.round(size * GlyphAtlas.SIZE_STEPS);
+        if ((size > maxSize) || (sizeStep == 0)) {
+            return false;
+        }
+        int numGlyphs = getNumGlyphs();
+        for (int i = 0; i < numGlyphs; i++) {
+            AffineTransform gt = glyphTransforms[i];
+            if ((gt != null) &&
+                ((gt.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0)) {
+                return false;
+            }
+        }
+
+        int flags = 0;
+        if (g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING)
+            == RenderingHints.VALUE_ANTIALIAS_ON) {
+            flags |= GlyphAtlas.FLAG_ANTIALIAS;
+        }
+        if (g2d.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL)
+            == RenderingHints.VALUE_STROKE_PURE) {
+            flags |= GlyphAtlas.FLAG_STROKE_PURE;
+        }
+
+        // Scale of the cached outlines to device space, for the size
+        // step of the masks.
+        double maskScale = scale * scaleFactor
+            * sizeStep / (size * GlyphAtlas.SIZE_STEPS);
+        int steps = GlyphAtlas.SUBPIXEL_STEPS;
+        Color color = (Color)fillPaint;
+
+        g2d.setTransform(new AffineTransform());
+        try {
+            for (int i = 0; i < numGlyphs; i++) {
+                if (!glyphVisible[i]) {
+                    continue;
+                }
+                Point2D pos = glyphPositions[i];
+                double x = pos.getX();
+                double y = pos.getY();
+                AffineTransform gt = glyphTransforms[i];
+                if (gt != null) {
+                    x += gt.getTranslateX();
+                    y += gt.getTranslateY();
+                }
+                double dx = x * scale + at.getTranslateX();
+                double dy = y * scale + at.getTranslateY();
+                int ix = (int)Math.floor(dx);
+                int iy = (int)Math.floor(dy);
+                int subX = (int)Math.round((dx - ix) * steps);
+                int subY = (int)Math.round((dy - iy) * steps);
+                if (subX == steps) {
+                    ix++;
+                    subX = 0;
+                }
+                if (subY == steps) {
+                    iy++;
+                    subY = 0;
+                }
+
+                int glyphCode = awtGlyphVector.getGlyphCode(i);
+                GlyphAtlas.Mask m = glyphAtlas.getMask
+                    (gvtFont.awtFont, glyphCode, sizeStep, subX, subY, flags);
+                if (m == null) {
+                    AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
+                        (gvtFont, awtGlyphVector, i, defaultGlyphPositions[i]);
+                    AffineTransform tr = new AffineTransform
+                        (maskScale, 0, 0, maskScale,
+                         subX / (double)steps, subY / (double)steps);
+                    m = glyphAtlas.addMask
+                        (gvtFont.awtFont, glyphCode, sizeStep, subX, subY,
+                         flags, tr.createTransformedShape(v.getOutline()));
+                }
+                if (m != null) {
+                    glyphAtlas.drawMask(g2d, m, ix, iy, color);
+                } else {
+                    g2d.setTransform(at);
+                    g2d.setPaint(fillPaint);
+                    g2d.fill(getGlyphOutline(i));
+                    g2d.setTransform(new AffineTransform());
+                }
+            }
+        } finally {
+            g2d.setTransform(at);
+        }
+        return true;
+    }
 }
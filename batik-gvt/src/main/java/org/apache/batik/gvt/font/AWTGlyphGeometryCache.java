@@ -27,6 +27,11 @@ import java.lang.ref.SoftReference;
  * This class represents a doubly indexed hash table, which holds
  * soft references to the contained glyph geometry informations.
  *
+ * <p>AWTGVTFont no longer keeps one of these tables per font: glyph
+ * geometry is shared by all fonts in a bounded cache keyed by glyph
+ * code (see {@link AWTGVTFont#getGlyphGeometryCache}), which holds
+ * {@link AWTGlyphGeometryCache.Value}s.</p>
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @author <a href="mailto:tkormann@ilog.fr">Thierry Kormann</a>
  * @version $Id$
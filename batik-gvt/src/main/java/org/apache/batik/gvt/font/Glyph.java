@@ -288,12 +288,7 @@ public class Glyph {
             TextPaintInfo.equivilent(tpi, cacheTPI))
             return bounds;
 
-        AffineTransform tr =
-            AffineTransform.getTranslateInstance(position.getX(),
-                                                 position.getY());
-        if (transform != null) {
-            tr.concatenate(transform);
-        }
+        AffineTransform tr = getOutlineTransform();
 
         Rectangle2D bounds = null;
         if ((dShape != null) && (tpi != null)) {
@@ -323,6 +318,42 @@ public class Glyph {
         return bounds;
     }
 
+    /**
+     * Returns the transform from the coordinate system of this glyph to
+     * the one of its glyph vector: its position followed by its transform.
+     */
+    AffineTransform getOutlineTransform() {
+        AffineTransform tr =
+            AffineTransform.getTranslateInstance(position.getX(),
+                                                 position.getY());
+        if (transform != null) {
+            tr.concatenate(transform);
+        }
+        return tr;
+    }
+
+    /**
+     * Returns the paint of this glyph.
+     */
+    TextPaintInfo getPaintInfo() {
+        return tpi;
+    }
+
+    /**
+     * Returns the shape of the d attribute of this glyph, in the
+     * coordinate system of the glyph, or null.
+     */
+    Shape getDShape() {
+        return dShape;
+    }
+
+    /**
+     * Returns the graphics node of the children of this glyph, or null.
+     */
+    GraphicsNode getGlyphChildrenNode() {
+        return glyphChildrenNode;
+    }
+
     /**
      * Returns the outline of this glyph. This will be positioned correctly and
      * any glyph transforms will have been applied.
@@ -331,12 +362,7 @@ public class Glyph {
      */
     public Shape getOutline() {
         if (outline == null) {
-            AffineTransform tr =
-                AffineTransform.getTranslateInstance(position.getX(),
-                                                     position.getY());
-            if (transform != null) {
-                tr.concatenate(transform);
-            }
+            AffineTransform tr = getOutlineTransform();
             Shape glyphChildrenOutline = null;
             if (glyphChildrenNode != null) {
                 glyphChildrenOutline = glyphChildrenNode.getOutline();
@@ -364,12 +390,7 @@ public class Glyph {
      * @param graphics2D The Graphics2D object to draw to.
      */
     public void draw(Graphics2D graphics2D) {
-        AffineTransform tr =
-            AffineTransform.getTranslateInstance(position.getX(),
-                                                 position.getY());
-        if (transform != null) {
-            tr.concatenate(transform);
-        }
+        AffineTransform tr = getOutlineTransform();
 
         // paint the dShape first
         if ((dShape != null) && (tpi != null)) {
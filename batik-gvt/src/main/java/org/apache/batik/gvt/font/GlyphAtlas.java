@@ -0,0 +1,396 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of antialiased glyph masks, packed in a few shared pages,
+ * for drawing small text without scan converting its outlines each
+ * time.
+ *
+ * <p>A mask is identified by its font face, glyph code, device size
+ * (in steps of 1/SIZE_STEPS pixel), the offset of the glyph origin
+ * within its pixel (in steps of 1/SUBPIXEL_STEPS pixel in each
+ * direction) and the rasterization hints.  Masks are drawn in device
+ * space with a solid color, through an <code>IndexColorModel</code>
+ * whose entries give the color at every coverage level, so the
+ * composite and clip of the Graphics2D apply as usual.</p>
+ *
+ * <p>Masks are packed in rows in pages of PAGE_SIZE square pixels.
+ * Once the maximum number of pages is used, every mask is dropped and
+ * the atlas starts over.</p>
+ *
+ * @version $Id$
+ */
+public class GlyphAtlas {
+
+    /**
+     * The width and height of a page.
+     */
+    public static final int PAGE_SIZE = 512;
+
+    /**
+     * The number of glyph origin offsets per pixel, in each direction.
+     */
+    public static final int SUBPIXEL_STEPS = 4;
+
+    /**
+     * The number of device sizes per pixel.
+     */
+    public static final int SIZE_STEPS = 4;
+
+    /**
+     * Rasterization flag for antialiased masks.
+     */
+    public static final int FLAG_ANTIALIAS = 1;
+
+    /**
+     * Rasterization flag for masks without stroke normalization.
+     */
+    public static final int FLAG_STROKE_PURE = 2;
+
+    /**
+     * The maximum number of pages.
+     */
+    protected int maxPages;
+
+    /**
+     * The pages, the last one being filled.
+     */
+    protected List pages = new ArrayList();
+
+    /**
+     * The masks, keyed by Key.
+     */
+    protected Map masks = new HashMap();
+
+    protected long hitCount;
+    protected long missCount;
+    protected long resetCount;
+
+    /**
+     * Creates a new atlas.
+     * @param maxPages the maximum number of pages.
+     */
+    public GlyphAtlas(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Returns the mask of a glyph, or null if it has to be added.
+     * @param face the font face.
+     * @param glyphCode the glyph code.
+     * @param size the device size of the font in 1/SIZE_STEPS pixels.
+     * @param subX the horizontal offset of the glyph origin within its
+     *        pixel, in 1/SUBPIXEL_STEPS pixels.
+     * @param subY the vertical offset of the glyph origin.
+     * @param flags the rasterization flags.
+     */
+    public synchronized Mask getMask(Object face, int glyphCode, int size,
+                                     int subX, int subY, int flags) {
+        Mask m = (Mask)masks.get(new Key(face, glyphCode, size,
+                                         subX, subY, flags));
+        if (m != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return m;
+    }
+
+    /**
+     * Rasterizes and adds the mask of a glyph.
+     * @param outline the outline of the glyph in device space, relative
+     *        to the pixel of the glyph origin (so including the
+     *        subpixel offset).
+     * @return the new mask.
+     * @see #getMask
+     */
+    public synchronized Mask addMask(Object face, int glyphCode, int size,
+                                     int subX, int subY, int flags,
+                                     Shape outline) {
+        Key key = new Key(face, glyphCode, size, subX, subY, flags);
+        Mask m = (Mask)masks.get(key);
+        if (m != null) {
+            return m;
+        }
+
+        Rectangle r = outline.getBounds();
+        // One pixel of margin for antialiasing and between masks.
+        int w = r.width + 2;
+        int h = r.height + 2;
+        if (r.isEmpty()) {
+            m = new Mask(null, 0, 0, 0, 0, 0, 0);
+        } else if (w > PAGE_SIZE || h > PAGE_SIZE) {
+            return null;
+        } else {
+            Page p = allocate(w, h);
+            m = new Mask(p, p.x, p.y, w, h, r.x - 1, r.y - 1);
+            p.x += w;
+            p.rasterize(m, outline, flags);
+        }
+        masks.put(key, m);
+        return m;
+    }
+
+    /**
+     * Returns a page with room for a w by h mask at its position.
+     */
+    protected Page allocate(int w, int h) {
+        Page p = pages.isEmpty()
+            ? null : (Page)pages.get(pages.size() - 1);
+        if (p != null && p.x + w > PAGE_SIZE) {
+            // New row.
+            p.y += p.rowHeight;
+            p.x = 0;
+            p.rowHeight = 0;
+        }
+        if (p == null || p.y + h > PAGE_SIZE) {
+            if (pages.size() >= maxPages) {
+                pages.clear();
+                masks.clear();
+                resetCount++;
+            }
+            p = new Page();
+            pages.add(p);
+        }
+        if (h > p.rowHeight) {
+            p.rowHeight = h;
+        }
+        return p;
+    }
+
+    /**
+     * Draws a mask with the given color, its glyph origin being in the
+     * device pixel (x, y).  The transform of <code>g2d</code> must be
+     * the identity.
+     */
+    public void drawMask(Graphics2D g2d, Mask m, int x, int y, Color c) {
+        if (m.page == null) {
+            return;
+        }
+        BufferedImage img = m.page.getImage(c);
+        int dx = x + m.originX;
+        int dy = y + m.originY;
+        g2d.drawImage(img, dx, dy, dx + m.width, dy + m.height,
+                      m.x, m.y, m.x + m.width, m.y + m.height, null);
+    }
+
+    /**
+     * Returns the maximum number of pages.
+     */
+    public synchronized int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Sets the maximum number of pages.  Zero disables the atlas.
+     */
+    public synchronized void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+        if (pages.size() > maxPages) {
+            clear();
+        }
+    }
+
+    /**
+     * Drops every mask.
+     */
+    public synchronized void clear() {
+        pages.clear();
+        masks.clear();
+    }
+
+    /**
+     * Returns the number of pages in use.
+     */
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the number of masks.
+     */
+    public synchronized int getMaskCount() {
+        return masks.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of times every mask was dropped because the
+     * atlas was full.
+     */
+    public synchronized long getResetCount() {
+        return resetCount;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        resetCount = 0;
+    }
+
+    public synchronized String toString() {
+        return "[masks: " + masks.size() + ", pages: " + pages.size() + '/'
+            + maxPages + ", hits: " + hitCount + ", misses: " + missCount
+            + ", resets: " + resetCount + ']';
+    }
+
+    /**
+     * The location of a glyph mask in a page.
+     */
+    public static final class Mask {
+        final Page page;
+        final int x, y, width, height;
+
+        /**
+         * The offset of the top left corner of the mask from the
+         * pixel of the glyph origin.
+         */
+        final int originX, originY;
+
+        Mask(Page page, int x, int y, int width, int height,
+             int originX, int originY) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.originX = originX;
+            this.originY = originY;
+        }
+    }
+
+    /**
+     * A page of masks: a gray image where the gray level is the
+     * coverage.
+     */
+    protected static final class Page {
+        final BufferedImage gray = new BufferedImage
+            (PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+
+        /**
+         * The position of the next mask and the height of the current
+         * row.
+         */
+        int x, y, rowHeight;
+
+        /**
+         * The page colored by the last color drawn with.
+         */
+        Color lastColor;
+        BufferedImage lastImage;
+
+        void rasterize(Mask m, Shape outline, int flags) {
+            Graphics2D g = gray.createGraphics();
+            try {
+                g.setRenderingHint
+                    (RenderingHints.KEY_ANTIALIASING,
+                     ((flags & FLAG_ANTIALIAS) != 0)
+                     ? RenderingHints.VALUE_ANTIALIAS_ON
+                     : RenderingHints.VALUE_ANTIALIAS_OFF);
+                g.setRenderingHint
+                    (RenderingHints.KEY_STROKE_CONTROL,
+                     ((flags & FLAG_STROKE_PURE) != 0)
+                     ? RenderingHints.VALUE_STROKE_PURE
+                     : RenderingHints.VALUE_STROKE_NORMALIZE);
+                g.clipRect(m.x, m.y, m.width, m.height);
+                g.translate(m.x - m.originX, m.y - m.originY);
+                g.setColor(Color.white);
+                g.fill(outline);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        synchronized BufferedImage getImage(Color c) {
+            if (c.equals(lastColor)) {
+                return lastImage;
+            }
+            int rgb = c.getRGB() & 0xffffff;
+            int alpha = c.getAlpha();
+            int[] cmap = new int[256];
+            for (int i = 0; i < 256; i++) {
+                int a = (i * alpha + 127) / 255;
+                cmap[i] = (a << 24) | rgb;
+            }
+            IndexColorModel icm = new IndexColorModel
+                (8, 256, cmap, 0, true, -1,
+                 DataBuffer.TYPE_BYTE);
+            lastImage = new BufferedImage(icm, gray.getRaster(), false, null);
+            lastColor = c;
+            return lastImage;
+        }
+    }
+
+    /**
+     * Identifies a mask.
+     */
+    static final class Key {
+        final Object face;
+        final int glyphCode;
+        final int size;
+        final int subpixel;
+        final int hash;
+
+        Key(Object face, int glyphCode, int size, int subX, int subY,
+            int flags) {
+            this.face = face;
+            this.glyphCode = glyphCode;
+            this.size = size;
+            this.subpixel = (((subY * SUBPIXEL_STEPS) + subX) << 2) | flags;
+            int h = face.hashCode();
+            h = h * 31 + glyphCode;
+            h = h * 31 + size;
+            this.hash = h * 31 + subpixel;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return (glyphCode == k.glyphCode) && (size == k.size)
+                && (subpixel == k.subpixel) && face.equals(k.face);
+        }
+    }
+}
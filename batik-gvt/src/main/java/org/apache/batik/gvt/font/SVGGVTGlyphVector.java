@@ -24,9 +24,12 @@ import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphJustificationInfo;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.batik.gvt.text.ArabicTextHandler;
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
@@ -54,6 +57,30 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
     private Point2D           endPos;
     private TextPaintInfo     cacheTPI;
 
+    /**
+     * What draw paints until the glyphs move.  Null when it must be
+     * rebuilt.
+     */
+    private volatile Runs     runs;
+
+    /**
+     * What draw paints, in order: runs of glyphs with the same paint
+     * merged into one path (shapes[i], painted with paints[i]), or
+     * glyphs with children, drawn by themselves (glyphs[i]).  Never
+     * modified once built, so it may be drawn from several threads.
+     */
+    private static final class Runs {
+        final Shape[] shapes;
+        final TextPaintInfo[] paints;
+        final Glyph[] glyphs;
+
+        Runs(Shape[] shapes, TextPaintInfo[] paints, Glyph[] glyphs) {
+            this.shapes = shapes;
+            this.paints = paints;
+            this.glyphs = glyphs;
+        }
+    }
+
     /**
      * Constructs an SVGGVTGlyphVector.
      *
@@ -70,6 +97,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         outline = null;
         bounds2D = null;
         logicalBounds = null;
+        runs = null;
         glyphLogicalBounds = new Shape[glyphs.length];
         glyphVisible = new boolean[glyphs.length];
         for (int i = 0; i < glyphs.length; i++) {
@@ -582,6 +610,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         logicalBounds = null;
         outline       = null;
         bounds2D      = null;
+        runs          = null;
 
         float currentX = 0;
         float currentY = 0;
@@ -641,6 +670,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         outline = null;
         bounds2D = null;
         logicalBounds = null;
+        runs = null;
     }
 
     /**
@@ -656,6 +686,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         outline = null;
         bounds2D = null;
         logicalBounds = null;
+        runs = null;
     }
 
     /**
@@ -669,6 +700,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         outline = null;
         bounds2D = null;
         logicalBounds = null;
+        runs = null;
         glyphLogicalBounds[glyphIndex] = null;
     }
 
@@ -725,11 +757,92 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
         TextPaintInfo tpi = (TextPaintInfo)aci.getAttribute(PAINT_INFO);
         if (!tpi.visible) return;
 
+        Runs r = runs;
+        if (r == null) {
+            r = buildRuns();
+            runs = r;
+        }
+        for (int i = 0; i < r.shapes.length; i++) {
+            if (r.glyphs[i] != null) {
+                r.glyphs[i].draw(graphics2D);
+                continue;
+            }
+            TextPaintInfo p = r.paints[i];
+            if (p.fillPaint != null) {
+                graphics2D.setPaint(p.fillPaint);
+                graphics2D.fill(r.shapes[i]);
+            }
+            // check if we need to draw the outline of this run
+            if (p.strokeStroke != null && p.strokePaint != null) {
+                graphics2D.setStroke(p.strokeStroke);
+                graphics2D.setPaint(p.strokePaint);
+                graphics2D.draw(r.shapes[i]);
+            }
+        }
+    }
+
+    /**
+     * Merges the visible glyphs into runs drawn with one fill and one
+     * stroke each.  A run ends at a glyph with another paint, another
+     * winding rule or children, and at a glyph whose painted bounds,
+     * stroke included, intersect the run.  Glyphs of a run do not
+     * overlap, so drawing the fills before the strokes paints the same
+     * as drawing each glyph filled then stroked.
+     */
+    private Runs buildRuns() {
+        List shapes = new ArrayList();
+        List paints = new ArrayList();
+        List children = new ArrayList();
+        GeneralPath run = null;
+        TextPaintInfo runTPI = null;
+        Rectangle2D runBounds = null;
         for (int i = 0; i < glyphs.length; i++) {
-            if (glyphVisible[i]) {
-                glyphs[i].draw(graphics2D);
+            if (!glyphVisible[i]) continue;
+            Glyph g = glyphs[i];
+            if (g.getGlyphChildrenNode() != null) {
+                run = null;
+                shapes.add(null);
+                paints.add(null);
+                children.add(g);
+                continue;
+            }
+            Shape dShape = g.getDShape();
+            TextPaintInfo tpi = g.getPaintInfo();
+            if ((dShape == null) || (tpi == null)) continue;
+
+            AffineTransform tr = g.getOutlineTransform();
+            PathIterator pi = dShape.getPathIterator(tr);
+            int rule = pi.getWindingRule();
+            Rectangle2D bounds;
+            if ((tpi.strokeStroke != null) && (tpi.strokePaint != null)) {
+                bounds = tpi.strokeStroke.createStrokedShape
+                    (tr.createTransformedShape(dShape)).getBounds2D();
+            } else {
+                bounds = tr.createTransformedShape
+                    (dShape.getBounds2D()).getBounds2D();
+            }
+            if ((run != null) &&
+                ((tpi != runTPI) || (rule != run.getWindingRule()) ||
+                 bounds.intersects(runBounds))) {
+                run = null;
+            }
+            if (run == null) {
+                run = new GeneralPath(rule);
+                runTPI = tpi;
+                runBounds = bounds;
+                shapes.add(run);
+                paints.add(tpi);
+                children.add(null);
+            } else {
+                runBounds.add(bounds);
             }
+            run.append(pi, false);
         }
+        return new Runs
+            ((Shape[])shapes.toArray(new Shape[shapes.size()]),
+             (TextPaintInfo[])paints.toArray
+             (new TextPaintInfo[paints.size()]),
+             (Glyph[])children.toArray(new Glyph[children.size()]));
     }
 }
 
@@ -18,27 +18,62 @@
  */
 package org.apache.batik.gvt.renderer;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
+import java.awt.Composite;
+import java.awt.GradientPaint;
+import java.awt.Paint;
 import java.awt.Rectangle;
 import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 
+import org.apache.batik.ext.awt.MultipleGradientPaint;
 import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.CompositeShapePainter;
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.Marker;
+import org.apache.batik.gvt.MarkerShapePainter;
+import org.apache.batik.gvt.PaintedNode;
+import org.apache.batik.gvt.ProxyGraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.ShapePainter;
+import org.apache.batik.gvt.StrokeShapePainter;
 import org.apache.batik.util.HaltingThread;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * Simple implementation of the Renderer that supports dynamic updates.
  *
+ * <p>When parallel repaint is on, the dirty regions of an update that
+ * do not overlap are painted into the off-screen buffer at the same
+ * time on the {@link WorkerPool}, each through its own Graphics2D.
+ * GVT nodes compute much of their state (bounds, text layout, glyph
+ * outlines) the first time they are painted, so before painting in
+ * parallel the tree is walked once on the repainting thread to
+ * compute it.  Nodes that are painted through an off-screen Filter
+ * chain, images and pattern paints cache their renderings without
+ * synchronization, so the regions of an update touching a node that
+ * uses one of them, or any paint other than a color or a gradient,
+ * are painted one after the other.  The tree must not be modified
+ * during a repaint.</p>
+ *
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
  */
@@ -61,6 +96,83 @@ public class DynamicRenderer extends StaticRenderer {
 
     RectListManager damagedAreas;
 
+    /**
+     * Whether separate dirty regions are painted in parallel.
+     */
+    protected boolean parallelRepaint;
+
+    /**
+     * The repaint statistics: the number of completed repaints, the
+     * total and longest repaint times in nanoseconds, the total dirty
+     * area in pixels, and the time and area of the last repaint.
+     */
+    protected int repaintCount;
+    protected long totalRepaintTime;
+    protected long maxRepaintTime;
+    protected long totalDirtyArea;
+    protected long lastRepaintTime;
+    protected long lastDirtyArea;
+
+    /**
+     * Returns whether separate dirty regions are painted in parallel.
+     */
+    public boolean isParallelRepaint() {
+        return parallelRepaint;
+    }
+
+    /**
+     * Sets whether dirty regions that do not overlap are painted in
+     * parallel on the {@link WorkerPool}.  This has no effect when the
+     * pool's parallelism is one, or for the updates whose regions
+     * touch a node painted through an off-screen Filter chain, an
+     * image or a paint other than a color or a gradient.
+     */
+    public void setParallelRepaint(boolean b) {
+        parallelRepaint = b;
+    }
+
+    /**
+     * Returns the statistics of the repaints completed since the
+     * renderer was created or the statistics were last reset.
+     */
+    public synchronized RepaintStatistics getRepaintStatistics() {
+        return new RepaintStatistics
+            (repaintCount,
+             lastRepaintTime / 1e6,
+             repaintCount == 0 ? 0 : totalRepaintTime / 1e6 / repaintCount,
+             maxRepaintTime / 1e6,
+             lastDirtyArea,
+             repaintCount == 0 ? 0 : (double)totalDirtyArea / repaintCount);
+    }
+
+    /**
+     * Resets the repaint statistics.
+     */
+    public synchronized void resetRepaintStatistics() {
+        repaintCount = 0;
+        totalRepaintTime = 0;
+        maxRepaintTime = 0;
+        totalDirtyArea = 0;
+        lastRepaintTime = 0;
+        lastDirtyArea = 0;
+    }
+
+    /**
+     * Records a completed repaint.
+     * @param time the time it took, in nanoseconds
+     * @param area the number of pixels repainted
+     */
+    protected synchronized void repaintCompleted(long time, long area) {
+        repaintCount++;
+        totalRepaintTime += time;
+        if (time > maxRepaintTime) {
+            maxRepaintTime = time;
+        }
+        totalDirtyArea += area;
+        lastRepaintTime = time;
+        lastDirtyArea = area;
+    }
+
     protected CachableRed setupCache(CachableRed img) {
         // Don't do any caching of content for dynamic case
         return img;
@@ -145,6 +257,9 @@ public class DynamicRenderer extends StaticRenderer {
         if (devRLM == null)
             return;
 
+        long start = System.nanoTime();
+        long area = 0;
+
         // long t0 = System.currentTimeMillis();
         // if (lastFrame != -1) {
         //     System.out.println("InterFrame time: " + (t0-lastFrame));
@@ -233,23 +348,36 @@ public class DynamicRenderer extends StaticRenderer {
                     }
                 }
 
-                Color fillColor   = new Color( 255, 0, 0, 50 );
-                Color borderColor = new Color(   0, 0, 0, 50 );
-
+                List regions = new ArrayList();
                 for (Object aDevRLM : devRLM) {
                     Rectangle r = (Rectangle) aDevRLM;
                     if (!dr.intersects(r)) continue;
                     r = dr.intersection(r);
+                    regions.add(r);
+                    area += (long)r.width * r.height;
+                }
 
-                    // System.err.println("Render: " + r);
-                    WritableRaster dst = copyRaster.createWritableChild
-                            (r.x, r.y, r.width, r.height, r.x, r.y, null);
-                    cr.copyData(dst);
-                    if (g2d != null) {
-                        g2d.setPaint(fillColor);
-                        g2d.fill(r);
-                        g2d.setPaint(borderColor);
-                        g2d.draw(r);
+                if ((g2d == null) && parallelRepaint &&
+                    (regions.size() > 1) &&
+                    (WorkerPool.getParallelism() > 1) &&
+                    prepareParallelRepaint(regions)) {
+                    repaintRegions(cr, copyRaster, regions);
+                } else {
+                    Color fillColor   = new Color( 255, 0, 0, 50 );
+                    Color borderColor = new Color(   0, 0, 0, 50 );
+
+                    for (Object region : regions) {
+                        Rectangle r = (Rectangle) region;
+                        // System.err.println("Render: " + r);
+                        WritableRaster dst = copyRaster.createWritableChild
+                                (r.x, r.y, r.width, r.height, r.x, r.y, null);
+                        cr.copyData(dst);
+                        if (g2d != null) {
+                            g2d.setPaint(fillColor);
+                            g2d.fill(r);
+                            g2d.setPaint(borderColor);
+                            g2d.draw(r);
+                        }
                     }
                 }
             }
@@ -274,5 +402,318 @@ public class DynamicRenderer extends StaticRenderer {
         currentOffScreen  = tmpBI;
 
         damagedAreas = devRLM;
+
+        repaintCompleted(System.nanoTime() - start, area);
+    }
+
+    /**
+     * Computes, on the calling thread, the state the nodes painted in
+     * the given regions compute lazily: their bounds, which for text
+     * includes its layout, and the outline of the leaves, which for
+     * text includes its glyph outlines.  The threads painting the
+     * regions then only read it.  Returns false if one of these nodes
+     * is painted through an off-screen Filter chain, is an image or
+     * uses a paint other than a color or a gradient, in which case the
+     * regions must be painted one after the other.
+     * @param regions the list of the Rectangles to repaint
+     */
+    protected boolean prepareParallelRepaint(List regions) {
+        Rectangle area = new Rectangle((Rectangle)regions.get(0));
+        for (int i = 1; i < regions.size(); i++) {
+            area.add((Rectangle)regions.get(i));
+        }
+        return prepareParallelRepaint(rootGN, usr2dev, area);
+    }
+
+    /**
+     * Prepares <code>node</code> and its descendants that intersect
+     * <code>area</code> for parallel painting.
+     * @param at the transform from the parent of node to device space
+     * @param area the bounds of the regions to repaint, in device space,
+     *        or null to prepare the whole of <code>node</code>
+     * @see #prepareParallelRepaint(List)
+     */
+    protected static boolean prepareParallelRepaint(GraphicsNode node,
+                                                    AffineTransform at,
+                                                    Rectangle2D area) {
+        if (node == null)
+            return true;
+        Rectangle2D bounds = node.getBounds();
+        if (bounds == null)
+            return true;
+        AffineTransform t = node.getTransform();
+        if (t != null) {
+            at = new AffineTransform(at);
+            at.concatenate(t);
+        }
+        if ((area != null) &&
+            !at.createTransformedShape(bounds).intersects(area))
+            return true;  // Not painted.
+
+        Composite c = node.getComposite();
+        if ((node.getFilter() != null) || (node.getMask() != null) ||
+            ((node.getClip() != null) &&
+             node.getClip().getUseAntialiasedClip()) ||
+            ((c != null) && !AlphaComposite.SrcOver.equals(c)))
+            return false;
+
+        if (node instanceof CompositeGraphicsNode) {
+            CompositeGraphicsNode cgn = (CompositeGraphicsNode)node;
+            for (int i = 0; i < cgn.size(); i++) {
+                GraphicsNode child = (GraphicsNode)cgn.get(i);
+                if (!prepareParallelRepaint(child, at, area))
+                    return false;
+            }
+        } else if (node instanceof ProxyGraphicsNode) {
+            return prepareParallelRepaint
+                (((ProxyGraphicsNode)node).getSource(), at, area);
+        } else if (node instanceof ShapeNode) {
+            if (!prepareParallelRepaint(((ShapeNode)node).getShapePainter()))
+                return false;
+            node.getOutline();
+        } else if (node instanceof PaintedNode) {
+            List paints = ((PaintedNode)node).getPaints();
+            for (int i = 0; i < paints.size(); i++) {
+                if (!isParallelPaint((Paint)paints.get(i)))
+                    return false;
+            }
+            node.getOutline();
+        } else {
+            // Images, and leaves whose paints are unknown.
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the paints of a shape painter, and prepares the nodes of
+     * its markers, for parallel painting.
+     */
+    protected static boolean prepareParallelRepaint(ShapePainter sp) {
+        if (sp == null)
+            return true;
+        if (sp instanceof FillShapePainter)
+            return isParallelPaint(((FillShapePainter)sp).getPaint());
+        if (sp instanceof StrokeShapePainter)
+            return isParallelPaint(((StrokeShapePainter)sp).getPaint());
+        if (sp instanceof CompositeShapePainter) {
+            CompositeShapePainter csp = (CompositeShapePainter)sp;
+            for (int i = 0; i < csp.getShapePainterCount(); i++) {
+                if (!prepareParallelRepaint(csp.getShapePainter(i)))
+                    return false;
+            }
+            return true;
+        }
+        if (sp instanceof MarkerShapePainter) {
+            MarkerShapePainter msp = (MarkerShapePainter)sp;
+            Marker[] markers = { msp.getStartMarker(), msp.getMiddleMarker(),
+                                 msp.getEndMarker() };
+            for (int i = 0; i < markers.length; i++) {
+                if ((markers[i] != null) &&
+                    !prepareParallelRepaint(markers[i].getMarkerNode(),
+                                            new AffineTransform(), null))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if painting with <code>p</code> from several threads
+     * at once is safe: its contexts share no unsynchronized state.
+     * Pattern paints share their tile caches.
+     */
+    protected static boolean isParallelPaint(Paint p) {
+        return (p == null) || (p instanceof Color) ||
+            (p instanceof GradientPaint) ||
+            (p instanceof MultipleGradientPaint);
+    }
+
+    /**
+     * Paints the given regions of <code>cr</code> into
+     * <code>copyRaster</code> on the {@link WorkerPool}.  Regions that
+     * overlap, directly or through other regions, are painted one after
+     * the other by the same thread; the resulting groups are spread
+     * over the threads from the largest down.  The caller must have
+     * prepared the tree with {@link #prepareParallelRepaint(List)}.
+     * @param regions the list of the Rectangles to repaint
+     */
+    protected void repaintRegions(final CachableRed cr,
+                                  final WritableRaster copyRaster,
+                                  List regions) {
+        final Rectangle[][] groups = groupOverlapping(regions);
+        final int n = Math.min(WorkerPool.getParallelism(), groups.length);
+        WorkerPool.runBands(n, 1, new WorkerPool.BandTask() {
+                public void run(int start, int end) {
+                    for (int b = start; b < end; b++) {
+                        for (int i = b; i < groups.length; i += n) {
+                            if (HaltingThread.hasBeenHalted()) {
+                                return;
+                            }
+                            Rectangle[] group = groups[i];
+                            for (int j = 0; j < group.length; j++) {
+                                Rectangle r = group[j];
+                                WritableRaster dst
+                                    = copyRaster.createWritableChild
+                                    (r.x, r.y, r.width, r.height,
+                                     r.x, r.y, null);
+                                cr.copyData(dst);
+                            }
+                        }
+                    }
+                }
+            });
+    }
+
+    /**
+     * Splits a list of Rectangles into groups such that no two
+     * Rectangles of different groups overlap.  The groups are returned
+     * by decreasing area.
+     */
+    protected static Rectangle[][] groupOverlapping(List regions) {
+        int n = regions.size();
+        Rectangle[] rects
+            = (Rectangle[]) regions.toArray(new Rectangle[n]);
+        // Union-find over the overlapping pairs.
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (rects[i].intersects(rects[j])) {
+                    int a = find(parent, i);
+                    int b = find(parent, j);
+                    if (a != b) {
+                        parent[b] = a;
+                    }
+                }
+            }
+        }
+        int[] size = new int[n];
+        final long[] area = new long[n];
+        for (int i = 0; i < n; i++) {
+            int root = find(parent, i);
+            size[root]++;
+            area[root] += (long)rects[i].width * rects[i].height;
+        }
+        Integer[] roots = new Integer[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (parent[i] == i) {
+                roots[count++] = new Integer(i);
+            }
+        }
+        Arrays.sort(roots, 0, count, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    long a1 = area[((Integer) o1).intValue()];
+                    long a2 = area[((Integer) o2).intValue()];
+                    return a1 > a2 ? -1 : (a1 < a2 ? 1 : 0);
+                }
+            });
+        int[] index = new int[n];
+        Rectangle[][] groups = new Rectangle[count][];
+        for (int g = 0; g < count; g++) {
+            int root = roots[g].intValue();
+            groups[g] = new Rectangle[size[root]];
+            index[root] = g;
+        }
+        int[] fill = new int[count];
+        for (int i = 0; i < n; i++) {
+            int g = index[find(parent, i)];
+            groups[g][fill[g]++] = rects[i];
+        }
+        return groups;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Timing and dirty area statistics of the repaints.
+     */
+    public static class RepaintStatistics {
+
+        protected int repaintCount;
+        protected double lastRepaintTime;
+        protected double averageRepaintTime;
+        protected double maxRepaintTime;
+        protected long lastDirtyArea;
+        protected double averageDirtyArea;
+
+        /**
+         * Creates a new RepaintStatistics.
+         * @param repaintCount the number of completed repaints
+         * @param lastRepaintTime the duration of the last repaint, in ms
+         * @param averageRepaintTime the average duration of a repaint, in ms
+         * @param maxRepaintTime the longest duration of a repaint, in ms
+         * @param lastDirtyArea the pixels repainted by the last repaint
+         * @param averageDirtyArea the average pixels repainted
+         */
+        public RepaintStatistics(int repaintCount, double lastRepaintTime,
+                                 double averageRepaintTime,
+                                 double maxRepaintTime, long lastDirtyArea,
+                                 double averageDirtyArea) {
+            this.repaintCount = repaintCount;
+            this.lastRepaintTime = lastRepaintTime;
+            this.averageRepaintTime = averageRepaintTime;
+            this.maxRepaintTime = maxRepaintTime;
+            this.lastDirtyArea = lastDirtyArea;
+            this.averageDirtyArea = averageDirtyArea;
+        }
+
+        /**
+         * Returns the number of completed repaints.
+         */
+        public int getRepaintCount() {
+            return repaintCount;
+        }
+
+        /**
+         * Returns the duration of the last repaint, in milliseconds.
+         */
+        public double getLastRepaintTime() {
+            return lastRepaintTime;
+        }
+
+        /**
+         * Returns the average duration of a repaint, in milliseconds.
+         */
+        public double getAverageRepaintTime() {
+            return averageRepaintTime;
+        }
+
+        /**
+         * Returns the longest duration of a repaint, in milliseconds.
+         */
+        public double getMaxRepaintTime() {
+            return maxRepaintTime;
+        }
+
+        /**
+         * Returns the number of pixels repainted by the last repaint.
+         */
+        public long getLastDirtyArea() {
+            return lastDirtyArea;
+        }
+
+        /**
+         * Returns the average number of pixels repainted.
+         */
+        public double getAverageDirtyArea() {
+            return averageDirtyArea;
+        }
+
+        public String toString() {
+            return repaintCount + " repaints, " + averageRepaintTime
+                + "ms/repaint (max " + maxRepaintTime + "ms), "
+                + averageDirtyArea + " pixels/repaint";
+        }
     }
 }
@@ -19,9 +19,11 @@
 package org.apache.batik.gvt.text;
 
 import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
+import java.text.Bidi;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +44,7 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
     private FontRenderContext frc;
     private int chunkStart;
     private int [] newCharOrder;
+    private Reordering reordering;
     private static final Float FLOAT_NAN = Float.NaN;
 
 
@@ -68,70 +71,94 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
     public BidiAttributedCharacterIterator(AttributedCharacterIterator aci,
                                            FontRenderContext           frc,
                                            int chunkStart) {
+        this(aci, frc, chunkStart, (Reordering)null);
+    }
+
+    /**
+     * Constructs a character iterator that represents the visual display order
+     * of characters within bidirectional text.
+     *
+     * @param aci The character iterator containing the characters in logical
+     * order.
+     * @param frc The current font render context
+     * @param reordering The reordering of a chunk with the same characters
+     * and the same attributes (see {@link #getReordering}), or null to
+     * compute it.
+     */
+    public BidiAttributedCharacterIterator(AttributedCharacterIterator aci,
+                                           FontRenderContext           frc,
+                                           int chunkStart,
+                                           Reordering reordering) {
 
         this.frc = frc;
         this.chunkStart = chunkStart;
         aci.first();
         int   numChars    = aci.getEndIndex()-aci.getBeginIndex();
-        AttributedString as;
-
-         // Ideally we would do a 'quick' check on chars and
-         // attributes to decide if we really need to do bidi or not.
-        if (false) {
-            // Believe it or not this is much slower than the else case
-            // but the two are exactly equivalent (including the stripping
-            // of null keys/values).
-            as = new AttributedString(aci);
-        } else {
-            StringBuffer strB = new StringBuffer( numChars );
-            char c = aci.first();
-            for (int i = 0; i < numChars; i++) {
-                strB.append(c);
-                c = aci.next();
+
+        // Note: new AttributedString(aci) is exactly equivalent (including
+        // the stripping of null keys/values) but much slower.
+        char[] text = new char[numChars];
+        char c = aci.first();
+        for (int i = 0; i < numChars; i++) {
+            text[i] = c;
+            c = aci.next();
+        }
+        AttributedString as = new AttributedString(new String(text));
+        boolean leftToRight = true;
+        int start=aci.getBeginIndex();
+        int end  =aci.getEndIndex();
+        int index = start;
+        while (index < end) {
+            aci.setIndex(index);
+            Map attrMap = aci.getAttributes();
+            int extent  = aci.getRunLimit();
+            Map destMap = new HashMap(attrMap.size());
+            for (Object o : attrMap.entrySet()) {
+                // Font doesn't like getting attribute sets with
+                // null keys or values so we strip them here.
+                Map.Entry e = (Map.Entry) o;
+                Object key = e.getKey();
+                if (key == null) continue;
+                Object value = e.getValue();
+                if (value == null) continue;
+                destMap.put(key, value);
             }
-            as = new AttributedString(strB.toString());
-            int start=aci.getBeginIndex();
-            int end  =aci.getEndIndex();
-            int index = start;
-            while (index < end) {
-                aci.setIndex(index);
-                Map attrMap = aci.getAttributes();
-                int extent  = aci.getRunLimit();
-                Map destMap = new HashMap(attrMap.size());
-                for (Object o : attrMap.entrySet()) {
-                    // Font doesn't like getting attribute sets with
-                    // null keys or values so we strip them here.
-                    Map.Entry e = (Map.Entry) o;
-                    Object key = e.getKey();
-                    if (key == null) continue;
-                    Object value = e.getValue();
-                    if (value == null) continue;
-                    destMap.put(key, value);
-                }
-                // System.out.println("Run: " + (index-start) + "->" +
-                //                    (extent-start) + " of " + numChars);
-                as.addAttributes (destMap, index-start, extent-start);
-                index = extent;
+            if (leftToRight) {
+                leftToRight = isLeftToRight(destMap);
             }
+            // System.out.println("Run: " + (index-start) + "->" +
+            //                    (extent-start) + " of " + numChars);
+            as.addAttributes (destMap, index-start, extent-start);
+            index = extent;
         }
 
-        // We Just want it to do BIDI for us...
-        // In 1.4 we might be able to use the BIDI class...
-        TextLayout tl = new TextLayout(as.getIterator(), frc);
+        int[] charLevels;
+        if (reordering != null) {
+            charLevels = reordering.levels;
+        } else if (leftToRight && !Bidi.requiresBidi(text, 0, numChars)) {
+            // Neither right to left chars nor embeddings: every char
+            // is at level 0, no need to run the bidi algorithm.
+            charLevels = new int[numChars];
+        } else {
+            // We Just want it to do BIDI for us...
+            // In 1.4 we might be able to use the BIDI class...
+            TextLayout tl = new TextLayout(as.getIterator(), frc);
+            charLevels = new int[numChars];
+            for (int i = 0; i < numChars; i++) {
+                charLevels[i] = tl.getCharacterLevel(i);
+            }
+        }
 
         int[] charIndices = new int[numChars];
-        int[] charLevels  = new int[numChars];
 
         int runStart   = 0;
-        int currBiDi   = tl.getCharacterLevel(0);
+        int currBiDi   = charLevels[0];
         charIndices[0] = 0;
-        charLevels [0] = currBiDi;
         int maxBiDi    = currBiDi;
 
         for (int i = 1; i < numChars; i++) {
-            int newBiDi = tl.getCharacterLevel(i);
+            int newBiDi = charLevels[i];
             charIndices[i] = i;
-            charLevels [i] = newBiDi;
 
             if (newBiDi != currBiDi) {
                 as.addAttribute
@@ -160,36 +187,48 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
         }
 
         //  work out the new character order
-        newCharOrder = doBidiReorder(charIndices, charLevels,
-                                     numChars, maxBiDi);
+        if (reordering != null) {
+            newCharOrder = reordering.charOrder.clone();
+        } else {
+            newCharOrder = doBidiReorder(charIndices,
+                                         charLevels.clone(),
+                                         numChars, maxBiDi);
+        }
 
         // construct the string in the new order
-        StringBuffer reorderedString = new StringBuffer( numChars );
+        char[] reorderedChars;
         int reorderedFirstChar = 0;
-        for (int i = 0; i < numChars; i++) {
-            int srcIdx = newCharOrder[i];
-            char c = aci.setIndex(srcIdx);
-            if (srcIdx == 0) reorderedFirstChar = i;
-
-            // check for mirrored char
-            int bidiLevel = tl.getCharacterLevel(srcIdx);
-            if ((bidiLevel & 0x01) != 0) {
-                // bidi level is odd so writing dir is right to left
-                // So get the mirror version of the char if there
-                // is one.
-                c = (char)mirrorChar(c);
+        if (reordering != null) {
+            reorderedChars = reordering.chars;
+            for (int i = 0; i < numChars; i++) {
+                if (newCharOrder[i] == 0) reorderedFirstChar = i;
             }
+        } else {
+            reorderedChars = new char[numChars];
+            for (int i = 0; i < numChars; i++) {
+                int srcIdx = newCharOrder[i];
+                c = text[srcIdx];
+                if (srcIdx == 0) reorderedFirstChar = i;
+
+                // check for mirrored char
+                if ((charLevels[srcIdx] & 0x01) != 0) {
+                    // bidi level is odd so writing dir is right to left
+                    // So get the mirror version of the char if there
+                    // is one.
+                    c = (char)mirrorChar(c);
+                }
 
-            reorderedString.append(c);
+                reorderedChars[i] = c;
+            }
         }
 
         // construct the reordered ACI
         AttributedString reorderedAS
-            = new AttributedString(reorderedString.toString());
+            = new AttributedString(new String(reorderedChars));
         Map [] attrs = new Map[numChars];
-        int start=aci.getBeginIndex();
-        int end  =aci.getEndIndex();
-        int index = start;
+        start=aci.getBeginIndex();
+        end  =aci.getEndIndex();
+        index = start;
         while (index < end) {
             aci.setIndex(index);
             Map attrMap = aci.getAttributes();
@@ -254,8 +293,23 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
                 (GVTAttributedCharacterIterator.TextAttribute.DY, dy, 0, 1);
         }
 
-        // assign arabic form attributes to any arabic chars in the string
-        reorderedAS = ArabicTextHandler.assignArabicForms(reorderedAS);
+        if (reordering != null) {
+            reordering.applyArabicForms(reorderedAS);
+            this.reordering = reordering;
+        } else {
+            // assign arabic form attributes to any arabic chars in the
+            // string
+            AttributedString shapedAS
+                = ArabicTextHandler.assignArabicForms(reorderedAS);
+            if (shapedAS == reorderedAS) {
+                // Shaping only added forms, without moving chars, so
+                // the result can be applied to other chunks.
+                this.reordering = new Reordering
+                    (charLevels, newCharOrder.clone(),
+                     reorderedChars, shapedAS.getIterator());
+            }
+            reorderedAS = shapedAS;
+        }
 
         // Shift the values to match the source text string...
         for (int i=0; i<newCharOrder.length; i++) {
@@ -264,6 +318,29 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
         reorderedACI = reorderedAS.getIterator();
     }
 
+    /**
+     * Tells whether the given attributes of a run leave it left to right
+     * (no right to left run direction nor embedding).
+     */
+    protected static boolean isLeftToRight(Map attrs) {
+        Object dir = attrs.get(TextAttribute.RUN_DIRECTION);
+        if (dir != null && !TextAttribute.RUN_DIRECTION_LTR.equals(dir)) {
+            return false;
+        }
+        Object level = attrs.get(TextAttribute.BIDI_EMBEDDING);
+        return (level == null) || (((Integer)level).intValue() == 0);
+    }
+
+    /**
+     * Returns the reordering of this chunk, which can be given to the
+     * constructor of chunks with the same characters and attributes,
+     * or null if the chunk is left to right or if its reordering can't
+     * be reused.
+     */
+    public Reordering getReordering() {
+        return reordering;
+    }
+
     // Returns an array that give the character index in the source ACI for
     // each character in this ACI.
     public int[] getCharMap() { return newCharOrder; }
@@ -409,7 +486,7 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
     public Object clone() {
         return new BidiAttributedCharacterIterator
             ((AttributedCharacterIterator)reorderedACI.clone(),
-             frc, chunkStart, (int [])newCharOrder.clone());
+             frc, chunkStart, newCharOrder.clone());
     }
 
     /**
@@ -634,4 +711,72 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
         }
         return  c;
     }
+
+    /**
+     * The bidi levels, visual order and Arabic forms of a chunk, which
+     * only depend on its characters and on the attributes that set
+     * their direction.  Instances are immutable.
+     */
+    public static final class Reordering {
+
+        final int[] levels;
+        final int[] charOrder;
+        final char[] chars;
+        final int[] formStarts;
+        final int[] formLimits;
+        final Object[] forms;
+
+        /**
+         * Creates the reordering of a chunk from its levels, the
+         * logical index of each visual char, the visual chars and the
+         * iterator of the shaped chunk, for its ARABIC_FORM runs.
+         */
+        Reordering(int[] levels, int[] charOrder, char[] chars,
+                   AttributedCharacterIterator shaped) {
+            this.levels = levels;
+            this.charOrder = charOrder;
+            this.chars = chars;
+            AttributedCharacterIterator.Attribute form
+                = GVTAttributedCharacterIterator.TextAttribute.ARABIC_FORM;
+            int begin = shaped.getBeginIndex();
+            int end   = shaped.getEndIndex();
+            int n = 0;
+            int[] s = new int[chars.length];
+            int[] l = new int[chars.length];
+            Object[] v = new Object[chars.length];
+            int index = begin;
+            while (index < end) {
+                shaped.setIndex(index);
+                int limit = shaped.getRunLimit(form);
+                Object value = shaped.getAttribute(form);
+                if (value != null) {
+                    s[n] = index - begin;
+                    l[n] = limit - begin;
+                    v[n++] = value;
+                }
+                index = limit;
+            }
+            formStarts = new int[n];
+            formLimits = new int[n];
+            forms = new Object[n];
+            System.arraycopy(s, 0, formStarts, 0, n);
+            System.arraycopy(l, 0, formLimits, 0, n);
+            System.arraycopy(v, 0, forms, 0, n);
+        }
+
+        /**
+         * Returns the number of chars of the chunk.
+         */
+        public int getLength() {
+            return levels.length;
+        }
+
+        void applyArabicForms(AttributedString as) {
+            for (int i = 0; i < forms.length; i++) {
+                as.addAttribute
+                    (GVTAttributedCharacterIterator.TextAttribute.ARABIC_FORM,
+                     forms[i], formStarts[i], formLimits[i]);
+            }
+        }
+    }
 }
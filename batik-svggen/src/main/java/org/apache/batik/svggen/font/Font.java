@@ -38,6 +38,13 @@ import org.apache.batik.svggen.font.table.TableFactory;
 
 /**
  * The TrueType font.
+ *
+ * <p>The font file is memory mapped when possible, in which case the
+ * tables that are not needed to read glyphs (such as GSUB, GPOS or
+ * kern) are only parsed when first requested with {@link #getTable},
+ * and glyph descriptions are decoded when first requested.  The
+ * methods of this class are thread safe once the font is read.</p>
+ *
  * @version $Id$
  * @author <a href="mailto:david@steadystate.co.uk">David Schweinsberg</a>
  */
@@ -48,6 +55,16 @@ public class Font {
 //    private Parser parser = null;
     private TableDirectory tableDirectory = null;
     private Table[] tables;
+
+    /**
+     * Whether each table was parsed.
+     */
+    private boolean[] loaded;
+
+    /**
+     * The mapped font file, used to parse tables on demand.
+     */
+    private RandomAccessFile raf;
     private Os2Table os2;
     private CmapTable cmap;
     private GlyfTable glyf;
@@ -65,10 +82,25 @@ public class Font {
     public Font() {
     }
 
-    public Table getTable(int tableType) {
-        for (Table table : tables) {
-            if ((table != null) && (table.getType() == tableType)) {
-                return table;
+    public synchronized Table getTable(int tableType) {
+        if (tableDirectory == null) {
+            return null;
+        }
+        for (int i = 0; i < tables.length; i++) {
+            if (tableDirectory.getEntry(i).getTag() != tableType) {
+                continue;
+            }
+            if (!loaded[i]) {
+                loaded[i] = true;
+                try {
+                    tables[i] = TableFactory.create
+                        (tableDirectory.getEntry(i), raf);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (tables[i] != null) {
+                return tables[i];
             }
         }
         return null;
@@ -152,16 +184,14 @@ public class Font {
         }
 
         try {
-            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                raf = new MappedRandomAccessFile(f);
+            } catch (IOException e) {
+                raf = new RandomAccessFile(f, "r");
+            }
             tableDirectory = new TableDirectory(raf);
             tables = new Table[tableDirectory.getNumTables()];
-
-            // Load each of the tables
-            for (int i = 0; i < tableDirectory.getNumTables(); i++) {
-                tables[i] = TableFactory.create
-                    (tableDirectory.getEntry(i), raf);
-            }
-            raf.close();
+            loaded = new boolean[tables.length];
 
             // Get references to commonly used tables
             os2  = (Os2Table) getTable(Table.OS_2);
@@ -180,6 +210,15 @@ public class Font {
                       maxp.getNumGlyphs() - hhea.getNumberOfHMetrics());
             loca.init(maxp.getNumGlyphs(), head.getIndexToLocFormat() == 0);
             glyf.init(maxp.getNumGlyphs(), loca);
+
+            if (!(raf instanceof MappedRandomAccessFile)) {
+                // Load the remaining tables now and release the file
+                for (int i = 0; i < tables.length; i++) {
+                    getTable(tableDirectory.getEntry(i).getTag());
+                }
+                raf.close();
+                raf = null;
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
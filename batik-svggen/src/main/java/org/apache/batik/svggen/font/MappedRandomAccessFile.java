@@ -0,0 +1,106 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only RandomAccessFile that reads a memory mapped copy of the
+ * file.
+ *
+ * <p>The font tables are parsed with the <code>readShort</code>,
+ * <code>readInt</code>... methods of RandomAccessFile, each of which is
+ * one system call per byte on a plain file.  These methods are built
+ * on <code>read()</code> and <code>read(byte[], int, int)</code>, which
+ * this class serves from a MappedByteBuffer, so the table parsers are
+ * unchanged.  The file descriptor is closed by the constructor: the
+ * mapping stays valid until the instance is garbage collected, which
+ * lets fonts create tables on demand.  Instances are not thread safe.</p>
+ *
+ * @version $Id$
+ */
+class MappedRandomAccessFile extends RandomAccessFile {
+
+    /**
+     * The content of the file.
+     */
+    protected final ByteBuffer buffer;
+
+    /**
+     * Maps the given file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public MappedRandomAccessFile(File f) throws IOException {
+        super(f, "r");
+        try {
+            FileChannel ch = getChannel();
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped");
+            }
+            buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            super.close();
+        }
+    }
+
+    public int read() {
+        return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+    public int read(byte[] b) {
+        return read(b, 0, b.length);
+    }
+
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = Math.min(len, buffer.remaining());
+        if (n == 0) {
+            return -1;
+        }
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    public int skipBytes(int n) {
+        int s = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + s);
+        return s;
+    }
+
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("Negative seek offset");
+        }
+        buffer.position((int)Math.min(pos, buffer.limit()));
+    }
+
+    public long getFilePointer() {
+        return buffer.position();
+    }
+
+    public long length() {
+        return buffer.limit();
+    }
+}
@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.StringTokenizer;
 
 import org.apache.batik.svggen.font.table.CmapFormat;
 import org.apache.batik.svggen.font.table.Feature;
@@ -38,6 +39,7 @@ import org.apache.batik.svggen.font.table.ScriptTags;
 import org.apache.batik.svggen.font.table.SingleSubst;
 import org.apache.batik.svggen.font.table.Table;
 import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.WorkerPool;
 import org.apache.batik.util.XMLConstants;
 
 /**
@@ -55,6 +57,17 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
     static final int DEFAULT_FIRST = 32;
     static final int DEFAULT_LAST = 126;
 
+    /**
+     * The number of characters whose glyphs are generated before being
+     * written, which bounds the memory used by the generated strings.
+     */
+    static final int GLYPH_BATCH = 1024;
+
+    /**
+     * The minimum number of characters handed to a WorkerPool thread.
+     */
+    static final int MIN_BAND = 32;
+
     static {
         String  temp;
         try {
@@ -272,11 +285,30 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
      * @param forceAscii Force the use of the ASCII character map
      */
     protected static void writeFontAsSVGFragment(PrintStream ps, Font font, String id, int first, int last, boolean autoRange, boolean forceAscii)
+    throws Exception {
+        writeFontAsSVGFragment(ps, font, id, new int[] { first, last },
+                               autoRange, forceAscii);
+    }
+
+    /**
+     * Returns a &lt;font&gt;&#x2e;&#x2e;&#x2e;&lt;/font&gt; block,
+     * defining the specified subset of a font.  Only the glyphs of the
+     * characters in the given ranges are decoded; their path data is
+     * generated on the {@link WorkerPool} and written in character
+     * order.
+     *
+     * @param font The TrueType font to be converted to SVG
+     * @param id An XML id attribute for the font element
+     * @param ranges The first and last characters of each output
+     *        range; -1 selects the default (or automatic) bound
+     * @param forceAscii Force the use of the ASCII character map
+     */
+    protected static void writeFontAsSVGFragment(PrintStream ps, final Font font, String id, int[] ranges, boolean autoRange, boolean forceAscii)
     throws Exception {
         //    StringBuffer sb = new StringBuffer();
         //    int horiz_advance_x = font.getHmtxTable().getAdvanceWidth(
         //      font.getHheaTable().getNumberOfHMetrics() - 1);
-        int horiz_advance_x = font.getOS2Table().getAvgCharWidth();
+        final int horiz_advance_x = font.getOS2Table().getAvgCharWidth();
 
         ps.print(XML_OPEN_TAG_START);
         ps.print(SVG_FONT_TAG);
@@ -303,7 +335,7 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
         ps.print(getSVGFontFaceElement(font));
 
         // Decide upon a cmap table to use for our character to glyph look-up
-        CmapFormat cmapFmt = null;
+        CmapFormat cmapFmt;
         if (forceAscii) {
             // We've been asked to use the ASCII/Macintosh cmap format
             cmapFmt = font.getCmapTable().getCmapFormat(
@@ -362,38 +394,58 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
             initialSubst, medialSubst, terminalSubst, ""));
 
         try {
-            if (first == -1) {
-                if (!autoRange) first = DEFAULT_FIRST;
-                else            first = cmapFmt.getFirst();
-            }
-            if (last == -1) {
-                if (!autoRange) last = DEFAULT_LAST;
-                else            last = cmapFmt.getLast();
-            }
+            final CmapFormat cmap = cmapFmt;
+            final SingleSubst init = initialSubst;
+            final SingleSubst medi = medialSubst;
+            final SingleSubst term = terminalSubst;
 
-            // Include our requested range
+            // Include our requested ranges
             Set glyphSet = new HashSet();
-            for (int i = first; i <= last; i++) {
-                int glyphIndex = cmapFmt.mapCharCode(i);
-                //        ps.println(String.valueOf(i) + " -> " + String.valueOf(glyphIndex));
-                //      if (font.getGlyphs()[glyphIndex] != null)
-                //        sb.append(font.getGlyphs()[glyphIndex].toString() + "\n");
-
-                if (glyphIndex > 0) {
-                    // add glyph ID to set so we can filter later
-                    glyphSet.add(glyphIndex);
-
-                    ps.println(getGlyphAsSVG(
-                        font,
-                        font.getGlyph(glyphIndex),
-                        glyphIndex,
-                        horiz_advance_x,
-                        initialSubst, medialSubst, terminalSubst,
-                        (32 <= i && i <= 127) ?
-                        encodeEntities( String.valueOf( (char)i ) ) :
-                        XML_CHAR_REF_PREFIX + Integer.toHexString(i) + XML_CHAR_REF_SUFFIX));
+            for (int r = 0; r + 1 < ranges.length; r += 2) {
+                int first = ranges[r];
+                int last = ranges[r + 1];
+                if (first == -1) {
+                    if (!autoRange) first = DEFAULT_FIRST;
+                    else            first = cmapFmt.getFirst();
+                }
+                if (last == -1) {
+                    if (!autoRange) last = DEFAULT_LAST;
+                    else            last = cmapFmt.getLast();
                 }
 
+                for (int start = first; start <= last; start += GLYPH_BATCH) {
+                    final int base = start;
+                    int n = Math.min(GLYPH_BATCH, last - start + 1);
+                    final int[] glyphIndices = new int[n];
+                    final String[] glyphs = new String[n];
+                    WorkerPool.runBands(n, MIN_BAND, new WorkerPool.BandTask() {
+                            public void run(int s, int e) {
+                                for (int j = s; j < e; j++) {
+                                    int i = base + j;
+                                    int glyphIndex = cmap.mapCharCode(i);
+                                    glyphIndices[j] = glyphIndex;
+                                    if (glyphIndex > 0) {
+                                        glyphs[j] = getGlyphAsSVG(
+                                            font,
+                                            font.getGlyph(glyphIndex),
+                                            glyphIndex,
+                                            horiz_advance_x,
+                                            init, medi, term,
+                                            (32 <= i && i <= 127) ?
+                                            encodeEntities( String.valueOf( (char)i ) ) :
+                                            XML_CHAR_REF_PREFIX + Integer.toHexString(i) + XML_CHAR_REF_SUFFIX);
+                                    }
+                                }
+                            }
+                        });
+                    for (int j = 0; j < n; j++) {
+                        if (glyphIndices[j] > 0) {
+                            // add glyph ID to set so we can filter later
+                            glyphSet.add(glyphIndices[j]);
+                            ps.println(glyphs[j]);
+                        }
+                    }
+                }
             }
 
             // Output kerning pairs from the requested range
@@ -718,6 +770,7 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
     public static final String ARG_KEY_TESTCARD = "-testcard";
     public static final String ARG_KEY_AUTO_RANGE = "-autorange";
     public static final String ARG_KEY_OUTPUT_PATH = "-o";
+    public static final String ARG_KEY_CHAR_RANGES = "-ranges";
 
     /**
      * Starts the application.
@@ -733,6 +786,7 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
             String testCard = parseArgs(args, ARG_KEY_TESTCARD);
             String outPath = parseArgs(args, ARG_KEY_OUTPUT_PATH);
             String autoRange = parseArgs(args, ARG_KEY_AUTO_RANGE);
+            String ranges = parseArgs(args, ARG_KEY_CHAR_RANGES);
             PrintStream ps = null;
             FileOutputStream fos = null;
 
@@ -757,8 +811,9 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
                     ps,
                     font,
                     id,
-                    (low != null ? Integer.parseInt(low) : -1),
-                    (high != null ? Integer.parseInt(high) : -1),
+                    (ranges != null ? parseRanges(ranges) : new int[] {
+                        (low != null ? Integer.parseInt(low) : -1),
+                        (high != null ? Integer.parseInt(high) : -1) }),
                     (autoRange != null),
                     (ascii != null));
                 writeSvgDefsEnd(ps);
@@ -813,6 +868,37 @@ public class SVGFont implements XMLConstants, SVGConstants, ScriptTags, FeatureT
         return sb.toString();
         }*/
 
+    /**
+     * Parses a comma separated list of character ranges such as
+     * <code>32-126,U+4E00-U+9FFF,0x3000</code> into the first and last
+     * character of each range.  Characters are decimal, or hexadecimal
+     * when prefixed with <code>0x</code> or <code>U+</code>.
+     */
+    static int[] parseRanges(String s) {
+        StringTokenizer st = new StringTokenizer(s, ",");
+        int[] ranges = new int[st.countTokens() * 2];
+        for (int i = 0; st.hasMoreTokens(); i += 2) {
+            String r = st.nextToken().trim();
+            int dash = r.indexOf('-', 1);
+            if (dash == -1) {
+                ranges[i] = ranges[i + 1] = parseChar(r);
+            } else {
+                ranges[i] = parseChar(r.substring(0, dash));
+                ranges[i + 1] = parseChar(r.substring(dash + 1));
+            }
+        }
+        return ranges;
+    }
+
+    private static int parseChar(String s) {
+        s = s.trim();
+        if (s.startsWith("0x") || s.startsWith("0X")
+            || s.startsWith("U+") || s.startsWith("u+")) {
+            return Integer.parseInt(s.substring(2), 16);
+        }
+        return Integer.parseInt(s);
+    }
+
     private static String parseArgs(String[] args, String name) {
         for (int i = 0; i < args.length; i++) {
             if (name == null) {
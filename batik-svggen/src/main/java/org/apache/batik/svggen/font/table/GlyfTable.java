@@ -23,6 +23,10 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 /**
+ * The glyf table.  Glyph descriptions are decoded (and composite
+ * glyphs resolved) when first requested, so converting a subset of a
+ * large font only decodes the glyphs of the subset.
+ *
  * @version $Id$
  * @author <a href="mailto:david@steadystate.co.uk">David Schweinsberg</a>
  */
@@ -30,6 +34,8 @@ public class GlyfTable implements Table {
 
     private byte[] buf = null;
     private GlyfDescript[] descript;
+    private boolean[] decoded;
+    private LocaTable loca;
 
     protected GlyfTable(DirectoryEntry de, RandomAccessFile raf) throws IOException {
         raf.seek(de.getOffset());
@@ -72,31 +78,27 @@ public class GlyfTable implements Table {
             return;
         }
         descript = new GlyfDescript[numGlyphs];
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        for (int i = 0; i < numGlyphs; i++) {
+        decoded = new boolean[numGlyphs];
+        this.loca = loca;
+    }
+
+    public synchronized GlyfDescript getDescription(int i) {
+        if (!decoded[i]) {
+            decoded[i] = true;
             int len = loca.getOffset((i + 1)) - loca.getOffset(i);
             if (len > 0) {
-                bais.reset();
-                bais.skip(loca.getOffset(i));
+                int off = loca.getOffset(i);
+                ByteArrayInputStream bais = new ByteArrayInputStream
+                    (buf, off, buf.length - off);
                 short numberOfContours = (short)(bais.read()<<8 | bais.read());
                 if (numberOfContours >= 0) {
                     descript[i] = new GlyfSimpleDescript(this, numberOfContours, bais);
                 } else {
                     descript[i] = new GlyfCompositeDescript(this, bais);
                 }
+                descript[i].resolve();
             }
         }
-
-        buf = null;
-
-        for (int i = 0; i < numGlyphs; i++) {
-            if (descript[i] == null) continue;
-
-            descript[i].resolve();
-        }
-    }
-
-    public GlyfDescript getDescription(int i) {
         return descript[i];
     }
 
@@ -0,0 +1,171 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Paint;
+
+import org.apache.batik.css.engine.CSSStylableElement;
+import org.apache.batik.css.engine.StyleMap;
+import org.apache.batik.gvt.CompositeShapePainter;
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.ShapePainter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.w3c.dom.Element;
+
+/**
+ * Animates the opacity, fill and visibility of a rectangle, and the
+ * fill of a group whose child inherits it, and checks at every tick
+ * that the graphics nodes have the animated values.  Also checks that
+ * the style of the rectangle is not cascaded again once its animated
+ * properties come from the override style.
+ *
+ * @version $Id$
+ */
+public class AnimatedPropertyTest extends AbstractTest {
+
+    public static final String ERROR_BAD_OPACITY
+        = "AnimatedPropertyTest.error.bad.opacity";
+
+    public static final String ERROR_BAD_FILL
+        = "AnimatedPropertyTest.error.bad.fill";
+
+    public static final String ERROR_BAD_INHERITED_FILL
+        = "AnimatedPropertyTest.error.bad.inherited.fill";
+
+    public static final String ERROR_BAD_VISIBILITY
+        = "AnimatedPropertyTest.error.bad.visibility";
+
+    public static final String ERROR_RECASCADED
+        = "AnimatedPropertyTest.error.recascaded";
+
+    public static final String ENTRY_KEY_TIME
+        = "AnimatedPropertyTest.entry.key.time";
+
+    public static final String ENTRY_KEY_FOUND
+        = "AnimatedPropertyTest.entry.key.found";
+
+    static final String DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>"
+        + "<rect id='r' width='10' height='10' fill='red'>"
+        + "<animate attributeName='opacity' from='0' to='1' dur='1s'"
+        + " fill='freeze'/>"
+        + "<animate attributeName='fill' from='rgb(0,0,0)' to='rgb(0,0,255)'"
+        + " dur='1s' fill='freeze'/>"
+        + "<set attributeName='visibility' to='hidden' begin='0.5s'/>"
+        + "</rect>"
+        + "<g id='g' fill='red'>"
+        + "<animate attributeName='fill' from='rgb(0,0,0)' to='rgb(0,255,0)'"
+        + " dur='1s' fill='freeze'/>"
+        + "<rect id='c' x='20' width='10' height='10'/>"
+        + "</g></svg>";
+
+    public TestReport runImpl() throws Exception {
+        AnimationSamplingTest.Player player =
+            new AnimationSamplingTest.Player(DOCUMENT);
+        try {
+            Element r = player.doc.getElementById("r");
+            Element c = player.doc.getElementById("c");
+            StyleMap style = null;
+            for (int i = 1; i < 20; i++) {
+                float t = i * 0.05f;
+                player.tick(t);
+                GraphicsNode rn = player.ctx.getGraphicsNode(r);
+                GraphicsNode cn = player.ctx.getGraphicsNode(c);
+
+                float alpha = getAlpha(rn.getComposite());
+                if (Math.abs(alpha - t) > 1e-3) {
+                    return report(ERROR_BAD_OPACITY, t,
+                                  String.valueOf(alpha));
+                }
+                Paint p = getFill((ShapeNode) rn);
+                if (!new Color(0, 0, Math.round(t * 255)).equals(p)) {
+                    return report(ERROR_BAD_FILL, t, String.valueOf(p));
+                }
+                p = getFill((ShapeNode) cn);
+                if (!new Color(0, Math.round(t * 255), 0).equals(p)) {
+                    return report(ERROR_BAD_INHERITED_FILL, t,
+                                  String.valueOf(p));
+                }
+                if (rn.isVisible() != t < 0.5f) {
+                    return report(ERROR_BAD_VISIBILITY, t,
+                                  String.valueOf(rn.isVisible()));
+                }
+
+                // The set animation starts at 0.5s, after which the
+                // three properties come from the override style.
+                StyleMap sm = ((CSSStylableElement) r)
+                    .getComputedStyleMap(null);
+                if (t > 0.55f && sm != style) {
+                    return report(ERROR_RECASCADED, t, null);
+                }
+                style = sm;
+            }
+        } finally {
+            player.dispose();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns an error report for the given time.
+     */
+    protected TestReport report(String key, float t, String found) {
+        TestReport report = reportError(key);
+        report.addDescriptionEntry(ENTRY_KEY_TIME, String.valueOf(t));
+        if (found != null) {
+            report.addDescriptionEntry(ENTRY_KEY_FOUND, found);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the opacity a composite applies.
+     */
+    static float getAlpha(Composite c) {
+        if (c == null) {
+            return 1;
+        }
+        return ((AlphaComposite) c).getAlpha();
+    }
+
+    /**
+     * Returns the fill paint of a shape node.
+     */
+    static Paint getFill(ShapeNode sn) {
+        ShapePainter sp = sn.getShapePainter();
+        if (sp instanceof CompositeShapePainter) {
+            CompositeShapePainter csp = (CompositeShapePainter) sp;
+            for (int i = 0; i < csp.getShapePainterCount(); i++) {
+                if (csp.getShapePainter(i) instanceof FillShapePainter) {
+                    sp = csp.getShapePainter(i);
+                }
+            }
+        }
+        if (sp instanceof FillShapePainter) {
+            return ((FillShapePainter) sp).getPaint();
+        }
+        return null;
+    }
+}
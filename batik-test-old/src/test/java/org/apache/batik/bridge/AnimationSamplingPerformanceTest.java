@@ -0,0 +1,111 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import org.apache.batik.anim.timing.TimedDocumentRoot;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares playing a document with 10000 staggered animations forward
+ * with the scheduled sampling of <code>TimedDocumentRoot</code> and the
+ * changed sandwich list of the <code>AnimationEngine</code> (the
+ * operation), with sampling every timed element and looking at every
+ * sandwich at each tick (the reference).
+ *
+ * @version $Id$
+ */
+public class AnimationSamplingPerformanceTest extends PerformanceTest {
+
+    /**
+     * The number of animations.
+     */
+    static final int ANIMATIONS = 10000;
+
+    /**
+     * The number of ticks played by each run.
+     */
+    static final int TICKS = 60;
+
+    /**
+     * The time between two ticks, in seconds.
+     */
+    static final float STEP = 1 / 60f;
+
+    protected AnimationSamplingTest.Player player;
+
+    /**
+     * The document time of the last tick.
+     */
+    protected float time;
+
+    protected void runRef() {
+        play(true);
+    }
+
+    protected void runOp() {
+        play(false);
+    }
+
+    /**
+     * Plays the document forward for {@link #TICKS} ticks from where the
+     * previous run stopped, seeking back to the start after the last
+     * animation.
+     */
+    protected void play(boolean reference) {
+        boolean scheduled = TimedDocumentRoot.isScheduledSampling();
+        try {
+            if (player == null) {
+                player = new AnimationSamplingTest.Player(createDocument());
+                player.seek(0);
+            }
+            TimedDocumentRoot.setScheduledSampling(!reference);
+            player.engine.updateAll = reference;
+            for (int i = 0; i < TICKS; i++) {
+                time += STEP;
+                player.tick(time);
+            }
+            if (time > ANIMATIONS * 0.01f) {
+                time = 0;
+                player.seek(0);
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException(ex.getMessage());
+        } finally {
+            TimedDocumentRoot.setScheduledSampling(scheduled);
+        }
+    }
+
+    /**
+     * Returns a document with {@link #ANIMATIONS} animations, each
+     * starting 10ms after the previous one and lasting 100ms.
+     */
+    protected static String createDocument() {
+        StringBuffer sb = new StringBuffer
+            ("<svg xmlns='http://www.w3.org/2000/svg'"
+             + " width='100' height='100'>");
+        for (int i = 0; i < ANIMATIONS; i++) {
+            sb.append("<rect width='1' height='1'>"
+                      + "<animate attributeName='x' from='0' to='99' begin='")
+              .append(i * 10)
+              .append("ms' dur='100ms'/></rect>");
+        }
+        sb.append("</svg>");
+        return sb.toString();
+    }
+}
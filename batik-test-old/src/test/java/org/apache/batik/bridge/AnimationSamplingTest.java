@@ -0,0 +1,276 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.util.Iterator;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.timing.TimedDocumentRoot;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.DoublyIndexedTable;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.svg.SVGRectElement;
+
+/**
+ * Plays a document with staggered, repeating, frozen, syncbase timed and
+ * stacked animations forward, and checks the animated values at every
+ * tick are those found by sampling every timed element and looking at
+ * every sandwich, as if no element was left out by the scheduled sampling
+ * of <code>TimedDocumentRoot</code> and no sandwich by the
+ * <code>AnimationEngine</code>.  A backward seek halfway through checks
+ * that the animations are resampled.
+ *
+ * @version $Id$
+ */
+public class AnimationSamplingTest extends AbstractTest {
+
+    public static final String ERROR_VALUES_DIFFER
+        = "AnimationSamplingTest.error.values.differ";
+
+    public static final String ENTRY_KEY_TIME
+        = "AnimationSamplingTest.entry.key.time";
+
+    public static final String ENTRY_KEY_EXPECTED
+        = "AnimationSamplingTest.entry.key.expected";
+
+    public static final String ENTRY_KEY_FOUND
+        = "AnimationSamplingTest.entry.key.found";
+
+    static final String DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>"
+        // Staggered.
+        + "<rect width='10' height='10'>"
+        + "<animate id='a0' attributeName='x' from='0' to='90' begin='0.2s'"
+        + " dur='0.5s'/></rect>"
+        + "<rect width='10' height='10'>"
+        + "<animate id='a1' attributeName='x' from='0' to='90' begin='0.9s'"
+        + " dur='0.3s' fill='freeze'/></rect>"
+        // Repeating, with several begin times.
+        + "<rect width='10' height='10'>"
+        + "<animate attributeName='y' from='0' to='50' begin='0.1s;1.6s'"
+        + " dur='0.2s' repeatCount='3'/></rect>"
+        // Syncbase timed.
+        + "<rect width='10' height='10'>"
+        + "<animate attributeName='width' from='10' to='60'"
+        + " begin='a0.end+0.15s' end='a1.end' dur='0.4s'"
+        + " repeatCount='indefinite'/>"
+        + "<animate attributeName='height' from='10' to='30'"
+        + " begin='a1.begin' dur='0.25s' fill='freeze'/></rect>"
+        // Stacked on the same attribute.
+        + "<rect x='5' width='10' height='10'>"
+        + "<animate attributeName='x' by='20' begin='0.3s' dur='1s'"
+        + " additive='sum' fill='freeze'/>"
+        + "<animate attributeName='x' by='40' begin='0.6s' dur='0.5s'"
+        + " additive='sum' accumulate='sum' repeatCount='2'/>"
+        + "<set attributeName='y' to='70' begin='1.2s' dur='0.4s'/></rect>"
+        // Never active.
+        + "<rect width='10' height='10'>"
+        + "<animate attributeName='x' from='0' to='90' begin='indefinite'"
+        + " dur='1s'/></rect>"
+        + "</svg>";
+
+    /**
+     * The duration to play, in seconds.
+     */
+    static final float DURATION = 3;
+
+    /**
+     * The time between two ticks, in seconds.
+     */
+    static final float STEP = 1 / 60f;
+
+    public TestReport runImpl() throws Exception {
+        boolean scheduled = TimedDocumentRoot.isScheduledSampling();
+        try {
+            TimedDocumentRoot.setScheduledSampling(false);
+            float[][] expected = play(DOCUMENT, true);
+            TimedDocumentRoot.setScheduledSampling(true);
+            float[][] found = play(DOCUMENT, false);
+            for (int i = 0; i < expected.length; i++) {
+                for (int j = 0; j < expected[i].length; j++) {
+                    if (expected[i][j] != found[i][j]) {
+                        TestReport report = reportError(ERROR_VALUES_DIFFER);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_TIME, String.valueOf(i * STEP));
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_EXPECTED, toString(expected[i]));
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_FOUND, toString(found[i]));
+                        return report;
+                    }
+                }
+            }
+        } finally {
+            TimedDocumentRoot.setScheduledSampling(scheduled);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Plays the given document forward, seeking back to the start of the
+     * second half once it is reached, and returns the animated x, y,
+     * width and height of its rectangles at each tick.
+     * @param reference whether to sample every animation and look at
+     *                  every sandwich at each tick
+     */
+    protected float[][] play(String document, boolean reference)
+        throws Exception {
+        Player player = new Player(document);
+        player.engine.updateAll = reference;
+        int ticks = Math.round(DURATION / STEP);
+        float[][] values = new float[ticks + ticks / 2][];
+        try {
+            NodeList rects = player.doc.getElementsByTagNameNS
+                ("http://www.w3.org/2000/svg", "rect");
+            player.seek(0);
+            for (int i = 0; i < values.length; i++) {
+                int tick = i <= ticks ? i : i - ticks / 2;
+                if (tick == ticks / 2 && i != tick) {
+                    player.seek(tick * STEP);
+                } else {
+                    player.tick(tick * STEP);
+                }
+                values[i] = new float[rects.getLength() * 4];
+                for (int j = 0; j < rects.getLength(); j++) {
+                    SVGRectElement r = (SVGRectElement) rects.item(j);
+                    values[i][j * 4]
+                        = r.getX().getAnimVal().getValue();
+                    values[i][j * 4 + 1]
+                        = r.getY().getAnimVal().getValue();
+                    values[i][j * 4 + 2]
+                        = r.getWidth().getAnimVal().getValue();
+                    values[i][j * 4 + 3]
+                        = r.getHeight().getAnimVal().getValue();
+                }
+            }
+        } finally {
+            player.dispose();
+        }
+        return values;
+    }
+
+    protected static String toString(float[] values) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a dynamic document and moves its animations to given times,
+     * without an <code>UpdateManager</code>.
+     */
+    static class Player {
+
+        Document doc;
+
+        BridgeContext ctx;
+
+        PlayerEngine engine;
+
+        Player(String source) throws Exception {
+            SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+                (XMLResourceDescriptor.getXMLParserClassName());
+            doc = f.createDocument("file:anim.svg",
+                                   new StringReader(source));
+            ctx = new BridgeContext(new UserAgentAdapter()) {
+                    public SVGAnimationEngine getAnimationEngine() {
+                        if (animationEngine == null) {
+                            animationEngine
+                                = new PlayerEngine(document, this);
+                        }
+                        return animationEngine;
+                    }
+                };
+            ctx.setDynamicState(BridgeContext.DYNAMIC);
+            new GVTBuilder().build(ctx, doc);
+            engine = (PlayerEngine) ctx.getAnimationEngine();
+            engine.start(System.currentTimeMillis());
+        }
+
+        /**
+         * Plays the animations forward to the given time.
+         */
+        float tick(float t) {
+            return engine.tickTo(t);
+        }
+
+        /**
+         * Seeks the animations to the given time, as with hyperlinking.
+         */
+        float seek(float t) {
+            return engine.setCurrentTime(t);
+        }
+
+        void dispose() {
+            ctx.dispose();
+        }
+    }
+
+    /**
+     * An animation engine that can be ticked directly.
+     */
+    static class PlayerEngine extends SVGAnimationEngine {
+
+        /**
+         * Whether every sandwich is looked at at each tick.
+         */
+        boolean updateAll;
+
+        PlayerEngine(Document doc, BridgeContext ctx) {
+            super(doc, ctx);
+        }
+
+        float tickTo(float t) {
+            if (updateAll) {
+                Iterator i = targets.values().iterator();
+                while (i.hasNext()) {
+                    TargetInfo info = (TargetInfo) i.next();
+                    Iterator j = info.xmlAnimations.iterator();
+                    while (j.hasNext()) {
+                        DoublyIndexedTable.Entry e =
+                            (DoublyIndexedTable.Entry) j.next();
+                        update((Sandwich) e.getValue());
+                    }
+                    j = info.cssAnimations.values().iterator();
+                    while (j.hasNext()) {
+                        update((Sandwich) j.next());
+                    }
+                    j = info.otherAnimations.values().iterator();
+                    while (j.hasNext()) {
+                        update((Sandwich) j.next());
+                    }
+                }
+            }
+            return tick(t, false);
+        }
+
+        void update(Sandwich sandwich) {
+            sandwichChanged(sandwich);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.geom.AffineTransform;
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Runs an animation that begins after a pause through an
+ * <code>UpdateManager</code>, and checks from the frame statistics of
+ * the <code>SVGAnimationEngine</code> that the document is not ticked
+ * while no animation is active, and that active animations are ticked
+ * once per minimum repaint time, or at the limited frame rate.
+ *
+ * @version $Id$
+ */
+public class AnimationSchedulerTest extends AbstractTest {
+
+    public static final String ERROR_TICKS_WHILE_IDLE
+        = "AnimationSchedulerTest.error.ticks.while.idle";
+
+    public static final String ERROR_BAD_FRAME_RATE
+        = "AnimationSchedulerTest.error.bad.frame.rate";
+
+    public static final String ENTRY_KEY_STATISTICS
+        = "AnimationSchedulerTest.entry.key.statistics";
+
+    /**
+     * An animation active from 0.4s to 0.8s.
+     */
+    static final String DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>"
+        + "<rect width='10' height='10'>"
+        + "<animate attributeName='x' from='0' to='90' begin='0.4s'"
+        + " dur='0.4s'/></rect></svg>";
+
+    public TestReport runImpl() throws Exception {
+        // No limit: once per minimum repaint time (20ms).
+        TestReport report = check(0, 15, 40);
+        if (report == null) {
+            report = check(10, 80, 150);
+        }
+        return report == null ? reportSuccess() : report;
+    }
+
+    /**
+     * Runs the animation and checks the average time between the ticks
+     * of the active animation is in [minInterval, maxInterval].
+     * @param fps the frame rate limit, or 0 for none
+     * @return the error report, or null
+     */
+    protected TestReport check(float fps, double minInterval,
+                               double maxInterval) throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument
+            ("file:anim.svg", new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        if (fps > 0) {
+            ctx.setAnimationLimitingFPS(fps);
+        }
+        GraphicsNode root = new GVTBuilder().build(ctx, doc);
+
+        ImageRenderer renderer
+            = new ConcreteImageRendererFactory().createDynamicImageRenderer();
+        renderer.updateOffScreen(100, 100);
+        renderer.setTransform(new AffineTransform());
+        renderer.setTree(root);
+        UpdateManager um = new UpdateManager(ctx, root, doc);
+        try {
+            um.dispatchSVGLoadEvent();
+            um.manageUpdates(renderer);
+            SVGAnimationEngine eng = ctx.getAnimationEngine();
+
+            Thread.sleep(300);
+            SVGAnimationEngine.FrameStatistics stats
+                = eng.getFrameStatistics();
+            if (stats.getFrameCount() > 3) {
+                return report(ERROR_TICKS_WHILE_IDLE, fps, stats);
+            }
+
+            Thread.sleep(800);
+            stats = eng.getFrameStatistics();
+            double interval = stats.getAverageFrameInterval();
+            if (interval < minInterval || interval > maxInterval) {
+                return report(ERROR_BAD_FRAME_RATE, fps, stats);
+            }
+
+            eng.resetFrameStatistics();
+            Thread.sleep(200);
+            stats = eng.getFrameStatistics();
+            if (stats.getFrameCount() != 0) {
+                return report(ERROR_TICKS_WHILE_IDLE, fps, stats);
+            }
+        } finally {
+            um.interrupt();
+            ctx.dispose();
+        }
+        return null;
+    }
+
+    protected TestReport report(String key, float fps,
+                                SVGAnimationEngine.FrameStatistics stats) {
+        TestReport report = reportError(key);
+        report.addDescriptionEntry
+            (ENTRY_KEY_STATISTICS,
+             (fps > 0 ? fps + " fps limit: " : "no limit: ") + stats);
+        return report;
+    }
+}
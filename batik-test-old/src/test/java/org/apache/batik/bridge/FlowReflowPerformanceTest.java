@@ -0,0 +1,79 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.svg12.SVG12BridgeContext;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Text;
+
+/**
+ * Compares the layout of a long flowRoot after an edit of one of its
+ * paragraphs with incremental reflow (the operation) and with a
+ * complete reflow (the reference).
+ *
+ * @version $Id$
+ */
+public class FlowReflowPerformanceTest extends PerformanceTest {
+
+    protected FlowTextNode node;
+
+    protected Text text;
+
+    protected int edits;
+
+    public FlowReflowPerformanceTest() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument
+            ("file:flow.svg",
+             new StringReader(FlowReflowTest.createDocument(100, 5, 4000)));
+        BridgeContext ctx = new SVG12BridgeContext(new UserAgentAdapter());
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        node = FlowReflowTest.findFlowTextNode
+            (new GVTBuilder().build(ctx, doc));
+        text = FlowReflowTest.getText(doc, "p50");
+        node.getPrimitiveBounds();
+    }
+
+    protected void runRef() {
+        boolean incremental = FlowTextPainter.isIncrementalReflow();
+        FlowTextPainter.setIncrementalReflow(false);
+        try {
+            runOp();
+        } finally {
+            FlowTextPainter.setIncrementalReflow(incremental);
+        }
+    }
+
+    protected void runOp() {
+        // Alternately inserts and removes a word, so that the flow
+        // does not grow over the runs.
+        if ((edits++ & 1) == 0) {
+            text.insertData(6, "word ");
+        } else {
+            text.deleteData(6, 5);
+        }
+        node.getPrimitiveBounds();
+    }
+}
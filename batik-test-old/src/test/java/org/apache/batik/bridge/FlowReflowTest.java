@@ -0,0 +1,270 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.svg12.SVG12BridgeContext;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.font.GVTGlyphVector;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Edits the paragraphs of a dynamic flowRoot and checks that, after
+ * every edit, the incremental reflow of <code>FlowTextPainter</code>
+ * gives the glyphs the same positions and visibility as a complete
+ * layout of the flow.  The layout without incremental reflow, whose
+ * chunks are offset one after the other, may only differ by rounding.
+ *
+ * @version $Id$
+ */
+public class FlowReflowTest extends AbstractTest {
+
+    public static final String ERROR_LAYOUT_DIFFERS
+        = "FlowReflowTest.error.layout.differs";
+
+    public static final String ERROR_LEGACY_LAYOUT_DIFFERS
+        = "FlowReflowTest.error.legacy.layout.differs";
+
+    public static final String ERROR_NO_STATE
+        = "FlowReflowTest.error.no.state";
+
+    public static final String ENTRY_KEY_EDIT
+        = "FlowReflowTest.entry.key.edit";
+
+    static final String WORDS
+        = "The quick brown fox jumps over the lazy dog. ";
+
+    /**
+     * Returns a flow of <code>paras</code> paragraphs in two regions,
+     * with a few spans, line breaks, alignments and region breaks.
+     */
+    static String createDocument(int paras, int words, double height) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("<svg xmlns='http://www.w3.org/2000/svg' version='1.2'"
+                  + " width='1000' height='" + (2*height + 40) + "'>"
+                  + "<flowRoot font-family='serif' font-size='12'>"
+                  + "<flowRegion><rect x='10' y='10' width='400' height='"
+                  + height + "'/><rect x='500' y='10' width='300' height='"
+                  + height + "'/></flowRegion><flowDiv>");
+        for (int i = 0; i < paras; i++) {
+            sb.append("<flowPara id='p" + i + "'");
+            if (i % 7 == 3) {
+                sb.append(" text-align='justify'");
+            } else if (i % 7 == 5) {
+                sb.append(" text-align='end' margin-top='8'");
+            }
+            sb.append(">");
+            for (int w = 0; w < words; w++) {
+                sb.append(WORDS);
+                if ((i % 5 == 2) && (w == 1)) {
+                    sb.append("<flowSpan font-size='20'>large ");
+                    sb.append("text</flowSpan> ");
+                }
+                if ((i % 6 == 4) && (w == 0)) {
+                    sb.append("<flowLine>a line of its own</flowLine>");
+                }
+            }
+            sb.append("</flowPara>");
+        }
+        sb.append("</flowDiv></flowRoot></svg>");
+        return sb.toString();
+    }
+
+    public TestReport runImpl() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument
+            ("file:flow.svg", new StringReader(createDocument(40, 3, 1200)));
+        BridgeContext ctx = new SVG12BridgeContext(new UserAgentAdapter());
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        GraphicsNode root = new GVTBuilder().build(ctx, doc);
+
+        boolean incremental = FlowTextPainter.isIncrementalReflow();
+        try {
+            FlowTextPainter.setIncrementalReflow(true);
+            FlowTextNode node = findFlowTextNode(root);
+            getGlyphs(node);
+            for (int edit = 0; ; edit++) {
+                if (!edit(doc, edit)) {
+                    break;
+                }
+                List inc = getGlyphs(node);
+                if (node.getReflowState() == null) {
+                    return reportError(ERROR_NO_STATE);
+                }
+                node.setReflowState(null);
+                node.setAttributedCharacterIterator
+                    (node.getAttributedCharacterIterator());
+                List full = getGlyphs(node);
+                if (!same(inc, full, 1e-3)) {
+                    TestReport report = reportError(ERROR_LAYOUT_DIFFERS);
+                    report.addDescriptionEntry(ENTRY_KEY_EDIT, "" + edit);
+                    return report;
+                }
+                FlowTextPainter.setIncrementalReflow(false);
+                node.setAttributedCharacterIterator
+                    (node.getAttributedCharacterIterator());
+                List legacy = getGlyphs(node);
+                FlowTextPainter.setIncrementalReflow(true);
+                if (!same(inc, legacy, 1e-2)) {
+                    TestReport report
+                        = reportError(ERROR_LEGACY_LAYOUT_DIFFERS);
+                    report.addDescriptionEntry(ENTRY_KEY_EDIT, "" + edit);
+                    return report;
+                }
+            }
+        } finally {
+            FlowTextPainter.setIncrementalReflow(incremental);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Applies the edit number <code>edit</code>, returns false if
+     * there are no more edits.
+     */
+    protected boolean edit(Document doc, int edit) {
+        switch (edit) {
+        case 0:  // Same lines.
+            getText(doc, "p10").insertData(4, "x");
+            return true;
+        case 1:  // More lines.
+            getText(doc, "p3").appendData(WORDS + WORDS + WORDS);
+            return true;
+        case 2:
+            getText(doc, "p0").deleteData(0, 20);
+            return true;
+        case 3:
+            getText(doc, "p39").appendData(" end");
+            return true;
+        case 4: {
+            Element p = doc.getElementById("p20");
+            p.getParentNode().removeChild(p);
+            return true;
+        }
+        case 5: {
+            Element p = doc.getElementById("p21");
+            Node n = p.cloneNode(true);
+            ((Element)n).setAttribute("id", "p21b");
+            p.getParentNode().insertBefore(n, p);
+            return true;
+        }
+        case 6: {  // Overflows the regions.
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < 60; i++) {
+                sb.append(WORDS);
+            }
+            getText(doc, "p30").appendData(sb.toString());
+            return true;
+        }
+        case 7:
+            getText(doc, "p35").insertData(0, "y");
+            return true;
+        case 8: {
+            Text t = getText(doc, "p30");
+            t.deleteData(t.getLength() - 50 * WORDS.length(),
+                         50 * WORDS.length());
+            return true;
+        }
+        case 9:
+            getText(doc, "p12").insertData(2, "z");
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static Text getText(Document doc, String id) {
+        return (Text)doc.getElementById(id).getFirstChild();
+    }
+
+    static FlowTextNode findFlowTextNode(GraphicsNode gn) {
+        if (gn instanceof FlowTextNode) {
+            return (FlowTextNode)gn;
+        }
+        if (gn instanceof CompositeGraphicsNode) {
+            List children = (CompositeGraphicsNode)gn;
+            for (int i = 0; i < children.size(); i++) {
+                FlowTextNode n = findFlowTextNode
+                    ((GraphicsNode)children.get(i));
+                if (n != null) {
+                    return n;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lays out <code>node</code> if needed and returns the positions
+     * of its visible glyphs, NaN for hidden ones.
+     */
+    static List getGlyphs(TextNode node) {
+        node.getPrimitiveBounds();
+        List l = new ArrayList();
+        List runs = node.getTextRuns();
+        for (int i = 0; i < runs.size(); i++) {
+            StrokingTextPainter.TextRun run
+                = (StrokingTextPainter.TextRun)runs.get(i);
+            GVTGlyphVector gv = run.getLayout().getGlyphVector();
+            float[] g = new float[gv.getNumGlyphs()*2];
+            for (int j = 0; j < gv.getNumGlyphs(); j++) {
+                if (gv.isGlyphVisible(j)) {
+                    g[2*j]   = (float)gv.getGlyphPosition(j).getX();
+                    g[2*j+1] = (float)gv.getGlyphPosition(j).getY();
+                } else {
+                    g[2*j] = g[2*j+1] = Float.NaN;
+                }
+            }
+            l.add(g);
+        }
+        return l;
+    }
+
+    static boolean same(List l1, List l2, double tolerance) {
+        if (l1.size() != l2.size()) {
+            return false;
+        }
+        for (int i = 0; i < l1.size(); i++) {
+            float[] g1 = (float[])l1.get(i);
+            float[] g2 = (float[])l2.get(i);
+            if (g1.length != g2.length) {
+                return false;
+            }
+            for (int j = 0; j < g1.length; j++) {
+                if (Float.isNaN(g1[j]) != Float.isNaN(g2[j])
+                    || Math.abs(g1[j] - g2[j]) > tolerance) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Element;
+
+/**
+ * Compares a runnable that makes 5000 attribute changes, ten to each of
+ * 500 rectangles, applied to the GVT tree once per rectangle with
+ * mutation batching (the operation) and one change at a time (the
+ * reference).  Each run includes the repaint that follows the runnable.
+ *
+ * @version $Id$
+ */
+public class MutationBatchingPerformanceTest extends PerformanceTest {
+
+    /**
+     * The number of rectangles.
+     */
+    static final int RECTS = 500;
+
+    /**
+     * The number of changes made to each rectangle per run.
+     */
+    static final int CHANGES = 10;
+
+    protected MutationBatchingTest.Session session;
+
+    protected Element[] rects;
+
+    /**
+     * The number of runs so far, so that each run changes the values.
+     */
+    protected int runs;
+
+    protected void runRef() {
+        update(false);
+    }
+
+    protected void runOp() {
+        update(true);
+    }
+
+    protected void update(boolean batched) {
+        try {
+            if (session == null) {
+                session = new MutationBatchingTest.Session
+                    (MutationBatchingTest.createDocument(RECTS));
+                rects = new Element[RECTS];
+                for (int i = 0; i < RECTS; i++) {
+                    rects[i] = session.doc.getElementById("r" + i);
+                }
+            }
+            session.um.setMutationBatching(batched);
+            final int base = (runs++ % 10) * CHANGES;
+            session.invokeAndWait(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < RECTS; i++) {
+                            for (int k = 0; k < CHANGES; k++) {
+                                rects[i].setAttributeNS
+                                    (null, SVGConstants.SVG_X_ATTRIBUTE,
+                                     String.valueOf(base + k + i % 100));
+                            }
+                        }
+                    }
+                });
+            // Include the repaint.
+            session.invokeAndWait(new Runnable() { public void run() { } });
+        } catch (Exception ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+}
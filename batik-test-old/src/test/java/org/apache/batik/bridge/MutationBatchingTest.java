@@ -0,0 +1,238 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.svg.SVGLocatable;
+
+/**
+ * Makes the same attribute, style and structural changes to a document
+ * in one runnable of an <code>UpdateManager</code>, with and without
+ * mutation batching, and checks that the rendered images are the same.
+ * Also checks that batched changes are not applied to the GVT tree
+ * before the runnable returns, unless a geometry query needs them.
+ *
+ * @version $Id$
+ */
+public class MutationBatchingTest extends AbstractTest {
+
+    public static final String ERROR_NOT_DEFERRED
+        = "MutationBatchingTest.error.not.deferred";
+
+    public static final String ERROR_BAD_BBOX
+        = "MutationBatchingTest.error.bad.bbox";
+
+    public static final String ERROR_DIFFERENT_RENDERING
+        = "MutationBatchingTest.error.different.rendering";
+
+    public static final String ENTRY_KEY_WIDTHS
+        = "MutationBatchingTest.entry.key.widths";
+
+    public static final String ENTRY_KEY_PIXEL
+        = "MutationBatchingTest.entry.key.pixel";
+
+    /**
+     * The number of rectangles in the test document.
+     */
+    static final int RECTS = 20;
+
+    public TestReport runImpl() throws Exception {
+        Session unbatched = new Session(createDocument(RECTS));
+        Session batched = new Session(createDocument(RECTS));
+        try {
+            batched.um.setMutationBatching(true);
+            Mutation m1 = new Mutation(unbatched, false);
+            Mutation m2 = new Mutation(batched, true);
+            unbatched.invokeAndWait(m1);
+            batched.invokeAndWait(m2);
+            if (m2.deferred != null) {
+                return reportError(m2.deferred);
+            }
+            if (m1.bboxWidth != 30 || m2.bboxWidth != 30) {
+                TestReport report = reportError(ERROR_BAD_BBOX);
+                report.addDescriptionEntry
+                    (ENTRY_KEY_WIDTHS, m1.bboxWidth + " / " + m2.bboxWidth);
+                return report;
+            }
+            // Let the repaints that follow the runnables complete.
+            unbatched.invokeAndWait(new Runnable() { public void run() { } });
+            batched.invokeAndWait(new Runnable() { public void run() { } });
+
+            BufferedImage i1 = unbatched.renderer.getOffScreen();
+            BufferedImage i2 = batched.renderer.getOffScreen();
+            for (int y = 0; y < i1.getHeight(); y++) {
+                for (int x = 0; x < i1.getWidth(); x++) {
+                    if (i1.getRGB(x, y) != i2.getRGB(x, y)) {
+                        TestReport report
+                            = reportError(ERROR_DIFFERENT_RENDERING);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_PIXEL, "(" + x + ", " + y + ")");
+                        return report;
+                    }
+                }
+            }
+        } finally {
+            unbatched.dispose();
+            batched.dispose();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns a document with the given number of rectangles in a group,
+     * an undisplayed rectangle, a rectangle to remove and a text.
+     */
+    static String createDocument(int rects) {
+        StringBuffer sb = new StringBuffer
+            ("<svg xmlns='http://www.w3.org/2000/svg'"
+             + " width='200' height='200'><g id='g'>");
+        for (int i = 0; i < rects; i++) {
+            sb.append("<rect id='r").append(i)
+              .append("' x='0' y='0' width='5' height='5'/>");
+        }
+        sb.append("</g>"
+                  + "<rect id='hidden' display='none' x='0' y='100'"
+                  + " width='50' height='50' fill='blue'/>"
+                  + "<rect id='gone' x='100' y='100' width='50'"
+                  + " height='50' fill='green'/>"
+                  + "<text id='t' x='10' y='190'>Batched</text></svg>");
+        return sb.toString();
+    }
+
+    /**
+     * A dynamic document, its GVT tree and the UpdateManager that
+     * renders it.
+     */
+    static class Session {
+
+        Document doc;
+        BridgeContext ctx;
+        ImageRenderer renderer;
+        UpdateManager um;
+
+        Session(String source) throws Exception {
+            SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+                (XMLResourceDescriptor.getXMLParserClassName());
+            doc = f.createDocument("file:batch.svg", new StringReader(source));
+            ctx = new BridgeContext(new UserAgentAdapter());
+            ctx.setDynamicState(BridgeContext.DYNAMIC);
+            GraphicsNode root = new GVTBuilder().build(ctx, doc);
+            renderer = new ConcreteImageRendererFactory()
+                .createDynamicImageRenderer();
+            renderer.updateOffScreen(200, 200);
+            renderer.setTransform(new AffineTransform());
+            renderer.setTree(root);
+            um = new UpdateManager(ctx, root, doc);
+            um.dispatchSVGLoadEvent();
+            um.manageUpdates(renderer);
+        }
+
+        void invokeAndWait(Runnable r) throws InterruptedException {
+            um.getUpdateRunnableQueue().invokeAndWait(r);
+        }
+
+        void dispose() {
+            um.interrupt();
+            ctx.dispose();
+        }
+    }
+
+    /**
+     * Queries the bounding box of a changed rectangle, then changes the
+     * geometry and fill of every rectangle ten times, moves the group,
+     * and displays, removes and inserts elements.
+     */
+    static class Mutation implements Runnable {
+
+        Session session;
+        boolean batched;
+
+        /**
+         * The error key if a batched change was applied too early.
+         */
+        String deferred;
+
+        /**
+         * The width of the bounding box returned after the change.
+         */
+        float bboxWidth;
+
+        Mutation(Session session, boolean batched) {
+            this.session = session;
+            this.batched = batched;
+        }
+
+        public void run() {
+            Document doc = session.doc;
+            Element r0 = doc.getElementById("r0");
+            r0.setAttributeNS(null, SVGConstants.SVG_WIDTH_ATTRIBUTE, "30");
+            if (batched) {
+                ShapeNode sn = (ShapeNode)session.ctx.getGraphicsNode(r0);
+                if (sn.getShape().getBounds2D().getWidth() != 5) {
+                    deferred = ERROR_NOT_DEFERRED;
+                }
+            }
+            bboxWidth = ((SVGLocatable)r0).getBBox().getWidth();
+
+            for (int k = 0; k < 10; k++) {
+                for (int i = 0; i < RECTS; i++) {
+                    Element r = doc.getElementById("r" + i);
+                    r.setAttributeNS(null, SVGConstants.SVG_X_ATTRIBUTE,
+                                     String.valueOf(i * 10 + k));
+                    r.setAttributeNS(null, SVGConstants.SVG_Y_ATTRIBUTE,
+                                     String.valueOf(k * 5));
+                    r.setAttributeNS(null, SVGConstants.SVG_FILL_ATTRIBUTE,
+                                     k % 2 == 0 ? "navy" : "red");
+                }
+                doc.getElementById("g").setAttributeNS
+                    (null, SVGConstants.SVG_TRANSFORM_ATTRIBUTE,
+                     "translate(" + k + ",10)");
+            }
+            doc.getElementById("hidden").setAttributeNS
+                (null, "display", "inline");
+            Element gone = doc.getElementById("gone");
+            gone.setAttributeNS(null, SVGConstants.SVG_X_ATTRIBUTE, "120");
+            gone.getParentNode().removeChild(gone);
+            Element t = doc.getElementById("t");
+            t.setAttributeNS(null, SVGConstants.SVG_X_ATTRIBUTE, "40");
+            Element n = doc.createElementNS
+                (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_RECT_TAG);
+            n.setAttributeNS(null, SVGConstants.SVG_X_ATTRIBUTE, "150");
+            n.setAttributeNS(null, SVGConstants.SVG_Y_ATTRIBUTE, "150");
+            n.setAttributeNS(null, SVGConstants.SVG_WIDTH_ATTRIBUTE, "20");
+            n.setAttributeNS(null, SVGConstants.SVG_HEIGHT_ATTRIBUTE, "20");
+            doc.getDocumentElement().appendChild(n);
+            n.setAttributeNS(null, SVGConstants.SVG_FILL_ATTRIBUTE, "olive");
+        }
+    }
+}
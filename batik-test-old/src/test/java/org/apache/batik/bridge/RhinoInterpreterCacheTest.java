@@ -0,0 +1,188 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.net.URL;
+
+import org.apache.batik.script.InterpreterException;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WeightedLRUCache;
+
+/**
+ * Checks that <code>RhinoInterpreter</code>s share compiled scripts only
+ * within a security domain, and that interpreters taking their standard
+ * objects from the sealed shared scope can use them and import Java
+ * packages, but cannot change them or see each other's globals.
+ *
+ * @version $Id$
+ */
+public class RhinoInterpreterCacheTest extends AbstractTest {
+
+    public static final String ERROR_SCRIPT_NOT_SHARED
+        = "RhinoInterpreterCacheTest.error.script.not.shared";
+
+    public static final String ERROR_SCRIPT_SHARED_ACROSS_DOMAINS
+        = "RhinoInterpreterCacheTest.error.script.shared.across.domains";
+
+    public static final String ERROR_BAD_RESULT
+        = "RhinoInterpreterCacheTest.error.bad.result";
+
+    public static final String ERROR_GLOBAL_SHARED
+        = "RhinoInterpreterCacheTest.error.global.shared";
+
+    public static final String ERROR_STANDARD_OBJECTS_NOT_SHARED
+        = "RhinoInterpreterCacheTest.error.standard.objects.not.shared";
+
+    public static final String ERROR_STANDARD_OBJECTS_NOT_SEALED
+        = "RhinoInterpreterCacheTest.error.standard.objects.not.sealed";
+
+    public static final String ERROR_BAD_STATISTICS
+        = "RhinoInterpreterCacheTest.error.bad.statistics";
+
+    public static final String ENTRY_KEY_SCRIPT
+        = "RhinoInterpreterCacheTest.entry.key.script";
+
+    public static final String ENTRY_KEY_RESULT
+        = "RhinoInterpreterCacheTest.entry.key.result";
+
+    /**
+     * A script to compile once per security domain.
+     */
+    static final String LIBRARY
+        = "function twice(x) { return 2 * x; } var counter = 0;";
+
+    public TestReport runImpl() throws Exception {
+        boolean shared = RhinoInterpreter.isSharedStandardObjects();
+        try {
+            TestReport report = checkScriptCache();
+            if (report == null) {
+                RhinoInterpreter.setSharedStandardObjects(true);
+                report = checkSharedStandardObjects();
+            }
+            return report == null ? reportSuccess() : report;
+        } finally {
+            RhinoInterpreter.setSharedStandardObjects(shared);
+        }
+    }
+
+    /**
+     * Checks that a script is compiled once per security domain.
+     */
+    protected TestReport checkScriptCache() throws Exception {
+        URL a = new URL("http://a.example.org/widget.svg");
+        URL b = new URL("http://b.example.org/widget.svg");
+        String script = LIBRARY + " /* " + System.nanoTime() + " */";
+        WeightedLRUCache cache = RhinoInterpreter.getScriptCache();
+
+        RhinoInterpreter.resetStatistics();
+        new RhinoInterpreter(a).evaluate(script);
+        new RhinoInterpreter(a).evaluate
+            (new StringReader(script), RhinoInterpreter.SOURCE_NAME_SVG);
+        if (cache.getHitCount() < 1) {
+            return report(ERROR_SCRIPT_NOT_SHARED, script, null);
+        }
+        long hits = cache.getHitCount();
+        new RhinoInterpreter(b).evaluate(script);
+        if (cache.getHitCount() != hits) {
+            return report(ERROR_SCRIPT_SHARED_ACROSS_DOMAINS, script, null);
+        }
+        if (RhinoInterpreter.getInterpreterCount() != 3
+                || !(RhinoInterpreter.getAverageInstantiationTime() > 0)) {
+            return report(ERROR_BAD_STATISTICS, null,
+                          RhinoInterpreter.getInterpreterCount() + " "
+                          + RhinoInterpreter.getAverageInstantiationTime());
+        }
+        return null;
+    }
+
+    /**
+     * Checks interpreters using the sealed shared standard objects.
+     */
+    protected TestReport checkSharedStandardObjects() throws Exception {
+        URL u = new URL("http://a.example.org/widget.svg");
+        RhinoInterpreter i1 = new RhinoInterpreter(u);
+        RhinoInterpreter i2 = new SVG12RhinoInterpreter(u);
+        i1.evaluate(LIBRARY);
+        i1.evaluate("counter = twice(21);");
+
+        i1.evaluate("importPackage(Packages.java.util);"
+                    + " var l = new ArrayList(); l.add('x');");
+        TestReport report = check(i1, "counter", "42");
+        if (report == null) {
+            report = check(i1, "l.size() + Math.max(1, 2) + [3, 4].join('')"
+                           + " + 'aab'.replace(/a+/, 'c')", "334cb");
+        }
+        if (report == null) {
+            report = check(i2, "typeof counter + typeof ArrayList",
+                           "undefinedundefined", ERROR_GLOBAL_SHARED);
+        }
+        if (report == null) {
+            report = check(i2, "typeof Object.prototype.toString"
+                           + " + typeof startMouseCapture", "functionfunction");
+        }
+        if (report != null) {
+            return report;
+        }
+        if (i1.getGlobalObject().get("Math", i1.getGlobalObject())
+                != i2.getGlobalObject().get("Math", i2.getGlobalObject())) {
+            return report(ERROR_STANDARD_OBJECTS_NOT_SHARED, "Math", null);
+        }
+        String script = "Array.prototype.last = function () {};";
+        try {
+            i1.evaluate(script);
+        } catch (InterpreterException ex) {
+            return check(i2, "typeof [].last", "undefined");
+        }
+        return report(ERROR_STANDARD_OBJECTS_NOT_SEALED, script, null);
+    }
+
+    /**
+     * Checks the given script evaluates to the given string.
+     */
+    protected TestReport check(RhinoInterpreter interpreter, String script,
+                               String expected) {
+        return check(interpreter, script, expected, ERROR_BAD_RESULT);
+    }
+
+    /**
+     * Checks the given script evaluates to the given string, and reports
+     * the given error otherwise.
+     */
+    protected TestReport check(RhinoInterpreter interpreter, String script,
+                               String expected, String key) {
+        Object result = interpreter.evaluate("String(" + script + ")");
+        if (!expected.equals(result)) {
+            return report(key, script, String.valueOf(result));
+        }
+        return null;
+    }
+
+    protected TestReport report(String key, String script, String result) {
+        TestReport report = reportError(key);
+        if (script != null) {
+            report.addDescriptionEntry(ENTRY_KEY_SCRIPT, script);
+        }
+        if (result != null) {
+            report.addDescriptionEntry(ENTRY_KEY_RESULT, result);
+        }
+        return report;
+    }
+}
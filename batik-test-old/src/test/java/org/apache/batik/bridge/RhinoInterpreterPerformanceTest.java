@@ -0,0 +1,98 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares creating interpreters for documents sharing a script library
+ * with the sealed shared standard objects and a warm compiled script
+ * cache (the operation), with creating their own standard objects and
+ * compiling the library each time, as when every interpreter had its own
+ * script cache (the reference).
+ *
+ * @version $Id$
+ */
+public class RhinoInterpreterPerformanceTest extends PerformanceTest {
+
+    /**
+     * The number of interpreters created by each run.
+     */
+    static final int INTERPRETERS = 5;
+
+    /**
+     * The number of functions in the library.
+     */
+    static final int FUNCTIONS = 200;
+
+    protected URL documentURL;
+
+    protected String library;
+
+    public RhinoInterpreterPerformanceTest() {
+        try {
+            documentURL = new URL("http://widgets.example.org/widget.svg");
+        } catch (MalformedURLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            sb.append("function f").append(i).append("(a, b) {\n")
+              .append("    var s = 0;\n")
+              .append("    for (var i = 0; i < a.length; i++) {\n")
+              .append("        s += a[i] * b + ").append(i).append(";\n")
+              .append("    }\n")
+              .append("    return s > 100 ? 'big' + s : Math.floor(s);\n")
+              .append("}\n");
+        }
+        library = sb.toString();
+    }
+
+    protected void runRef() {
+        run(false);
+    }
+
+    protected void runOp() {
+        run(true);
+    }
+
+    /**
+     * Creates {@link #INTERPRETERS} interpreters evaluating the library.
+     */
+    protected void run(boolean shared) {
+        boolean b = RhinoInterpreter.isSharedStandardObjects();
+        try {
+            RhinoInterpreter.setSharedStandardObjects(shared);
+            for (int i = 0; i < INTERPRETERS; i++) {
+                if (!shared) {
+                    RhinoInterpreter.getScriptCache().clear();
+                }
+                RhinoInterpreter interpreter
+                    = new RhinoInterpreter(documentURL);
+                interpreter.evaluate(library);
+                interpreter.dispose();
+            }
+        } finally {
+            RhinoInterpreter.setSharedStandardObjects(b);
+        }
+    }
+}
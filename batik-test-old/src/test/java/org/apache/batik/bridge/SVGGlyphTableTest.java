@@ -0,0 +1,259 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Shape;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.font.GVTFontFace;
+import org.apache.batik.gvt.font.Glyph;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.WeightedLRUCache;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks that text set in SVG fonts has the same outlines with the
+ * shared glyph tables of <code>SVGGlyphTable</code> as without them,
+ * that their glyphs match those of the glyph element bridge, that a
+ * font loaded twice is compiled once, and that a modified font gets a
+ * new table.
+ *
+ * @version $Id$
+ */
+public class SVGGlyphTableTest extends AbstractTest {
+
+    public static final String ERROR_OUTLINE_DIFFERS
+        = "SVGGlyphTableTest.error.outline.differs";
+
+    public static final String ERROR_GLYPH_DIFFERS
+        = "SVGGlyphTableTest.error.glyph.differs";
+
+    public static final String ERROR_NO_HITS
+        = "SVGGlyphTableTest.error.no.hits";
+
+    public static final String ERROR_STALE_TABLE
+        = "SVGGlyphTableTest.error.stale.table";
+
+    public static final String ENTRY_KEY_TEXT
+        = "SVGGlyphTableTest.entry.key.text";
+
+    public static final String ENTRY_KEY_GLYPH
+        = "SVGGlyphTableTest.entry.key.glyph";
+
+    static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' width='400' height='400'>"
+        + "<defs><font id='f' horiz-adv-x='600'>"
+        + "<font-face font-family='Test' units-per-em='1000' ascent='800'"
+        + " descent='200'/>"
+        + "<missing-glyph d='M50 0v700h500v-700zM100 50h400v600h-400z'/>"
+        + "<glyph id='ga' unicode='a' glyph-name='a'"
+        + " d='M100 0l200 700l200 -700z'/>"
+        + "<glyph unicode='b' horiz-adv-x='500' vert-adv-y='900'"
+        + " d='M300 0a200 200 0 1 0 0.1 0zM300 100a100 100 0 1 1 -0.1 0z'/>"
+        + "<glyph unicode='c' vert-origin-x='250' vert-origin-y='700'"
+        + " d='M100 100c0 600 400 600 400 0q-200 -200 -400 0z'/>"
+        + "<glyph unicode='ab' d='M0 0h1000v100h-1000z'/>"
+        + "<glyph unicode='d' glyph-name='dee'><rect x='100' y='0'"
+        + " width='400' height='600'/></glyph>"
+        + "<glyph unicode='e' horiz-adv-x='x' d='M0 0h300v300z'/>"
+        + "<hkern u1='a' u2='c' k='200'/>"
+        + "<hkern g1='dee' u2='a' k='-100'/>"
+        + "<vkern u1='c' u2='a' k='150'/>"
+        + "</font></defs>"
+        + "<g font-family='Test' font-size='40'>"
+        + "<text x='10' y='50'>acab ba</text>"
+        + "<text x='10' y='100' font-size='13'>abc xyz</text>"
+        + "<text x='10' y='150' fill-rule='evenodd'>bbcca</text>"
+        + "<text x='10' y='200'>dadc</text>"
+        + "<text x='350' y='10' writing-mode='tb'>cacb</text>"
+        + "<text x='10' y='250' glyph-orientation-horizontal='90deg'>"
+        + "ac</text>"
+        + "</g></svg>";
+
+    public TestReport runImpl() throws Exception {
+        WeightedLRUCache cache = SVGGlyphTable.getCache();
+        long max = cache.getMaxWeight();
+        List expected, actual;
+        try {
+            cache.setMaxWeight(0);
+            expected = getOutlines(null);
+            cache.setMaxWeight(max);
+            cache.resetStatistics();
+            getOutlines(null);
+            actual = getOutlines(null);
+            TestReport report = compare(expected, actual);
+            if (report != null) {
+                return report;
+            }
+            if (cache.getHitCount() == 0) {
+                return reportError(ERROR_NO_HITS);
+            }
+            report = checkGlyphs();
+            if (report != null) {
+                return report;
+            }
+
+            // Modifying a glyph of the font must not reuse its table.
+            String d = "M0 0h500v500h-500z";
+            actual = getOutlines(d);
+            cache.setMaxWeight(0);
+            expected = getOutlines(d);
+            report = compare(expected, actual);
+            if (report != null) {
+                return report;
+            }
+            if (Arrays.equals((float[])expected.get(0),
+                              (float[])getOutlines(null).get(0))) {
+                return reportError(ERROR_STALE_TABLE);
+            }
+        } finally {
+            cache.setMaxWeight(max);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Compares every glyph of the font created from the glyph table
+     * with the same glyph created by the glyph element bridge, at two
+     * sizes and for both fill rules.
+     */
+    protected TestReport checkGlyphs() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:font.svg",
+                                        new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        new GVTBuilder().build(ctx, doc);
+
+        Element font = doc.getElementById("f");
+        Element fontFace = (Element)font.getElementsByTagNameNS
+            (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_FONT_FACE_TAG)
+            .item(0);
+        GVTFontFace face = ((SVGFontFaceElementBridge)ctx.getBridge
+                            (fontFace)).createFontFace(ctx, fontFace);
+        NodeList texts = doc.getElementsByTagNameNS
+            (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_TEXT_TAG);
+        NodeList glyphs = font.getElementsByTagNameNS
+            (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_GLYPH_TAG);
+        String[] unicodes = new String[glyphs.getLength()];
+        for (int i = 0; i < unicodes.length; i++) {
+            unicodes[i] = ((Element)glyphs.item(i)).getAttributeNS
+                (null, SVGConstants.SVG_UNICODE_ATTRIBUTE);
+        }
+        SVGGlyphTable table = SVGGlyphTable.getGlyphTable(font, unicodes);
+        Element missing = (Element)font.getElementsByTagNameNS
+            (SVGConstants.SVG_NAMESPACE_URI,
+             SVGConstants.SVG_MISSING_GLYPH_TAG).item(0);
+
+        int compiled = 0;
+        for (int t = 0; t < texts.getLength(); t++) {
+            Element text = (Element)texts.item(t);
+            for (int i = -1; i < unicodes.length; i++) {
+                Element e = (i < 0) ? missing : (Element)glyphs.item(i);
+                float size = 10 + 7 * t;
+                Glyph g = table.createGlyph(e, text, i, size, face, null);
+                if (g == null) {
+                    continue;
+                }
+                compiled++;
+                SVGGlyphElementBridge bridge
+                    = (SVGGlyphElementBridge)ctx.getBridge(e);
+                Glyph r = bridge.createGlyph(ctx, e, text, i, size, face, null);
+                if (!toString(g).equals(toString(r))) {
+                    TestReport report = reportError(ERROR_GLYPH_DIFFERS);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_GLYPH, toString(g) + " != " + toString(r));
+                    return report;
+                }
+            }
+        }
+        if (compiled == 0) {
+            return reportError(ERROR_GLYPH_DIFFERS);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the properties of a glyph as a string.
+     */
+    static String toString(Glyph g) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(g.getUnicode()).append(' ').append(g.getNames())
+            .append(' ').append(g.getOrientation())
+            .append(' ').append(g.getArabicForm())
+            .append(' ').append(g.getLang())
+            .append(' ').append(g.getHorizOrigin())
+            .append(' ').append(g.getVertOrigin())
+            .append(' ').append(g.getHorizAdvX())
+            .append(' ').append(g.getVertAdvY())
+            .append(' ').append(g.getGlyphCode());
+        Shape s = g.getOutline();
+        sb.append(' ').append(s.getPathIterator(null).getWindingRule())
+            .append(' ').append(Arrays.toString
+                                (TextLayoutCacheTest.getCoordinates(s)));
+        return sb.toString();
+    }
+
+    protected TestReport compare(List expected, List actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals((float[])expected.get(i),
+                               (float[])actual.get(i))) {
+                TestReport report = reportError(ERROR_OUTLINE_DIFFERS);
+                report.addDescriptionEntry(ENTRY_KEY_TEXT, Integer.toString(i));
+                return report;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the document and returns the outline of every text node,
+     * after setting the path of the 'a' glyph to <code>d</code> if it
+     * is not null.
+     */
+    protected List getOutlines(String d) throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:font.svg",
+                                        new StringReader(DOCUMENT));
+        if (d != null) {
+            Element glyph = doc.getElementById("ga");
+            glyph.setAttributeNS(null, "d", d);
+        }
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        List nodes = new ArrayList();
+        TextLayoutCachePerformanceTest.collectTextNodes
+            (new GVTBuilder().build(ctx, doc), nodes);
+        List outlines = new ArrayList();
+        for (int i = 0; i < nodes.size(); i++) {
+            outlines.add(TextLayoutCacheTest.getCoordinates
+                         (((TextNode)nodes.get(i)).getOutline()));
+        }
+        return outlines;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>SystemFontIndex</code> writes its index file,
+ * reuses it while the font directories are unchanged, enumerates the
+ * fonts again once a directory changes, and that the index agrees
+ * with <code>DefaultFontFamilyResolver</code>.
+ *
+ * @version $Id$
+ */
+public class SystemFontIndexTest extends AbstractTest {
+
+    public static final String ERROR_NOT_WRITTEN
+        = "SystemFontIndexTest.error.not.written";
+
+    public static final String ERROR_NOT_REUSED
+        = "SystemFontIndexTest.error.not.reused";
+
+    public static final String ERROR_NOT_REFRESHED
+        = "SystemFontIndexTest.error.not.refreshed";
+
+    public static final String ERROR_BAD_NAMES
+        = "SystemFontIndexTest.error.bad.names";
+
+    public static final String ENTRY_KEY_NAME
+        = "SystemFontIndexTest.entry.key.name";
+
+    public TestReport runImpl() throws Exception {
+        File dir = File.createTempFile("fonts", "");
+        dir.delete();
+        File sub = new File(dir, "fonts/truetype");
+        sub.mkdirs();
+        File index = new File(dir, "index.txt");
+        File[] dirs = { new File(dir, "fonts") };
+        try {
+            SystemFontIndex fi = new SystemFontIndex(index, dirs);
+            Map names = fi.getNames();
+            if (!index.isFile() || fi.isFromIndexFile()) {
+                return reportError(ERROR_NOT_WRITTEN);
+            }
+
+            fi = new SystemFontIndex(index, dirs);
+            if (!names.equals(fi.getNames()) || !fi.isFromIndexFile()) {
+                return reportError(ERROR_NOT_REUSED);
+            }
+
+            // A new font directory invalidates the index.
+            new File(sub, "new").mkdir();
+            fi = new SystemFontIndex(index, dirs);
+            if (!names.equals(fi.getNames()) || fi.isFromIndexFile()) {
+                return reportError(ERROR_NOT_REFRESHED);
+            }
+
+            // Every family is found in any case, without spaces, and
+            // through the resolver.
+            for (int i = 0; i < fi.getFamilyNames().size(); i++) {
+                String f = (String)fi.getFamilyNames().get(i);
+                String lc = f.toLowerCase();
+                if (!f.equals(names.get(lc)) ||
+                    !f.equals(names.get(lc.replaceAll(" ", ""))) ||
+                    DefaultFontFamilyResolver.SINGLETON.resolve(f) == null) {
+                    TestReport report = reportError(ERROR_BAD_NAMES);
+                    report.addDescriptionEntry(ENTRY_KEY_NAME, f);
+                    return report;
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+        return reportSuccess();
+    }
+
+    static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.font.FontRenderContext;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.svg12.SVG12BridgeContext;
+import org.apache.batik.gvt.text.BidiAttributedCharacterIterator;
+import org.apache.batik.gvt.text.BidiAttributedCharacterIterator.Reordering;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Reorders the text chunks of a bidirectional document, once from
+ * scratch and once from the reorderings the first pass produced (as
+ * <code>StrokingTextPainter</code> does on a text layout cache hit),
+ * and checks that reusing the shared bidi levels and Arabic shaping
+ * allocates less.  Allocation is measured with the allocation counter
+ * of the JVM threads; the check is skipped when there is none.
+ *
+ * @version $Id$
+ */
+public class TextLayoutCacheAllocationTest extends AbstractTest {
+
+    public static final String ERROR_NO_REORDERING
+        = "TextLayoutCacheAllocationTest.error.no.reordering";
+
+    public static final String ERROR_NO_REDUCTION
+        = "TextLayoutCacheAllocationTest.error.no.reduction";
+
+    public static final String ENTRY_KEY_UNCACHED
+        = "TextLayoutCacheAllocationTest.entry.key.uncached";
+
+    public static final String ENTRY_KEY_CACHED
+        = "TextLayoutCacheAllocationTest.entry.key.cached";
+
+    /**
+     * The number of times the chunks are reordered per measure.
+     */
+    static final int PASSES = 50;
+
+    protected String file;
+
+    protected double maxRatio;
+
+    /**
+     * @param file the document.
+     * @param maxRatio the highest allowed ratio of the bytes allocated
+     *        with shared reorderings to the bytes allocated without.
+     */
+    public TextLayoutCacheAllocationTest(String file, Double maxRatio) {
+        this.file = file;
+        this.maxRatio = maxRatio.doubleValue();
+    }
+
+    public String getName() {
+        return super.getName() + " " + file;
+    }
+
+    public TestReport runImpl() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument(new File(file).toURI().toString());
+        BridgeContext ctx = new SVG12BridgeContext(new UserAgentAdapter());
+        List nodes = new ArrayList();
+        TextLayoutCachePerformanceTest.collectTextNodes
+            (new GVTBuilder().build(ctx, doc), nodes);
+
+        StrokingTextPainter painter = new StrokingTextPainter();
+        List chunks = new ArrayList();
+        for (int i = 0; i < nodes.size(); i++) {
+            TextNode node = (TextNode)nodes.get(i);
+            AttributedCharacterIterator[] acis = painter.getTextChunkACIs
+                (node.getAttributedCharacterIterator());
+            for (int j = 0; j < acis.length; j++) {
+                chunks.add(acis[j]);
+            }
+        }
+
+        Reordering[] reorderings = new Reordering[chunks.size()];
+        reorder(chunks, reorderings, true);
+        boolean found = false;
+        for (int i = 0; i < reorderings.length; i++) {
+            found |= reorderings[i] != null;
+        }
+        if (!found) {
+            return reportError(ERROR_NO_REORDERING);
+        }
+
+        reorder(chunks, null, false);
+        long uncached = reorder(chunks, null, false);
+        reorder(chunks, reorderings, false);
+        long cached = reorder(chunks, reorderings, false);
+        if (uncached < 0 || cached <= maxRatio * uncached) {
+            return reportSuccess();
+        }
+        TestReport report = reportError(ERROR_NO_REDUCTION);
+        report.addDescriptionEntry(ENTRY_KEY_UNCACHED, "" + uncached);
+        report.addDescriptionEntry(ENTRY_KEY_CACHED, "" + cached);
+        return report;
+    }
+
+    /**
+     * Reorders the chunks PASSES times, from the given reorderings
+     * when there are some, and returns the number of bytes allocated
+     * or -1 if it can't be measured.
+     * @param record whether to store the reorderings produced into
+     *        <code>reorderings</code> rather than use them.
+     */
+    protected long reorder(List chunks, Reordering[] reorderings,
+                           boolean record) {
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        long start = getAllocatedBytes();
+        for (int n = 0; n < PASSES; n++) {
+            for (int i = 0; i < chunks.size(); i++) {
+                AttributedCharacterIterator aci
+                    = (AttributedCharacterIterator)chunks.get(i);
+                Reordering r = (reorderings == null || record)
+                    ? null : reorderings[i];
+                BidiAttributedCharacterIterator iter
+                    = new BidiAttributedCharacterIterator(aci, frc, 0, r);
+                if (record) {
+                    reorderings[i] = iter.getReordering();
+                }
+            }
+        }
+        long end = getAllocatedBytes();
+        return (start < 0 || end < 0) ? -1 : end - start;
+    }
+    /**
+     * Returns the number of bytes allocated by the current thread, or
+     * -1 if the JVM doesn't count them.
+     */
+    static long getAllocatedBytes() {
+        try {
+            Class c = Class.forName("com.sun.management.ThreadMXBean");
+            Method m = c.getMethod("getThreadAllocatedBytes",
+                                   new Class[] { Long.TYPE });
+            Object bean = ManagementFactory.getThreadMXBean();
+            Long id = new Long(Thread.currentThread().getId());
+            return ((Long)m.invoke(bean, new Object[] { id })).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
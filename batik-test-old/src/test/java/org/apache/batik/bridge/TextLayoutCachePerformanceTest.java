@@ -0,0 +1,98 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the layout of many short, repeated labels with the text
+ * layout cache (the operation) and without it (the reference).
+ *
+ * @version $Id$
+ */
+public class TextLayoutCachePerformanceTest extends PerformanceTest {
+
+    static final String[] LABELS = {
+        "0", "10%", "20%", "Main Street", "Elm St", "42", "North", "1 km"
+    };
+
+    static final int COUNT = 2000;
+
+    protected List nodes = new ArrayList();
+
+    public TextLayoutCachePerformanceTest() throws Exception {
+        StringBuffer sb = new StringBuffer();
+        sb.append("<svg xmlns='http://www.w3.org/2000/svg' width='2000' "
+                  + "height='2000' font-family='sans-serif' font-size='10'>");
+        for (int i = 0; i < COUNT; i++) {
+            sb.append("<text x='" + (i % 100) * 20 + "' y='" + (i / 100) * 12
+                      + "'>" + LABELS[i % LABELS.length] + "</text>");
+        }
+        sb.append("</svg>");
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:labels.svg",
+                                        new StringReader(sb.toString()));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        collectTextNodes(new GVTBuilder().build(ctx, doc), nodes);
+    }
+
+    static void collectTextNodes(GraphicsNode gn, List l) {
+        if (gn instanceof TextNode) {
+            l.add(gn);
+        } else if (gn instanceof CompositeGraphicsNode) {
+            List children = (CompositeGraphicsNode)gn;
+            for (int i = 0; i < children.size(); i++) {
+                collectTextNodes((GraphicsNode)children.get(i), l);
+            }
+        }
+    }
+
+    protected void runRef() {
+        TextLayoutCache cache = StrokingTextPainter.getTextLayoutCache();
+        long max = cache.getMaxWeight();
+        cache.setMaxWeight(0);
+        try {
+            runOp();
+        } finally {
+            cache.setMaxWeight(max);
+        }
+    }
+
+    protected void runOp() {
+        for (int i = 0; i < nodes.size(); i++) {
+            TextNode node = (TextNode)nodes.get(i);
+            StrokingTextPainter painter
+                = (StrokingTextPainter)node.getTextPainter();
+            AttributedCharacterIterator aci
+                = node.getAttributedCharacterIterator();
+            painter.computeTextRuns(node, aci, painter.getTextChunkACIs(aci));
+        }
+    }
+}
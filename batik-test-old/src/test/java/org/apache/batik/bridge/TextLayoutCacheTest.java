@@ -0,0 +1,172 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.font.AWTGVTFont;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Checks that text laid out with the text layout cache of
+ * <code>StrokingTextPainter</code> has the same outlines as text laid
+ * out without it, for repeated labels, styled spans, bidirectional
+ * and Arabic text and SVG fonts, that repeated labels hit the
+ * cache, and that fonts of one family with different attributes get
+ * different keys.
+ *
+ * @version $Id$
+ */
+public class TextLayoutCacheTest extends AbstractTest {
+
+    public static final String ERROR_OUTLINE_DIFFERS
+        = "TextLayoutCacheTest.error.outline.differs";
+
+    public static final String ERROR_NO_HITS
+        = "TextLayoutCacheTest.error.no.hits";
+
+    public static final String ERROR_FONTS_KEY_SHARED
+        = "TextLayoutCacheTest.error.fonts.key.shared";
+
+    public static final String ENTRY_KEY_TEXT
+        = "TextLayoutCacheTest.entry.key.text";
+
+    static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' width='400' height='400'"
+        + " font-family='sans-serif' font-size='12'>"
+        + "<defs><font horiz-adv-x='500'><font-face font-family='Boxes'"
+        + " units-per-em='1000'/><glyph unicode='a' d='M0 0h400v400h-400z'/>"
+        + "</font></defs>"
+        + "<text x='10' y='20'>Main Street</text>"
+        + "<text x='200' y='40'>Main Street</text>"
+        + "<text x='10' y='60' text-anchor='middle'>Main Street</text>"
+        + "<text x='10' y='80' font-size='20'>Main Street</text>"
+        + "<text x='10' y='100' letter-spacing='2'>Main Street</text>"
+        + "<text x='10' y='120' font-weight='bold'>Main <tspan"
+        + " font-style='italic'>Street</tspan></text>"
+        + "<text x='10 20 30' y='140'>Main Street</text>"
+        + "<text x='10' y='160' font-family='serif'>Main Street</text>"
+        + "<text x='10' y='180'>abc \u05d0\u05d1\u05d2 123</text>"
+        + "<text x='10' y='200'>abc \u05d0\u05d1\u05d2 123</text>"
+        + "<text x='10' y='280'>\u0627\u0644\u0633\u0644\u0627\u0645 (1)</text>"
+        + "<text x='50' y='300'>\u0627\u0644\u0633\u0644\u0627\u0645 (1)</text>"
+        + "<text x='10' y='320'>\u0644\u064e\u0627 \u0644\u064e\u0627</text>"
+        + "<text x='10' y='340'>\u0644\u064e\u0627 \u0644\u064e\u0627</text>"
+        + "<text x='10' y='360' direction='rtl' unicode-bidi='embed'>"
+        + "abc <tspan fill='red'>def</tspan></text>"
+        + "<text x='10' y='380' direction='rtl' unicode-bidi='embed'>"
+        + "abc <tspan fill='red'>def</tspan></text>"
+        + "<text x='10' y='220' font-family='Boxes'>aaa</text>"
+        + "<text x='10' y='240' font-family='Boxes'>aaa</text>"
+        + "<text x='10' y='260' writing-mode='tb'>Main Street</text>"
+        + "</svg>";
+
+    public TestReport runImpl() throws Exception {
+        TextLayoutCache cache = StrokingTextPainter.getTextLayoutCache();
+        long max = cache.getMaxWeight();
+        List expected, actual;
+        try {
+            cache.setMaxWeight(0);
+            expected = getOutlines();
+            cache.setMaxWeight(max);
+            cache.resetStatistics();
+            getOutlines();
+            actual = getOutlines();
+        } finally {
+            cache.setMaxWeight(max);
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals((float[])expected.get(i),
+                               (float[])actual.get(i))) {
+                TestReport report = reportError(ERROR_OUTLINE_DIFFERS);
+                report.addDescriptionEntry(ENTRY_KEY_TEXT, Integer.toString(i));
+                return report;
+            }
+        }
+        if (cache.getHitCount() == 0) {
+            return reportError(ERROR_NO_HITS);
+        }
+
+        Object plain = getFontsKey(new AWTGVTFont("Serif", Font.PLAIN, 12));
+        Object bold = getFontsKey(new AWTGVTFont("Serif", Font.BOLD, 12));
+        if (!plain.equals
+                (getFontsKey(new AWTGVTFont("Serif", Font.PLAIN, 12)))
+            || plain.equals(bold)) {
+            return reportError(ERROR_FONTS_KEY_SHARED);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the layout cache key of a list holding only the given font.
+     */
+    protected static Object getFontsKey(AWTGVTFont font) {
+        List fonts = new ArrayList();
+        fonts.add(font);
+        return TextLayoutCache.getFontsKey(fonts);
+    }
+
+    /**
+     * Builds the document and returns the outline of every text node.
+     */
+    protected List getOutlines() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:text.svg",
+                                        new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        List nodes = new ArrayList();
+        TextLayoutCachePerformanceTest.collectTextNodes
+            (new GVTBuilder().build(ctx, doc), nodes);
+        List outlines = new ArrayList();
+        for (int i = 0; i < nodes.size(); i++) {
+            outlines.add(getCoordinates(((TextNode)nodes.get(i)).getOutline()));
+        }
+        return outlines;
+    }
+
+    static float[] getCoordinates(Shape s) {
+        List l = new ArrayList();
+        float[] c = new float[6];
+        for (PathIterator pi = s.getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            int type = pi.currentSegment(c);
+            l.add(new Float(type));
+            for (int i = 0; i < 6; i++) {
+                l.add(new Float(c[i]));
+            }
+        }
+        float[] res = new float[l.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = ((Float)l.get(i)).floatValue();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.RunnableQueue;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Element;
+
+/**
+ * Checks the statistics collected by the {@link UpdateMonitor} of an
+ * <code>UpdateManager</code>: nothing is recorded while it is disabled,
+ * runnables, scripts, dirty areas and paints are timed once it is
+ * enabled, queued runnables are counted, listeners are notified of
+ * each frame and the monitor can be read through JMX.
+ *
+ * @version $Id$
+ */
+public class UpdateMonitorTest extends AbstractTest {
+
+    public static final String ERROR_RECORDED_WHILE_DISABLED
+        = "UpdateMonitorTest.error.recorded.while.disabled";
+
+    public static final String ERROR_PHASE_NOT_RECORDED
+        = "UpdateMonitorTest.error.phase.not.recorded";
+
+    public static final String ERROR_BAD_REPAINT_AREA
+        = "UpdateMonitorTest.error.bad.repaint.area";
+
+    public static final String ERROR_QUEUE_NOT_MEASURED
+        = "UpdateMonitorTest.error.queue.not.measured";
+
+    public static final String ERROR_LISTENER_NOT_NOTIFIED
+        = "UpdateMonitorTest.error.listener.not.notified";
+
+    public static final String ERROR_BAD_MBEAN
+        = "UpdateMonitorTest.error.bad.mbean";
+
+    public static final String ENTRY_KEY_PHASE
+        = "UpdateMonitorTest.entry.key.phase";
+
+    public static final String ENTRY_KEY_STATISTICS
+        = "UpdateMonitorTest.entry.key.statistics";
+
+    /**
+     * The number of runnables queued behind a blocked one.
+     */
+    static final int QUEUED = 5;
+
+    public TestReport runImpl() throws Exception {
+        final MutationBatchingTest.Session s = new MutationBatchingTest.Session
+            (MutationBatchingTest.createDocument(4));
+        try {
+            UpdateMonitor m = s.um.getUpdateMonitor();
+            RunnableQueue rq = s.um.getUpdateRunnableQueue();
+
+            update(s, new Resize(s, "r0", "20"));
+            if (m.getRunnableCount() != 0 || m.getFrameCount() != 0
+                    || m.getPhaseCount(UpdateMonitor.RUNNABLE) != 0
+                    || rq.isTiming()) {
+                return report(ERROR_RECORDED_WHILE_DISABLED, m);
+            }
+
+            final int[] frames = new int[1];
+            m.addListener(new UpdateMonitor.Listener() {
+                    public void frameCompleted(UpdateMonitor um) {
+                        frames[0]++;
+                    }
+                });
+            m.setEnabled(true);
+            if (!rq.isTiming()) {
+                return report(ERROR_QUEUE_NOT_MEASURED, m);
+            }
+
+            ScriptingEnvironment se = s.um.getScriptingEnvironment();
+            update(s, se.new EvaluateRunnable
+                   ("document.getElementById('r1')"
+                    + ".setAttribute('width', '30')",
+                    s.ctx.getInterpreter("text/ecmascript")));
+            int[] phases = { UpdateMonitor.RUNNABLE, UpdateMonitor.SCRIPT,
+                             UpdateMonitor.DIRTY_AREAS, UpdateMonitor.PAINT };
+            for (int phase : phases) {
+                if (m.getPhaseCount(phase) == 0) {
+                    TestReport report = report(ERROR_PHASE_NOT_RECORDED, m);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_PHASE, UpdateMonitor.getPhaseName(phase));
+                    return report;
+                }
+            }
+            if (m.getFrameCount() != 1 || frames[0] != 1) {
+                return report(ERROR_LISTENER_NOT_NOTIFIED, m);
+            }
+            // r1 grows from 5x5 to 30x5, dirtying at least its new bounds.
+            if (m.getLastRepaintArea() < 30 * 5
+                    || m.getLastRepaintArea() > 200 * 200) {
+                return report(ERROR_BAD_REPAINT_AREA, m);
+            }
+
+            // Queue runnables behind one that waits, so they are seen
+            // in the queue and wait for it.
+            final Object lock = new Object();
+            final boolean[] started = new boolean[1];
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        synchronized (lock) {
+                            started[0] = true;
+                            lock.notifyAll();
+                            try {
+                                lock.wait(5000);
+                            } catch (InterruptedException ie) {
+                            }
+                        }
+                    }
+                });
+            synchronized (lock) {
+                while (!started[0]) {
+                    lock.wait();
+                }
+                for (int i = 0; i < QUEUED; i++) {
+                    rq.invokeLater(new Resize(s, "r2", String.valueOf(i)));
+                }
+                Thread.sleep(20);
+                lock.notifyAll();
+            }
+            update(s, new Resize(s, "r3", "40"));
+            if (m.getMaxQueueDepth() < QUEUED - 1
+                    || m.getMaxPhaseTime(UpdateMonitor.QUEUE_WAIT) < 10) {
+                return report(ERROR_QUEUE_NOT_MEASURED, m);
+            }
+
+            ObjectName name = m.registerMBean();
+            try {
+                Object frameCount = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(name, "FrameCount");
+                if (!frameCount.equals(new Long(m.getFrameCount()))) {
+                    return report(ERROR_BAD_MBEAN, m);
+                }
+            } finally {
+                m.unregisterMBean();
+            }
+            if (ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered(name)) {
+                return report(ERROR_BAD_MBEAN, m);
+            }
+
+            m.setEnabled(false);
+            long count = m.getRunnableCount();
+            update(s, new Resize(s, "r0", "10"));
+            if (m.getRunnableCount() != count) {
+                return report(ERROR_RECORDED_WHILE_DISABLED, m);
+            }
+        } finally {
+            s.dispose();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Runs a runnable in the update thread and waits until the
+     * rendering was updated after it.
+     */
+    static void update(MutationBatchingTest.Session s, Runnable r)
+            throws InterruptedException {
+        s.invokeAndWait(r);
+        // The repaint follows the runnable, before the next one starts.
+        s.invokeAndWait(new NoRepaintRunnable() {
+                public void run() {
+                }
+            });
+    }
+
+    /**
+     * Returns an error report with the statistics of the monitor.
+     */
+    protected TestReport report(String key, UpdateMonitor m) {
+        TestReport report = reportError(key);
+        report.addDescriptionEntry(ENTRY_KEY_STATISTICS, m.dump());
+        return report;
+    }
+
+    /**
+     * Sets the width of a rectangle.
+     */
+    static class Resize implements Runnable {
+
+        MutationBatchingTest.Session session;
+        String id;
+        String width;
+
+        Resize(MutationBatchingTest.Session session, String id,
+               String width) {
+            this.session = session;
+            this.id = id;
+            this.width = width;
+        }
+
+        public void run() {
+            Element e = session.doc.getElementById(id);
+            e.setAttributeNS(null, SVGConstants.SVG_WIDTH_ATTRIBUTE, width);
+        }
+    }
+}
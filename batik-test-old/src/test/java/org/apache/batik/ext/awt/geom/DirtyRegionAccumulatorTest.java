@@ -0,0 +1,136 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>DirtyRegionAccumulator</code> covers every added
+ * rectangle, keeps at most its maximum number of rectangles, and that
+ * the latency policy paints fewer pixels than the throughput one when
+ * many small rectangles are scattered.
+ *
+ * @version $Id$
+ */
+public class DirtyRegionAccumulatorTest extends AbstractTest {
+
+    public static final String ERROR_NOT_COVERED
+        = "DirtyRegionAccumulatorTest.error.not.covered";
+
+    public static final String ERROR_TOO_MANY_RECTS
+        = "DirtyRegionAccumulatorTest.error.too.many.rects";
+
+    public static final String ERROR_NOT_MERGED
+        = "DirtyRegionAccumulatorTest.error.not.merged";
+
+    public static final String ERROR_LATENCY_AREA
+        = "DirtyRegionAccumulatorTest.error.latency.area";
+
+    public static final String ENTRY_KEY_POLICY
+        = "DirtyRegionAccumulatorTest.entry.key.policy";
+
+    public static final String ENTRY_KEY_RECT
+        = "DirtyRegionAccumulatorTest.entry.key.rect";
+
+    public static final String ENTRY_KEY_AREA
+        = "DirtyRegionAccumulatorTest.entry.key.area";
+
+    public TestReport runImpl() throws Exception {
+        // Small moving elements scattered over a large canvas.
+        Random rand = new Random(7);
+        Rectangle[] rects = new Rectangle[40];
+        for (int i = 0; i < rects.length; i++) {
+            rects[i] = new Rectangle(rand.nextInt(2000), rand.nextInt(2000),
+                                     4 + rand.nextInt(12),
+                                     4 + rand.nextInt(12));
+        }
+
+        int[] policies = { DirtyRegionAccumulator.THROUGHPUT,
+                           DirtyRegionAccumulator.LATENCY };
+        long[] areas = new long[policies.length];
+        for (int p = 0; p < policies.length; p++) {
+            DirtyRegionAccumulator dra =
+                new DirtyRegionAccumulator(policies[p]);
+            for (Rectangle r : rects) {
+                dra.add(r);
+            }
+            if (dra.getSize() > dra.getMaxRects()) {
+                TestReport report = reportError(ERROR_TOO_MANY_RECTS);
+                report.addDescriptionEntry(ENTRY_KEY_POLICY,
+                                           Integer.toString(policies[p]));
+                return report;
+            }
+            Rectangle[] res = dra.getRectangles();
+            for (Rectangle r : rects) {
+                if (!covered(r, res)) {
+                    TestReport report = reportError(ERROR_NOT_COVERED);
+                    report.addDescriptionEntry(ENTRY_KEY_POLICY,
+                                               Integer.toString(policies[p]));
+                    report.addDescriptionEntry(ENTRY_KEY_RECT, r.toString());
+                    return report;
+                }
+            }
+            for (Rectangle r : res) {
+                areas[p] += (long) r.width * r.height;
+            }
+        }
+        if (areas[1] >= areas[0]) {
+            TestReport report = reportError(ERROR_LATENCY_AREA);
+            report.addDescriptionEntry(ENTRY_KEY_AREA,
+                                       areas[1] + " >= " + areas[0]);
+            return report;
+        }
+
+        // Overlapping and adjacent rectangles end up as one, empty ones
+        // are ignored.
+        DirtyRegionAccumulator dra =
+            new DirtyRegionAccumulator(DirtyRegionAccumulator.LATENCY);
+        dra.add(10, 10, 50, 50);
+        dra.add(20, 20, 50, 50);
+        dra.add(70, 10, 10, 60);
+        dra.add(500, 500, 0, 10);
+        Rectangle[] res = dra.getRectangles();
+        if (res.length != 1 ||
+            !res[0].equals(new Rectangle(10, 10, 70, 60))) {
+            return reportError(ERROR_NOT_MERGED);
+        }
+        dra.clear();
+        if (dra.getRectangles().length != 0 || dra.getBounds() != null) {
+            return reportError(ERROR_NOT_MERGED);
+        }
+
+        return reportSuccess();
+    }
+
+    /**
+     * Returns whether one of the given rectangles contains r.
+     */
+    protected static boolean covered(Rectangle r, Rectangle[] rects) {
+        for (Rectangle c : rects) {
+            if (c.contains(r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
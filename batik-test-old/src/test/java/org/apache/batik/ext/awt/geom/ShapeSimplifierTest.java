@@ -0,0 +1,204 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>ShapeSimplifier</code> keeps every point of the
+ * original outline within the tolerance of the simplified one, that
+ * it actually removes points, that it drops subpaths smaller than
+ * the tolerance, and that a subpath following a close without a move
+ * starts from the start of the closed one.
+ *
+ * @version $Id$
+ */
+public class ShapeSimplifierTest extends AbstractTest {
+
+    public static final String ERROR_TOLERANCE_EXCEEDED
+        = "ShapeSimplifierTest.error.tolerance.exceeded";
+
+    public static final String ERROR_NOT_SIMPLIFIED
+        = "ShapeSimplifierTest.error.not.simplified";
+
+    public static final String ERROR_SMALL_SUBPATH
+        = "ShapeSimplifierTest.error.small.subpath";
+
+    public static final String ERROR_IMPLICIT_MOVETO
+        = "ShapeSimplifierTest.error.implicit.moveto";
+
+    public static final String ENTRY_KEY_TOLERANCE
+        = "ShapeSimplifierTest.entry.key.tolerance";
+
+    public static final String ENTRY_KEY_DISTANCE
+        = "ShapeSimplifierTest.entry.key.distance";
+
+    static final double[] TOLERANCES = { 0.1, 0.5, 2, 10 };
+
+    public TestReport runImpl() throws Exception {
+        // A coastline like ring made of many small curves, and an
+        // open polyline.
+        Random rand = new Random(42);
+        GeneralPath gp = new GeneralPath();
+        int n = 2000;
+        for (int i = 0; i < n; i++) {
+            double a = 2 * Math.PI * i / n;
+            double r = 100 + 10 * rand.nextGaussian();
+            float x = (float)(200 + r * Math.cos(a));
+            float y = (float)(200 + r * Math.sin(a));
+            if (i == 0) {
+                gp.moveTo(x, y);
+            } else if (i % 3 == 0) {
+                gp.quadTo(x + 2, y - 2, x, y);
+            } else {
+                gp.lineTo(x, y);
+            }
+        }
+        gp.closePath();
+        gp.moveTo(400, 400);
+        for (int i = 0; i < 500; i++) {
+            gp.lineTo(400 + i, (float)(400 + 5 * Math.sin(i / 3.0)));
+        }
+
+        for (int t = 0; t < TOLERANCES.length; t++) {
+            double tol = TOLERANCES[t];
+            Shape s = ShapeSimplifier.simplify(gp, tol);
+            double d = maxDistance(gp, s, tol / 2);
+            if (d > tol) {
+                TestReport report = reportError(ERROR_TOLERANCE_EXCEEDED);
+                report.addDescriptionEntry(ENTRY_KEY_TOLERANCE,
+                                           Double.toString(tol));
+                report.addDescriptionEntry(ENTRY_KEY_DISTANCE,
+                                           Double.toString(d));
+                return report;
+            }
+            if (ShapeSimplifier.countSegments(s, tol) >=
+                ShapeSimplifier.countSegments(gp, tol / 2)) {
+                TestReport report = reportError(ERROR_NOT_SIMPLIFIED);
+                report.addDescriptionEntry(ENTRY_KEY_TOLERANCE,
+                                           Double.toString(tol));
+                return report;
+            }
+        }
+
+        // A subpath smaller than the tolerance is dropped, unless the
+        // minimum size is zero.
+        GeneralPath small = new GeneralPath();
+        small.moveTo(0, 0);
+        small.lineTo(10, 0);
+        small.lineTo(10, 10);
+        small.closePath();
+        small.moveTo(20, 20);
+        small.lineTo(20.2f, 20);
+        small.lineTo(20.2f, 20.2f);
+        small.closePath();
+        if (countSubpaths(ShapeSimplifier.simplify(small, 0.5)) != 1 ||
+            countSubpaths(ShapeSimplifier.simplify(small, 0.5, 0)) != 2) {
+            return reportError(ERROR_SMALL_SUBPATH);
+        }
+
+        // The second triangle has no move of its own: its first edge
+        // starts from (0, 0), where the first subpath started.
+        GeneralPath implicit = new GeneralPath();
+        implicit.moveTo(0, 0);
+        implicit.lineTo(100, 0);
+        implicit.lineTo(100, 100);
+        implicit.closePath();
+        implicit.lineTo(0, 100);
+        implicit.lineTo(-100, 100);
+        implicit.closePath();
+        for (int t = 0; t < TOLERANCES.length; t++) {
+            Shape s = ShapeSimplifier.simplify(implicit, TOLERANCES[t]);
+            if (!s.contains(70, 30) || !s.contains(-30, 70) ||
+                countSubpaths(s) != 2) {
+                TestReport report = reportError(ERROR_IMPLICIT_MOVETO);
+                report.addDescriptionEntry(ENTRY_KEY_TOLERANCE,
+                                           Double.toString(TOLERANCES[t]));
+                return report;
+            }
+        }
+
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the largest distance from a point of <code>a</code>
+     * flattened to within <code>flatness</code> to the outline of
+     * <code>b</code>.
+     */
+    protected static double maxDistance(Shape a, Shape b, double flatness) {
+        List segs = new ArrayList();
+        double[] c = new double[6];
+        double mx = 0, my = 0, lx = 0, ly = 0;
+        for (PathIterator pi = b.getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(c)) {
+            case PathIterator.SEG_MOVETO:
+                mx = lx = c[0];
+                my = ly = c[1];
+                break;
+            case PathIterator.SEG_LINETO:
+                segs.add(new Line2D.Double(lx, ly, c[0], c[1]));
+                lx = c[0];
+                ly = c[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                segs.add(new Line2D.Double(lx, ly, mx, my));
+                lx = mx;
+                ly = my;
+                break;
+            }
+        }
+        double max = 0;
+        for (PathIterator pi = a.getPathIterator(null, flatness);
+             !pi.isDone(); pi.next()) {
+            if (pi.currentSegment(c) == PathIterator.SEG_CLOSE) {
+                continue;
+            }
+            double min = Double.MAX_VALUE;
+            for (int i = 0; i < segs.size(); i++) {
+                Line2D l = (Line2D)segs.get(i);
+                min = Math.min(min, l.ptSegDist(c[0], c[1]));
+            }
+            max = Math.max(max, min);
+        }
+        return max;
+    }
+
+    protected static int countSubpaths(Shape s) {
+        int n = 0;
+        double[] c = new double[6];
+        for (PathIterator pi = s.getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            if (pi.currentSegment(c) == PathIterator.SEG_MOVETO) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.renderable;
+
+import java.awt.Color;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+
+import org.apache.batik.ext.awt.image.ConcreteComponentTransferFunction;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Counts the colorspace conversions in the rendering of a filter
+ * chain, and those avoided, checks that colorspace independent
+ * operations keep the colorspace of their source, and that
+ * <code>GraphicsUtil</code> cancels a conversion followed by its
+ * inverse.
+ *
+ * @version $Id$
+ */
+public class ColorSpaceConversionTest extends AbstractTest {
+
+    public static final String ERROR_BAD_COUNT
+        = "ColorSpaceConversionTest.error.bad.count";
+
+    public static final String ERROR_BAD_COLORSPACE
+        = "ColorSpaceConversionTest.error.bad.colorspace";
+
+    public static final String ERROR_NOT_CANCELLED
+        = "ColorSpaceConversionTest.error.not.cancelled";
+
+    public static final String ENTRY_KEY_CONVERSIONS
+        = "ColorSpaceConversionTest.entry.key.conversions";
+
+    static final ColorSpace SRGB
+        = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+
+    static final ColorSpace LINEAR_RGB
+        = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
+
+    public TestReport runImpl() throws Exception {
+        Rectangle2D r = new Rectangle2D.Double(0, 0, 20, 20);
+        RenderContext rc = new RenderContext(new AffineTransform(), r);
+        Filter flood = new FloodRable8Bit(r, new Color(0x80, 0x40, 0xc0));
+
+        // Tile and an alpha only transfer, both in linearRGB, followed
+        // by a color matrix in sRGB: the sRGB flood needs no
+        // conversion at all.
+        TileRable8Bit tile = new TileRable8Bit(flood, r, r, false);
+        ComponentTransferRable8Bit ct = new ComponentTransferRable8Bit
+            (tile,
+             ConcreteComponentTransferFunction.getLinearTransfer(0.5f, 0),
+             null, null, null);
+        ColorMatrixRable8Bit cm = (ColorMatrixRable8Bit)
+            ColorMatrixRable8Bit.buildSaturate(0.5f);
+        cm.setSource(ct);
+        cm.setColorSpaceLinear(false);
+
+        GraphicsUtil.resetElidedConversionCount();
+        int n = GraphicsUtil.getConversionCount(cm.createRendering(rc));
+        if (n != 0) {
+            return reportCount(n);
+        }
+        // The tile and the transfer each keep the sRGB flood.
+        if (GraphicsUtil.getElidedConversionCount() != 2) {
+            return reportCount(GraphicsUtil.getElidedConversionCount());
+        }
+        RenderedImage ri = ct.createRendering(rc);
+        if (ri.getColorModel().getColorSpace() != SRGB) {
+            return reportError(ERROR_BAD_COLORSPACE);
+        }
+
+        // A color changing transfer converts the flood to linearRGB,
+        // and the color matrix converts its result back to sRGB.
+        ct.setRedFunction
+            (ConcreteComponentTransferFunction.getLinearTransfer(0.5f, 0));
+        n = GraphicsUtil.getConversionCount(cm.createRendering(rc));
+        if (n != 2) {
+            return reportCount(n);
+        }
+        ri = ct.createRendering(rc);
+        if (ri.getColorModel().getColorSpace() != LINEAR_RGB) {
+            return reportError(ERROR_BAD_COLORSPACE);
+        }
+
+        // Converting back to linear sRGB returns the original image.
+        CachableRed lin = GraphicsUtil.wrap(ri);
+        CachableRed s = GraphicsUtil.convertTosRGB(lin);
+        GraphicsUtil.resetElidedConversionCount();
+        if (s == lin || GraphicsUtil.convertToLsRGB(s) != lin ||
+            GraphicsUtil.getElidedConversionCount() != 2) {
+            return reportError(ERROR_NOT_CANCELLED);
+        }
+
+        return reportSuccess();
+    }
+
+    protected TestReport reportCount(long n) {
+        TestReport report = reportError(ERROR_BAD_COUNT);
+        report.addDescriptionEntry(ENTRY_KEY_CONVERSIONS, "" + n);
+        return report;
+    }
+}
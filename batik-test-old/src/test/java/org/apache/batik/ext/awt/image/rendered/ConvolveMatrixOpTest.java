@@ -0,0 +1,357 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.RenderContext;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.DistantLight;
+import org.apache.batik.ext.awt.image.Light;
+import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.ext.awt.image.PointLight;
+import org.apache.batik.ext.awt.image.SpotLight;
+import org.apache.batik.ext.awt.image.renderable.ConvolveMatrixRable8Bit;
+import org.apache.batik.ext.awt.image.renderable.PadRable8Bit;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks <code>ConvolveMatrixOp</code> against a direct evaluation of
+ * the feConvolveMatrix definition for every edge mode, that a
+ * <code>ConvolveMatrixRable8Bit</code> rendering depends neither on
+ * the number of threads nor, when wrapping, on the area of interest,
+ * and that lighting split in bands over the <code>WorkerPool</code>
+ * gives the same pixels as lighting on a single thread.
+ *
+ * @version $Id$
+ */
+public class ConvolveMatrixOpTest extends AbstractTest {
+
+    public static final String ERROR_CONVOLUTION_DIFFERS
+        = "ConvolveMatrixOpTest.error.convolution.differs";
+
+    public static final String ERROR_LIGHTING_DIFFERS
+        = "ConvolveMatrixOpTest.error.lighting.differs";
+
+    public static final String ERROR_RENDERING_DIFFERS
+        = "ConvolveMatrixOpTest.error.rendering.differs";
+
+    public static final String ENTRY_KEY_CASE
+        = "ConvolveMatrixOpTest.entry.key.case";
+
+    static final PadMode[] EDGE_MODES = { PadMode.ZERO_PAD,
+                                          PadMode.REPLICATE,
+                                          PadMode.WRAP };
+
+    public TestReport runImpl() throws Exception {
+        Random rnd = new Random(0xc0);
+        int[][] sizes = { { 3, 3 }, { 1, 7 }, { 17, 11 }, { 150, 90 } };
+        for (int s = 0; s < sizes.length; s++) {
+            for (int k = 0; k < 6; k++) {
+                int kw = (k % 3) * 2 + 1;
+                int kh = ((k + 1) % 3) * 2 + 1;
+                for (int e = 0; e < EDGE_MODES.length; e++) {
+                    for (int pa = 0; pa < 2; pa++) {
+                        String c = sizes[s][0] + "x" + sizes[s][1]
+                            + " kernel " + kw + "x" + kh
+                            + " edge " + EDGE_MODES[e].getMode()
+                            + (pa == 1 ? " preserveAlpha" : "");
+                        if (!checkConvolution(rnd, sizes[s][0], sizes[s][1],
+                                              kw, kh, EDGE_MODES[e],
+                                              pa == 1)) {
+                            TestReport report
+                                = reportError(ERROR_CONVOLUTION_DIFFERS);
+                            report.addDescriptionEntry(ENTRY_KEY_CASE, c);
+                            return report;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int e = 0; e < EDGE_MODES.length; e++) {
+            for (int linear = 0; linear < 2; linear++) {
+                String c = checkRendering(rnd, EDGE_MODES[e], linear == 1);
+                if (c != null) {
+                    TestReport report = reportError(ERROR_RENDERING_DIFFERS);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_CASE,
+                         "edge " + EDGE_MODES[e].getMode()
+                         + (linear == 1 ? " linear " : " sRGB ") + c);
+                    return report;
+                }
+            }
+        }
+
+        Light[] lights = {
+            new DistantLight(30, 40, Color.white),
+            new PointLight(50, 40, 30, new Color(0xffc080)),
+            new SpotLight(50, 40, 60, 100, 120, 0, 2, 30, Color.white)
+        };
+        for (int i = 0; i < lights.length; i++) {
+            if (!checkLighting(lights[i])) {
+                TestReport report = reportError(ERROR_LIGHTING_DIFFERS);
+                report.addDescriptionEntry
+                    (ENTRY_KEY_CASE, lights[i].getClass().getName());
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Convolves a random image with a random kernel (with negative
+     * weights) into a destination one pixel larger than the source on
+     * every side, and compares the result with {@link #convolve}.
+     */
+    protected boolean checkConvolution(Random rnd, int w, int h,
+                                       int kw, int kh, PadMode edgeMode,
+                                       boolean preserveAlpha) {
+        float[] data = new float[kw*kh];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = rnd.nextFloat() - 0.3f;
+        }
+        Kernel kernel = new Kernel(kw, kh, data);
+        int tx = rnd.nextInt(kw);
+        int ty = rnd.nextInt(kh);
+
+        BufferedImage src = new BufferedImage
+            (w, h, preserveAlpha ? BufferedImage.TYPE_INT_ARGB
+                                 : BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] sp = getPixels(src.getRaster());
+        for (int i = 0; i < sp.length; i++) {
+            int a = rnd.nextInt(256);
+            int m = preserveAlpha ? 255 : a;
+            sp[i] = (a << 24) | (rnd.nextInt(m + 1) << 16)
+                | (rnd.nextInt(m + 1) << 8) | rnd.nextInt(m + 1);
+        }
+
+        Rectangle dr = new Rectangle(-1, -1, w + 2, h + 2);
+        WritableRaster dst = src.getColorModel().createCompatibleWritableRaster
+            (dr.width, dr.height);
+        ConvolveMatrixOp op = new ConvolveMatrixOp
+            (kernel, tx, ty, edgeMode, preserveAlpha);
+        op.filter(src.getRaster(),
+                  dst.createWritableTranslatedChild(dr.x, dr.y));
+
+        int[] dp = getPixels(dst);
+        for (int y = 0; y < dr.height; y++) {
+            for (int x = 0; x < dr.width; x++) {
+                int exp = convolve(sp, w, h, data, kw, kh, tx, ty, edgeMode,
+                                   preserveAlpha, x + dr.x, y + dr.y);
+                int act = dp[y*dr.width + x];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int d = ((exp >>> shift) & 0xff) - ((act >>> shift) & 0xff);
+                    if (d < -1 || d > 1) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the feConvolveMatrix formula for the pixel (x, y).
+     */
+    protected static int convolve(int[] sp, int w, int h, float[] kernel,
+                                  int kw, int kh, int tx, int ty,
+                                  PadMode edgeMode, boolean preserveAlpha,
+                                  int x, int y) {
+        double[] sum = new double[4];
+        for (int j = 0; j < kh; j++) {
+            for (int i = 0; i < kw; i++) {
+                int px = pixel(sp, w, h, edgeMode,
+                               x - tx + i, y - ty + j);
+                double k = kernel[(kh - 1 - j)*kw + (kw - 1 - i)];
+                for (int c = 0; c < 4; c++) {
+                    sum[c] += k * ((px >>> (8*c)) & 0xff);
+                }
+            }
+        }
+        int[] v = new int[4];
+        for (int c = 0; c < 4; c++) {
+            v[c] = (int)Math.max(0, Math.min(255, Math.round(sum[c])));
+        }
+        if (preserveAlpha) {
+            v[3] = (x >= 0 && y >= 0 && x < w && y < h)
+                ? (sp[y*w + x] >>> 24) : 0;
+        } else {
+            for (int c = 0; c < 3; c++) {
+                v[c] = Math.min(v[c], v[3]);
+            }
+        }
+        return (v[3] << 24) | (v[2] << 16) | (v[1] << 8) | v[0];
+    }
+
+    protected static int pixel(int[] sp, int w, int h, PadMode edgeMode,
+                               int x, int y) {
+        if (edgeMode == PadMode.REPLICATE) {
+            x = Math.max(0, Math.min(w - 1, x));
+            y = Math.max(0, Math.min(h - 1, y));
+        } else if (edgeMode == PadMode.WRAP) {
+            x = ((x % w) + w) % w;
+            y = ((y % h) + h) % h;
+        } else if (x < 0 || y < 0 || x >= w || y >= h) {
+            return 0;
+        }
+        return sp[y*w + x];
+    }
+
+    /**
+     * Renders a convolution of a random image on one thread and on the
+     * WorkerPool, and for areas of interest inside and at the corners
+     * of the image.  Returns a description of the first rendering that
+     * differs from the one of the whole image on as many threads, or
+     * null.  In sRGB, one thread goes through ConvolveOp unless
+     * wrapping.
+     */
+    protected String checkRendering(Random rnd, PadMode edgeMode,
+                                    boolean linear) {
+        int w = 60;
+        int h = 40;
+        BufferedImage src = new BufferedImage
+            (w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] sp = getPixels(src.getRaster());
+        for (int i = 0; i < sp.length; i++) {
+            int a = rnd.nextInt(256);
+            sp[i] = (a << 24) | (rnd.nextInt(a + 1) << 16)
+                | (rnd.nextInt(a + 1) << 8) | rnd.nextInt(a + 1);
+        }
+        // As in a filter chain, the source is padded to its region,
+        // and rendered only over the area of interest.
+        Rectangle all = new Rectangle(0, 0, w, h);
+        ConvolveMatrixRable8Bit cm = new ConvolveMatrixRable8Bit
+            (new PadRable8Bit(new RedRable(new BufferedImageCachableRed(src)),
+                              all, PadMode.ZERO_PAD));
+        cm.setKernel(new Kernel(3, 3, new float[] { 0.1f, 0.2f, 0.1f,
+                                                    0.1f, 0.3f, -0.1f,
+                                                    0.2f, 0.1f, 0.1f }));
+        cm.setTarget(new Point(1, 2));
+        cm.setEdgeMode(edgeMode);
+        cm.setColorSpaceLinear(linear);
+
+        Rectangle[] aois = { all,
+                             new Rectangle(0, 0, 20, 15),
+                             new Rectangle(45, 30, 15, 10),
+                             new Rectangle(25, 10, 20, 20) };
+        int parallelism = WorkerPool.getParallelism();
+        try {
+            for (int p = 1; p <= 4; p += 3) {
+                WorkerPool.setParallelism(p);
+                int[] expected = render(cm, all);
+                for (int i = 0; i < aois.length; i++) {
+                    Rectangle r = aois[i];
+                    int[] exp = (r == all) ? expected
+                        : new int[r.width*r.height];
+                    if (r != all) {
+                        for (int y = 0; y < r.height; y++) {
+                            System.arraycopy(expected, (r.y + y)*w + r.x,
+                                             exp, y*r.width, r.width);
+                        }
+                    }
+                    if (!Arrays.equals(exp, render(cm, r))) {
+                        return "area " + r + " threads " + p;
+                    }
+                }
+            }
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        return null;
+    }
+
+    /**
+     * Renders <code>f</code> for the area of interest <code>r</code>
+     * and returns its sRGB pixels.
+     */
+    static int[] render(ConvolveMatrixRable8Bit f, Rectangle r) {
+        RenderedImage ri = f.createRendering
+            (new RenderContext(new AffineTransform(), r));
+        Raster data = ri.getData(r);
+        int[] pixels = new int[r.width*r.height];
+        for (int y = 0; y < r.height; y++) {
+            for (int x = 0; x < r.width; x++) {
+                pixels[y*r.width + x]
+                    = ri.getColorModel().getRGB
+                    (data.getDataElements(r.x + x, r.y + y, null));
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Lights a bumpy texture with diffuse and specular lighting, on
+     * one thread and on the WorkerPool.
+     */
+    protected boolean checkLighting(Light light) {
+        int size = 300;
+        BufferedImage tex = new BufferedImage
+            (size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] tp = getPixels(tex.getRaster());
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = (int)(127.5 + 127.5 * Math.sin(x / 7.0)
+                              * Math.cos(y / 11.0));
+                tp[y*size + x] = a << 24;
+            }
+        }
+        Rectangle r = new Rectangle(0, 0, size, size);
+
+        int parallelism = WorkerPool.getParallelism();
+        int[][] res = new int[2][];
+        int[][] spec = new int[2][];
+        try {
+            for (int i = 0; i < 2; i++) {
+                WorkerPool.setParallelism(i == 0 ? 1 : 4);
+                BumpMap bm = new BumpMap(tex, 3, 1, 1);
+                DiffuseLightingRed dl = new DiffuseLightingRed
+                    (1, light, bm, r, 1, 1, true);
+                res[i] = getPixels(dl.copyData(dl.getColorModel()
+                    .createCompatibleWritableRaster(size, size)));
+                SpecularLightingRed sl = new SpecularLightingRed
+                    (1, 20, light, bm, r, 1, 1, true);
+                WritableRaster wr = sl.getColorModel()
+                    .createCompatibleWritableRaster(size, size);
+                sl.genRect(wr);
+                spec[i] = getPixels(wr);
+            }
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        return Arrays.equals(res[0], res[1]) && Arrays.equals(spec[0], spec[1]);
+    }
+
+    static int[] getPixels(Raster r) {
+        return ((DataBufferInt)r.getDataBuffer()).getData();
+    }
+}
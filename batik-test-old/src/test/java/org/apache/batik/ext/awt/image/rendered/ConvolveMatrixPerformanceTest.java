@@ -0,0 +1,86 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares <code>ConvolveMatrixOp</code> (the operation) with
+ * <code>java.awt.image.ConvolveOp</code> on a source padded beforehand
+ * (the reference), for a 1024x1024 image and a square kernel whose
+ * size is given as the test argument.  The padding is not included in
+ * the reference time.
+ *
+ * @version $Id$
+ */
+public class ConvolveMatrixPerformanceTest extends PerformanceTest {
+
+    static final int SIZE = 1024;
+
+    protected BufferedImage src;
+
+    protected BufferedImage padded;
+
+    protected WritableRaster dst;
+
+    protected ConvolveOp ref;
+
+    protected ConvolveMatrixOp op;
+
+    public ConvolveMatrixPerformanceTest(Integer kernelSize) {
+        int k = kernelSize.intValue();
+        float[] data = new float[k*k];
+        Random rnd = new Random(0);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = rnd.nextFloat() - 0.2f;
+        }
+        Kernel kernel = new Kernel(k, k, data);
+        ref = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null);
+        op = new ConvolveMatrixOp(kernel, k / 2, k / 2, PadMode.REPLICATE,
+                                  false);
+
+        src = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = MorphologyOpTest.getPixels(src.getRaster());
+        for (int i = 0; i < pixels.length; i++) {
+            int a = rnd.nextInt(256);
+            pixels[i] = (a << 24) | (rnd.nextInt(a + 1) << 16)
+                | (rnd.nextInt(a + 1) << 8) | rnd.nextInt(a + 1);
+        }
+        int p = k / 2;
+        padded = new BufferedImage(SIZE + 2*p, SIZE + 2*p,
+                                   BufferedImage.TYPE_INT_ARGB_PRE);
+        padded.createGraphics().drawImage(src, p, p, null);
+        dst = src.getColorModel().createCompatibleWritableRaster(SIZE, SIZE);
+    }
+
+    protected void runRef() {
+        ref.filter(padded, null);
+    }
+
+    protected void runOp() {
+        op.filter(src.getRaster(), dst);
+    }
+}
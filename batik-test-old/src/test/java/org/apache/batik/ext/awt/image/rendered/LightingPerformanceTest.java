@@ -0,0 +1,82 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.ext.awt.image.PointLight;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Compares diffuse and specular lighting of a 2048x2048 texture split
+ * in bands over the <code>WorkerPool</code> (the operation) with the
+ * same lighting on a single thread (the reference).
+ *
+ * @version $Id$
+ */
+public class LightingPerformanceTest extends PerformanceTest {
+
+    static final int SIZE = 2048;
+
+    protected DiffuseLightingRed diffuse;
+
+    protected SpecularLightingRed specular;
+
+    protected WritableRaster dst;
+
+    public LightingPerformanceTest() {
+        BufferedImage tex = new BufferedImage
+            (SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] tp = MorphologyOpTest.getPixels(tex.getRaster());
+        for (int y = 0, i = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++, i++) {
+                int a = (int)(127.5 + 127.5 * Math.sin(x / 13.0)
+                              * Math.cos(y / 17.0));
+                tp[i] = a << 24;
+            }
+        }
+        Rectangle r = new Rectangle(0, 0, SIZE, SIZE);
+        BumpMap bm = new BumpMap(tex, 3, 1, 1);
+        PointLight light = new PointLight(SIZE / 2, SIZE / 3, 200,
+                                          Color.white);
+        diffuse = new DiffuseLightingRed(1, light, bm, r, 1, 1, true);
+        specular = new SpecularLightingRed(1, 20, light, bm, r, 1, 1, true);
+        dst = diffuse.getColorModel().createCompatibleWritableRaster
+            (SIZE, SIZE);
+    }
+
+    protected void runRef() {
+        int parallelism = WorkerPool.getParallelism();
+        WorkerPool.setParallelism(1);
+        try {
+            runOp();
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+    }
+
+    protected void runOp() {
+        diffuse.copyData(dst);
+        specular.genRect(dst);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the van Herk/Gil-Werman implementation of
+ * <code>MorphologyOp</code> gives the same result as the incremental
+ * one, for dilation and erosion, for images smaller and larger than the
+ * kernel, and when filtering in place.
+ *
+ * @version $Id$
+ */
+public class MorphologyOpTest extends AbstractTest {
+
+    /**
+     * Error when the two implementations differ.
+     * {0} = image size, {1} = radii, {2} = operation
+     */
+    public static final String ERROR_RESULTS_DIFFER
+        = "MorphologyOpTest.error.results.differ";
+
+    public static final String ENTRY_KEY_ERROR_DESCRIPTION
+        = "MorphologyOpTest.entry.key.error.description";
+
+    static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 7, 1 }, { 5, 5 },
+                                   { 13, 9 }, { 40, 33 }, { 257, 129 },
+                                   { 300, 200 } };
+
+    static final int[] RADII = { 1, 2, 3, 6, 20, 50 };
+
+    public TestReport runImpl() throws Exception {
+        Random rnd = new Random(0x5eed);
+        for (int s = 0; s < SIZES.length; s++) {
+            int w = SIZES[s][0];
+            int h = SIZES[s][1];
+            for (int i = 0; i < RADII.length; i++) {
+                for (int j = 0; j < RADII.length; j++) {
+                    for (int d = 0; d < 2; d++) {
+                        boolean dilate = (d == 0);
+                        BufferedImage src = createImage(w, h, rnd);
+                        if (!check(src, RADII[i], RADII[j], dilate)) {
+                            TestReport report
+                                = reportError(ERROR_RESULTS_DIFFER);
+                            report.addDescriptionEntry
+                                (Messages.formatMessage
+                                 (ENTRY_KEY_ERROR_DESCRIPTION, null),
+                                 Messages.formatMessage
+                                 (ERROR_RESULTS_DIFFER,
+                                  new String[] { w + "x" + h,
+                                                 RADII[i] + "," + RADII[j],
+                                                 dilate ? "dilate"
+                                                        : "erode" }));
+                            return report;
+                        }
+                    }
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    static BufferedImage createImage(int w, int h, Random rnd) {
+        BufferedImage bi
+            = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = getPixels(bi.getRaster());
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = rnd.nextInt();
+        }
+        return bi;
+    }
+
+    static int[] getPixels(WritableRaster wr) {
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+
+    static boolean check(BufferedImage src, int rx, int ry, boolean dilate) {
+        MorphologyOp ref = new MorphologyOp(rx, ry, dilate);
+        ref.setSeparable(false);
+        MorphologyOp op = new MorphologyOp(rx, ry, dilate);
+
+        int[] expected = getPixels(ref.filter(src.getRaster(), null));
+        if (!Arrays.equals(expected, getPixels(op.filter(src.getRaster(),
+                                                         null)))) {
+            return false;
+        }
+
+        WritableRaster inPlace = src.getRaster().createCompatibleWritableRaster();
+        inPlace.setRect(src.getRaster());
+        op.filter(inPlace, inPlace);
+        return Arrays.equals(expected, getPixels(inPlace));
+    }
+}
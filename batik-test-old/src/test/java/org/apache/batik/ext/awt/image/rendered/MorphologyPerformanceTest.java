@@ -0,0 +1,69 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares the van Herk/Gil-Werman implementation of
+ * <code>MorphologyOp</code> (the operation) with the incremental one
+ * (the reference) on a 1024x1024 image whose pixels decrease along
+ * both axes, which is the worst case for the incremental
+ * implementation.  The radius is given as the test argument.
+ *
+ * @version $Id$
+ */
+public class MorphologyPerformanceTest extends PerformanceTest {
+
+    protected BufferedImage src;
+
+    protected MorphologyOp ref;
+
+    protected MorphologyOp op;
+
+    public MorphologyPerformanceTest(Integer radius) {
+        int r = radius.intValue();
+        ref = new MorphologyOp(r, r, true);
+        ref.setSeparable(false);
+        op = new MorphologyOp(r, r, true);
+
+        int size = 1024;
+        src = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = MorphologyOpTest.getPixels(src.getRaster());
+        Random rnd = new Random(0);
+        for (int y = 0, i = 0; y < size; y++) {
+            for (int x = 0; x < size; x++, i++) {
+                int v = 255 - ((x + y) >> 3) + rnd.nextInt(2);
+                v = Math.max(0, Math.min(255, v));
+                pixels[i] = (v << 24) | (v << 16) | (v << 8) | v;
+            }
+        }
+    }
+
+    protected void runRef() {
+        ref.filter(src.getRaster(), null);
+    }
+
+    protected void runOp() {
+        op.filter(src.getRaster(), null);
+    }
+}
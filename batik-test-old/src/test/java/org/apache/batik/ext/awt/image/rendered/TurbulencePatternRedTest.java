@@ -0,0 +1,143 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WeightedLRUCache;
+
+/**
+ * Checks that the single precision fast path of
+ * <code>TurbulencePatternRed</code> stays within one code value per
+ * channel of the double precision reference, and that the noise cache,
+ * once enabled, returns the pixels it was given.
+ *
+ * @version $Id$
+ */
+public class TurbulencePatternRedTest extends AbstractTest {
+
+    public static final String ERROR_TOLERANCE_EXCEEDED
+        = "TurbulencePatternRedTest.error.tolerance.exceeded";
+
+    public static final String ERROR_CACHED_NOISE_DIFFERS
+        = "TurbulencePatternRedTest.error.cached.noise.differs";
+
+    public static final String ENTRY_KEY_CASE
+        = "TurbulencePatternRedTest.entry.key.case";
+
+    static final double[] FREQUENCIES = { 0.001, 0.01, 0.05, 0.3 };
+
+    static final AffineTransform[] TRANSFORMS = {
+        new AffineTransform(),
+        AffineTransform.getScaleInstance(0.5, 0.5),
+        new AffineTransform(2, 0, 0, 3, -5000, 12345),
+        AffineTransform.getTranslateInstance(100000, -70000)
+    };
+
+    public TestReport runImpl() throws Exception {
+        WeightedLRUCache noiseCache = TurbulencePatternRed.getNoiseCache();
+        long maxWeight = noiseCache.getMaxWeight();
+        noiseCache.setMaxWeight(1 << 20);
+        try {
+            return check();
+        } finally {
+            noiseCache.setMaxWeight(maxWeight);
+            noiseCache.clear();
+        }
+    }
+
+    TestReport check() {
+        Rectangle r = new Rectangle(-37, 55, 120, 90);
+        for (int f = 0; f < FREQUENCIES.length; f++) {
+            for (int t = 0; t < TRANSFORMS.length; t++) {
+                for (int octaves = 1; octaves <= 8; octaves += 3) {
+                    for (int fractal = 0; fractal < 2; fractal++) {
+                        TurbulencePatternRed ref = create
+                            (FREQUENCIES[f], octaves, fractal == 0,
+                             TRANSFORMS[t], r);
+                        ref.setFloatPrecision(false);
+                        ref.setUseNoiseCache(false);
+                        TurbulencePatternRed fast = create
+                            (FREQUENCIES[f], octaves, fractal == 0,
+                             TRANSFORMS[t], r);
+                        fast.setUseNoiseCache(false);
+
+                        int[] expected = generate(ref, r);
+                        int[] actual = generate(fast, r);
+                        if (maxDifference(expected, actual) > 1) {
+                            TestReport report
+                                = reportError(ERROR_TOLERANCE_EXCEEDED);
+                            report.addDescriptionEntry
+                                (ENTRY_KEY_CASE,
+                                 "baseFrequency " + FREQUENCIES[f]
+                                 + " numOctaves " + octaves
+                                 + " transform " + TRANSFORMS[t]);
+                            return report;
+                        }
+
+                        TurbulencePatternRed cached = create
+                            (FREQUENCIES[f], octaves, fractal == 0,
+                             TRANSFORMS[t], r);
+                        generate(cached, r);
+                        long hits = TurbulencePatternRed.getNoiseCache()
+                            .getHitCount();
+                        if (maxDifference(actual, generate(cached, r)) != 0
+                            || TurbulencePatternRed.getNoiseCache()
+                                   .getHitCount() == hits) {
+                            return reportError(ERROR_CACHED_NOISE_DIFFERS);
+                        }
+                    }
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    static TurbulencePatternRed create(double baseFrequency, int octaves,
+                                       boolean fractal, AffineTransform txf,
+                                       Rectangle r) {
+        return new TurbulencePatternRed
+            (baseFrequency, baseFrequency*1.3, octaves, 7, fractal, null,
+             txf, r, ColorSpace.getInstance(ColorSpace.CS_sRGB), true);
+    }
+
+    static int[] generate(TurbulencePatternRed red, Rectangle r) {
+        WritableRaster wr = red.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height).createWritableTranslatedChild(r.x, r.y);
+        red.copyData(wr);
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+
+    static int maxDifference(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int s = 0; s < 32; s += 8) {
+                int d = Math.abs(((a[i] >>> s) & 0xff) - ((b[i] >>> s) & 0xff));
+                if (d > max) max = d;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FloodRable8Bit;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the dirty areas of <code>UpdateTracker</code> match those
+ * of the original implementation, which walked the ancestors of every
+ * dirty node, for trees with transformed and filtered ancestors,
+ * nodes moved between groups and changed ancestor transforms, and
+ * that the cached ancestor transforms are the old and new transforms
+ * of each node to the root.
+ *
+ * @version $Id$
+ */
+public class UpdateTrackerTest extends AbstractTest {
+
+    public static final String ERROR_DIRTY_AREAS_DIFFER
+        = "UpdateTrackerTest.error.dirty.areas.differ";
+
+    public static final String ERROR_BAD_ANCESTOR
+        = "UpdateTrackerTest.error.bad.ancestor";
+
+    public static final String ENTRY_KEY_CASE
+        = "UpdateTrackerTest.entry.key.case";
+
+    public static final String ENTRY_KEY_NODE
+        = "UpdateTrackerTest.entry.key.node";
+
+    static final double EPSILON = 1e-6;
+
+    static final String[] CASES = {
+        "leaves", "ancestorTransforms", "changeSources", "all"
+    };
+
+    /**
+     * The nodes of the test tree, see <code>createTree</code>.
+     */
+    RootGraphicsNode root;
+    CompositeGraphicsNode g1, g2, g3, g4;
+    ShapeNode s1, s2, s3, s4, s5;
+
+    public TestReport runImpl() throws Exception {
+        for (int i = 0; i < CASES.length; i++) {
+            createTree();
+            GraphicsNode[] nodes = { g1, g2, g3, g4, s1, s2, s3, s4, s5 };
+            Map before = new HashMap();
+            for (int n = 0; n < nodes.length; n++) {
+                before.put(nodes[n], nodes[n].getTransform());
+            }
+
+            UpdateTracker tracker = new UpdateTracker();
+            UpdateTracker reference = new ReferenceUpdateTracker();
+            root.addTreeGraphicsNodeChangeListener(tracker);
+            root.addTreeGraphicsNodeChangeListener(reference);
+            change(CASES[i]);
+
+            Map ancestors = new HashMap();
+            for (int n = 0; n < nodes.length; n++) {
+                if (nodes[n].getRoot() != root) {
+                    continue; // Removed from the tree.
+                }
+                // The old transforms of the nodes along their current
+                // chain of ancestors.
+                AffineTransform oat = new AffineTransform();
+                for (GraphicsNode gn = nodes[n]; gn != null;
+                     gn = gn.getParent()) {
+                    AffineTransform at = (AffineTransform)before.get(gn);
+                    if (at != null) {
+                        oat.preConcatenate(at);
+                    }
+                }
+                UpdateTracker.Ancestor a
+                    = tracker.getAncestor(nodes[n], ancestors);
+                Filter f = getTopmostFilter(nodes[n]);
+                if (!equals(a.oldTransform, oat) ||
+                    !equals(a.newTransform, nodes[n].getGlobalTransform()) ||
+                    (f == null ? a.filtered != null
+                     : a.filtered == null ||
+                       !f.getBounds2D().equals(a.filtered.filterBounds))) {
+                    TestReport report = reportError(ERROR_BAD_ANCESTOR);
+                    report.addDescriptionEntry(ENTRY_KEY_CASE, CASES[i]);
+                    report.addDescriptionEntry(ENTRY_KEY_NODE,
+                                               Integer.toString(n));
+                    return report;
+                }
+            }
+
+            List expected = reference.getDirtyAreas();
+            List actual = tracker.getDirtyAreas();
+            boolean same = expected.size() == actual.size();
+            for (int n = 0; same && n < expected.size(); n++) {
+                same = equals((Shape)expected.get(n), (Shape)actual.get(n));
+            }
+            if (!same) {
+                TestReport report = reportError(ERROR_DIRTY_AREAS_DIFFER);
+                report.addDescriptionEntry(ENTRY_KEY_CASE, CASES[i]);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Builds the tree
+     * <pre>
+     * root
+     *   g1 (translated and scaled)
+     *     g2 (rotated, filtered)
+     *       g3 (translated, filtered)
+     *         s1
+     *       s2 (scaled)
+     *     s3 (rotated)
+     *     g4 (sheared)
+     *       s4
+     *   s5
+     * </pre>
+     */
+    protected void createTree() {
+        root = new RootGraphicsNode();
+        g1 = createGroup(root, new AffineTransform(2, 0, 0, 2, 10, 20));
+        g2 = createGroup(g1, AffineTransform.getRotateInstance(0.3, 50, 50));
+        g2.setFilter(new FloodRable8Bit
+                     (new Rectangle2D.Double(0, 0, 120, 80), Color.red));
+        g3 = createGroup(g2, AffineTransform.getTranslateInstance(5, 5));
+        g3.setFilter(new FloodRable8Bit
+                     (new Rectangle2D.Double(-10, -10, 40, 40), Color.red));
+        s1 = createShape(g3, new Rectangle2D.Double(0, 0, 20, 10), null);
+        s2 = createShape(g2, new Rectangle2D.Double(30, 30, 10, 10),
+                         AffineTransform.getScaleInstance(1.5, 1.5));
+        s3 = createShape(g1, new Rectangle2D.Double(60, 0, 15, 25),
+                         AffineTransform.getRotateInstance(0.5));
+        g4 = createGroup(g1, AffineTransform.getShearInstance(0.2, 0));
+        s4 = createShape(g4, new Rectangle2D.Double(0, 60, 30, 10), null);
+        s5 = createShape(root, new Rectangle2D.Double(200, 200, 10, 10),
+                         null);
+    }
+
+    /**
+     * Applies the changes of the given case to the tree.
+     */
+    protected void change(String name) {
+        boolean all = name.equals("all");
+        if (all || name.equals("leaves")) {
+            s1.setShape(new Rectangle2D.Double(5, 5, 30, 5));
+            s4.setShape(new Rectangle2D.Double(10, 50, 20, 20));
+            s5.setVisible(false);
+        }
+        if (all || name.equals("ancestorTransforms")) {
+            g1.setTransform(AffineTransform.getTranslateInstance(-15, 30));
+            g2.setTransform(AffineTransform.getRotateInstance(-0.2));
+            g2.setTransform(AffineTransform.getScaleInstance(0.5, 0.75));
+            s2.setShape(new Rectangle2D.Double(0, 30, 10, 15));
+            s3.setTransform(AffineTransform.getShearInstance(0, 0.4));
+        }
+        if (all || name.equals("changeSources")) {
+            // Moves a node into a filtered group, and another one
+            // under the transformed groups.
+            g3.add(s4);
+            g4.add(s5);
+            g2.remove(s2);
+        }
+    }
+
+    static CompositeGraphicsNode createGroup(CompositeGraphicsNode parent,
+                                             AffineTransform at) {
+        CompositeGraphicsNode g = new CompositeGraphicsNode();
+        g.setTransform(at);
+        parent.add(g);
+        return g;
+    }
+
+    static ShapeNode createShape(CompositeGraphicsNode parent,
+                                 Rectangle2D r, AffineTransform at) {
+        ShapeNode s = new ShapeNode();
+        s.setShape(r);
+        FillShapePainter p = new FillShapePainter(r);
+        p.setPaint(Color.blue);
+        s.setShapePainter(p);
+        if (at != null) {
+            s.setTransform(at);
+        }
+        parent.add(s);
+        return s;
+    }
+
+    /**
+     * Returns the filter of the topmost filtered ancestor of gn, or null.
+     */
+    static Filter getTopmostFilter(GraphicsNode gn) {
+        Filter ret = null;
+        for (; gn != null; gn = gn.getParent()) {
+            if (gn.getFilter() != null) {
+                ret = gn.getFilter();
+            }
+        }
+        return ret;
+    }
+
+    static boolean equals(AffineTransform a, AffineTransform b) {
+        double[] ma = new double[6];
+        double[] mb = new double[6];
+        a.getMatrix(ma);
+        b.getMatrix(mb);
+        for (int i = 0; i < 6; i++) {
+            if (Math.abs(ma[i] - mb[i]) > EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean equals(Shape a, Shape b) {
+        PathIterator pa = a.getPathIterator(null);
+        PathIterator pb = b.getPathIterator(null);
+        double[] ca = new double[6];
+        double[] cb = new double[6];
+        for (; !pa.isDone() && !pb.isDone(); pa.next(), pb.next()) {
+            if (pa.currentSegment(ca) != pb.currentSegment(cb)) {
+                return false;
+            }
+            for (int i = 0; i < 6; i++) {
+                if (Math.abs(ca[i] - cb[i]) > EPSILON) {
+                    return false;
+                }
+            }
+        }
+        return pa.isDone() && pb.isDone();
+    }
+
+    /**
+     * An UpdateTracker computing the dirty areas the way it did before
+     * the ancestor transforms were cached.
+     */
+    protected static class ReferenceUpdateTracker extends UpdateTracker {
+
+        public List getDirtyAreas() {
+            if (dirtyNodes == null)
+                return null;
+
+            List ret = new LinkedList();
+            Set keys = dirtyNodes.keySet();
+            for (Object key : keys) {
+                WeakReference gnWRef = (WeakReference) key;
+                GraphicsNode gn = (GraphicsNode) gnWRef.get();
+                if (gn == null) continue;
+
+                AffineTransform oat;
+                oat = (AffineTransform) dirtyNodes.get(gnWRef);
+                if (oat != null) {
+                    oat = new AffineTransform(oat);
+                }
+
+                Rectangle2D srcORgn = (Rectangle2D) fromBounds.remove(gnWRef);
+
+                Rectangle2D srcNRgn = null;
+                AffineTransform nat = null;
+                if (!(srcORgn instanceof ChngSrcRect)) {
+                    srcNRgn = gn.getBounds();
+                    nat = gn.getTransform();
+                    if (nat != null)
+                        nat = new AffineTransform(nat);
+                }
+
+                do {
+                    gn = gn.getParent();
+                    if (gn == null)
+                        break;
+
+                    Filter f = gn.getFilter();
+                    if (f != null) {
+                        srcNRgn = f.getBounds2D();
+                        nat = null;
+                    }
+
+                    AffineTransform at = gn.getTransform();
+                    gnWRef = gn.getWeakReference();
+                    AffineTransform poat
+                        = (AffineTransform) dirtyNodes.get(gnWRef);
+                    if (poat == null) poat = at;
+                    if (poat != null) {
+                        if (oat != null)
+                            oat.preConcatenate(poat);
+                        else
+                            oat = new AffineTransform(poat);
+                    }
+
+                    if (at != null) {
+                        if (nat != null)
+                            nat.preConcatenate(at);
+                        else
+                            nat = new AffineTransform(at);
+                    }
+                } while (true);
+
+                Shape oRgn = srcORgn;
+                if ((oRgn != null) && (oRgn != NULL_RECT)) {
+                    if (oat != null)
+                        oRgn = oat.createTransformedShape(srcORgn);
+                    ret.add(oRgn);
+                }
+
+                if (srcNRgn != null) {
+                    Shape nRgn = srcNRgn;
+                    if (nat != null)
+                        nRgn = nat.createTransformedShape(srcNRgn);
+                    if (nRgn != null)
+                        ret.add(nRgn);
+                }
+            }
+
+            fromBounds.clear();
+            dirtyNodes.clear();
+            return ret;
+        }
+    }
+}
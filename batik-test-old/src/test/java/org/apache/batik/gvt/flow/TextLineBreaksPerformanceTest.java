@@ -0,0 +1,66 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.flow;
+
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares the break finding of <code>TextLineBreaks</code> on a char
+ * array snapshot of a large multilingual flow (the operation) with the
+ * iterator based finder it replaced (the reference).  Only the breaks
+ * are found: adding the word attributes to the string costs the same
+ * for both.
+ *
+ * @version $Id$
+ */
+public class TextLineBreaksPerformanceTest extends PerformanceTest {
+
+    protected AttributedCharacterIterator aci;
+
+    protected char[] text;
+
+    protected int[] lineEnds;
+
+    protected int[] wordEnds;
+
+    public TextLineBreaksPerformanceTest() {
+        List paraEnds = new ArrayList();
+        String s = TextLineBreaksTest.createCorpus(8000, paraEnds);
+        aci = TextLineBreaksTest.createFlow(s, paraEnds).getIterator();
+        text = s.toCharArray();
+        lineEnds = new int[paraEnds.size()];
+        for (int i = 0; i < lineEnds.length; i++) {
+            lineEnds[i] = ((Integer)paraEnds.get(i)).intValue();
+        }
+        wordEnds = new int[text.length + 1];
+    }
+
+    protected void runRef() {
+        aci.first();
+        TextLineBreaksTest.findLineBreaks(aci, wordEnds);
+    }
+
+    protected void runOp() {
+        TextLineBreaks.findLineBreaks(text, text.length, lineEnds, wordEnds);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.flow;
+
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the two stage class table of <code>TextLineBreaks</code>
+ * agrees with its range tables for every char, and that the array
+ * based break finder gives the words of the iterator based one it
+ * replaced on a multilingual text.  Classes outside the pair table,
+ * which the old finder failed on, must break like letters.
+ *
+ * @version $Id$
+ */
+public class TextLineBreaksTest extends AbstractTest {
+
+    public static final String ERROR_CLASS_DIFFERS
+        = "TextLineBreaksTest.error.class.differs";
+
+    public static final String ERROR_WORDS_DIFFER
+        = "TextLineBreaksTest.error.words.differ";
+
+    public static final String ERROR_UNPAIRED_CLASS
+        = "TextLineBreaksTest.error.unpaired.class";
+
+    public static final String ENTRY_KEY_CHAR
+        = "TextLineBreaksTest.entry.key.char";
+
+    public static final String ENTRY_KEY_PARAGRAPH
+        = "TextLineBreaksTest.entry.key.paragraph";
+
+    /**
+     * Sentences in the scripts the break tables know about, with
+     * numbers, quotes, brackets and hyphens.
+     */
+    static final String[] SENTENCES = {
+        "The quick brown fox (aged 3) jumps over the lazy dog. ",
+        "Prices rose 12.5% to $1,234.56 in Q3 \u2014 a well-known "
+            + "\"rally\". ",
+        "L\u2019\u00e9t\u00e9 dernier, nous sommes all\u00e9s \u00e0 "
+            + "la mer\u00a0! ",
+        "Stra\u00dfenbahn-Haltestelle \u00bbHauptbahnhof\u00ab: "
+            + "Abfahrt 10:45 Uhr. ",
+        "\u0397 \u03b3\u03c1\u03ae\u03b3\u03bf\u03c1\u03b7 "
+            + "\u03ba\u03b1\u03c6\u03ad \u03b1\u03bb\u03b5\u03c0\u03bf\u03cd. ",
+        "\u0421\u044a\u0435\u0448\u044c \u0436\u0435 \u0435\u0449\u0451 "
+            + "\u044d\u0442\u0438\u0445 \u043c\u044f\u0433\u043a\u0438\u0445 "
+            + "\u0431\u0443\u043b\u043e\u043a. ",
+        "\u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd, "
+            + "\u05de\u05d4 \u05e9\u05dc\u05d5\u05de\u05da? ",
+        "\u0627\u0644\u0633\u0644\u0627\u0645 \u0639\u0644\u064a\u0643\u0645 "
+            + "\u0648\u0631\u062d\u0645\u0629 \u0627\u0644\u0644\u0647. ",
+        "\u4eca\u65e5\u306f\u3044\u3044\u5929\u6c17\u3067\u3059\u306d\u3002"
+            + "\u300c\u65e5\u672c\u8a9e\u300d\u3092\u52c9\u5f37\u4e2d\u3002",
+        "\u6211\u4eec\u4e00\u8d77\u53bb\u5317\u4eac\uff0c\u597d\u5417\uff1f",
+        "\ud55c\uad6d\uc5b4 \ubb38\uc7a5\uc740 \ub744\uc5b4\uc4f0\uae30\ub97c "
+            + "\ud569\ub2c8\ub2e4. ",
+        "Combining a\u0301 e\u0300 n\u0303, e-mail/web: "
+            + "http://example.org/a?b=c. ",
+        "\u0915\u094d\u0937\u0924\u094d\u0930\u093f\u092f "
+            + "\u0939\u093f\u0928\u094d\u0926\u0940 \u092d\u093e\u0937\u093e. ",
+    };
+
+    /**
+     * Returns a text of <code>paras</code> paragraphs, each made of a
+     * few sentences of different scripts.
+     */
+    static String createCorpus(int paras, List paraEnds) {
+        StringBuffer sb = new StringBuffer();
+        for (int p = 0; p < paras; p++) {
+            int n = 3 + p % 5;
+            for (int i = 0; i < n; i++) {
+                sb.append(SENTENCES[(p * 7 + i * 3) % SENTENCES.length]);
+            }
+            paraEnds.add(sb.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the corpus as the attributed string of a flow, with a
+     * paragraph attribute per paragraph.
+     */
+    static AttributedString createFlow(String text, List paraEnds) {
+        AttributedString as = new AttributedString(text);
+        int begin = 0;
+        for (int p = 0; p < paraEnds.size(); p++) {
+            int end = ((Integer)paraEnds.get(p)).intValue();
+            as.addAttribute(TextLineBreaks.FLOW_PARAGRAPH, new Object(),
+                            begin, end);
+            begin = end;
+        }
+        return as;
+    }
+
+    public TestReport runImpl() throws Exception {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (TextLineBreaks.getCharCharClass((char)c)
+                != TextLineBreaks.searchCharClass((char)c)) {
+                TestReport report = reportError(ERROR_CLASS_DIFFERS);
+                report.addDescriptionEntry(ENTRY_KEY_CHAR,
+                                           Integer.toHexString(c));
+                return report;
+            }
+        }
+
+        List paraEnds = new ArrayList();
+        String text = createCorpus(200, paraEnds);
+        AttributedString as = createFlow(text, paraEnds);
+        int[] refEnds = new int[text.length() + 1];
+        int n = findLineBreaks(as.getIterator(), refEnds);
+        TextLineBreaks.findLineBrk(as);
+        AttributedCharacterIterator aci = as.getIterator();
+        int wordBegin = 0;
+        for (int w = 0; w < n; w++) {
+            aci.setIndex(wordBegin);
+            Object v = aci.getAttribute(TextLineBreaks.WORD_LIMIT);
+            if (!new Integer(w).equals(v)
+                || (aci.getRunLimit(TextLineBreaks.WORD_LIMIT)
+                    != refEnds[w])) {
+                TestReport report = reportError(ERROR_WORDS_DIFFER);
+                int p = 0;
+                while (((Integer)paraEnds.get(p)).intValue() <= wordBegin) {
+                    p++;
+                }
+                report.addDescriptionEntry(ENTRY_KEY_PARAGRAPH, "" + p);
+                return report;
+            }
+            wordBegin = refEnds[w];
+        }
+
+        // Thai and the object replacement char are followed by letters
+        // without a break.
+        String[] unpaired = { "abc \u0e20\u0e32\u0e29\u0e32abc def",
+                              "abc x\ufffcy def" };
+        for (int i = 0; i < unpaired.length; i++) {
+            AttributedString s = createFlow
+                (unpaired[i], Collections.singletonList
+                 (new Integer(unpaired[i].length())));
+            TextLineBreaks.findLineBrk(s);
+            AttributedCharacterIterator it = s.getIterator();
+            it.setIndex(unpaired[i].length() - 4);
+            if (it.getRunLimit(TextLineBreaks.WORD_LIMIT)
+                != unpaired[i].length() - 3) {
+                TestReport report = reportError(ERROR_UNPAIRED_CLASS);
+                report.addDescriptionEntry(ENTRY_KEY_PARAGRAPH, unpaired[i]);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * The break finder that works on the iterator of the string, as
+     * TextLineBreaks used to do it, with the words stored like
+     * <code>TextLineBreaks.findLineBreaks</code> does.
+     */
+    static int findLineBreaks(AttributedCharacterIterator aci,
+                              int[] wordEnds) {
+        if (aci.getEndIndex() == 0)
+            return 0;
+        char ch = aci.current(), prevCh = (char)-1;
+        byte         cls = TextLineBreaks.getCharCharClass(ch);
+        if (cls == TextLineBreaks.CHAR_CLASS_LF)
+            cls = TextLineBreaks.CHAR_CLASS_BK;
+        byte      curCls = cls;
+        byte     prevCls = cls;
+        byte prevPrevCls = -1;
+        int  wordCnt = 0;
+        int ich = aci.getBeginIndex()+1;
+        int lineEnd = aci.getRunLimit(TextLineBreaks.lineBrks);
+
+        if (cls >= TextLineBreaks.CHAR_CLASS_CM)
+            cls = TextLineBreaks.CHAR_CLASS_AL;
+
+        for (ch = aci.next();
+             ch != AttributedCharacterIterator.DONE;
+             ich++, prevCh = ch, ch = aci.next(),
+             prevPrevCls = prevCls, prevCls = curCls) {
+
+            if (ich == lineEnd) {
+                wordEnds[wordCnt++] = ich;
+
+                cls    = TextLineBreaks.getCharCharClass(ch);
+                curCls = cls;
+                prevCls = cls;
+                if (cls >= TextLineBreaks.CHAR_CLASS_CM)
+                    cls = TextLineBreaks.CHAR_CLASS_AL;
+
+                lineEnd = aci.getRunLimit(TextLineBreaks.lineBrks);
+                continue;
+            }
+
+            curCls = TextLineBreaks.getCharCharClass(ch);
+            if (curCls == TextLineBreaks.CHAR_CLASS_SP) {
+                continue;
+            }
+
+            if (curCls == TextLineBreaks.CHAR_CLASS_SA) {
+                // The old complex break placeholder never advanced.
+                ch = aci.previous();
+                if (ch != AttributedCharacterIterator.DONE)
+                    prevCls = TextLineBreaks.getCharCharClass(ch);
+                ch = aci.next();
+                if (ch != AttributedCharacterIterator.DONE)
+                    curCls = cls = TextLineBreaks.getCharCharClass(ch);
+                continue;
+            }
+
+            if ((ch == TextLineBreaks.CHAR_ZERO_WIDTH_JOINER) ||
+                (prevCh == TextLineBreaks.CHAR_ZERO_WIDTH_JOINER))
+                continue;
+
+            if ((curCls == TextLineBreaks.CHAR_CLASS_BK) ||
+                (curCls == TextLineBreaks.CHAR_CLASS_LF)) {
+                wordEnds[wordCnt++] = ich;
+                cls = TextLineBreaks.CHAR_CLASS_BK;
+                continue;
+            }
+            if (prevCls == TextLineBreaks.CHAR_CLASS_CR) {
+                wordEnds[wordCnt++] = ich-1;
+                cls = TextLineBreaks.CHAR_CLASS_BK;
+                continue;
+            }
+            if (curCls == TextLineBreaks.CHAR_CLASS_CR) {
+                continue;
+            }
+
+            if (curCls == TextLineBreaks.CHAR_CLASS_CM) {
+                if (prevCls == TextLineBreaks.CHAR_CLASS_SP) {
+                    cls = TextLineBreaks.CHAR_CLASS_ID;
+                    if (prevPrevCls != -1) {
+                        if (TextLineBreaks.brkPairs[prevPrevCls]
+                                [TextLineBreaks.CHAR_CLASS_ID] ==
+                            TextLineBreaks.BREAK_ACTION_DIRECT) {
+                            wordEnds[wordCnt++] = ich-1;
+                        }
+                    }
+                }
+                continue;
+            }
+
+            if (cls == TextLineBreaks.CHAR_CLASS_BK) {
+                cls = curCls;
+                continue;
+            }
+
+            byte brk = TextLineBreaks.brkPairs[cls][curCls];
+
+            if (brk == TextLineBreaks.BREAK_ACTION_DIRECT) {
+                wordEnds[wordCnt++] = ich;
+            } else if (brk == TextLineBreaks.BREAK_ACTION_INDIRECT) {
+                if (prevCls == TextLineBreaks.CHAR_CLASS_SP) {
+                    wordEnds[wordCnt++] = ich;
+                }
+            }
+            cls = curCls;
+        }
+
+        wordEnds[wordCnt++] = ich;
+        return wordCnt;
+    }
+}
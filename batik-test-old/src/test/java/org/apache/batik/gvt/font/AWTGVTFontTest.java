@@ -0,0 +1,147 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WeightedLRUCache;
+
+/**
+ * Checks that the glyph geometry cache of <code>AWTGVTFont</code> is
+ * shared between sizes of a font, scales outlines correctly, stays
+ * within its bound and can be used from several threads.
+ *
+ * @version $Id$
+ */
+public class AWTGVTFontTest extends AbstractTest {
+
+    public static final String ERROR_BAD_STATISTICS
+        = "AWTGVTFontTest.error.bad.statistics";
+
+    public static final String ERROR_BAD_OUTLINE
+        = "AWTGVTFontTest.error.bad.outline";
+
+    public static final String ERROR_NOT_BOUNDED
+        = "AWTGVTFontTest.error.not.bounded";
+
+    public static final String ERROR_CONCURRENT_USE
+        = "AWTGVTFontTest.error.concurrent.use";
+
+    public static final String ENTRY_KEY_CACHE
+        = "AWTGVTFontTest.entry.key.cache";
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    public TestReport runImpl() throws Exception {
+        WeightedLRUCache cache = AWTGVTFont.getGlyphGeometryCache();
+        long maxWeight = cache.getMaxWeight();
+        try {
+            cache.clear();
+            cache.resetStatistics();
+
+            // Three distinct glyphs, looked up eight times.
+            Font font = new Font("Serif", Font.PLAIN, 12);
+            GVTGlyphVector small = new AWTGVTFont(font)
+                .createGlyphVector(FRC, "abca");
+            GVTGlyphVector large = new AWTGVTFont(font, 2.5)
+                .createGlyphVector(FRC, "abca");
+            small.performDefaultLayout();
+            large.performDefaultLayout();
+            for (int i = 0; i < 4; i++) {
+                small.getGlyphOutline(i);
+                large.getGlyphOutline(i);
+            }
+            if (cache.size() != 3 || cache.getMissCount() != 3 ||
+                cache.getHitCount() != 5) {
+                return reportCache(ERROR_BAD_STATISTICS, cache);
+            }
+
+            // The cached outline is scaled to each size.
+            for (int i = 0; i < 4; i++) {
+                Rectangle2D s = small.getGlyphOutline(i).getBounds2D();
+                Rectangle2D l = large.getGlyphOutline(i).getBounds2D();
+                if (Math.abs(s.getWidth() * 2.5 - l.getWidth()) > 0.01 ||
+                    Math.abs(s.getHeight() * 2.5 - l.getHeight()) > 0.01) {
+                    return reportError(ERROR_BAD_OUTLINE);
+                }
+            }
+
+            cache.setMaxWeight(200);
+            for (char c = 'A'; c <= 'Z'; c++) {
+                outlines(new AWTGVTFont(font), String.valueOf(c));
+            }
+            if (cache.getWeight() > 200 || cache.getEvictionCount() == 0) {
+                return reportCache(ERROR_NOT_BOUNDED, cache);
+            }
+
+            final Throwable[] failure = new Throwable[1];
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int style = t % 3;
+                threads[t] = new Thread() {
+                        public void run() {
+                            try {
+                                for (int i = 0; i < 200; i++) {
+                                    Font f = new Font("Serif", style, 10 + i);
+                                    outlines(new AWTGVTFont(f),
+                                             "The quick brown fox");
+                                }
+                            } catch (Throwable th) {
+                                synchronized (failure) {
+                                    failure[0] = th;
+                                }
+                            }
+                        }
+                    };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+            if (failure[0] != null || cache.getWeight() > 200) {
+                return reportCache(ERROR_CONCURRENT_USE, cache);
+            }
+        } finally {
+            cache.setMaxWeight(maxWeight);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Gets the outline of every glyph of <code>str</code>.
+     */
+    static void outlines(AWTGVTFont font, String str) {
+        GVTGlyphVector gv = font.createGlyphVector(FRC, str);
+        gv.performDefaultLayout();
+        for (int i = 0; i < gv.getNumGlyphs(); i++) {
+            gv.getGlyphOutline(i);
+        }
+    }
+
+    protected TestReport reportCache(String error, WeightedLRUCache cache) {
+        TestReport report = reportError(error);
+        report.addDescriptionEntry(ENTRY_KEY_CACHE, cache.toString());
+        return report;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.AttributedString;
+import java.util.Arrays;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+import org.apache.batik.gvt.text.TextPaintInfo;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that text drawn from the glyph atlas matches text filled from
+ * its outlines within a pixel, and that stroked, rotated and large
+ * text is still drawn from outlines.
+ *
+ * @version $Id$
+ */
+public class GlyphAtlasTest extends AbstractTest {
+
+    public static final String ERROR_NOT_WITHIN_TOLERANCE
+        = "GlyphAtlasTest.error.not.within.tolerance";
+
+    public static final String ERROR_NO_FALLBACK
+        = "GlyphAtlasTest.error.no.fallback";
+
+    public static final String ERROR_ATLAS_UNUSED
+        = "GlyphAtlasTest.error.atlas.unused";
+
+    public static final String ENTRY_KEY_CASE
+        = "GlyphAtlasTest.entry.key.case";
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    static final String TEXT = "Quick brown fox, 10% @ 42.5";
+
+    /**
+     * The largest difference of a channel with the range of values of
+     * the same channel around the pixel in the reference.  Glyph
+     * origins are rounded to a quarter of a pixel, which can change
+     * the coverage of a pixel at a corner by a quarter.
+     */
+    static final int TOLERANCE = 64;
+
+    /**
+     * The largest mean difference of a channel with the reference.
+     */
+    static final double MEAN_TOLERANCE = 2;
+
+    static final int WIDTH = 320;
+    static final int HEIGHT = 48;
+
+    public TestReport runImpl() throws Exception {
+        GlyphAtlas atlas = AWTGVTGlyphVector.getGlyphAtlas();
+        atlas.clear();
+        atlas.resetStatistics();
+
+        String[] families = { "Serif", "SansSerif" };
+        float[] sizes = { 6, 9.5f, 12, 17 };
+        double[] scales = { 1, 1.3 };
+        Color[] colors = { Color.black, new Color(0x80c02010, true) };
+        for (int f = 0; f < families.length; f++) {
+            for (int s = 0; s < sizes.length; s++) {
+                for (int k = 0; k < scales.length; k++) {
+                    TextPaintInfo tpi = createPaintInfo(colors[(s + k) % 2]);
+                    AffineTransform at = new AffineTransform
+                        (scales[k], 0, 0, scales[k], 3.3 + s * 0.17, 30.6);
+                    String c = families[f] + " " + sizes[s] + " x"
+                        + scales[k];
+                    if (!withinTolerance(draw(families[f], sizes[s], tpi,
+                                              at, false),
+                                         draw(families[f], sizes[s], tpi,
+                                              at, true))) {
+                        return reportCase(ERROR_NOT_WITHIN_TOLERANCE, c);
+                    }
+                }
+            }
+        }
+        if (atlas.getHitCount() == 0 || atlas.getMaskCount() == 0) {
+            return reportError(ERROR_ATLAS_UNUSED);
+        }
+
+        // Stroked, rotated and large text is drawn from outlines.
+        TextPaintInfo stroked = createPaintInfo(Color.black);
+        stroked.strokePaint = Color.blue;
+        stroked.strokeStroke = new BasicStroke(0.5f);
+        AffineTransform at = AffineTransform.getTranslateInstance(4, 30);
+        AffineTransform rot = new AffineTransform(at);
+        rot.rotate(0.1);
+        Object[][] fallbacks = {
+            { "stroked", new Float(12), stroked, at },
+            { "rotated", new Float(12), createPaintInfo(Color.black), rot },
+            { "large", new Float(30), createPaintInfo(Color.black), at }
+        };
+        for (int i = 0; i < fallbacks.length; i++) {
+            float size = ((Float)fallbacks[i][1]).floatValue();
+            TextPaintInfo tpi = (TextPaintInfo)fallbacks[i][2];
+            AffineTransform t = (AffineTransform)fallbacks[i][3];
+            if (!Arrays.equals(draw("Serif", size, tpi, t, false),
+                               draw("Serif", size, tpi, t, true))) {
+                return reportCase(ERROR_NO_FALLBACK,
+                                  (String)fallbacks[i][0]);
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected TestReport reportCase(String error, String c) {
+        TestReport report = reportError(error);
+        report.addDescriptionEntry(ENTRY_KEY_CASE, c);
+        return report;
+    }
+
+    static TextPaintInfo createPaintInfo(Color fill) {
+        TextPaintInfo tpi = new TextPaintInfo();
+        tpi.visible = true;
+        tpi.fillPaint = fill;
+        return tpi;
+    }
+
+    /**
+     * Draws TEXT on a white background, with or without the glyph
+     * atlas hint, and returns the pixels.
+     */
+    static int[] draw(String family, float size, TextPaintInfo tpi,
+                      AffineTransform at, boolean atlas) {
+        GVTFont font = new AWTGVTFont
+            (new Font(family, Font.PLAIN, 12).deriveFont(size));
+        GVTGlyphVector gv = font.createGlyphVector(FRC, TEXT);
+        gv.performDefaultLayout();
+        AttributedString as = new AttributedString(TEXT);
+        as.addAttribute(GVTAttributedCharacterIterator.TextAttribute
+                        .PAINT_INFO, tpi);
+
+        BufferedImage img = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        if (atlas) {
+            g.setRenderingHint(RenderingHintsKeyExt.KEY_GLYPH_ATLAS,
+                               new Integer(20));
+        }
+        g.transform(at);
+        gv.draw(g, as.getIterator());
+        g.dispose();
+        return ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns true if every channel of every pixel of <code>act</code>
+     * is within TOLERANCE of the range of the channel in the 3x3
+     * neighborhood of the pixel in <code>ref</code>, that is if the
+     * images differ by less than a pixel in position, and if the mean
+     * difference is below MEAN_TOLERANCE.
+     */
+    static boolean withinTolerance(int[] ref, int[] act) {
+        long sum = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int p = act[y * WIDTH + x];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int v = (p >>> shift) & 0xff;
+                    sum += Math.abs(v - ((ref[y * WIDTH + x] >>> shift) & 0xff));
+                    int min = 255, max = 0;
+                    for (int j = Math.max(0, y - 1);
+                         j <= Math.min(HEIGHT - 1, y + 1); j++) {
+                        for (int i = Math.max(0, x - 1);
+                             i <= Math.min(WIDTH - 1, x + 1); i++) {
+                            int r = (ref[j * WIDTH + i] >>> shift) & 0xff;
+                            min = Math.min(min, r);
+                            max = Math.max(max, r);
+                        }
+                    }
+                    if (v < min - TOLERANCE || v > max + TOLERANCE) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return sum <= MEAN_TOLERANCE * WIDTH * HEIGHT * 4;
+    }
+}
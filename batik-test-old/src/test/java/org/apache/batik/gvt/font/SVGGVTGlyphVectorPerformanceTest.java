@@ -0,0 +1,86 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+import org.apache.batik.gvt.text.TextPaintInfo;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares drawing a page of SVG font glyphs in runs with
+ * <code>SVGGVTGlyphVector.draw</code> (the operation) with drawing
+ * them glyph by glyph (the reference, what draw used to do).
+ *
+ * @version $Id$
+ */
+public class SVGGVTGlyphVectorPerformanceTest extends PerformanceTest {
+
+    static final int COLUMNS = 50;
+    static final int LINES = 50;
+
+    protected Glyph[] glyphs;
+
+    protected SVGGVTGlyphVector gv;
+
+    protected AttributedCharacterIterator aci;
+
+    protected Graphics2D g;
+
+    public SVGGVTGlyphVectorPerformanceTest() {
+        TextPaintInfo tpi = SVGGVTGlyphVectorTest.createPaintInfo
+            (Color.black);
+        glyphs = SVGGVTGlyphVectorTest.createGlyphs
+            (COLUMNS * LINES, new TextPaintInfo[] { tpi }, 10, false, false);
+        gv = new SVGGVTGlyphVector(null, glyphs,
+                                   SVGGVTGlyphVectorTest.FRC);
+        gv.performDefaultLayout();
+        for (int i = 0; i < glyphs.length; i++) {
+            gv.setGlyphPosition(i, new Point2D.Float
+                                ((i % COLUMNS) * 10, (i / COLUMNS + 1) * 12));
+        }
+        AttributedString as = new AttributedString("o");
+        as.addAttribute(GVTAttributedCharacterIterator.TextAttribute
+                        .PAINT_INFO, tpi);
+        aci = as.getIterator();
+
+        BufferedImage img = new BufferedImage
+            (COLUMNS * 10, LINES * 12 + 10, BufferedImage.TYPE_INT_ARGB_PRE);
+        g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    protected void runRef() {
+        for (int i = 0; i < glyphs.length; i++) {
+            glyphs[i].draw(g);
+        }
+    }
+
+    protected void runOp() {
+        gv.draw(g, aci);
+    }
+}
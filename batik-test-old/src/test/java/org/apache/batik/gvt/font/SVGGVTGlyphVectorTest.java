@@ -0,0 +1,291 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+import org.apache.batik.gvt.text.TextPaintInfo;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that glyph vectors drawn in runs paint the same pixels as
+ * glyphs drawn one by one, up to antialiasing: <code>SVGGVTGlyphVector</code>
+ * against <code>Glyph.draw</code>, including glyphs with children,
+ * several paints, overlapping glyphs and strokes and moved glyphs,
+ * and the outline of
+ * <code>AWTGVTGlyphVector</code> against its glyph outlines.
+ *
+ * @version $Id$
+ */
+public class SVGGVTGlyphVectorTest extends AbstractTest {
+
+    public static final String ERROR_DRAW_DIFFERS
+        = "SVGGVTGlyphVectorTest.error.draw.differs";
+
+    public static final String ERROR_OUTLINE_DIFFERS
+        = "SVGGVTGlyphVectorTest.error.outline.differs";
+
+    public static final String ENTRY_KEY_CASE
+        = "SVGGVTGlyphVectorTest.entry.key.case";
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    static final int WIDTH = 400;
+    static final int HEIGHT = 60;
+
+    /**
+     * The largest channel difference allowed between the two drawings.
+     * A pixel shared by two glyphs of a run gets the sum of their
+     * coverages rather than one composited over the other, which
+     * differs by at most a quarter of full coverage; the rest allows
+     * for rounding in the rasterizer.
+     */
+    static final int TOLERANCE = 68;
+
+    public TestReport runImpl() throws Exception {
+        TextPaintInfo red = createPaintInfo(new Color(0x80ff0000, true));
+        TextPaintInfo blue = createPaintInfo(Color.blue);
+        TextPaintInfo stroked = createPaintInfo(Color.green);
+        stroked.strokePaint = Color.black;
+        stroked.strokeStroke = new BasicStroke(1.5f);
+        TextPaintInfo wide = createPaintInfo(new Color(0x8000ff00, true));
+        wide.strokePaint = new Color(0x80000000, true);
+        wide.strokeStroke = new BasicStroke(3);
+
+        Object[][] cases = {
+            { "fill", new TextPaintInfo[] { red }, new Float(14),
+              Boolean.FALSE, Boolean.FALSE },
+            { "stroke", new TextPaintInfo[] { stroked }, new Float(14),
+              Boolean.FALSE, Boolean.FALSE },
+            { "paints", new TextPaintInfo[] { red, red, blue, stroked },
+              new Float(14), Boolean.FALSE, Boolean.FALSE },
+            { "overlap", new TextPaintInfo[] { red }, new Float(6),
+              Boolean.FALSE, Boolean.FALSE },
+            // Only the strokes reach the next glyph.
+            { "stroke overlap", new TextPaintInfo[] { wide },
+              new Float(9), Boolean.FALSE, Boolean.FALSE },
+            { "evenOdd overlap", new TextPaintInfo[] { red, blue },
+              new Float(6), Boolean.TRUE, Boolean.FALSE },
+            { "children", new TextPaintInfo[] { red, stroked },
+              new Float(14), Boolean.FALSE, Boolean.TRUE }
+        };
+        for (int i = 0; i < cases.length; i++) {
+            TextPaintInfo[] paints = (TextPaintInfo[])cases[i][1];
+            float advance = ((Float)cases[i][2]).floatValue();
+            boolean evenOdd = ((Boolean)cases[i][3]).booleanValue();
+            boolean children = ((Boolean)cases[i][4]).booleanValue();
+            Glyph[] glyphs = createGlyphs(24, paints, advance, evenOdd,
+                                          children);
+            SVGGVTGlyphVector gv = new SVGGVTGlyphVector(null, glyphs, FRC);
+            gv.performDefaultLayout();
+            gv.setGlyphVisible(5, false);
+            String c = (String)cases[i][0];
+            if (!drawsSame(gv, glyphs)) {
+                return reportCase(ERROR_DRAW_DIFFERS, c);
+            }
+
+            // Moving, transforming and showing glyphs invalidates the
+            // runs of the previous draw.
+            gv.setGlyphPosition(3, new Point2D.Float(3 * advance, 20));
+            gv.setGlyphTransform(7, AffineTransform.getRotateInstance(0.3));
+            gv.setGlyphVisible(5, true);
+            if (!drawsSame(gv, glyphs)) {
+                return reportCase(ERROR_DRAW_DIFFERS, c + " moved");
+            }
+        }
+
+        // The combined outline of AWT glyph vectors.
+        GVTFont font = new AWTGVTFont
+            (new Font("Serif", Font.PLAIN, 17));
+        GVTGlyphVector gv = font.createGlyphVector(FRC, "Quick brown fox");
+        gv.performDefaultLayout();
+        gv.setGlyphTransform(2, AffineTransform.getRotateInstance(0.4));
+        gv.setGlyphVisible(4, false);
+        gv.getGlyphOutline(6);
+        GeneralPath expected = new GeneralPath();
+        for (int i = 0; i < gv.getNumGlyphs(); i++) {
+            if (gv.isGlyphVisible(i)) {
+                expected.append(gv.getGlyphOutline(i), false);
+            }
+        }
+        gv.setGlyphPosition(0, gv.getGlyphPosition(0));
+        if (!equals(expected, gv.getOutline())) {
+            return reportCase(ERROR_OUTLINE_DIFFERS, "AWTGVTGlyphVector");
+        }
+        return reportSuccess();
+    }
+
+    protected TestReport reportCase(String error, String c) {
+        TestReport report = reportError(error);
+        report.addDescriptionEntry(ENTRY_KEY_CASE, c);
+        return report;
+    }
+
+    static TextPaintInfo createPaintInfo(Color fill) {
+        TextPaintInfo tpi = new TextPaintInfo();
+        tpi.visible = true;
+        tpi.fillPaint = fill;
+        return tpi;
+    }
+
+    /**
+     * Creates glyphs shaped like an 'o' (a square with a round hole),
+     * 8 units wide.  The paints are given to consecutive groups of
+     * three glyphs, and every seventh glyph has a child shape node
+     * when <code>children</code> is true.
+     */
+    static Glyph[] createGlyphs(int n, TextPaintInfo[] paints,
+                                float advance, boolean evenOdd,
+                                boolean children) {
+        GeneralPath o = new GeneralPath(evenOdd ? PathIterator.WIND_EVEN_ODD
+                                                : PathIterator.WIND_NON_ZERO);
+        o.append(new Rectangle2D.Float(0, -10, 8, 10), false);
+        GeneralPath hole = new GeneralPath
+            (new Ellipse2D.Float(2, -8, 4, 6));
+        hole.transform(new AffineTransform(1, 0, 0, -1, 0, -10));
+        o.append(hole, false);
+
+        Glyph[] glyphs = new Glyph[n];
+        Point2D origin = new Point2D.Float(0, 0);
+        for (int i = 0; i < n; i++) {
+            ShapeNode node = null;
+            if (children && (i % 7 == 3)) {
+                node = new ShapeNode();
+                node.setShape(new Rectangle2D.Float(1, -14, 6, 3));
+                FillShapePainter sp = new FillShapePainter(node.getShape());
+                sp.setPaint(Color.magenta);
+                node.setShapePainter(sp);
+            }
+            glyphs[i] = new Glyph
+                ("o", new ArrayList(), "", "", "", origin, origin,
+                 advance, 10, i, paints[(i / 3) % paints.length], o, node);
+        }
+        return glyphs;
+    }
+
+    /**
+     * Returns true if the glyph vector paints the same as its glyphs
+     * drawn one by one: within <code>TOLERANCE</code> when antialiased
+     * and exactly when not, since then glyphs of a run that do not
+     * overlap never share a pixel.
+     */
+    static boolean drawsSame(SVGGVTGlyphVector gv, Glyph[] glyphs) {
+        return equals(draw(gv, glyphs, false, true),
+                      draw(gv, glyphs, true, true))
+            && Arrays.equals(draw(gv, glyphs, false, false),
+                             draw(gv, glyphs, true, false));
+    }
+
+    /**
+     * Draws the glyph vector on a white background, as a whole or glyph
+     * by glyph, and returns the pixels.
+     */
+    static int[] draw(SVGGVTGlyphVector gv, Glyph[] glyphs, boolean runs,
+                      boolean antialias) {
+        AttributedString as = new AttributedString("o");
+        as.addAttribute(GVTAttributedCharacterIterator.TextAttribute
+                        .PAINT_INFO, createPaintInfo(Color.black));
+
+        BufferedImage img = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           antialias ? RenderingHints.VALUE_ANTIALIAS_ON
+                                     : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.translate(10.3, 30.6);
+        g.scale(1.1, 1.1);
+        if (runs) {
+            gv.draw(g, as.getIterator());
+        } else {
+            for (int i = 0; i < glyphs.length; i++) {
+                if (gv.isGlyphVisible(i)) {
+                    glyphs[i].draw(g);
+                }
+            }
+        }
+        g.dispose();
+        return ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns true if no channel of the two pixel arrays differs by
+     * more than <code>TOLERANCE</code>.
+     */
+    static boolean equals(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int ca = (a[i] >>> shift) & 0xff;
+                int cb = (b[i] >>> shift) & 0xff;
+                if (Math.abs(ca - cb) > TOLERANCE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if both shapes have the same segments.
+     */
+    static boolean equals(Shape a, Shape b) {
+        PathIterator pa = a.getPathIterator(null);
+        PathIterator pb = b.getPathIterator(null);
+        double[] ca = new double[6];
+        double[] cb = new double[6];
+        while (!pa.isDone() && !pb.isDone()) {
+            int ta = pa.currentSegment(ca);
+            int tb = pb.currentSegment(cb);
+            if (ta != tb) {
+                return false;
+            }
+            for (int i = 0; i < 6; i++) {
+                if (Math.abs(ca[i] - cb[i]) > 1e-3) {
+                    return false;
+                }
+            }
+            pa.next();
+            pb.next();
+        }
+        return pa.isDone() && pb.isDone();
+    }
+}
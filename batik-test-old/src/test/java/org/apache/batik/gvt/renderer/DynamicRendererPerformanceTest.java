@@ -0,0 +1,66 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.renderer;
+
+import org.apache.batik.ext.awt.geom.RectListManager;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares repainting the 24 separate gauges that change in each frame
+ * of a 48 gauge dashboard in parallel on the <code>WorkerPool</code>
+ * (the operation) with repainting them one after the other (the
+ * reference).  With a single processor the pool runs everything on the
+ * calling thread and both take the same time.
+ *
+ * @version $Id$
+ */
+public class DynamicRendererPerformanceTest extends PerformanceTest {
+
+    protected DynamicRendererTest.Dashboard dashboard;
+
+    protected DynamicRenderer serial;
+
+    protected DynamicRenderer parallel;
+
+    protected int frame;
+
+    protected void runRef() {
+        repaint(false);
+    }
+
+    protected void runOp() {
+        repaint(true);
+    }
+
+    protected void repaint(boolean inParallel) {
+        if (dashboard == null) {
+            dashboard = new DynamicRendererTest.Dashboard(8, 6, 100, 60);
+            serial = dashboard.createRenderer(800, 600);
+            parallel = dashboard.createRenderer(800, 600);
+            parallel.setParallelRepaint(true);
+        }
+        RectListManager dirty
+            = new RectListManager(dashboard.update(++frame));
+        if (inParallel) {
+            parallel.repaint(dirty);
+        } else {
+            serial.repaint(dirty);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.renderer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.TextNode;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.geom.RectListManager;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.CompositeShapePainter;
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.RootGraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.StrokeShapePainter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.HaltingThread;
+import org.apache.batik.util.WorkerPool;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Checks that repainting separate dirty regions of a
+ * <code>DynamicRenderer</code> in parallel gives the same image as
+ * repainting them one after the other, for shapes, text and shapes
+ * simplified for the level of detail hint, that
+ * overlapping regions are kept in the same group, that halting the
+ * repainting thread halts the workers, and that the repaint statistics
+ * are recorded.
+ *
+ * @version $Id$
+ */
+public class DynamicRendererTest extends AbstractTest {
+
+    public static final String ERROR_DIFFERENT_RENDERING
+        = "DynamicRendererTest.error.different.rendering";
+
+    public static final String ERROR_OVERLAPPING_GROUPS
+        = "DynamicRendererTest.error.overlapping.groups";
+
+    public static final String ERROR_WORKER_NOT_HALTED
+        = "DynamicRendererTest.error.worker.not.halted";
+
+    public static final String ERROR_BAD_STATISTICS
+        = "DynamicRendererTest.error.bad.statistics";
+
+    public static final String ERROR_PARALLEL_SHARED_CACHE
+        = "DynamicRendererTest.error.parallel.shared.cache";
+
+    public static final String ENTRY_KEY_CASE
+        = "DynamicRendererTest.entry.key.case";
+
+    static final int WIDTH = 400;
+    static final int HEIGHT = 300;
+
+
+    public TestReport runImpl() throws Exception {
+        Dashboard d = new Dashboard(4, 3, 100, 10);
+        DynamicRenderer serial = d.createRenderer(WIDTH, HEIGHT);
+        DynamicRenderer parallel = d.createRenderer(WIDTH, HEIGHT);
+        parallel.setParallelRepaint(true);
+
+        int parallelism = WorkerPool.getParallelism();
+        try {
+            WorkerPool.setParallelism(4);
+            for (int frame = 1; frame <= 3; frame++) {
+                List dirty = d.update(frame);
+                // Two overlapping regions, painted by the same worker.
+                dirty.add(new Rectangle(90, 90, 40, 40));
+                dirty.add(new Rectangle(110, 110, 40, 40));
+                serial.repaint(new RectListManager(dirty));
+                parallel.repaint(new RectListManager(dirty));
+
+                String diff = compare(serial.getOffScreen(),
+                                      parallel.getOffScreen());
+                if (diff != null) {
+                    TestReport report = reportError(ERROR_DIFFERENT_RENDERING);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_CASE, "frame " + frame + ": " + diff);
+                    return report;
+                }
+            }
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+
+        // The full repaint and the three updates.
+        DynamicRenderer.RepaintStatistics stats
+            = parallel.getRepaintStatistics();
+        if (stats.getRepaintCount() != 4 || stats.getLastDirtyArea() <= 0
+                || stats.getMaxRepaintTime() < stats.getAverageRepaintTime()) {
+            TestReport report = reportError(ERROR_BAD_STATISTICS);
+            report.addDescriptionEntry(ENTRY_KEY_CASE, stats.toString());
+            return report;
+        }
+
+        TestReport report = checkTextAndLevelOfDetail();
+        if (report == null) {
+            report = checkSharedCaches();
+        }
+        if (report == null) {
+            report = checkGroups();
+        }
+        if (report == null) {
+            report = checkHalting();
+        }
+        return report == null ? reportSuccess() : report;
+    }
+
+    /**
+     * Lines of text, some of them stroked, and long waves simplified
+     * for the level of detail hint, each crossing several regions.
+     */
+    static final String DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='400' height='300'>"
+        + "<g font-family='serif' font-size='18'>"
+        + "<text x='5' y='30'>Regions painted in parallel by the workers</text>"
+        + "<text x='5' y='60' fill='blue' stroke='black' stroke-width='0.5'>"
+        + "Stroked <tspan fill='red'>and</tspan> filled glyphs</text>"
+        + "<text x='5' y='90' font-size='28' font-style='italic'>"
+        + "Large italic text</text>"
+        + "</g>"
+        + "<path fill='none' stroke='green' d='M0 0H400'/>"
+        + "<path fill='orange' d='M0 0H400V10z'/>"
+        + "</svg>";
+
+    /**
+     * Repaints a document with text and detailed shapes, changing
+     * both between frames, with the level of detail hint on, and
+     * checks that the parallel and serial renderings are identical.
+     */
+    protected TestReport checkTextAndLevelOfDetail() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:renderer.svg",
+                                        new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        GraphicsNode root = new GVTBuilder().build(ctx, doc);
+        List texts = new ArrayList();
+        collectNodes(root, TextNode.class, texts);
+        List shapes = new ArrayList();
+        collectNodes(root, ShapeNode.class, shapes);
+        ShapeNode wave1 = (ShapeNode)shapes.get(0);
+        ShapeNode wave2 = (ShapeNode)shapes.get(1);
+
+        RenderingHints hints = new RenderingHints
+            (RenderingHintsKeyExt.KEY_LEVEL_OF_DETAIL, new Double(1));
+        DynamicRenderer serial = createRenderer(root, hints);
+        DynamicRenderer parallel = createRenderer(root, hints);
+        parallel.setParallelRepaint(true);
+
+        List dirty = new ArrayList();
+        for (int x = 0; x < WIDTH; x += 50) {
+            dirty.add(new Rectangle(x, 0, 40, HEIGHT));
+        }
+        int parallelism = WorkerPool.getParallelism();
+        try {
+            WorkerPool.setParallelism(4);
+            for (int frame = 0; frame < 3; frame++) {
+                wave1.setShape(createWave(200, 60, 0.05, frame));
+                wave2.setShape(createWave(250, 30, 0.2, frame));
+                // Lay out the text again.
+                for (int i = 0; i < texts.size(); i++) {
+                    TextNode tn = (TextNode)texts.get(i);
+                    tn.setAttributedCharacterIterator
+                        (tn.getAttributedCharacterIterator());
+                }
+                // The parallel renderer paints first, so that its
+                // workers find the caches of the tree empty.
+                parallel.repaint(new RectListManager(dirty));
+                serial.repaint(new RectListManager(dirty));
+
+                String diff = compare(serial.getOffScreen(),
+                                      parallel.getOffScreen());
+                if (diff != null) {
+                    TestReport report = reportError(ERROR_DIFFERENT_RENDERING);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_CASE, "text frame " + frame + ": " + diff);
+                    return report;
+                }
+            }
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        return null;
+    }
+
+    /**
+     * A pattern filled shape, pattern filled text and an image, over
+     * the top three quarters, and plain shapes below.
+     */
+    static final String CACHES_DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='400' height='300'>"
+        + "<defs><pattern id='p' width='10' height='10'"
+        + " patternUnits='userSpaceOnUse'><rect width='5' height='5'"
+        + " fill='purple'/></pattern></defs>"
+        + "<rect x='0' y='0' width='400' height='60' fill='url(#p)'/>"
+        + "<text x='5' y='110' font-size='36' fill='url(#p)'>"
+        + "Patterned text</text>"
+        + "<image x='0' y='160' width='400' height='60'"
+        + " preserveAspectRatio='none' xlink:href='data:image/png;base64,"
+        + "iVBORw0KGgoAAAANSUhEUgAAAAIAAAACCAIAAAD91JpzAAAAEUlEQVR4nGP4z8DA8B"
+        + "+MgBgAHfAD/dPQfSYAAAAASUVORK5CYII='"
+        + " xmlns:xlink='http://www.w3.org/1999/xlink'/>"
+        + "<rect x='0' y='240' width='400' height='60' fill='teal'"
+        + " stroke='black'/>"
+        + "</svg>";
+
+    /**
+     * Checks that regions touching a pattern or an image, which cache
+     * their tiles without synchronization, are not painted in
+     * parallel, that other regions still are, and that the parallel
+     * rendering of the document is identical to the serial one.
+     */
+    protected TestReport checkSharedCaches() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:caches.svg",
+                                        new StringReader(CACHES_DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        GraphicsNode root = new GVTBuilder().build(ctx, doc);
+
+        String[] names = { "pattern", "text", "image", "plain" };
+        for (int i = 0; i < names.length; i++) {
+            Rectangle area = new Rectangle(0, 80 * i, WIDTH, 20);
+            if (DynamicRenderer.prepareParallelRepaint
+                    (root, new AffineTransform(), area) != (i == 3)) {
+                TestReport report = reportError(ERROR_PARALLEL_SHARED_CACHE);
+                report.addDescriptionEntry(ENTRY_KEY_CASE, names[i]);
+                return report;
+            }
+        }
+
+        RenderingHints hints = new RenderingHints(null);
+        DynamicRenderer serial = createRenderer(root, hints);
+        DynamicRenderer parallel = createRenderer(root, hints);
+        parallel.setParallelRepaint(true);
+        List dirty = new ArrayList();
+        for (int x = 0; x < WIDTH; x += 50) {
+            dirty.add(new Rectangle(x, 0, 40, HEIGHT));
+        }
+        int parallelism = WorkerPool.getParallelism();
+        try {
+            WorkerPool.setParallelism(4);
+            parallel.repaint(new RectListManager(dirty));
+            serial.repaint(new RectListManager(dirty));
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        String diff = compare(serial.getOffScreen(), parallel.getOffScreen());
+        if (diff != null) {
+            TestReport report = reportError(ERROR_DIFFERENT_RENDERING);
+            report.addDescriptionEntry(ENTRY_KEY_CASE, "caches: " + diff);
+            return report;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a closed sine wave across the width of the document,
+     * made of a few thousand line segments.
+     */
+    static GeneralPath createWave(double y, double amplitude,
+                                  double frequency, int phase) {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, (float)y);
+        for (int i = 0; i <= 4 * WIDTH; i++) {
+            double x = i / 4.0;
+            p.lineTo((float)x, (float)(y + amplitude * Math.sin
+                                       (x * frequency + phase)));
+        }
+        p.lineTo(WIDTH, (float)y);
+        p.closePath();
+        return p;
+    }
+
+    /**
+     * Adds the nodes of the given class to <code>nodes</code>, in
+     * document order.
+     */
+    static void collectNodes(GraphicsNode node, Class c, List nodes) {
+        if (c.isInstance(node)) {
+            nodes.add(node);
+        } else if (node instanceof CompositeGraphicsNode) {
+            CompositeGraphicsNode cgn = (CompositeGraphicsNode)node;
+            for (int i = 0; i < cgn.size(); i++) {
+                collectNodes((GraphicsNode)cgn.get(i), c, nodes);
+            }
+        }
+    }
+
+    /**
+     * Returns a DynamicRenderer of the given tree, fully painted.
+     */
+    static DynamicRenderer createRenderer(GraphicsNode root,
+                                          RenderingHints hints) {
+        DynamicRenderer r = new DynamicRenderer(hints, new AffineTransform());
+        r.updateOffScreen(WIDTH, HEIGHT);
+        r.setTree(root);
+        List all = new ArrayList();
+        all.add(new Rectangle(0, 0, WIDTH, HEIGHT));
+        r.repaint(new RectListManager(all));
+        return r;
+    }
+
+    /**
+     * Checks that rectangles of different groups never overlap, and
+     * that groups are sorted by decreasing area.
+     */
+    protected TestReport checkGroups() {
+        List rects = new ArrayList();
+        rects.add(new Rectangle(0, 0, 10, 10));
+        rects.add(new Rectangle(100, 0, 10, 10));
+        rects.add(new Rectangle(5, 5, 10, 10));
+        rects.add(new Rectangle(200, 0, 50, 50));
+        rects.add(new Rectangle(12, 12, 10, 10));
+        rects.add(new Rectangle(300, 300, 1, 1));
+        Rectangle[][] groups = DynamicRenderer.groupOverlapping(rects);
+        int count = 0;
+        long lastArea = Long.MAX_VALUE;
+        for (int g = 0; g < groups.length; g++) {
+            long area = 0;
+            for (int i = 0; i < groups[g].length; i++) {
+                count++;
+                area += groups[g][i].width * groups[g][i].height;
+                for (int h = g + 1; h < groups.length; h++) {
+                    for (int j = 0; j < groups[h].length; j++) {
+                        if (groups[g][i].intersects(groups[h][j])) {
+                            return reportError(ERROR_OVERLAPPING_GROUPS);
+                        }
+                    }
+                }
+            }
+            if (area > lastArea) {
+                return reportError(ERROR_OVERLAPPING_GROUPS);
+            }
+            lastArea = area;
+        }
+        if (count != rects.size() || groups.length != 4
+                || groups[1].length != 3) {
+            return reportError(ERROR_OVERLAPPING_GROUPS);
+        }
+        return null;
+    }
+
+    /**
+     * Runs bands from a halted HaltingThread and checks that every band,
+     * on the workers too, sees the thread halted, and that the workers
+     * are no longer halted afterwards.
+     */
+    protected TestReport checkHalting() throws InterruptedException {
+        int parallelism = WorkerPool.getParallelism();
+        final boolean[] halted = new boolean[4];
+        final boolean[] after = new boolean[4];
+        try {
+            WorkerPool.setParallelism(4);
+            HaltingThread t = new HaltingThread() {
+                    public void run() {
+                        halt();
+                        WorkerPool.runBands(4, 1, new WorkerPool.BandTask() {
+                                public void run(int start, int end) {
+                                    for (int i = start; i < end; i++) {
+                                        halted[i] = HaltingThread.hasBeenHalted();
+                                    }
+                                }
+                            });
+                    }
+                };
+            t.start();
+            t.join();
+            Thread u = new Thread() {
+                    public void run() {
+                        WorkerPool.runBands(4, 1, new WorkerPool.BandTask() {
+                                public void run(int start, int end) {
+                                    for (int i = start; i < end; i++) {
+                                        after[i] = HaltingThread.hasBeenHalted();
+                                    }
+                                }
+                            });
+                    }
+                };
+            u.start();
+            u.join();
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        for (int i = 0; i < halted.length; i++) {
+            if (!halted[i] || after[i]) {
+                TestReport report = reportError(ERROR_WORKER_NOT_HALTED);
+                report.addDescriptionEntry(ENTRY_KEY_CASE, "band " + i);
+                return report;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a description of the first differing pixel, or null.
+     */
+    static String compare(BufferedImage a, BufferedImage b) {
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    return "(" + x + ", " + y + ")";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A grid of gauges, each a gradient filled dial with tick marks and
+     * a needle.
+     */
+    static class Dashboard {
+
+        RootGraphicsNode root = new RootGraphicsNode();
+
+        /**
+         * The needles, and the bounds of their gauges.
+         */
+        List needles = new ArrayList();
+        List bounds = new ArrayList();
+
+        /**
+         * Creates a dashboard of columns x rows gauges of the given
+         * size, each with the given number of tick marks.
+         */
+        Dashboard(int columns, int rows, int size, int ticks) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    addGauge(c * size, r * size, size, ticks);
+                }
+            }
+        }
+
+        void addGauge(int x, int y, int size, int ticks) {
+            CompositeGraphicsNode gauge = new CompositeGraphicsNode();
+            gauge.setTransform
+                (AffineTransform.getTranslateInstance(x, y));
+            float cx = size / 2f;
+            float rad = size / 2f - 4;
+
+            ShapeNode dial = new ShapeNode();
+            Ellipse2D circle = new Ellipse2D.Float
+                (cx - rad, cx - rad, 2 * rad, 2 * rad);
+            CompositeShapePainter p = new CompositeShapePainter(circle);
+            FillShapePainter fill = new FillShapePainter(circle);
+            fill.setPaint(new GradientPaint(0, 0, Color.white,
+                                            size, size, Color.gray));
+            p.addShapePainter(fill);
+            StrokeShapePainter stroke = new StrokeShapePainter(circle);
+            stroke.setStroke(new BasicStroke(2));
+            stroke.setPaint(Color.black);
+            p.addShapePainter(stroke);
+            dial.setShape(circle);
+            dial.setShapePainter(p);
+            gauge.add(dial);
+
+            for (int i = 0; i < ticks; i++) {
+                double a = 2 * Math.PI * i / ticks;
+                Line2D tick = new Line2D.Double
+                    (cx + (rad - 8) * Math.cos(a), cx + (rad - 8) * Math.sin(a),
+                     cx + rad * Math.cos(a), cx + rad * Math.sin(a));
+                gauge.add(strokedLine(tick, 1, Color.darkGray));
+            }
+
+            ShapeNode needle = strokedLine
+                (new Line2D.Float(cx, cx, cx + rad - 10, cx), 3, Color.red);
+            gauge.add(needle);
+            needles.add(needle);
+            bounds.add(new Rectangle(x, y, size, size));
+            root.add(gauge);
+        }
+
+        static ShapeNode strokedLine(Line2D l, float width, Color color) {
+            ShapeNode sn = new ShapeNode();
+            StrokeShapePainter sp = new StrokeShapePainter(l);
+            sp.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND,
+                                         BasicStroke.JOIN_ROUND));
+            sp.setPaint(color);
+            sn.setShape(l);
+            sn.setShapePainter(sp);
+            return sn;
+        }
+
+        /**
+         * Turns every other needle, starting from the first or the
+         * second, and returns the bounds of their gauges.
+         */
+        List update(int frame) {
+            List dirty = new ArrayList();
+            for (int i = frame % 2; i < needles.size(); i += 2) {
+                ShapeNode needle = (ShapeNode) needles.get(i);
+                Rectangle b = (Rectangle) bounds.get(i);
+                needle.setTransform(AffineTransform.getRotateInstance
+                                    (frame * 0.7 + i, b.width / 2.0,
+                                     b.height / 2.0));
+                dirty.add(new Rectangle(b));
+            }
+            return dirty;
+        }
+
+        /**
+         * Returns a DynamicRenderer of the dashboard, fully painted.
+         */
+        DynamicRenderer createRenderer(int width, int height) {
+            DynamicRenderer r = new DynamicRenderer();
+            r.updateOffScreen(width, height);
+            r.setTransform(new AffineTransform());
+            r.setTree(root);
+            List all = new ArrayList();
+            all.add(new Rectangle(0, 0, width, height));
+            r.repaint(new RectListManager(all));
+            return r;
+        }
+    }
+}
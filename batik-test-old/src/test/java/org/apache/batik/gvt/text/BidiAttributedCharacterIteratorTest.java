@@ -0,0 +1,149 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.text;
+
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.Arrays;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the bidi levels <code>BidiAttributedCharacterIterator</code>
+ * gives chunks against those of <code>TextLayout</code>, with and
+ * without direction attributes, and that a chunk built from the
+ * reordering of another one is identical to it.
+ *
+ * @version $Id$
+ */
+public class BidiAttributedCharacterIteratorTest extends AbstractTest {
+
+    public static final String ERROR_LEVEL_DIFFERS
+        = "BidiAttributedCharacterIteratorTest.error.level.differs";
+
+    public static final String ERROR_REORDERING_DIFFERS
+        = "BidiAttributedCharacterIteratorTest.error.reordering.differs";
+
+    public static final String ENTRY_KEY_CASE
+        = "BidiAttributedCharacterIteratorTest.entry.key.case";
+
+    static final String[] TEXTS = {
+        "Hello, world (1) 2.5%",
+        "\u05e9\u05dc\u05d5\u05dd (\u05e2\u05d5\u05dc\u05dd) 123",
+        "abc \u0627\u0644\u0633\u0644\u0627\u0645 [x] def",
+        "\u0644\u064e\u0627 \u0644\u0627",
+        "abc \u202edef\u202c ghi",
+    };
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    public TestReport runImpl() throws Exception {
+        for (int t = 0; t < TEXTS.length; t++) {
+            for (int a = 0; a < 4; a++) {
+                String c = t + "/" + a;
+                AttributedString as = createChunk(TEXTS[t], a);
+                BidiAttributedCharacterIterator bi
+                    = new BidiAttributedCharacterIterator
+                    (as.getIterator(), FRC, 0);
+                if (!checkLevels(as, bi)) {
+                    TestReport report = reportError(ERROR_LEVEL_DIFFERS);
+                    report.addDescriptionEntry(ENTRY_KEY_CASE, c);
+                    return report;
+                }
+                if (bi.getReordering() == null) {
+                    continue;
+                }
+                BidiAttributedCharacterIterator bi2
+                    = new BidiAttributedCharacterIterator
+                    (createChunk(TEXTS[t], a).getIterator(), FRC, 0,
+                     bi.getReordering());
+                if (!same(bi, bi2)) {
+                    TestReport report = reportError(ERROR_REORDERING_DIFFERS);
+                    report.addDescriptionEntry(ENTRY_KEY_CASE, c);
+                    return report;
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns <code>text</code> with a position on its first char, a
+     * second run of attributes and the direction attributes of case
+     * <code>a</code>.
+     */
+    static AttributedString createChunk(String text, int a) {
+        AttributedString as = new AttributedString(text);
+        as.addAttribute(GVTAttributedCharacterIterator.TextAttribute.X,
+                        new Float(10), 0, 1);
+        as.addAttribute(TextAttribute.SIZE, new Float(12));
+        as.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD,
+                        text.length() / 2, text.length());
+        switch (a) {
+        case 1:
+            as.addAttribute(TextAttribute.RUN_DIRECTION,
+                            TextAttribute.RUN_DIRECTION_LTR);
+            break;
+        case 2:
+            as.addAttribute(TextAttribute.RUN_DIRECTION,
+                            TextAttribute.RUN_DIRECTION_RTL);
+            break;
+        case 3:
+            as.addAttribute(TextAttribute.BIDI_EMBEDDING, new Integer(-1),
+                            0, text.length() / 2);
+            break;
+        }
+        return as;
+    }
+
+    static boolean checkLevels(AttributedString as,
+                               BidiAttributedCharacterIterator bi) {
+        TextLayout tl = new TextLayout(as.getIterator(), FRC);
+        int[] charMap = bi.getCharMap();
+        for (int i = 0; i < charMap.length; i++) {
+            bi.setIndex(i);
+            Integer level = (Integer)bi.getAttribute
+                (GVTAttributedCharacterIterator.TextAttribute.BIDI_LEVEL);
+            if (level.intValue() != tl.getCharacterLevel(charMap[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean same(BidiAttributedCharacterIterator i1,
+                        BidiAttributedCharacterIterator i2) {
+        int[] m1 = i1.getCharMap();
+        int[] m2 = i2.getCharMap();
+        if (!Arrays.equals(m1, m2)) {
+            return false;
+        }
+        for (int i = 0; i < m1.length; i++) {
+            if (i1.setIndex(i) != i2.setIndex(i)
+                || !i1.getAttributes().equals(i2.getAttributes())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen.font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks that <code>MappedRandomAccessFile</code> reads the same values
+ * as RandomAccessFile, that <code>SVGFont</code> writes the same font
+ * whether glyphs are generated on one or several threads, and that
+ * a subset of the font has the same glyphs as the whole font.
+ *
+ * @version $Id$
+ */
+public class SVGFontTest extends AbstractTest {
+
+    public static final String ERROR_MAPPED_READ_DIFFERS
+        = "SVGFontTest.error.mapped.read.differs";
+
+    public static final String ERROR_PARALLEL_OUTPUT_DIFFERS
+        = "SVGFontTest.error.parallel.output.differs";
+
+    public static final String ERROR_SUBSET_DIFFERS
+        = "SVGFontTest.error.subset.differs";
+
+    public static final String ENTRY_KEY_GLYPH
+        = "SVGFontTest.entry.key.glyph";
+
+    static final String FONT = "samples/tests/resources/ttf/glb12.ttf";
+
+    public TestReport runImpl() throws Exception {
+        if (!checkMappedFile()) {
+            return reportError(ERROR_MAPPED_READ_DIFFERS);
+        }
+
+        int parallelism = WorkerPool.getParallelism();
+        String serial, parallel;
+        try {
+            WorkerPool.setParallelism(1);
+            serial = convert(new int[] { -1, -1 }, true);
+            WorkerPool.setParallelism(4);
+            parallel = convert(new int[] { -1, -1 }, true);
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+        if (!serial.equals(parallel)) {
+            return reportError(ERROR_PARALLEL_OUTPUT_DIFFERS);
+        }
+
+        String subset = convert(SVGFont.parseRanges("0x41-0x43,U+61"), false);
+        String[] lines = subset.split("\n");
+        int glyphs = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].startsWith("<glyph")) {
+                glyphs++;
+                if (serial.indexOf(lines[i]) == -1) {
+                    TestReport report = reportError(ERROR_SUBSET_DIFFERS);
+                    report.addDescriptionEntry(ENTRY_KEY_GLYPH, lines[i]);
+                    return report;
+                }
+            }
+        }
+        if (glyphs != 4) {
+            return reportError(ERROR_SUBSET_DIFFERS);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Converts the given character ranges of the test font.
+     */
+    protected String convert(int[] ranges, boolean autoRange)
+        throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(out);
+        SVGFont.writeFontAsSVGFragment(ps, Font.create(FONT), "f",
+                                       ranges, autoRange, false);
+        ps.flush();
+        return out.toString();
+    }
+
+    /**
+     * Reads the test font at random positions with both kinds of files.
+     */
+    protected boolean checkMappedFile() throws Exception {
+        File f = new File(FONT);
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        RandomAccessFile mapped = new MappedRandomAccessFile(f);
+        try {
+            if (raf.length() != mapped.length()) {
+                return false;
+            }
+            Random rnd = new Random(36);
+            byte[] b1 = new byte[16];
+            byte[] b2 = new byte[16];
+            for (int i = 0; i < 1000; i++) {
+                long pos = rnd.nextInt((int)raf.length() - 16);
+                raf.seek(pos);
+                mapped.seek(pos);
+                if (raf.readInt() != mapped.readInt()
+                    || raf.readShort() != mapped.readShort()
+                    || raf.readUnsignedShort() != mapped.readUnsignedShort()
+                    || raf.readByte() != mapped.readByte()
+                    || raf.getFilePointer() != mapped.getFilePointer()) {
+                    return false;
+                }
+                raf.readFully(b1);
+                mapped.readFully(b2);
+                if (!Arrays.equals(b1, b2)) {
+                    return false;
+                }
+            }
+            mapped.seek(mapped.length() - 1);
+            return mapped.read() != -1 && mapped.read() == -1;
+        } finally {
+            raf.close();
+            mapped.close();
+        }
+    }
+}
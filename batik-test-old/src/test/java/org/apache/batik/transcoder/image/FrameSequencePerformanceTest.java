@@ -0,0 +1,64 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Compares rendering the frames of an animation with
+ * <code>FrameSequenceTranscoder</code> (the operation) with transcoding
+ * the document once per frame at <code>KEY_SNAPSHOT_TIME</code> (the
+ * reference).
+ *
+ * @version $Id$
+ */
+public class FrameSequencePerformanceTest extends PerformanceTest {
+
+    protected FrameSequenceTest frames = new FrameSequenceTest();
+
+    protected void runRef() {
+        int count = Math.round(FrameSequenceTest.RATE
+                               * FrameSequenceTest.DURATION);
+        try {
+            for (int i = 0; i < count; i++) {
+                frames.snapshot(i / FrameSequenceTest.RATE);
+            }
+        } catch (TranscoderException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    protected void runOp() throws Exception {
+        FrameSequenceTranscoder t = frames.createTranscoder(false);
+        t.setFrameHandler(new FrameSequenceTranscoder.FrameHandler() {
+                public void handleFrame(int index, float time,
+                                        BufferedImage img) {
+                }
+            });
+        t.transcode(new TranscoderInput
+                    (new StringReader(FrameSequenceTest.DOCUMENT)),
+                    new TranscoderOutput());
+    }
+}
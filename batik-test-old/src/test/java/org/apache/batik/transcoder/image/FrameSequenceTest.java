@@ -0,0 +1,260 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks that the frames of <code>FrameSequenceTranscoder</code>, on
+ * one thread and in parallel, are the images transcoded at the time of
+ * each frame, and checks the chunks of the animated PNG it writes.
+ *
+ * @version $Id$
+ */
+public class FrameSequenceTest extends AbstractTest {
+
+    public static final String ERROR_FRAME_DIFFERS
+        = "FrameSequenceTest.error.frame.differs";
+
+    public static final String ERROR_BAD_APNG
+        = "FrameSequenceTest.error.bad.apng";
+
+    public static final String ERROR_BAD_FILE_NAMES
+        = "FrameSequenceTest.error.bad.file.names";
+
+    public static final String ENTRY_KEY_CASE
+        = "FrameSequenceTest.entry.key.case";
+
+    /**
+     * A document whose animations change part of the canvas only, and
+     * not during every frame.
+     */
+    static final String DOCUMENT
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='120' height='80'>"
+        + "<rect width='120' height='80' fill='#eee'/>"
+        + "<rect x='0' y='10' width='20' height='20' fill='blue'>"
+        + "<animate attributeName='x' from='0' to='100' dur='1s'"
+        + " fill='freeze'/></rect>"
+        + "<circle cx='60' cy='60' r='5' fill='red' opacity='0.5'>"
+        + "<animate attributeName='r' values='5;15;5' begin='0.5s'"
+        + " dur='0.5s' fill='freeze'/></circle>"
+        + "</svg>";
+
+    static final float RATE = 20;
+
+    static final float DURATION = 1.5f;
+
+    public TestReport runImpl() throws Exception {
+        int count = Math.round(RATE * DURATION);
+        int[][] expected = new int[count][];
+        for (int i = 0; i < count; i++) {
+            expected[i] = getPixels(snapshot(i / RATE));
+        }
+
+        int parallelism = WorkerPool.getParallelism();
+        try {
+            for (int p = 0; p < 2; p++) {
+                WorkerPool.setParallelism(p == 0 ? 1 : 3);
+                final int[][] frames = new int[count][];
+                FrameSequenceTranscoder t = createTranscoder(p == 1);
+                t.setFrameHandler(new FrameSequenceTranscoder.FrameHandler() {
+                        public void handleFrame(int index, float time,
+                                                BufferedImage img) {
+                            frames[index] = getPixels(img);
+                        }
+                    });
+                t.transcode(new TranscoderInput(new StringReader(DOCUMENT)),
+                            new TranscoderOutput());
+                for (int i = 0; i < count; i++) {
+                    if (!Arrays.equals(expected[i], frames[i])) {
+                        TestReport report = reportError(ERROR_FRAME_DIFFERS);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_CASE, (p == 1 ? "parallel " : "")
+                             + "frame " + i);
+                        return report;
+                    }
+                }
+            }
+        } finally {
+            WorkerPool.setParallelism(parallelism);
+        }
+
+        String error = checkFileNames();
+        if (error != null) {
+            TestReport report = reportError(ERROR_BAD_FILE_NAMES);
+            report.addDescriptionEntry(ENTRY_KEY_CASE, error);
+            return report;
+        }
+
+        error = checkAnimatedPNG(count, expected[0]);
+        if (error != null) {
+            TestReport report = reportError(ERROR_BAD_APNG);
+            report.addDescriptionEntry(ENTRY_KEY_CASE, error);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    protected FrameSequenceTranscoder createTranscoder(boolean parallel) {
+        FrameSequenceTranscoder t = new FrameSequenceTranscoder();
+        t.addTranscodingHint(FrameSequenceTranscoder.KEY_DURATION,
+                             DURATION);
+        t.addTranscodingHint(FrameSequenceTranscoder.KEY_FRAME_RATE, RATE);
+        t.addTranscodingHint(FrameSequenceTranscoder.KEY_PARALLEL_FRAMES,
+                             parallel);
+        return t;
+    }
+
+    /**
+     * Writes two frames to files named with and without a pattern, and
+     * checks that each frame has its own file.
+     * @return a description of the first problem found, or null
+     */
+    protected String checkFileNames() throws Exception {
+        File dir = File.createTempFile("frames", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            BufferedImage img = new BufferedImage
+                (4, 4, BufferedImage.TYPE_INT_ARGB);
+            String[] patterns = { "f%02d.png", "frame.png", "100%" };
+            String[][] names = { { "f00.png", "f01.png" },
+                                 { "frame0000.png", "frame0001.png" },
+                                 { "100%0000", "100%0001" } };
+            for (int i = 0; i < patterns.length; i++) {
+                FrameSequenceTranscoder.FrameHandler h =
+                    new FrameSequenceTranscoder.PNGSequenceHandler
+                    (new PNGTranscoder(),
+                     new File(dir, patterns[i]).getPath());
+                h.handleFrame(0, 0, img);
+                h.handleFrame(1, 1, img);
+                for (int j = 0; j < names[i].length; j++) {
+                    if (!new File(dir, names[i][j]).isFile()) {
+                        return names[i][j];
+                    }
+                }
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the sequence as an animated PNG and checks its chunks: one
+     * acTL, one fcTL per frame, sequence numbers in order, and a first
+     * frame that decoders without animation support show as is.
+     * @return a description of the first problem found, or null
+     */
+    protected String checkAnimatedPNG(int count, int[] first)
+            throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        createTranscoder(false).transcode
+            (new TranscoderInput(new StringReader(DOCUMENT)),
+             new TranscoderOutput(bos));
+        byte[] png = bos.toByteArray();
+
+        int actl = 0;
+        int fctl = 0;
+        int sequence = 0;
+        int pos = 8;
+        String type = null;
+        while (pos + 8 <= png.length) {
+            int length = readInt(png, pos);
+            type = new String(png, pos + 4, 4, "ISO-8859-1");
+            if (type.equals("acTL")) {
+                actl++;
+                if (readInt(png, pos + 8) != count) {
+                    return "acTL num_frames " + readInt(png, pos + 8);
+                }
+            } else if (type.equals("fcTL") || type.equals("fdAT")) {
+                if (type.equals("fcTL")) {
+                    fctl++;
+                }
+                if (readInt(png, pos + 8) != sequence++) {
+                    return "sequence number of " + type + " at " + pos;
+                }
+            }
+            pos += length + 12;
+        }
+        if (actl != 1 || fctl != count || !"IEND".equals(type)
+            || pos != png.length) {
+            return actl + " acTL, " + fctl + " fcTL, last chunk " + type;
+        }
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(png));
+        BufferedImage argb = new BufferedImage
+            (img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        argb.createGraphics().drawImage(img, 0, 0, null);
+        if (!Arrays.equals(first, getPixels(argb))) {
+            return "first frame";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the image transcoded at the given document time.
+     */
+    protected BufferedImage snapshot(float time) throws TranscoderException {
+        final BufferedImage[] res = new BufferedImage[1];
+        ImageTranscoder t = new ImageTranscoder() {
+                public BufferedImage createImage(int w, int h) {
+                    return new BufferedImage
+                        (w, h, BufferedImage.TYPE_INT_ARGB);
+                }
+                public void writeImage(BufferedImage img,
+                                       TranscoderOutput output) {
+                    res[0] = img;
+                }
+            };
+        t.addTranscodingHint(ImageTranscoder.KEY_EXECUTE_ONLOAD,
+                             Boolean.TRUE);
+        t.addTranscodingHint(ImageTranscoder.KEY_SNAPSHOT_TIME, time);
+        t.transcode(new TranscoderInput(new StringReader(DOCUMENT)),
+                    new TranscoderOutput());
+        return res[0];
+    }
+
+    static int[] getPixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(),
+                          null, 0, img.getWidth());
+    }
+
+    static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+            | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+}
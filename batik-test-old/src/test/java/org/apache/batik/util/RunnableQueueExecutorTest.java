@@ -0,0 +1,417 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks RunnableQueues running on an <code>Executor</code>: runnables
+ * run one at a time in queue order with preempted ones first,
+ * <code>invokeAndWait</code> waits, suspension holds runnables back
+ * until the queue is resumed, the idle runnable runs when due, halting
+ * releases waiting threads, and many queues share the executor's
+ * threads.  The same checks run on virtual threads when the platform
+ * has them.
+ *
+ * @version $Id$
+ */
+public class RunnableQueueExecutorTest extends AbstractTest {
+
+    public static final String ERROR_BAD_ORDER
+        = "RunnableQueueExecutorTest.error.bad.order";
+
+    public static final String ERROR_CONCURRENT_RUN
+        = "RunnableQueueExecutorTest.error.concurrent.run";
+
+    public static final String ERROR_NOT_WAITED
+        = "RunnableQueueExecutorTest.error.not.waited";
+
+    public static final String ERROR_WAIT_IN_QUEUE_THREAD
+        = "RunnableQueueExecutorTest.error.wait.in.queue.thread";
+
+    public static final String ERROR_RAN_WHILE_SUSPENDED
+        = "RunnableQueueExecutorTest.error.ran.while.suspended";
+
+    public static final String ERROR_BAD_HANDLER_EVENTS
+        = "RunnableQueueExecutorTest.error.bad.handler.events";
+
+    public static final String ERROR_IDLE_RUNNABLE_NOT_RUN
+        = "RunnableQueueExecutorTest.error.idle.runnable.not.run";
+
+    public static final String ERROR_NOT_HALTED
+        = "RunnableQueueExecutorTest.error.not.halted";
+
+    public static final String ERROR_TOO_MANY_THREADS
+        = "RunnableQueueExecutorTest.error.too.many.threads";
+
+    public static final String ENTRY_KEY_EXECUTOR
+        = "RunnableQueueExecutorTest.entry.key.executor";
+
+    public static final String ENTRY_KEY_DETAILS
+        = "RunnableQueueExecutorTest.entry.key.details";
+
+    /**
+     * The number of queues sharing an executor.
+     */
+    static final int QUEUES = 10000;
+
+    /**
+     * The number of threads of the shared executor.
+     */
+    static final int POOL_THREADS = 4;
+
+    /**
+     * Details about the last failure.
+     */
+    protected String details;
+
+    public TestReport runImpl() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool
+            (POOL_THREADS, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            String error = check(pool);
+            if (error == null) {
+                error = checkSharing(pool);
+            }
+            if (error != null) {
+                return report(error, "fixed pool");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Executor virtual = RunnableQueue.getVirtualThreadExecutor();
+        if (virtual != null) {
+            String error = check(virtual);
+            if (error != null) {
+                return report(error, "virtual threads");
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns an error report for the given executor.
+     */
+    protected TestReport report(String key, String executor) {
+        TestReport report = reportError(key);
+        report.addDescriptionEntry(ENTRY_KEY_EXECUTOR, executor);
+        if (details != null) {
+            report.addDescriptionEntry(ENTRY_KEY_DETAILS, details);
+        }
+        return report;
+    }
+
+    /**
+     * Runs the checks of a single queue on the given executor.
+     * @return the error key, or null.
+     */
+    protected String check(Executor e) throws Exception {
+        RunnableQueue rq = RunnableQueue.createRunnableQueue(e);
+        Handler h = new Handler();
+        rq.setRunHandler(h);
+        rq.resumeExecution();
+        try {
+            // Order: queue runnables while the first one blocks, so
+            // the preempted ones are seen ahead of them.
+            final Object gate = new Object();
+            final boolean[] open = new boolean[1];
+            Recorder rec = new Recorder();
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        synchronized (gate) {
+                            while (!open[0]) {
+                                try {
+                                    gate.wait();
+                                } catch (InterruptedException ie) {
+                                }
+                            }
+                        }
+                    }
+                });
+            for (int i = 0; i < 100; i++) {
+                rq.invokeLater(rec.entry(i));
+            }
+            rq.preemptLater(rec.entry(-1));
+            rq.preemptLater(rec.entry(-2));
+            synchronized (gate) {
+                open[0] = true;
+                gate.notifyAll();
+            }
+            rq.invokeAndWait(rec.entry(100));
+            String error = rec.check();
+            if (error != null) {
+                return error;
+            }
+
+            final boolean[] ran = new boolean[1];
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException ie) {
+                        }
+                        ran[0] = true;
+                    }
+                });
+            if (!ran[0]) {
+                return ERROR_NOT_WAITED;
+            }
+            ran[0] = false;
+            rq.preemptAndWait(new Runnable() {
+                    public void run() {
+                        ran[0] = true;
+                    }
+                });
+            if (!ran[0]) {
+                return ERROR_NOT_WAITED;
+            }
+
+            final RunnableQueue q = rq;
+            final boolean[] rejected = new boolean[1];
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                        try {
+                            q.invokeAndWait(this);
+                        } catch (IllegalStateException ise) {
+                            rejected[0] = true;
+                        } catch (InterruptedException ie) {
+                        }
+                    }
+                });
+            if (!rejected[0]) {
+                return ERROR_WAIT_IN_QUEUE_THREAD;
+            }
+
+            // Suspension.
+            int resumed = h.resumed;
+            rq.suspendExecution(true);
+            if (rq.getQueueState() != RunnableQueue.SUSPENDED
+                    || h.suspended != 1) {
+                details = rq.getQueueState() + ", suspended "
+                    + h.suspended;
+                return ERROR_BAD_HANDLER_EVENTS;
+            }
+            ran[0] = false;
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        ran[0] = true;
+                    }
+                });
+            Thread.sleep(50);
+            if (ran[0]) {
+                return ERROR_RAN_WHILE_SUSPENDED;
+            }
+            rq.resumeExecution();
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                    }
+                });
+            if (!ran[0] || h.suspended != 1 || h.resumed != resumed + 1) {
+                details = "ran " + ran[0] + ", suspended " + h.suspended
+                    + ", resumed " + h.resumed;
+                return ERROR_BAD_HANDLER_EVENTS;
+            }
+
+            // Idle runnable, due 30ms from now and then never again.
+            Idle idle = new Idle(System.currentTimeMillis() + 30);
+            rq.setIdleRunnable(idle);
+            synchronized (idle) {
+                long end = System.currentTimeMillis() + 5000;
+                while (idle.count == 0 && System.currentTimeMillis() < end) {
+                    idle.wait(100);
+                }
+            }
+            if (idle.count != 1) {
+                details = "ran " + idle.count + " times";
+                return ERROR_IDLE_RUNNABLE_NOT_RUN;
+            }
+            rq.setIdleRunnable(null);
+
+            // Halting releases the threads waiting on queued runnables.
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        q.halt();
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException ie) {
+                        }
+                    }
+                });
+            ran[0] = false;
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                        ran[0] = true;
+                    }
+                });
+            if (ran[0] || rq.isAlive()) {
+                return ERROR_NOT_HALTED;
+            }
+            try {
+                rq.invokeLater(rec.entry(0));
+                return ERROR_NOT_HALTED;
+            } catch (IllegalStateException ise) {
+            }
+        } finally {
+            rq.halt();
+        }
+        return null;
+    }
+
+    /**
+     * Creates many queues on the given executor and runs a runnable in
+     * each, checking that no thread was created for them.
+     * @return the error key, or null.
+     */
+    protected String checkSharing(Executor e) throws Exception {
+        int threads = Thread.activeCount();
+        List queues = new ArrayList(QUEUES);
+        for (int i = 0; i < QUEUES; i++) {
+            RunnableQueue rq = RunnableQueue.createRunnableQueue(e);
+            rq.resumeExecution();
+            queues.add(rq);
+        }
+        final int[] count = new int[1];
+        Runnable r = new Runnable() {
+                public void run() {
+                    synchronized (count) {
+                        count[0]++;
+                    }
+                }
+            };
+        for (int i = 0; i < QUEUES; i++) {
+            ((RunnableQueue) queues.get(i)).invokeAndWait(r);
+        }
+        int added = Thread.activeCount() - threads;
+        for (int i = 0; i < QUEUES; i++) {
+            ((RunnableQueue) queues.get(i)).halt();
+        }
+        if (count[0] != QUEUES) {
+            details = count[0] + " runnables ran";
+            return ERROR_NOT_WAITED;
+        }
+        // The pool's threads, plus the idle timer.
+        if (added > POOL_THREADS + 1) {
+            details = added + " threads added for " + QUEUES + " queues";
+            return ERROR_TOO_MANY_THREADS;
+        }
+        return null;
+    }
+
+    /**
+     * Records the order runnables run in and whether they overlap.
+     */
+    static class Recorder {
+
+        List order = new ArrayList();
+        boolean running;
+        boolean overlapped;
+
+        Runnable entry(final int i) {
+            return new Runnable() {
+                    public void run() {
+                        synchronized (Recorder.this) {
+                            if (running) {
+                                overlapped = true;
+                            }
+                            running = true;
+                        }
+                        Thread.yield();
+                        synchronized (Recorder.this) {
+                            order.add(new Integer(i));
+                            running = false;
+                        }
+                    }
+                };
+        }
+
+        /**
+         * Returns an error key if the runnables did not run in the
+         * expected order: -1, -2, 0 .. 100.
+         */
+        synchronized String check() {
+            if (overlapped) {
+                return ERROR_CONCURRENT_RUN;
+            }
+            List expected = new ArrayList();
+            expected.add(new Integer(-1));
+            expected.add(new Integer(-2));
+            for (int i = 0; i <= 100; i++) {
+                expected.add(new Integer(i));
+            }
+            if (!order.equals(expected)) {
+                return ERROR_BAD_ORDER;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Counts the suspension and resumption events.
+     */
+    static class Handler extends RunnableQueue.RunHandlerAdapter {
+
+        volatile int suspended;
+        volatile int resumed;
+
+        public void executionSuspended(RunnableQueue rq) {
+            suspended++;
+        }
+
+        public void executionResumed(RunnableQueue rq) {
+            resumed++;
+        }
+    }
+
+    /**
+     * An idle runnable due once.
+     */
+    static class Idle implements RunnableQueue.IdleRunnable {
+
+        long due;
+        int count;
+
+        Idle(long due) {
+            this.due = due;
+        }
+
+        public synchronized long getWaitTime() {
+            return due;
+        }
+
+        public synchronized void run() {
+            count++;
+            due = Long.MAX_VALUE;
+            notifyAll();
+        }
+    }
+}
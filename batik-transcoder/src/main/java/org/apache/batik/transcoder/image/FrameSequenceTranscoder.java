@@ -0,0 +1,793 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IllegalFormatException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.RepaintManager;
+import org.apache.batik.dom.util.DOMUtilities;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.RootGraphicsNode;
+import org.apache.batik.gvt.UpdateTracker;
+import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.TranscodingHints;
+import org.apache.batik.transcoder.image.resources.Messages;
+import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.FloatKey;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.WorkerPool;
+import org.w3c.dom.Document;
+
+/**
+ * This class renders an animated SVG document as a sequence of
+ * frames.  The document is loaded once; the animation engine is then
+ * moved from frame to frame and only the areas that changed are
+ * repainted.
+ *
+ * <p>The frames start at <code>KEY_SNAPSHOT_TIME</code> (0 by default)
+ * and are <code>1/KEY_FRAME_RATE</code> seconds apart, for
+ * <code>KEY_DURATION</code> seconds.  They are written to the output
+ * as an animated PNG when it is a byte stream, or as one PNG file per
+ * frame when it only has a URI: the URI is then a
+ * <code>java.util.Formatter</code> pattern given the frame index, for
+ * example <code>frame%04d.png</code>.  A URI that does not use the
+ * index gets it before its extension, so <code>frame.png</code> is
+ * written as <code>frame0000.png</code>, <code>frame0001.png</code>...
+ * Frames can also be handed to a
+ * {@link FrameHandler} instead.  The hints of <code>PNGTranscoder</code>
+ * apply to the encoding of the frames.</p>
+ *
+ * <p>When <code>KEY_PARALLEL_FRAMES</code> is true, the frames are split
+ * in bands of consecutive frames rendered on the threads of the
+ * <code>WorkerPool</code>, each from its own copy of the document.  The
+ * copies are built in parallel too, each by a transcoder of its own.</p>
+ *
+ * @version $Id$
+ */
+public class FrameSequenceTranscoder extends SVGAbstractTranscoder {
+
+    /**
+     * The least number of frames rendered from a copy of the document
+     * when frames are rendered in parallel.
+     */
+    public static final int MIN_FRAMES_PER_DOCUMENT = 8;
+
+    /**
+     * Receives the frames of the sequence.  With
+     * <code>KEY_PARALLEL_FRAMES</code>, the methods of a handler are
+     * called from several threads at once and must be thread safe.
+     */
+    public interface FrameHandler {
+
+        /**
+         * Handles a frame.  The image is reused for the next frames
+         * and must be copied to be kept.  With
+         * <code>KEY_PARALLEL_FRAMES</code>, frames are handled out of
+         * order and from several threads at once.
+         * @param index the index of the frame
+         * @param time the document time of the frame, in seconds
+         * @param img the frame
+         * @throws TranscoderException if an error occured while
+         *         handling the frame
+         */
+        void handleFrame(int index, float time, BufferedImage img)
+            throws TranscoderException;
+    }
+
+    /**
+     * The handler set with setFrameHandler.
+     */
+    protected FrameHandler frameHandler;
+
+    /**
+     * The renderers of the copies of the document not in use.
+     */
+    protected List idleRenderers;
+
+    /**
+     * The renderers of all the copies of the document.
+     */
+    protected List allRenderers;
+
+    /**
+     * The document the copies are made from when frames are rendered
+     * in parallel, or null.  It is not built itself, so that it is not
+     * modified while it is copied.
+     */
+    protected Document template;
+
+    /**
+     * The first error of a band of frames.  It is set by the bands
+     * under the transcoder lock and read by the others without it.
+     */
+    protected volatile TranscoderException failure;
+
+    /**
+     * Constructs a new <code>FrameSequenceTranscoder</code>.
+     */
+    public FrameSequenceTranscoder() {
+        hints.put(KEY_EXECUTE_ONLOAD, Boolean.TRUE);
+        hints.put(KEY_FRAME_RATE, new Float(30));
+    }
+
+    /**
+     * Sets the handler the frames are given to, instead of the output.
+     * @param handler the handler, or null to write the frames to the
+     *        output
+     */
+    public void setFrameHandler(FrameHandler handler) {
+        frameHandler = handler;
+    }
+
+    /**
+     * Returns the handler the frames are given to, or null.
+     */
+    public FrameHandler getFrameHandler() {
+        return frameHandler;
+    }
+
+    /**
+     * Transcodes the specified Document as a sequence of frames.
+     *
+     * @param document the document to transcode
+     * @param uri the uri of the document or null if any
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    protected void transcode(final Document document,
+                             final String uri,
+                             final TranscoderOutput output)
+            throws TranscoderException {
+
+        if (!hints.containsKey(KEY_DURATION)) {
+            throw new TranscoderException
+                (Messages.formatMessage("frames.noduration", null));
+        }
+        final float begin = hints.containsKey(KEY_SNAPSHOT_TIME)
+            ? (Float) hints.get(KEY_SNAPSHOT_TIME) : 0;
+        final float rate = (Float) hints.get(KEY_FRAME_RATE);
+        float duration = (Float) hints.get(KEY_DURATION);
+        int count = Math.max(1, Math.round(duration * rate));
+
+        AnimatedPNGHandler animatedPNG = null;
+        FrameHandler handler = frameHandler;
+        if (handler == null) {
+            if (output.getOutputStream() != null) {
+                animatedPNG = new AnimatedPNGHandler
+                    (createEncoder(), output.getOutputStream(), count, rate);
+                handler = animatedPNG;
+            } else if (output.getURI() != null) {
+                handler = new PNGSequenceHandler
+                    (createEncoder(), output.getURI());
+            } else {
+                throw new TranscoderException
+                    (Messages.formatMessage("frames.badoutput", null));
+            }
+        }
+
+        idleRenderers = new LinkedList();
+        allRenderers = new ArrayList();
+        failure = null;
+        final FrameHandler h = handler;
+        try {
+            WorkerPool.BandTask task = new WorkerPool.BandTask() {
+                    public void run(int start, int end) {
+                        FrameRenderer r = null;
+                        try {
+                            r = getFrameRenderer(document, uri, output);
+                            for (int i = start; i < end; i++) {
+                                if (failure != null) {
+                                    return;
+                                }
+                                float t = begin + i / rate;
+                                h.handleFrame(i, t, r.render(t));
+                            }
+                        } catch (TranscoderException ex) {
+                            fail(ex);
+                        } catch (InterruptedException ex) {
+                            fail(new TranscoderException(ex));
+                        } finally {
+                            if (r != null) {
+                                releaseFrameRenderer(r);
+                            }
+                        }
+                    }
+                };
+            Boolean parallel = (Boolean)hints.get(KEY_PARALLEL_FRAMES);
+            if ((parallel != null) && parallel.booleanValue()) {
+                template = document;
+                WorkerPool.runBands(count, MIN_FRAMES_PER_DOCUMENT, task);
+            } else {
+                task.run(0, count);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (animatedPNG != null) {
+                animatedPNG.finish();
+            }
+        } finally {
+            for (int i = 0; i < allRenderers.size(); i++) {
+                ((FrameRenderer)allRenderers.get(i)).dispose();
+            }
+            idleRenderers = null;
+            allRenderers = null;
+            template = null;
+            // The contexts are disposed of already.
+            ctx = null;
+            root = null;
+        }
+    }
+
+    /**
+     * Records the first failure of a band of frames.
+     */
+    protected synchronized void fail(TranscoderException ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    /**
+     * Returns an idle frame renderer, or a new one.  When frames are
+     * rendered in parallel, the new renderer renders a copy of the
+     * document, built without holding the lock of this transcoder;
+     * otherwise it renders the document itself.
+     */
+    protected FrameRenderer getFrameRenderer
+        (Document document, String uri, TranscoderOutput output)
+            throws TranscoderException {
+        synchronized (this) {
+            if (!idleRenderers.isEmpty()) {
+                return (FrameRenderer)idleRenderers.remove(0);
+            }
+            if (template == null) {
+                // Sets up ctx, root, curTxf, width & height.
+                super.transcode(document, uri, output);
+                FrameRenderer r = new FrameRenderer(this);
+                allRenderers.add(r);
+                return r;
+            }
+            ParsedURL url = null;
+            if (template instanceof SVGOMDocument) {
+                url = ((SVGOMDocument)template).getParsedURL();
+            }
+            document = DOMUtilities.deepCloneDocument
+                (template, template.getImplementation());
+            if (url != null) {
+                ((SVGOMDocument)document).setParsedURL(url);
+            }
+        }
+        FrameSequenceTranscoder builder = new FrameSequenceTranscoder();
+        builder.hints.putAll(hints);
+        builder.setErrorHandler(getErrorHandler());
+        builder.buildDocument(document, uri, output);
+        FrameRenderer r = new FrameRenderer(builder);
+        synchronized (this) {
+            allRenderers.add(r);
+        }
+        return r;
+    }
+
+    /**
+     * Builds the GVT tree of the given document, setting up ctx, root,
+     * curTxf, width and height.
+     */
+    protected void buildDocument(Document document, String uri,
+                                 TranscoderOutput output)
+            throws TranscoderException {
+        super.transcode(document, uri, output);
+    }
+
+    /**
+     * Makes a frame renderer available to other bands of frames.
+     */
+    protected synchronized void releaseFrameRenderer(FrameRenderer r) {
+        idleRenderers.add(r);
+    }
+
+    /**
+     * Returns a PNG transcoder with the hints of this transcoder.
+     */
+    protected PNGTranscoder createEncoder() {
+        PNGTranscoder encoder = new PNGTranscoder();
+        encoder.setTranscodingHints(hints);
+        return encoder;
+    }
+
+    /**
+     * Method so subclasses can modify the Renderer used to render the
+     * frames.  It must keep its offscreen image between repaints.
+     */
+    protected ImageRenderer createRenderer() {
+        return new ConcreteImageRendererFactory().createDynamicImageRenderer();
+    }
+
+    /**
+     * Renders the frames of a copy of the document.
+     */
+    protected class FrameRenderer {
+
+        protected BridgeContext ctx;
+        protected ImageRenderer renderer;
+        protected RepaintManager repaintManager;
+        protected UpdateTracker updateTracker;
+        protected RootGraphicsNode rootNode;
+
+        /**
+         * The area of interest, in user space.
+         */
+        protected Shape aoi;
+
+        protected Paint background;
+
+        /**
+         * The frame, reused from one frame to the next.
+         */
+        protected BufferedImage frame;
+
+        protected boolean painted;
+
+        /**
+         * Creates a renderer for the tree just built by the given
+         * transcoder.
+         */
+        public FrameRenderer(FrameSequenceTranscoder builder)
+                throws TranscoderException {
+            ctx = builder.ctx;
+            GraphicsNode gvtRoot = builder.root;
+            AffineTransform txf = builder.curTxf;
+            float width = builder.width;
+            float height = builder.height;
+            int w = (int)(width+0.5);
+            int h = (int)(height+0.5);
+            try {
+                aoi = txf.createInverse().createTransformedShape
+                    (new Rectangle2D.Float(0, 0, width, height));
+            } catch (NoninvertibleTransformException ex) {
+                throw new TranscoderException(ex);
+            }
+            background = (Paint)hints.get
+                (ImageTranscoder.KEY_BACKGROUND_COLOR);
+
+            renderer = createRenderer();
+            ImageTranscoder.setRenderingHints(renderer, hints);
+            renderer.setDoubleBuffered(false);
+            renderer.updateOffScreen(w, h);
+            renderer.setTransform(txf);
+            renderer.setTree(gvtRoot);
+            repaintManager = new RepaintManager(renderer);
+
+            updateTracker = new UpdateTracker();
+            rootNode = gvtRoot.getRoot();
+            if (rootNode != null) {
+                rootNode.addTreeGraphicsNodeChangeListener(updateTracker);
+            }
+            frame = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        /**
+         * Moves the animations to the given time and renders the frame,
+         * repainting only what changed since the previous frame.
+         */
+        public BufferedImage render(float time) throws InterruptedException {
+            if (ctx.isDynamic()) {
+                ctx.getAnimationEngine().setCurrentTime(time);
+            }
+            List areas = null;
+            if (!painted) {
+                areas = new ArrayList(1);
+                areas.add(aoi);
+                painted = true;
+            } else if (updateTracker.hasChanged()) {
+                areas = updateTracker.getDirtyAreas();
+            }
+            updateTracker.clear();
+            if (areas != null) {
+                repaintManager.updateRendering(areas);
+            }
+
+            BufferedImage rend = renderer.getOffScreen();
+            Graphics2D g2d = GraphicsUtil.createGraphics(frame);
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, frame.getWidth(), frame.getHeight());
+            g2d.setComposite(AlphaComposite.SrcOver);
+            if (background != null) {
+                g2d.setPaint(background);
+                g2d.fillRect(0, 0, frame.getWidth(), frame.getHeight());
+            }
+            if (rend != null) { // might be null if the svg document is empty
+                g2d.drawRenderedImage(rend, new AffineTransform());
+            }
+            g2d.dispose();
+            return frame;
+        }
+
+        public void dispose() {
+            if (rootNode != null) {
+                rootNode.removeTreeGraphicsNodeChangeListener(updateTracker);
+            }
+            renderer.dispose();
+            ctx.dispose();
+        }
+    }
+
+    /**
+     * Writes each frame to its own PNG file.
+     */
+    public static class PNGSequenceHandler implements FrameHandler {
+
+        protected PNGTranscoder encoder;
+
+        protected String pattern;
+
+        /**
+         * @param encoder the transcoder encoding the frames
+         * @param pattern the pattern of the file names, given the index
+         *        of the frame, either a file name or a file URL.  If it
+         *        does not use the index, the index is inserted before
+         *        the extension of the file name.
+         */
+        public PNGSequenceHandler(PNGTranscoder encoder, String pattern) {
+            this.encoder = encoder;
+            this.pattern = hasFrameIndex(pattern)
+                ? pattern : insertFrameIndex(pattern);
+        }
+
+        /**
+         * Returns whether the given pattern names two frames differently.
+         */
+        protected static boolean hasFrameIndex(String pattern) {
+            try {
+                return !String.format(pattern, new Object[] { 0 }).equals
+                    (String.format(pattern, new Object[] { 1 }));
+            } catch (IllegalFormatException ex) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the pattern of the given file name with the frame
+         * index before its extension.
+         */
+        protected static String insertFrameIndex(String name) {
+            int dot = name.lastIndexOf('.');
+            int sep = Math.max(name.lastIndexOf('/'),
+                               name.lastIndexOf(File.separatorChar));
+            if (dot <= sep + 1) {
+                dot = name.length();
+            }
+            return name.substring(0, dot).replace("%", "%%") + "%04d"
+                + name.substring(dot).replace("%", "%%");
+        }
+
+        public void handleFrame(int index, float time, BufferedImage img)
+                throws TranscoderException {
+            String name = String.format(pattern, new Object[] { index });
+            if (name.startsWith("file:")) {
+                name = new ParsedURL(name).getPath();
+            }
+            try {
+                OutputStream os = new FileOutputStream(new File(name));
+                try {
+                    encoder.writeImage(img, new TranscoderOutput(os));
+                } finally {
+                    os.close();
+                }
+            } catch (IOException ex) {
+                throw new TranscoderException(ex);
+            }
+        }
+    }
+
+    /**
+     * Writes the frames as an animated PNG, that loops forever.  Every
+     * frame is encoded as a PNG image whose data becomes a frame of
+     * the animated PNG; frames received out of order are kept until
+     * the frames before them are written.  Color indexed frames can't
+     * share a palette so <code>KEY_INDEXED</code> is ignored.
+     */
+    public static class AnimatedPNGHandler implements FrameHandler {
+
+        static final byte[] SIGNATURE
+            = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+
+        protected PNGTranscoder encoder;
+
+        protected DataOutputStream out;
+
+        protected int frameCount;
+
+        protected int delayNum;
+
+        protected int delayDen;
+
+        /**
+         * The encoded frames not written yet.
+         */
+        protected byte[][] pending;
+
+        /**
+         * The index of the next frame to write.
+         */
+        protected int next;
+
+        /**
+         * The sequence number of the next fcTL or fdAT chunk.
+         */
+        protected int sequence;
+
+        /**
+         * @param encoder the transcoder encoding the frames
+         * @param os the stream the animated PNG is written to
+         * @param frameCount the number of frames
+         * @param frameRate the number of frames per second
+         */
+        public AnimatedPNGHandler(PNGTranscoder encoder, OutputStream os,
+                                  int frameCount, float frameRate) {
+            this.encoder = encoder;
+            encoder.removeTranscodingHint(PNGTranscoder.KEY_INDEXED);
+            this.out = new DataOutputStream(os);
+            this.frameCount = frameCount;
+            this.pending = new byte[frameCount][];
+            if ((frameRate >= 1) && (frameRate <= 0xffff) &&
+                (frameRate == Math.rint(frameRate))) {
+                delayNum = 1;
+                delayDen = (int)frameRate;
+            } else {
+                delayNum = Math.min(0xffff, Math.round(1000 / frameRate));
+                delayDen = 1000;
+            }
+        }
+
+        public void handleFrame(int index, float time, BufferedImage img)
+                throws TranscoderException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            encoder.writeImage(img, new TranscoderOutput(bos));
+            byte[] png = bos.toByteArray();
+            synchronized (this) {
+                pending[index] = png;
+                try {
+                    while ((next < frameCount) && (pending[next] != null)) {
+                        writeFrame(next, pending[next]);
+                        pending[next++] = null;
+                    }
+                } catch (IOException ex) {
+                    throw new TranscoderException(ex);
+                }
+            }
+        }
+
+        /**
+         * Ends the animated PNG, once all frames are written.
+         */
+        public synchronized void finish() throws TranscoderException {
+            try {
+                writeChunk("IEND", new byte[0]);
+                out.flush();
+            } catch (IOException ex) {
+                throw new TranscoderException(ex);
+            }
+        }
+
+        /**
+         * Writes a frame given as a PNG file.  The chunks before the
+         * image data of the first frame (header, color space) become
+         * those of the animated PNG.
+         */
+        protected void writeFrame(int index, byte[] png) throws IOException {
+            int width = readInt(png, 16);
+            int height = readInt(png, 20);
+            if (index == 0) {
+                out.write(SIGNATURE);
+            }
+            ByteArrayOutputStream fctl = new ByteArrayOutputStream(26);
+            DataOutputStream d = new DataOutputStream(fctl);
+            d.writeInt(sequence++);
+            d.writeInt(width);
+            d.writeInt(height);
+            d.writeInt(0);
+            d.writeInt(0);
+            d.writeShort(delayNum);
+            d.writeShort(delayDen);
+            d.writeByte(0);         // APNG_DISPOSE_OP_NONE
+            d.writeByte(0);         // APNG_BLEND_OP_SOURCE
+
+            boolean controlWritten = false;
+            int pos = SIGNATURE.length;
+            while (pos + 8 <= png.length) {
+                int length = readInt(png, pos);
+                String type = new String(png, pos + 4, 4, "ISO-8859-1");
+                int data = pos + 8;
+                pos = data + length + 4;
+                if (type.equals("IEND")) {
+                    break;
+                }
+                if (type.equals("IDAT")) {
+                    if (!controlWritten) {
+                        writeChunk("fcTL", fctl.toByteArray());
+                        controlWritten = true;
+                    }
+                    if (index == 0) {
+                        out.write(png, data - 8, length + 12);
+                    } else {
+                        byte[] fdat = new byte[length + 4];
+                        writeInt(fdat, 0, sequence++);
+                        System.arraycopy(png, data, fdat, 4, length);
+                        writeChunk("fdAT", fdat);
+                    }
+                } else if ((index == 0) && !controlWritten) {
+                    out.write(png, data - 8, length + 12);
+                    if (type.equals("IHDR")) {
+                        byte[] actl = new byte[8];
+                        writeInt(actl, 0, frameCount);
+                        writeInt(actl, 4, 0);
+                        writeChunk("acTL", actl);
+                    }
+                }
+            }
+        }
+
+        protected void writeChunk(String type, byte[] data)
+                throws IOException {
+            byte[] t = type.getBytes("ISO-8859-1");
+            CRC32 crc = new CRC32();
+            crc.update(t);
+            crc.update(data);
+            out.writeInt(data.length);
+            out.write(t);
+            out.write(data);
+            out.writeInt((int)crc.getValue());
+        }
+
+        static int readInt(byte[] b, int off) {
+            return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+        }
+
+        static void writeInt(byte[] b, int off, int v) {
+            b[off]     = (byte)(v >>> 24);
+            b[off + 1] = (byte)(v >>> 16);
+            b[off + 2] = (byte)(v >>> 8);
+            b[off + 3] = (byte)v;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Keys definition
+    // --------------------------------------------------------------------
+
+    /**
+     * The duration key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_DURATION</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Float</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">none</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">Yes</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The length of the sequence in seconds of
+     *       document time.  The number of frames is the duration times
+     *       the frame rate, rounded.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_DURATION
+        = new FloatKey();
+
+    /**
+     * The frame rate key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_FRAME_RATE</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Float</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">30</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of frames per second of document
+     *       time.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_FRAME_RATE
+        = new FloatKey();
+
+    /**
+     * The parallel frames key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_PARALLEL_FRAMES</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Whether to render bands of frames on the
+     *       threads of the WorkerPool.  Every band renders a copy of the
+     *       document, which costs the memory of a document and of its
+     *       GVT tree per thread.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_PARALLEL_FRAMES
+        = new BooleanKey();
+}
@@ -18,13 +18,31 @@
  */
 package org.apache.batik.util;
 
+import java.lang.reflect.Method;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class represents an object which queues Runnable objects for
  * invocation in a single thread.
  *
+ * <p>By default each queue runs in its own {@link HaltingThread}.  A
+ * queue can instead run on an {@link Executor}, which lets many queues
+ * share a few threads, or use virtual threads where the platform has
+ * them (see {@link #getVirtualThreadExecutor()}).  The queue then
+ * submits a task whenever it has runnables to run; the task runs them
+ * one at a time, in order, and returns when the queue is empty or
+ * suspended.  Only one task of a queue runs at any time, so the
+ * runnables never run concurrently and the ordering, waiting and
+ * suspension guarantees are the same as with a thread.</p>
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @version $Id$
  */
@@ -105,6 +123,17 @@ public class RunnableQueue implements Runnable {
      */
     protected volatile HaltingThread runnableQueueThread;
 
+    /**
+     * Whether the time each runnable spends in the queue is measured.
+     */
+    protected volatile boolean timing;
+
+    /**
+     * How long, in nanoseconds, the runnable being run waited in the
+     * queue, or 0 if it was not measured.
+     */
+    protected volatile long runnableWaitTime;
+
     /**
      * The {@link IdleRunnable} to run if the queue is empty.
      */
@@ -115,12 +144,107 @@ public class RunnableQueue implements Runnable {
      */
     private long idleRunnableWaitTime;
 
+    /**
+     * The system property selecting the executor new queues run on.
+     * The value <code>virtual</code> runs them on virtual threads, when
+     * the platform supports them; otherwise each queue gets its own
+     * thread.
+     */
+    public static final String EXECUTOR_PROPERTY
+        = "org.apache.batik.util.RunnableQueue.executor";
+
+    /**
+     * The largest number of runnables an executor task runs before it
+     * submits a new task, letting the other queues of the executor run.
+     */
+    protected static final int EXECUTOR_BATCH = 32;
+
+    /**
+     * The executor running on virtual threads, created lazily.
+     */
+    private static Executor virtualThreadExecutor;
+
+    /**
+     * Whether creating the virtual thread executor has been attempted.
+     */
+    private static boolean virtualThreadExecutorChecked;
+
+    /**
+     * The executor new queues run on, or null for their own thread.
+     */
+    private static Executor defaultExecutor = getPropertyExecutor();
+
+    /**
+     * Wakes the executor queues whose idle runnable is due, created
+     * lazily.
+     */
+    private static ScheduledThreadPoolExecutor idleTimer;
+
+    /**
+     * Whether the idle timer drops cancelled wakeups by itself, which
+     * it can from Java 7.
+     */
+    private static volatile boolean idleTimerRemovesOnCancel;
+
+    /**
+     * The executor this queue runs on, or null if it has its own thread.
+     */
+    protected Executor executor;
+
+    /**
+     * Whether a task of this queue was submitted to the executor and
+     * has not finished.  Guarded by the list.
+     */
+    protected boolean scheduled;
+
+    /**
+     * The thread running the executor task of this queue, if any.
+     */
+    protected volatile Thread executorThread;
+
+    /**
+     * Whether {@link #halt()} was called.
+     */
+    protected volatile boolean halted;
+
+    /**
+     * Whether this executor queue has stopped running runnables.
+     */
+    protected volatile boolean exited;
+
+    /**
+     * The pending wake up for the idle runnable.  Guarded by the list.
+     */
+    protected ScheduledFuture idleWakeup;
+
+    /**
+     * The task submitted to the executor.
+     */
+    protected final Runnable executorTask = new Runnable() {
+            public void run() {
+                runTasks();
+            }
+        };
+
+    /**
+     * Submits a task when the idle runnable is due.
+     */
+    protected final Runnable idleWakeupTask = new Runnable() {
+            public void run() {
+                schedule();
+            }
+        };
+
     /**
      * Creates a new RunnableQueue started in a new thread.
      * @return a RunnableQueue which is guaranteed to have entered its
      *         <code>run()</code> method.
      */
     public static RunnableQueue createRunnableQueue() {
+        Executor e = getDefaultExecutor();
+        if (e != null) {
+            return createRunnableQueue(e);
+        }
         RunnableQueue result = new RunnableQueue();
         synchronized (result) {
             // Sync on the new object, so we can wait until the new
@@ -142,6 +266,110 @@ public class RunnableQueue implements Runnable {
 
     private static volatile int threadCount;
 
+    /**
+     * Creates a new RunnableQueue running on the given executor.  The
+     * executor must run its tasks asynchronously.  It may run them on
+     * any thread, and may be shared between many queues.
+     */
+    public static RunnableQueue createRunnableQueue(Executor e) {
+        RunnableQueue result = new RunnableQueue();
+        result.executor = e;
+        // Let the queue enter its initial state, as a new thread would.
+        result.schedule();
+        return result;
+    }
+
+    /**
+     * Returns the executor new queues run on, or null if each gets its
+     * own thread.  It is initialized from {@link #EXECUTOR_PROPERTY}.
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    /**
+     * Sets the executor queues created by {@link #createRunnableQueue()}
+     * run on.  Null gives each queue its own thread.  Existing queues
+     * are not affected.
+     */
+    public static synchronized void setDefaultExecutor(Executor e) {
+        defaultExecutor = e;
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread, or
+     * null if the platform has no virtual threads.
+     */
+    public static synchronized Executor getVirtualThreadExecutor() {
+        if (!virtualThreadExecutorChecked) {
+            virtualThreadExecutorChecked = true;
+            try {
+                // Looked up reflectively so the class still loads on
+                // platforms without virtual threads.
+                Method m = Executors.class.getMethod
+                    ("newVirtualThreadPerTaskExecutor", new Class[0]);
+                virtualThreadExecutor =
+                    (Executor) m.invoke(null, new Object[0]);
+            } catch (Exception e) {
+                // No virtual threads, or they are a preview feature.
+            } catch (LinkageError e) {
+            }
+        }
+        return virtualThreadExecutor;
+    }
+
+    private static Executor getPropertyExecutor() {
+        try {
+            String s = System.getProperty(EXECUTOR_PROPERTY);
+            if (s != null && s.trim().equals("virtual")) {
+                return getVirtualThreadExecutor();
+            }
+        } catch (SecurityException se) {
+        }
+        return null;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getIdleTimer() {
+        if (idleTimer == null) {
+            idleTimer = new ScheduledThreadPoolExecutor
+                (1, new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "RunnableQueue-IdleTimer");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            try {
+                // Looked up reflectively so the class still loads on
+                // platforms before Java 7.
+                Method m = ScheduledThreadPoolExecutor.class.getMethod
+                    ("setRemoveOnCancelPolicy", new Class[] { Boolean.TYPE });
+                m.invoke(idleTimer, new Object[] { Boolean.TRUE });
+                idleTimerRemovesOnCancel = true;
+            } catch (Exception e) {
+                // Cancelled wakeups are purged instead.
+            } catch (LinkageError e) {
+            }
+        }
+        return idleTimer;
+    }
+
+    /**
+     * Cancels the pending idle wakeup of this queue, if any.  Guarded
+     * by the list.
+     */
+    private void cancelIdleWakeup() {
+        if (idleWakeup != null) {
+            idleWakeup.cancel(false);
+            idleWakeup = null;
+            if (!idleTimerRemovesOnCancel) {
+                // Don't keep cancelled wakeups, and their queues, in
+                // the timer until they are due.
+                getIdleTimer().purge();
+            }
+        }
+    }
+
     /**
      * Runs this queue.
      */
@@ -232,80 +460,301 @@ public class RunnableQueue implements Runnable {
                     } else {
                         rable = l.runnable;
                     }
+                    runnableWaitTime = (l != null && l.queueTime != 0)
+                        ? System.nanoTime() - l.queueTime
+                        : 0;
                 }
 
-                try {
-                    runnableStart(rable);
-
-                    rable.run();
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
+                runRunnable(l, rable);
+            }
+        } finally {
+            unlockPending();
+
+            synchronized (this) {
+                runnableQueueThread = null;
+            }
+        }
+    }
+
+    /**
+     * Runs one runnable, notifying the run handler around it.
+     * @param l The link the runnable was queued in, or null for the
+     *        idle runnable.
+     * @param rable The runnable.
+     */
+    protected void runRunnable(Link l, Runnable rable) {
+        try {
+            runnableStart(rable);
+
+            rable.run();
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+
+        try {
+            runnableReturned(rable);
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        // Notify something waiting on the runnable just completed,
+        // if we just ran one from the queue.
+        if (l != null) {
+            l.unlock();
+        }
+
+        try {
+            runnableInvoked(rable);
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Empties the list of pending runnables and unlocks them (so
+     * invokeAndWait will return).  It's up to the runnables to check
+     * if the runnable actually ran, if that is important.
+     */
+    protected void unlockPending() {
+        Link l;
+        do {
+            synchronized (list) {
+                l = (Link)list.pop();
+            }
+            if (l == null) break;
+            else           l.unlock();
+        } while (true);
+    }
+
+    /**
+     * Runs queued runnables as a task of the executor, until the queue
+     * is empty, suspended or halted.  After {@link #EXECUTOR_BATCH}
+     * runnables a new task is submitted, so the other queues sharing
+     * the executor get their turn.
+     */
+    protected void runTasks() {
+        executorThread = Thread.currentThread();
+        boolean released = false;
+        try {
+            for (int n = 0; n < EXECUTOR_BATCH; n++) {
+                if (halted) {
+                    return;
                 }
-                // Notify something waiting on the runnable just completed,
-                // if we just ran one from the queue.
-                if (l != null) {
-                    l.unlock();
+                boolean callSuspended = false;
+                boolean callResumed   = false;
+                synchronized (stateLock) {
+                    if (state != RUNNING) {
+                        callSuspended = state != SUSPENDED;
+                        state = SUSPENDED;
+                    } else if (wasResumed) {
+                        wasResumed = false;
+                        callResumed = true;
+                    }
                 }
-
-                try {
-                    runnableInvoked(rable);
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
+                if (callSuspended)
+                    executionSuspended();
+                if (getQueueState() != RUNNING) {
+                    synchronized (stateLock) {
+                        // notify suspendExecution in case it is
+                        // waiting til we shut down.
+                        stateLock.notifyAll();
+                    }
+                    // resumeExecution will submit a new task.
+                    released = release(Long.MAX_VALUE);
+                    if (getQueueState() == RUNNING) {
+                        schedule();
+                    }
+                    return;
                 }
-            }
-        } finally {
-            do {
-                // Empty the list of pending runnables and unlock them (so
-                // invokeAndWait will return).
-                // It's up to the runnables to check if the runnable actually
-                // ran, if that is important.
+                if (callResumed)
+                    executionResumed();
+
+                Link l;
+                Runnable rable;
                 synchronized (list) {
+                    if (state == SUSPENDING)
+                        continue;
                     l = (Link)list.pop();
+                    if (preemptCount != 0) preemptCount--;
+                    if (l == null) {
+                        if (idleRunnable != null &&
+                                (idleRunnableWaitTime = idleRunnable.getWaitTime())
+                                    < System.currentTimeMillis()) {
+                            rable = idleRunnable;
+                        } else {
+                            // Nothing to run until a runnable is queued
+                            // or the idle runnable is due.
+                            released = release(idleRunnable == null
+                                               ? Long.MAX_VALUE
+                                               : idleRunnableWaitTime);
+                            return;
+                        }
+                    } else {
+                        rable = l.runnable;
+                    }
+                    runnableWaitTime = (l != null && l.queueTime != 0)
+                        ? System.nanoTime() - l.queueTime
+                        : 0;
                 }
-                if (l == null) break;
-                else           l.unlock();
-            } while (true);
 
-            synchronized (this) {
-                runnableQueueThread = null;
+                runRunnable(l, rable);
             }
+            // Still scheduled: the new task continues where this one
+            // stopped.
+            executorThread = null;
+            released = true;
+            submit();
+        } finally {
+            if (!released) {
+                exit();
+            }
+        }
+    }
+
+    /**
+     * Marks the executor task of this queue as finished, so the next
+     * queued runnable submits a new one.
+     * @param idleTime When the idle runnable should run next, in
+     *        milliseconds, or Long.MAX_VALUE.
+     * @return true
+     */
+    protected boolean release(long idleTime) {
+        synchronized (list) {
+            executorThread = null;
+            scheduled = false;
+            cancelIdleWakeup();
+            if (idleTime != Long.MAX_VALUE) {
+                long delay = Math.max(0, idleTime - System.currentTimeMillis());
+                idleWakeup = getIdleTimer().schedule
+                    (idleWakeupTask, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits a task to the executor if this queue runs on one and
+     * none is pending or running.
+     */
+    protected void schedule() {
+        if (executor == null) {
+            return;
+        }
+        synchronized (list) {
+            if (scheduled || exited) {
+                return;
+            }
+            scheduled = true;
+        }
+        submit();
+    }
+
+    /**
+     * Submits the task of this queue to the executor.
+     */
+    private void submit() {
+        try {
+            executor.execute(executorTask);
+        } catch (RejectedExecutionException ree) {
+            // The executor was shut down.
+            exit();
         }
     }
 
+    /**
+     * Stops this executor queue for good.
+     */
+    protected void exit() {
+        synchronized (list) {
+            exited = true;
+            executorThread = null;
+            cancelIdleWakeup();
+        }
+        unlockPending();
+    }
+
     /**
      * Returns the thread in which the RunnableQueue is currently running.
      * @return null if the RunnableQueue has not entered his
-     *         <code>run()</code> method.
+     *         <code>run()</code> method, or if it runs on an executor.
      */
     public HaltingThread getThread() {
         return runnableQueueThread;
     }
 
+    /**
+     * Returns the executor this queue runs on, or null if it has its
+     * own thread.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns whether this queue was started and has not exited, that
+     * is, whether runnables can still be queued.
+     */
+    public boolean isAlive() {
+        return executor == null ? runnableQueueThread != null : !exited;
+    }
+
+    /**
+     * Returns whether the calling thread is the one running the
+     * runnables of this queue.
+     */
+    public boolean isQueueThread() {
+        Thread t = Thread.currentThread();
+        return t == runnableQueueThread || t == executorThread;
+    }
+
+    /**
+     * Stops this queue once the runnable being run, if any, returns.
+     * The runnables still queued are not run, but the threads waiting
+     * for them are released.
+     */
+    public void halt() {
+        halted = true;
+        HaltingThread t = runnableQueueThread;
+        if (t != null) {
+            t.halt();
+            synchronized (list) {
+                list.notify();
+            }
+        }
+        schedule();
+    }
+
     /**
      * Schedules the given Runnable object for a later invocation, and
      * returns.
      * An exception is thrown if the RunnableQueue was not started.
-     * @throws IllegalStateException if getThread() is null.
+     * @throws IllegalStateException if the queue is not alive.
      */
     public void invokeLater(Runnable r) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
+        Link l = new Link(r);
+        if (timing) {
+            l.queueTime = System.nanoTime();
+        }
         synchronized (list) {
-            list.push(new Link(r));
+            list.push(l);
             list.notify();
         }
+        schedule();
     }
 
     /**
@@ -313,24 +762,28 @@ public class RunnableQueue implements Runnable {
      * <em>Note: <code>invokeAndWait()</code> must not be called from the
      * current thread (for example from the <code>run()</code> method of the
      * argument).</em>
-     * @throws IllegalStateException if getThread() is null or if the
-     *         thread returned by getThread() is the current one.
+     * @throws IllegalStateException if the queue is not alive or if
+     *         called from the queue's thread.
      */
     public void invokeAndWait(Runnable r) throws InterruptedException {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread()) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
 
         LockableLink l = new LockableLink(r);
+        if (timing) {
+            l.queueTime = System.nanoTime();
+        }
         synchronized (list) {
             list.push(l);
             list.notify();
         }
+        schedule();
         l.lock();           // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
@@ -341,18 +794,23 @@ public class RunnableQueue implements Runnable {
      * currently executing (ie the next runnable started will be the
      * one given).  An exception is thrown if the RunnableQueue was
      * not started.
-     * @throws IllegalStateException if getThread() is  null.
+     * @throws IllegalStateException if the queue is not alive.
      */
     public void preemptLater(Runnable r) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
+        Link l = new Link(r);
+        if (timing) {
+            l.queueTime = System.nanoTime();
+        }
         synchronized (list) {
-            list.add(preemptCount, new Link(r));
+            list.add(preemptCount, l);
             preemptCount++;
             list.notify();
         }
+        schedule();
     }
 
     /**
@@ -362,28 +820,67 @@ public class RunnableQueue implements Runnable {
      * <em>Note: <code>preemptAndWait()</code> must not be called from the
      * current thread (for example from the <code>run()</code> method of the
      * argument).</em>
-     * @throws IllegalStateException if getThread() is null or if the
-     *         thread returned by getThread() is the current one.
+     * @throws IllegalStateException if the queue is not alive or if
+     *         called from the queue's thread.
      */
     public void preemptAndWait(Runnable r) throws InterruptedException {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread()) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
 
         LockableLink l = new LockableLink(r);
+        if (timing) {
+            l.queueTime = System.nanoTime();
+        }
         synchronized (list) {
             list.add(preemptCount, l);
             preemptCount++;
             list.notify();
         }
+        schedule();
         l.lock();               // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
+    /**
+     * Sets whether the time each runnable spends waiting in the queue
+     * is measured.  When on, {@link #getRunnableWaitTime()} reports the
+     * wait of the runnable being run.
+     */
+    public void setTiming(boolean b) {
+        timing = b;
+    }
+
+    /**
+     * Returns whether the time runnables spend in the queue is measured.
+     */
+    public boolean isTiming() {
+        return timing;
+    }
+
+    /**
+     * Returns how long, in nanoseconds, the runnable currently being
+     * run waited in the queue, or 0 if it was queued while timing was
+     * off or is the idle runnable.  Meant to be called from
+     * {@link RunHandler#runnableStart(RunnableQueue,Runnable)}.
+     */
+    public long getRunnableWaitTime() {
+        return runnableWaitTime;
+    }
+
+    /**
+     * Returns the number of runnables waiting in the queue.
+     */
+    public int getQueueSize() {
+        synchronized (list) {
+            return list.getSize();
+        }
+    }
+
     public RunnableQueueState getQueueState() {
         synchronized (stateLock) {
             return state;
@@ -399,10 +896,10 @@ public class RunnableQueue implements Runnable {
      *        called while waiting will simply return (this really
      *        indicates a race condition in your code).  This may
      *        return before an associated RunHandler is notified.
-     * @throws IllegalStateException if getThread() is null.
+     * @throws IllegalStateException if the queue is not alive.
      */
     public void suspendExecution(boolean waitTillSuspended) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -425,6 +922,7 @@ public class RunnableQueue implements Runnable {
                     // run-handler etc...)
                     list.notify();
                 }
+                schedule();
             }
 
             if (waitTillSuspended) {
@@ -439,11 +937,11 @@ public class RunnableQueue implements Runnable {
 
     /**
      * Resumes the execution of this queue.
-     * @throws IllegalStateException if getThread() is null.
+     * @throws IllegalStateException if the queue is not alive.
      */
     public void resumeExecution() {
         // System.err.println("Resume Called");
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -456,6 +954,7 @@ public class RunnableQueue implements Runnable {
                 stateLock.notifyAll(); // wake it up.
             }
         }
+        schedule();
     }
 
     /**
@@ -523,6 +1022,18 @@ public class RunnableQueue implements Runnable {
             idleRunnableWaitTime = 0;
             list.notify();
         }
+        schedule();
+    }
+
+    /**
+     * Tells the queue that its idle runnable may be due earlier than
+     * the last time returned by its {@link IdleRunnable#getWaitTime()}.
+     */
+    public void idleRunnableChanged() {
+        synchronized (list) {
+            list.notify();
+        }
+        schedule();
     }
 
     /**
@@ -558,6 +1069,18 @@ public class RunnableQueue implements Runnable {
         }
     }
 
+    /**
+     * Called when a Runnable has returned, before any thread waiting
+     * for it in {@link #invokeAndWait(Runnable)} is released.
+     * Notifies runHandler if it is a {@link ReturnHandler}.
+     * @param rable The runnable that just returned.
+     */
+    protected synchronized void runnableReturned(Runnable rable) {
+        if (runHandler instanceof ReturnHandler) {
+            ((ReturnHandler)runHandler).runnableReturned(this, rable);
+        }
+    }
+
     /**
      * Called when a Runnable completes.
      * Currently just notifies runHandler
@@ -614,6 +1137,21 @@ public class RunnableQueue implements Runnable {
         void executionResumed(RunnableQueue rq);
     }
 
+    /**
+     * A {@link RunHandler} that also wants to be notified when a
+     * Runnable has returned but before any thread waiting for it is
+     * released, so that it can complete the Runnable's work.
+     */
+    public interface ReturnHandler extends RunHandler {
+
+        /**
+         * Called when the given Runnable has returned, before
+         * {@link #runnableInvoked(RunnableQueue,Runnable)} and before
+         * a thread waiting in invokeAndWait is released.
+         */
+        void runnableReturned(RunnableQueue rq, Runnable r);
+    }
+
     /**
      * This is an adapter class that implements the RunHandler interface.
      * It simply does nothing in response to the calls.
@@ -652,6 +1190,12 @@ public class RunnableQueue implements Runnable {
          */
         private final Runnable runnable;
 
+        /**
+         * The System.nanoTime() at which the Runnable was queued, or 0
+         * if the queue was not timing runnables.
+         */
+        long queueTime;
+
         /**
          * Creates a new link.
          */
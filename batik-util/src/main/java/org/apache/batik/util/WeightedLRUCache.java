@@ -0,0 +1,184 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe map which keeps its most recently used entries, up to
+ * a maximum total weight.  Every entry is given a weight when it is
+ * added (a number of pixels, bytes, glyphs...); once the total weight
+ * exceeds the maximum, the least recently used entries are evicted.
+ * Hit, miss and eviction counts are kept for monitoring.
+ *
+ * @version $Id$
+ */
+public class WeightedLRUCache {
+
+    /**
+     * The entries, in access order.
+     */
+    protected final LinkedHashMap map = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The maximum total weight.
+     */
+    protected long maxWeight;
+
+    /**
+     * The current total weight.
+     */
+    protected long weight;
+
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    /**
+     * Creates a new cache.
+     * @param maxWeight the maximum total weight of the entries.
+     */
+    public WeightedLRUCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the value for <code>key</code>, or null.
+     */
+    public synchronized Object get(Object key) {
+        Entry e = (Entry)map.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    /**
+     * Adds or replaces the value for <code>key</code>.  Values heavier
+     * than the maximum weight are not stored.
+     */
+    public synchronized void put(Object key, Object value, long w) {
+        Entry old = (Entry)map.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+        if (w > maxWeight) {
+            return;
+        }
+        map.put(key, new Entry(value, w));
+        weight += w;
+        trim();
+    }
+
+    /**
+     * Removes the value for <code>key</code>.
+     */
+    public synchronized Object remove(Object key) {
+        Entry e = (Entry)map.remove(key);
+        if (e == null) {
+            return null;
+        }
+        weight -= e.weight;
+        return e.value;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * Sets the maximum total weight, evicting entries as needed.
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        trim();
+    }
+
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public synchronized void resetStatistics() {
+        hits = misses = evictions = 0;
+    }
+
+    public synchronized String toString() {
+        return "[entries: " + map.size() + ", weight: " + weight + '/'
+            + maxWeight + ", hits: " + hits + ", misses: " + misses
+            + ", evictions: " + evictions + ']';
+    }
+
+    /**
+     * Evicts the least recently used entries until the total weight
+     * is within bounds.
+     */
+    protected void trim() {
+        Iterator it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Entry e = (Entry)((Map.Entry)it.next()).getValue();
+            it.remove();
+            weight -= e.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * A value and its weight.
+     */
+    protected static class Entry {
+        final Object value;
+        final long weight;
+
+        Entry(Object value, long weight) {
+            this.value  = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A process wide pool of daemon worker threads used to split
+ * expensive, data parallel computations (typically image processing
+ * over rows or columns of a raster) into bands.
+ *
+ * <p>The number of workers defaults to the number of available
+ * processors and can be set through the
+ * <code>org.apache.batik.util.WorkerPool.parallelism</code> system
+ * property.  A parallelism of one disables the pool entirely and runs
+ * every band on the calling thread.</p>
+ *
+ * <p>Bands submitted from a worker thread are run on that thread, so
+ * nested calls can never dead lock waiting for a busy pool.</p>
+ *
+ * <p>The workers are {@link HaltingThread}s that report themselves
+ * halted while the thread that submitted their band is, so that
+ * halting that thread also stops the work it handed out.</p>
+ *
+ * @version $Id$
+ */
+public final class WorkerPool {
+
+    /**
+     * The system property used to configure the parallelism.
+     */
+    public static final String PARALLELISM_PROPERTY
+        = "org.apache.batik.util.WorkerPool.parallelism";
+
+    /**
+     * A unit of work covering the index range [start, end).
+     */
+    public interface BandTask {
+        /**
+         * Processes the indices from <code>start</code> (inclusive)
+         * to <code>end</code> (exclusive).
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * The number of threads work is split across (including the
+     * calling thread).
+     */
+    private static int parallelism = getDefaultParallelism();
+
+    /**
+     * The executor, created lazily.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Marks the pool's own threads.
+     */
+    private static final ThreadLocal WORKER = new ThreadLocal();
+
+    private WorkerPool() {
+    }
+
+    private static int getDefaultParallelism() {
+        int n = Runtime.getRuntime().availableProcessors();
+        try {
+            String s = System.getProperty(PARALLELISM_PROPERTY);
+            if (s != null) {
+                n = Integer.parseInt(s.trim());
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        return Math.max(1, n);
+    }
+
+    /**
+     * Returns the number of threads work is split across.
+     */
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads work is split across.  Values less
+     * than one are treated as one, which disables parallel execution.
+     */
+    public static synchronized void setParallelism(int n) {
+        n = Math.max(1, n);
+        if (n == parallelism) {
+            return;
+        }
+        parallelism = n;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool
+                (parallelism - 1, new ThreadFactory() {
+                        int count;
+                        public Thread newThread(final Runnable r) {
+                            Thread t = new Worker(new Runnable() {
+                                    public void run() {
+                                        WORKER.set(Boolean.TRUE);
+                                        r.run();
+                                    }
+                                }, "Batik WorkerPool-" + (++count));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * Returns true if the current thread belongs to the pool.
+     */
+    public static boolean isWorkerThread() {
+        return WORKER.get() != null;
+    }
+
+    /**
+     * Runs <code>task</code> over the index range [0, count), split
+     * in at most <code>getParallelism()</code> bands of at least
+     * <code>minBand</code> indices each.  The last band is run on the
+     * calling thread.  Returns once every band has completed.
+     * Runtime exceptions and errors thrown by a band are rethrown on
+     * the calling thread.
+     */
+    public static void runBands(int count, int minBand, BandTask task) {
+        if (count <= 0) {
+            return;
+        }
+        int n = getParallelism();
+        if (minBand < 1) {
+            minBand = 1;
+        }
+        n = Math.min(n, count / minBand);
+        if (n <= 1 || isWorkerThread()) {
+            task.run(0, count);
+            return;
+        }
+
+        ExecutorService ex = getExecutor();
+        Future[] futures = new Future[n - 1];
+        int band = count / n;
+        int rem  = count % n;
+        int start = 0;
+        for (int i = 0; i < n - 1; i++) {
+            int end = start + band + (i < rem ? 1 : 0);
+            Runnable r = new BandRunnable(task, start, end);
+            try {
+                futures[i] = ex.submit(r);
+            } catch (RejectedExecutionException ree) {
+                // The pool was resized underneath us.
+                r.run();
+            }
+            start = end;
+        }
+        task.run(start, count);
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < futures.length; i++) {
+            while (futures[i] != null) {
+                try {
+                    futures[i].get();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        failure = ee.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure.toString());
+        }
+    }
+
+    /**
+     * Adapts a band of a BandTask to a Runnable.
+     */
+    private static class BandRunnable implements Runnable {
+        private final BandTask task;
+        private final int start;
+        private final int end;
+
+        /**
+         * The thread that submitted the band.
+         */
+        private final Thread owner;
+
+        BandRunnable(BandTask task, int start, int end) {
+            this.task  = task;
+            this.start = start;
+            this.end   = end;
+            this.owner = Thread.currentThread();
+        }
+
+        public void run() {
+            Thread t = Thread.currentThread();
+            if (!(t instanceof Worker)) {
+                task.run(start, end);
+                return;
+            }
+            Worker w = (Worker)t;
+            w.owner = owner;
+            try {
+                task.run(start, end);
+            } finally {
+                w.owner = null;
+            }
+        }
+    }
+
+    /**
+     * A pool thread, halted whenever the thread whose band it runs is.
+     */
+    private static class Worker extends HaltingThread {
+
+        /**
+         * The thread that submitted the band being run, if any.
+         */
+        volatile Thread owner;
+
+        Worker(Runnable r, String name) {
+            super(r, name);
+        }
+
+        public boolean isHalted() {
+            Thread o = owner;
+            return super.isHalted() || (o != null && hasBeenHalted(o));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.apps.updatemonitor;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Dimension2D;
+import java.io.PrintWriter;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UpdateManager;
+import org.apache.batik.bridge.UpdateMonitor;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Runs a dynamic SVG document off screen for a while with the
+ * {@link UpdateMonitor} of its <code>UpdateManager</code> enabled, then
+ * prints the collected statistics.  The monitor is also registered with
+ * the platform MBean server, so it can be watched with JConsole while
+ * the document runs.
+ *
+ * Usage: <code>UpdateMonitorDump [-frames] uri [seconds]</code>
+ * where <code>-frames</code> prints the phase times of every frame.
+ *
+ * @version $Id$
+ */
+public class UpdateMonitorDump {
+
+    public static void main(String[] args) throws Exception {
+        int arg = 0;
+        boolean frames = false;
+        if (args.length > 0 && args[0].equals("-frames")) {
+            frames = true;
+            arg++;
+        }
+        if (args.length <= arg) {
+            System.err.println
+                ("Usage: UpdateMonitorDump [-frames] uri [seconds]");
+            System.exit(1);
+        }
+        String uri = args[arg++];
+        int seconds = args.length > arg ? Integer.parseInt(args[arg]) : 10;
+
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument(uri);
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        GraphicsNode root = new GVTBuilder().build(ctx, doc);
+        Dimension2D size = ctx.getDocumentSize();
+
+        ImageRenderer renderer = new ConcreteImageRendererFactory()
+            .createDynamicImageRenderer();
+        renderer.updateOffScreen((int) Math.ceil(size.getWidth()),
+                                 (int) Math.ceil(size.getHeight()));
+        renderer.setTransform(new AffineTransform());
+        renderer.setTree(root);
+
+        UpdateManager um = new UpdateManager(ctx, root, doc);
+        UpdateMonitor monitor = um.getUpdateMonitor();
+        monitor.setEnabled(true);
+        System.out.println("Registered " + monitor.registerMBean());
+        if (frames) {
+            monitor.addListener(new UpdateMonitor.Listener() {
+                    public void frameCompleted(UpdateMonitor m) {
+                        StringBuffer sb = new StringBuffer();
+                        sb.append("frame ").append(m.getFrameCount());
+                        for (int i = 0; i < UpdateMonitor.PHASE_COUNT; i++) {
+                            sb.append(' ')
+                              .append(UpdateMonitor.getPhaseName(i))
+                              .append('=')
+                              .append(m.getLastFramePhaseTime(i));
+                        }
+                        sb.append(" area=").append(m.getLastRepaintArea());
+                        System.out.println(sb);
+                    }
+                });
+        }
+
+        um.dispatchSVGLoadEvent();
+        um.manageUpdates(renderer);
+        Thread.sleep(seconds * 1000L);
+
+        um.getUpdateRunnableQueue().suspendExecution(true);
+        monitor.dump(new PrintWriter(System.out));
+        um.interrupt();
+        ctx.dispose();
+        System.exit(0);
+    }
+}